@@ -0,0 +1,141 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.base;
+
+/**
+ * Montgomery arithmetic modulo an odd N with R = 2^64, for callers that keep N and its inverse in local variables or lane arrays.
+ * 
+ * montMul(), addMod() and subMod() work for any odd N < 2^64 with unsigned residues.
+ * The "62" variants require N < 2^62, so that sums of residues cannot overflow and signed shifts can replace unsigned comparisons.
+ * Note that montMul() takes N^-1 mod 2^64, whereas the "62" multiplications take -N^-1 mod 2^64.
+ * 
+ * @author agent
+ */
+public class Montgomery64 {
+
+	private Montgomery64() {
+		// static methods only
+	}
+	
+	/**
+	 * N^-1 mod 2^64 by Newton iteration; N*N == 1 (mod 8), and each step doubles the number of correct bits.
+	 * @param N odd
+	 * @return N^-1 mod 2^64
+	 */
+	public static long inverse(long N) {
+		long inv = N;
+		for (int i=0; i<5; i++) {
+			inv *= 2 - N * inv;
+		}
+		return inv;
+	}
+	
+	/**
+	 * @param N odd
+	 * @return (-1/N) mod 2^64
+	 */
+	public static long minusInverse(long N) {
+		return -inverse(N);
+	}
+	
+	/**
+	 * Montgomery multiplication a*b/R mod N for any odd N < 2^64.
+	 * Since the low parts of a*b and m*N are equal for m = (a*b)*N^-1 mod R, the result is the difference of the high parts.
+	 * @param a unsigned, < N
+	 * @param b unsigned, < N
+	 * @param N
+	 * @param NInv N^-1 mod 2^64
+	 * @return a*b/R mod N, in [0, N)
+	 */
+	public static long montMul(long a, long b, long N, long NInv) {
+		final long abHigh = Uint128.mul64_getHigh(a, b);
+		final long m = a * b * NInv;
+		final long mNHigh = Uint128.mul64_getHigh(m, N);
+		final long r = abHigh - mNHigh;
+		return (abHigh+Long.MIN_VALUE < mNHigh+Long.MIN_VALUE) ? r + N : r;
+	}
+	
+	/**
+	 * Montgomery multiplication a*b/R mod N for N < 2^62.
+	 * @param a 0 <= a < N
+	 * @param b 0 <= b < N
+	 * @param N
+	 * @param minusNInv (-1/N) mod 2^64
+	 * @return a*b/R mod N, fully reduced
+	 */
+	public static long montMul62(long a, long b, long N, long minusNInv) {
+		final long r = montMul62Lazy(a, b, N, minusNInv) - N;
+		return r + ((r >> 63) & N);
+	}
+	
+	/**
+	 * Montgomery multiplication a*b/R mod N for N < 2^62, without the final subtraction.
+	 * @param a 0 <= a < 2N+1
+	 * @param b 0 <= b < 2N+1
+	 * @param N
+	 * @param minusNInv (-1/N) mod 2^64
+	 * @return a*b/R mod N, possibly + N
+	 */
+	public static long montMul62Lazy(long a, long b, long N, long minusNInv) {
+		final long lo = a*b;
+		final long t = lo * minusNInv;
+		// lo + low(t*N) == 0 (mod 2^64), so there is a carry iff lo != 0
+		return Uint128.mul64_getHigh(a, b) + Uint128.mul64_getHigh(t, N) + (lo != 0 ? 1 : 0);
+	}
+	
+	/**
+	 * @param a unsigned, < N
+	 * @param b unsigned, < N
+	 * @param N
+	 * @return a+b mod N
+	 */
+	public static long addMod(long a, long b, long N) {
+		final long s = a + b;
+		// the unsigned sum overflowed or is >= N
+		return (s+Long.MIN_VALUE < a+Long.MIN_VALUE || s+Long.MIN_VALUE >= N+Long.MIN_VALUE) ? s - N : s;
+	}
+	
+	/**
+	 * @param a unsigned, < N
+	 * @param b unsigned, < N
+	 * @param N
+	 * @return a-b mod N
+	 */
+	public static long subMod(long a, long b, long N) {
+		final long d = a - b;
+		return (a+Long.MIN_VALUE < b+Long.MIN_VALUE) ? d + N : d;
+	}
+	
+	/**
+	 * @param a 0 <= a < N
+	 * @param b 0 <= b < N
+	 * @param N N < 2^62
+	 * @return a+b mod N
+	 */
+	public static long addMod62(long a, long b, long N) {
+		final long r = a + b - N;
+		return r + ((r >> 63) & N);
+	}
+	
+	/**
+	 * @param a 0 <= a < N
+	 * @param b 0 <= b < N
+	 * @param N N < 2^62
+	 * @return a-b mod N
+	 */
+	public static long subMod62(long a, long b, long N) {
+		final long r = a - b;
+		return r + ((r >> 63) & N);
+	}
+}
@@ -0,0 +1,882 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.base;
+
+import java.math.BigInteger;
+
+/**
+ * Fixed-width Montgomery arithmetic modulo an odd N with k 64-bit limbs, using the CIOS multiplication of
+ * Koc, Acar, Kaliski: "Analyzing and Comparing Montgomery Multiplication Algorithms", 1996.
+ * For 2, 3 and 4 limbs (65..256 bit N) the multiplication is fully unrolled, which is more than twice as fast as the loop.
+ * 
+ * Residues are long[k] arrays in little-endian limb order, always reduced to [0, N).
+ * The reducer is R = 2^(64k). All operations allow the result array to be one of the arguments.
+ * 
+ * An instance holds scratch memory, so it must not be shared between threads.
+ * 
+ * @author agent
+ */
+public class MontgomeryMultiLimb {
+	
+	private final BigInteger N;
+	/** number of limbs */
+	private final int k;
+	/** the limbs of N */
+	private final long[] n;
+	/** -1/N mod 2^64 */
+	private final long nInv;
+	/** R mod N, the Montgomery form of 1 */
+	private final long[] one;
+	/** scratch for the multiplication, k+2 limbs */
+	private final long[] t;
+	
+	/**
+	 * Create the arithmetic modulo N.
+	 * @param N odd modulus > 1
+	 */
+	public MontgomeryMultiLimb(BigInteger N) {
+		if (!N.testBit(0) || N.bitLength() < 2) throw new IllegalArgumentException("Montgomery arithmetic requires an odd modulus > 1, but N=" + N);
+		this.N = N;
+		this.k = (N.bitLength() + 63) >> 6;
+		this.n = toLimbs(N);
+		this.nInv = Montgomery64.minusInverse(n[0]);
+		this.one = toLimbs(BigInteger.ONE.shiftLeft(64*k).mod(N));
+		this.t = new long[k+2];
+	}
+	
+	/**
+	 * @return the modulus
+	 */
+	public BigInteger getN() {
+		return N;
+	}
+	
+	/**
+	 * @return the number of 64-bit limbs of N
+	 */
+	public int getLimbCount() {
+		return k;
+	}
+	
+	/**
+	 * @return a new residue array, initialized to 0
+	 */
+	public long[] newElement() {
+		return new long[k];
+	}
+	
+	/**
+	 * Convert x into Montgomery form x*R mod N.
+	 * @param x
+	 * @param r result
+	 */
+	public void toMontgomery(BigInteger x, long[] r) {
+		BigInteger xR = x.shiftLeft(64*k).mod(N);
+		long[] limbs = toLimbs(xR);
+		System.arraycopy(limbs, 0, r, 0, k);
+	}
+	
+	/**
+	 * Convert a residue in Montgomery form back into an ordinary BigInteger.
+	 * @param a
+	 * @return a/R mod N
+	 */
+	public BigInteger fromMontgomery(long[] a) {
+		long[] unit = new long[k];
+		unit[0] = 1;
+		long[] r = new long[k];
+		mul(a, unit, r);
+		return toBigInteger(r);
+	}
+	
+	/**
+	 * @param a residue
+	 * @return the limbs of a interpreted as a non-negative BigInteger, without leaving Montgomery form.
+	 * Useful for gcd's with N, because R is coprime to N.
+	 */
+	public BigInteger toBigInteger(long[] a) {
+		byte[] bytes = new byte[8*k+1]; // leading 0 byte keeps the sign positive
+		for (int i=0; i<k; i++) {
+			long limb = a[i];
+			int pos = 8*(k-i);
+			for (int b=0; b<8; b++) {
+				bytes[pos-b] = (byte) (limb >>> (8*b));
+			}
+		}
+		return new BigInteger(bytes);
+	}
+	
+	private long[] toLimbs(BigInteger x) {
+		long[] limbs = new long[k];
+		for (int i=0; i<k; i++) {
+			limbs[i] = x.shiftRight(64*i).longValue();
+		}
+		return limbs;
+	}
+	
+	/**
+	 * Set r to the Montgomery form of 1.
+	 * @param r
+	 */
+	public void setOne(long[] r) {
+		System.arraycopy(one, 0, r, 0, k);
+	}
+	
+	/**
+	 * Copy a to r.
+	 * @param a
+	 * @param r
+	 */
+	public void set(long[] a, long[] r) {
+		System.arraycopy(a, 0, r, 0, k);
+	}
+	
+	/**
+	 * @param a
+	 * @return true if a == 0
+	 */
+	public boolean isZero(long[] a) {
+		for (int i=0; i<k; i++) {
+			if (a[i] != 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @param a
+	 * @param b
+	 * @return true if a == b
+	 */
+	public boolean equals(long[] a, long[] b) {
+		for (int i=0; i<k; i++) {
+			if (a[i] != b[i]) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Montgomery multiplication r = a*b/R mod N.
+	 * @param a
+	 * @param b
+	 * @param r result, may be a or b
+	 */
+	public void mul(long[] a, long[] b, long[] r) {
+		switch (k) {
+		case 2: mul2(a, b, r); return;
+		case 3: mul3(a, b, r); return;
+		case 4: mul4(a, b, r); return;
+		default: mulK(a, b, r);
+		}
+	}
+	
+	/**
+	 * Montgomery multiplication for any number of limbs.
+	 */
+	private void mulK(long[] a, long[] b, long[] r) {
+		final long[] t = this.t;
+		final long[] n = this.n;
+		final int k = this.k;
+		for (int j=0; j<k+2; j++) t[j] = 0;
+		
+		for (int i=0; i<k; i++) {
+			// t += a*b[i]
+			final long bi = b[i];
+			long C = 0;
+			for (int j=0; j<k; j++) {
+				final long aj = a[j];
+				final long lo = aj * bi;
+				long hi = Uint128.mul64_getHigh(aj, bi);
+				long s = t[j] + lo;
+				if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+				s += C;
+				if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+				t[j] = s;
+				C = hi; // a*b + t + C < 2^128, so hi does not overflow
+			}
+			long s = t[k] + C;
+			t[k+1] = (s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0;
+			t[k] = s;
+			
+			// t = (t + m*N) / 2^64, where m is chosen such that the lowest limb becomes 0
+			final long m = t[0] * nInv;
+			long lo = m * n[0];
+			long hi = Uint128.mul64_getHigh(m, n[0]);
+			if (t[0] != 0) hi++; // t[0]+lo == 0 (mod 2^64), so there is a carry iff t[0] != 0
+			C = hi;
+			for (int j=1; j<k; j++) {
+				lo = m * n[j];
+				hi = Uint128.mul64_getHigh(m, n[j]);
+				s = t[j] + lo;
+				if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+				s += C;
+				if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+				t[j-1] = s;
+				C = hi;
+			}
+			s = t[k] + C;
+			t[k-1] = s;
+			t[k] = t[k+1] + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		}
+		
+		// now t < 2N
+		if (t[k] != 0 || !lessThanN(t)) {
+			subtractN(t);
+		}
+		System.arraycopy(t, 0, r, 0, k);
+	}
+	
+	/**
+	 * Montgomery multiplication for 2 limbs, unrolled with all intermediate limbs in local variables.
+	 */
+	private void mul2(long[] a, long[] b, long[] r) {
+		final long a0 = a[0], a1 = a[1];
+		final long[] n = this.n;
+		final long n0 = n[0], n1 = n[1];
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+		long bi, lo, hi, s, C, m;
+		// row 0
+		bi = b[0];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		t0 = lo;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = lo + C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		t2 = C;
+		t3 = 0;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		s = t2 + C;
+		t1 = s;
+		t2 = t3 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		// row 1
+		bi = b[1];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		s = t0 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		s = t2 + C;
+		t3 = (s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0;
+		t2 = s;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		s = t2 + C;
+		t1 = s;
+		t2 = t3 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		if (t2 != 0 || (t1+Long.MIN_VALUE > n1+Long.MIN_VALUE) || (t1 == n1 && t0+Long.MIN_VALUE >= n0+Long.MIN_VALUE)) {
+			long d, borrow = 0, c;
+			d = t0 - n0;
+			c = (t0+Long.MIN_VALUE < n0+Long.MIN_VALUE) ? 1 : 0;
+			t0 = d;
+			borrow = c;
+			d = t1 - n1;
+			c = (t1+Long.MIN_VALUE < n1+Long.MIN_VALUE) ? 1 : 0;
+			if (d+Long.MIN_VALUE < borrow+Long.MIN_VALUE) c = 1;
+			t1 = d - borrow;
+		}
+		r[0] = t0;
+		r[1] = t1;
+	}
+
+	/**
+	 * Montgomery multiplication for 3 limbs, unrolled with all intermediate limbs in local variables.
+	 */
+	private void mul3(long[] a, long[] b, long[] r) {
+		final long a0 = a[0], a1 = a[1], a2 = a[2];
+		final long[] n = this.n;
+		final long n0 = n[0], n1 = n[1], n2 = n[2];
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0, t4 = 0;
+		long bi, lo, hi, s, C, m;
+		// row 0
+		bi = b[0];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		t0 = lo;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = lo + C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = a2 * bi;
+		hi = Uint128.mul64_getHigh(a2, bi);
+		s = lo + C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		t3 = C;
+		t4 = 0;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = m * n2;
+		hi = Uint128.mul64_getHigh(m, n2);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		s = t3 + C;
+		t2 = s;
+		t3 = t4 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		// row 1
+		bi = b[1];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		s = t0 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = a2 * bi;
+		hi = Uint128.mul64_getHigh(a2, bi);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		s = t3 + C;
+		t4 = (s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0;
+		t3 = s;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = m * n2;
+		hi = Uint128.mul64_getHigh(m, n2);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		s = t3 + C;
+		t2 = s;
+		t3 = t4 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		// row 2
+		bi = b[2];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		s = t0 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = a2 * bi;
+		hi = Uint128.mul64_getHigh(a2, bi);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		s = t3 + C;
+		t4 = (s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0;
+		t3 = s;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = m * n2;
+		hi = Uint128.mul64_getHigh(m, n2);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		s = t3 + C;
+		t2 = s;
+		t3 = t4 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		if (t3 != 0 || (t2+Long.MIN_VALUE > n2+Long.MIN_VALUE) || (t2 == n2 && t1+Long.MIN_VALUE > n1+Long.MIN_VALUE) || (t2 == n2 && t1 == n1 && t0+Long.MIN_VALUE >= n0+Long.MIN_VALUE)) {
+			long d, borrow = 0, c;
+			d = t0 - n0;
+			c = (t0+Long.MIN_VALUE < n0+Long.MIN_VALUE) ? 1 : 0;
+			t0 = d;
+			borrow = c;
+			d = t1 - n1;
+			c = (t1+Long.MIN_VALUE < n1+Long.MIN_VALUE) ? 1 : 0;
+			if (d+Long.MIN_VALUE < borrow+Long.MIN_VALUE) c = 1;
+			t1 = d - borrow;
+			borrow = c;
+			d = t2 - n2;
+			c = (t2+Long.MIN_VALUE < n2+Long.MIN_VALUE) ? 1 : 0;
+			if (d+Long.MIN_VALUE < borrow+Long.MIN_VALUE) c = 1;
+			t2 = d - borrow;
+		}
+		r[0] = t0;
+		r[1] = t1;
+		r[2] = t2;
+	}
+
+	/**
+	 * Montgomery multiplication for 4 limbs, unrolled with all intermediate limbs in local variables.
+	 */
+	private void mul4(long[] a, long[] b, long[] r) {
+		final long a0 = a[0], a1 = a[1], a2 = a[2], a3 = a[3];
+		final long[] n = this.n;
+		final long n0 = n[0], n1 = n[1], n2 = n[2], n3 = n[3];
+		long t0 = 0, t1 = 0, t2 = 0, t3 = 0, t4 = 0, t5 = 0;
+		long bi, lo, hi, s, C, m;
+		// row 0
+		bi = b[0];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		t0 = lo;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = lo + C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = a2 * bi;
+		hi = Uint128.mul64_getHigh(a2, bi);
+		s = lo + C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		lo = a3 * bi;
+		hi = Uint128.mul64_getHigh(a3, bi);
+		s = lo + C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t3 = s;
+		C = hi;
+		t4 = C;
+		t5 = 0;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = m * n2;
+		hi = Uint128.mul64_getHigh(m, n2);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = m * n3;
+		hi = Uint128.mul64_getHigh(m, n3);
+		s = t3 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		s = t4 + C;
+		t3 = s;
+		t4 = t5 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		// row 1
+		bi = b[1];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		s = t0 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = a2 * bi;
+		hi = Uint128.mul64_getHigh(a2, bi);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		lo = a3 * bi;
+		hi = Uint128.mul64_getHigh(a3, bi);
+		s = t3 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t3 = s;
+		C = hi;
+		s = t4 + C;
+		t5 = (s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0;
+		t4 = s;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = m * n2;
+		hi = Uint128.mul64_getHigh(m, n2);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = m * n3;
+		hi = Uint128.mul64_getHigh(m, n3);
+		s = t3 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		s = t4 + C;
+		t3 = s;
+		t4 = t5 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		// row 2
+		bi = b[2];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		s = t0 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = a2 * bi;
+		hi = Uint128.mul64_getHigh(a2, bi);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		lo = a3 * bi;
+		hi = Uint128.mul64_getHigh(a3, bi);
+		s = t3 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t3 = s;
+		C = hi;
+		s = t4 + C;
+		t5 = (s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0;
+		t4 = s;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = m * n2;
+		hi = Uint128.mul64_getHigh(m, n2);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = m * n3;
+		hi = Uint128.mul64_getHigh(m, n3);
+		s = t3 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		s = t4 + C;
+		t3 = s;
+		t4 = t5 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		// row 3
+		bi = b[3];
+		lo = a0 * bi;
+		hi = Uint128.mul64_getHigh(a0, bi);
+		s = t0 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = a1 * bi;
+		hi = Uint128.mul64_getHigh(a1, bi);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = a2 * bi;
+		hi = Uint128.mul64_getHigh(a2, bi);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		lo = a3 * bi;
+		hi = Uint128.mul64_getHigh(a3, bi);
+		s = t3 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t3 = s;
+		C = hi;
+		s = t4 + C;
+		t5 = (s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0;
+		t4 = s;
+		m = t0 * nInv;
+		hi = Uint128.mul64_getHigh(m, n0);
+		if (t0 != 0) hi++;
+		C = hi;
+		lo = m * n1;
+		hi = Uint128.mul64_getHigh(m, n1);
+		s = t1 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t0 = s;
+		C = hi;
+		lo = m * n2;
+		hi = Uint128.mul64_getHigh(m, n2);
+		s = t2 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t1 = s;
+		C = hi;
+		lo = m * n3;
+		hi = Uint128.mul64_getHigh(m, n3);
+		s = t3 + lo;
+		if (s+Long.MIN_VALUE < lo+Long.MIN_VALUE) hi++;
+		s += C;
+		if (s+Long.MIN_VALUE < C+Long.MIN_VALUE) hi++;
+		t2 = s;
+		C = hi;
+		s = t4 + C;
+		t3 = s;
+		t4 = t5 + ((s+Long.MIN_VALUE < C+Long.MIN_VALUE) ? 1 : 0);
+		if (t4 != 0 || (t3+Long.MIN_VALUE > n3+Long.MIN_VALUE) || (t3 == n3 && t2+Long.MIN_VALUE > n2+Long.MIN_VALUE) || (t3 == n3 && t2 == n2 && t1+Long.MIN_VALUE > n1+Long.MIN_VALUE) || (t3 == n3 && t2 == n2 && t1 == n1 && t0+Long.MIN_VALUE >= n0+Long.MIN_VALUE)) {
+			long d, borrow = 0, c;
+			d = t0 - n0;
+			c = (t0+Long.MIN_VALUE < n0+Long.MIN_VALUE) ? 1 : 0;
+			t0 = d;
+			borrow = c;
+			d = t1 - n1;
+			c = (t1+Long.MIN_VALUE < n1+Long.MIN_VALUE) ? 1 : 0;
+			if (d+Long.MIN_VALUE < borrow+Long.MIN_VALUE) c = 1;
+			t1 = d - borrow;
+			borrow = c;
+			d = t2 - n2;
+			c = (t2+Long.MIN_VALUE < n2+Long.MIN_VALUE) ? 1 : 0;
+			if (d+Long.MIN_VALUE < borrow+Long.MIN_VALUE) c = 1;
+			t2 = d - borrow;
+			borrow = c;
+			d = t3 - n3;
+			c = (t3+Long.MIN_VALUE < n3+Long.MIN_VALUE) ? 1 : 0;
+			if (d+Long.MIN_VALUE < borrow+Long.MIN_VALUE) c = 1;
+			t3 = d - borrow;
+		}
+		r[0] = t0;
+		r[1] = t1;
+		r[2] = t2;
+		r[3] = t3;
+	}
+
+	/**
+	 * Montgomery squaring r = a^2/R mod N.
+	 * @param a
+	 * @param r result, may be a
+	 */
+	public void square(long[] a, long[] r) {
+		mul(a, a, r);
+	}
+	
+	/**
+	 * Modular addition r = a+b mod N.
+	 * @param a
+	 * @param b
+	 * @param r result, may be a or b
+	 */
+	public void add(long[] a, long[] b, long[] r) {
+		long carry = 0;
+		for (int i=0; i<k; i++) {
+			final long ai = a[i];
+			long s = ai + b[i];
+			long c = (s+Long.MIN_VALUE < ai+Long.MIN_VALUE) ? 1 : 0;
+			s += carry;
+			if (s+Long.MIN_VALUE < carry+Long.MIN_VALUE) c = 1;
+			r[i] = s;
+			carry = c;
+		}
+		if (carry != 0 || !lessThanN(r)) {
+			subtractN(r);
+		}
+	}
+	
+	/**
+	 * Modular subtraction r = a-b mod N.
+	 * @param a
+	 * @param b
+	 * @param r result, may be a or b
+	 */
+	public void sub(long[] a, long[] b, long[] r) {
+		long borrow = 0;
+		for (int i=0; i<k; i++) {
+			final long ai = a[i];
+			final long bi = b[i];
+			long d = ai - bi;
+			long c = (ai+Long.MIN_VALUE < bi+Long.MIN_VALUE) ? 1 : 0;
+			if (d+Long.MIN_VALUE < borrow+Long.MIN_VALUE) c = 1;
+			d -= borrow;
+			r[i] = d;
+			borrow = c;
+		}
+		if (borrow != 0) {
+			// add N back; the final carry cancels the borrow
+			long carry = 0;
+			for (int i=0; i<k; i++) {
+				final long ri = r[i];
+				long s = ri + n[i];
+				long c = (s+Long.MIN_VALUE < ri+Long.MIN_VALUE) ? 1 : 0;
+				s += carry;
+				if (s+Long.MIN_VALUE < carry+Long.MIN_VALUE) c = 1;
+				r[i] = s;
+				carry = c;
+			}
+		}
+	}
+	
+	/**
+	 * @param x at least k limbs
+	 * @return true if the lowest k limbs of x are < N
+	 */
+	private boolean lessThanN(long[] x) {
+		for (int i=k-1; i>=0; i--) {
+			if (x[i] != n[i]) return x[i]+Long.MIN_VALUE < n[i]+Long.MIN_VALUE;
+		}
+		return false; // equal
+	}
+	
+	/**
+	 * x = x - N on the lowest k limbs; a borrow out of the top limb is dropped.
+	 * @param x
+	 */
+	private void subtractN(long[] x) {
+		long borrow = 0;
+		for (int i=0; i<k; i++) {
+			final long xi = x[i];
+			final long ni = n[i];
+			long d = xi - ni;
+			long c = (xi+Long.MIN_VALUE < ni+Long.MIN_VALUE) ? 1 : 0;
+			if (d+Long.MIN_VALUE < borrow+Long.MIN_VALUE) c = 1;
+			d -= borrow;
+			x[i] = d;
+			borrow = c;
+		}
+	}
+}
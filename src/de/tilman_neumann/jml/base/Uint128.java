@@ -13,6 +13,9 @@
  */
 package de.tilman_neumann.jml.base;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 
@@ -35,6 +38,9 @@ public class Uint128 {
 	
 	private static final boolean DEBUG = false;
 	
+	/** Math.multiplyHigh(long, long) on Java 9+, which is an intrinsic; null on Java 8 */
+	private static final MethodHandle MULTIPLY_HIGH = findMultiplyHigh();
+	
 	private long high, low;
 	
 	public Uint128(long high, long low) {
@@ -236,6 +242,55 @@ public class Uint128 {
 		return r_lo;
 	}
 
+	/**
+	 * Computes the high part of the product of two unsigned 64 bit integers.
+	 * Uses the signed Math.multiplyHigh() intrinsic via a constant method handle where available, otherwise 32-bit products.
+	 * 
+	 * @param a unsigned long
+	 * @param b unsigned long
+	 * @return the high 64 bits of the unsigned product a*b
+	 */
+	public static long mul64_getHigh(long a, long b) {
+		if (MULTIPLY_HIGH != null) {
+			try {
+				// correct the signed high product for operands with the top bit set
+				return (long) MULTIPLY_HIGH.invokeExact(a, b) + ((a>>63) & b) + ((b>>63) & a);
+			} catch (Throwable t) {
+				throw new IllegalStateException(t);
+			}
+		}
+		return mul64_getHigh32(a, b);
+	}
+	
+	/**
+	 * Computes the high part of the product of two unsigned 64 bit integers from 32-bit products.
+	 * 
+	 * @param a unsigned long
+	 * @param b unsigned long
+	 * @return the high 64 bits of the unsigned product a*b
+	 */
+	static long mul64_getHigh32(long a, long b) {
+		final long a_lo = a & 0xFFFFFFFFL;
+		final long a_hi = a >>> 32;
+		final long b_lo = b & 0xFFFFFFFFL;
+		final long b_hi = b >>> 32;
+		final long lo_lo = a_lo * b_lo;
+		final long hi_lo = a_hi * b_lo;
+		final long lo_hi = a_lo * b_hi;
+		final long hi_hi = a_hi * b_hi;
+		// lo_hi <= (2^32-1)^2, so the sum fits into 64 bits unsigned
+		final long cross = (lo_lo >>> 32) + (hi_lo & 0xFFFFFFFFL) + lo_hi;
+		return hi_hi + (hi_lo >>> 32) + (cross >>> 32);
+	}
+	
+	private static MethodHandle findMultiplyHigh() {
+		try {
+			return MethodHandles.publicLookup().findStatic(Math.class, "multiplyHigh", MethodType.methodType(long.class, long.class, long.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null; // Java 8
+		}
+	}
+
 	/**
 	 * Compute quotient and remainder of this / v.
 	 * The quotient will be correct only if it is <= 64 bit.
@@ -0,0 +1,243 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.factor.base.TuningProfile;
+import de.tilman_neumann.jml.factor.base.matrixSolver.MatrixSolver02_BlockLanczos;
+import de.tilman_neumann.jml.factor.siqs.SIQS;
+import de.tilman_neumann.jml.factor.siqs.poly.SIQSPolyGenerator;
+import de.tilman_neumann.jml.factor.siqs.powers.NoPowerFinder;
+import de.tilman_neumann.jml.factor.siqs.sieve.Sieve03gU;
+import de.tilman_neumann.jml.factor.siqs.tdiv.TDiv_QS_2Large_UBI;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Computes a TuningProfile for the current machine and stores it in the profile file,
+ * from which SIQS, PSIQS, FactorAlgorithm and CombinedFactorAlgorithm load it at startup.
+ *
+ * The tuning has three stages:
+ * 1. SIQS: For some bit sizes, Cmult, Mmult, maxQRestExponent and the sieve array size offset are optimized
+ *    by coordinate descent on a set of semiprimes.
+ * 2. Trial division in FactorAlgorithm.factor(): For some bit sizes, the best exponent e of the trial division limit 2^e
+ *    is determined on random composites; then a line e = base + (bits-45)*slope is fitted to the results.
+ * 3. CombinedFactorAlgorithm: For each pair of neighboring algorithms, the threshold is chosen that minimizes
+ *    the total time in a window of bit sizes around the current threshold.
+ *
+ * Usage: java de.tilman_neumann.jml.factor.AutoTuner [siqs] [tdiv] [combined]
+ * Without arguments all stages are run. Stages that are not run keep the values of the current profile.
+ *
+ * @author agent
+ */
+public class AutoTuner {
+	private static final Logger LOG = Logger.getLogger(AutoTuner.class);
+
+	// SIQS tuning
+	private static final int[] SIQS_BITS = new int[] {100, 130, 160, 190, 220};
+	private static final int SIQS_N_COUNT = 10;
+	private static final float[] CMULT_VALUES = new float[] {0.28F, 0.30F, 0.32F, 0.34F, 0.36F};
+	private static final float[] MMULT_VALUES = new float[] {0.33F, 0.35F, 0.37F, 0.39F, 0.41F};
+	private static final float[] MAX_QREST_EXPONENT_DELTAS = new float[] {-0.02F, -0.01F, 0, 0.01F, 0.02F};
+	private static final int[] SIEVE_ARRAY_SIZE_OFFSETS = new int[] {2048, 4096, 6144, 8192, 12288};
+
+	// trial division tuning
+	private static final int[] TDIV_BITS = new int[] {70, 90, 110, 130, 150};
+	private static final int TDIV_N_COUNT = 200;
+	private static final int TDIV_EXPONENT_RANGE = 3;
+
+	// CombinedFactorAlgorithm tuning
+	private static final int THRESHOLD_WINDOW = 4;
+	/** the biggest bit size supported by the lower algorithm of each threshold */
+	private static final int[] MAX_LOWER_BITS = new int[] {31, 62, 62, 64, 400};
+	private static final int[] THRESHOLD_N_COUNTS = new int[] {2000, 1000, 1000, 300, 20};
+
+	private TuningProfile profile;
+
+	public AutoTuner(TuningProfile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Tune the SIQS parameters for all bit sizes in SIQS_BITS.
+	 */
+	public void tuneSIQS() {
+		for (int bits : SIQS_BITS) {
+			BigInteger[] testNumbers = TestsetGenerator.generate(SIQS_N_COUNT, bits, TestNumberNature.MODERATE_SEMIPRIMES);
+			float Cmult = TuningProfile.DEFAULT_CMULT;
+			float Mmult = TuningProfile.DEFAULT_MMULT;
+			float maxQRestExponent0 = TuningProfile.getDefaultMaxQRestExponent(bits);
+			float maxQRestExponent = maxQRestExponent0;
+			int sieveArraySizeOffset = TuningProfile.DEFAULT_SIEVE_ARRAY_SIZE_OFFSET;
+			// coordinate descent, one pass
+			long bestDuration = Long.MAX_VALUE;
+			for (float value : CMULT_VALUES) {
+				long duration = timeSIQS(testNumbers, new TuningProfile.SIQSParams(value, Mmult, maxQRestExponent, sieveArraySizeOffset));
+				if (duration < bestDuration) { bestDuration = duration; Cmult = value; }
+			}
+			bestDuration = Long.MAX_VALUE;
+			for (float value : MMULT_VALUES) {
+				long duration = timeSIQS(testNumbers, new TuningProfile.SIQSParams(Cmult, value, maxQRestExponent, sieveArraySizeOffset));
+				if (duration < bestDuration) { bestDuration = duration; Mmult = value; }
+			}
+			bestDuration = Long.MAX_VALUE;
+			for (float delta : MAX_QREST_EXPONENT_DELTAS) {
+				float value = maxQRestExponent0 + delta;
+				long duration = timeSIQS(testNumbers, new TuningProfile.SIQSParams(Cmult, Mmult, value, sieveArraySizeOffset));
+				if (duration < bestDuration) { bestDuration = duration; maxQRestExponent = value; }
+			}
+			bestDuration = Long.MAX_VALUE;
+			for (int value : SIEVE_ARRAY_SIZE_OFFSETS) {
+				long duration = timeSIQS(testNumbers, new TuningProfile.SIQSParams(Cmult, Mmult, maxQRestExponent, value));
+				if (duration < bestDuration) { bestDuration = duration; sieveArraySizeOffset = value; }
+			}
+			TuningProfile.SIQSParams params = new TuningProfile.SIQSParams(Cmult, Mmult, maxQRestExponent, sieveArraySizeOffset);
+			profile.setSIQSParams(bits, params);
+			LOG.info("SIQS, " + bits + " bits: best parameters " + params + " took " + bestDuration + "ms");
+		}
+	}
+
+	private long timeSIQS(BigInteger[] testNumbers, TuningProfile.SIQSParams params) {
+		// a profile with a single entry applies the same parameters to all N
+		TuningProfile candidate = new TuningProfile();
+		candidate.setSIQSParams(testNumbers[0].bitLength(), params);
+		SIQS siqs = new SIQS(null, null, null, null, new NoPowerFinder(), new SIQSPolyGenerator(), new Sieve03gU(), new TDiv_QS_2Large_UBI(), 10, new MatrixSolver02_BlockLanczos(), false);
+		siqs.setTuningProfile(candidate);
+		long t0 = System.currentTimeMillis();
+		for (BigInteger N : testNumbers) {
+			siqs.findSingleFactor(N);
+		}
+		return System.currentTimeMillis() - t0;
+	}
+
+	/**
+	 * Tune the trial division limit exponent of FactorAlgorithm.factor().
+	 */
+	public void tuneTdiv() {
+		int n = TDIV_BITS.length;
+		double[] bestExponents = new double[n];
+		for (int i=0; i<n; i++) {
+			int bits = TDIV_BITS[i];
+			BigInteger[] testNumbers = TestsetGenerator.generate(TDIV_N_COUNT, bits, TestNumberNature.RANDOM_COMPOSITES);
+			int e0 = (int) Math.round(profile.getTdivExponent(bits));
+			long bestDuration = Long.MAX_VALUE;
+			int bestExponent = e0;
+			for (int e = Math.max(1, e0-TDIV_EXPONENT_RANGE); e <= Math.min(20, e0+TDIV_EXPONENT_RANGE); e++) {
+				FactorAlgorithm algorithm = new CombinedFactorAlgorithm(1, 1<<e, true, false);
+				long t0 = System.currentTimeMillis();
+				for (BigInteger N : testNumbers) {
+					algorithm.factor(N);
+				}
+				long duration = System.currentTimeMillis() - t0;
+				if (duration < bestDuration) {
+					bestDuration = duration;
+					bestExponent = e;
+				}
+			}
+			bestExponents[i] = bestExponent;
+			LOG.info("tdiv, " + bits + " bits: best limit 2^" + bestExponent + " took " + bestDuration + "ms");
+		}
+
+		// least squares fit of e = base + (bits-45)*slope
+		double sx = 0, sy = 0, sxx = 0, sxy = 0;
+		for (int i=0; i<n; i++) {
+			double x = TDIV_BITS[i] - TuningProfile.TDIV_EXPONENT_BITS_OFFSET;
+			double y = bestExponents[i];
+			sx += x; sy += y; sxx += x*x; sxy += x*y;
+		}
+		double slope = (n*sxy - sx*sy) / (n*sxx - sx*sx);
+		double base = (sy - slope*sx) / n;
+		profile.setTdivExponent(base, slope);
+		LOG.info("tdiv: fitted exponent e = " + base + " + (bits-" + TuningProfile.TDIV_EXPONENT_BITS_OFFSET + ")*" + slope);
+	}
+
+	/**
+	 * Tune the bit size thresholds of CombinedFactorAlgorithm.
+	 */
+	public void tuneCombinedThresholds() {
+		// SIQS instances inside pick up the current profile
+		TuningProfile.set(profile);
+		FactorAlgorithm[] algorithms = new CombinedFactorAlgorithm(1, null, true, false).getBandAlgorithms();
+		int[] thresholds = profile.getCombinedThresholds();
+		for (int i=0; i<thresholds.length; i++) {
+			FactorAlgorithm lower = algorithms[i];
+			FactorAlgorithm upper = algorithms[i+1];
+			int minBits = Math.max(thresholds[i] - THRESHOLD_WINDOW, i>0 ? thresholds[i-1] : 4);
+			int maxBits = Math.min(thresholds[i] + THRESHOLD_WINDOW, MAX_LOWER_BITS[i]);
+			if (minBits > maxBits) continue;
+			int count = maxBits - minBits + 1;
+			long[] lowerDurations = new long[count];
+			long[] upperDurations = new long[count];
+			for (int bits = minBits; bits <= maxBits; bits++) {
+				BigInteger[] testNumbers = TestsetGenerator.generate(THRESHOLD_N_COUNTS[i], bits, TestNumberNature.MODERATE_SEMIPRIMES);
+				lowerDurations[bits-minBits] = time(lower, testNumbers);
+				upperDurations[bits-minBits] = time(upper, testNumbers);
+			}
+			// choose threshold t in [minBits, maxBits+1] such that using lower for bits<t and upper for bits>=t is fastest
+			long bestTotal = Long.MAX_VALUE;
+			int bestThreshold = thresholds[i];
+			for (int t = minBits; t <= maxBits+1; t++) {
+				long total = 0;
+				for (int bits = minBits; bits <= maxBits; bits++) {
+					total += (bits < t) ? lowerDurations[bits-minBits] : upperDurations[bits-minBits];
+				}
+				if (total < bestTotal) {
+					bestTotal = total;
+					bestThreshold = t;
+				}
+			}
+			thresholds[i] = bestThreshold;
+			LOG.info("combined: threshold " + lower.getName() + " / " + upper.getName() + " = " + bestThreshold + " bits");
+		}
+		profile.setCombinedThresholds(thresholds);
+	}
+
+	private long time(FactorAlgorithm algorithm, BigInteger[] testNumbers) {
+		long t0 = System.nanoTime();
+		for (BigInteger N : testNumbers) {
+			algorithm.findSingleFactor(N);
+		}
+		return (System.nanoTime() - t0) / 1000; // microseconds
+	}
+
+	/**
+	 * Run the auto tuner and store the resulting profile.
+	 * @param args optional list of stages to run: siqs, tdiv, combined
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		boolean all = args.length == 0;
+		boolean tuneSIQS = all || Arrays.asList(args).contains("siqs");
+		boolean tuneTdiv = all || Arrays.asList(args).contains("tdiv");
+		boolean tuneCombined = all || Arrays.asList(args).contains("combined");
+
+		AutoTuner tuner = new AutoTuner(TuningProfile.get());
+		if (tuneSIQS) tuner.tuneSIQS();
+		if (tuneTdiv) tuner.tuneTdiv();
+		if (tuneCombined) tuner.tuneCombinedThresholds();
+
+		File file = TuningProfile.getProfileFile();
+		try {
+			tuner.profile.store(file);
+			LOG.info("Stored tuning profile " + tuner.profile + " in " + file);
+		} catch (IOException ioe) {
+			LOG.error("Failed to store tuning profile in " + file + ": " + ioe, ioe);
+		}
+	}
+}
@@ -101,6 +101,7 @@ public class BatchFactorizer {
 				LOG.error("An error occurred during the factorization of N = " + N + ": " + e, e);
 			}
 		}
+		factorizer.shutdown();
 		LOG.info("Batch run complete, exit.");
 	}
 }
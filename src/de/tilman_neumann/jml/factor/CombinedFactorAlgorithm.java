@@ -23,10 +23,14 @@ import java.util.StringTokenizer;
 
 import org.apache.log4j.Logger;
 
+import de.tilman_neumann.jml.factor.base.TuningProfile;
 import de.tilman_neumann.jml.factor.base.matrixSolver.MatrixSolver01_Gauss;
 import de.tilman_neumann.jml.factor.base.matrixSolver.MatrixSolver02_BlockLanczos;
+import de.tilman_neumann.jml.factor.ecm.EcmCurveScheduler;
+import de.tilman_neumann.jml.factor.ecm.EcmMultiLimb;
+import de.tilman_neumann.jml.factor.ecm.TinyEcm64;
 import de.tilman_neumann.jml.factor.hart.Hart_TDiv_Race;
-import de.tilman_neumann.jml.factor.pollardRho.PollardRhoBrentMontgomery64;
+import de.tilman_neumann.jml.factor.pollardRho.PollardRhoBrentMontgomery128;
 import de.tilman_neumann.jml.factor.pollardRho.PollardRhoBrentMontgomeryR64Mul63;
 import de.tilman_neumann.jml.factor.psiqs.PSIQS;
 import de.tilman_neumann.jml.factor.psiqs.PSIQS_U;
@@ -56,14 +60,43 @@ public class CombinedFactorAlgorithm extends FactorAlgorithm {
 	private TDiv31Inverse tDiv31 = new TDiv31Inverse();
 	private Hart_TDiv_Race hart = new Hart_TDiv_Race();
 	private PollardRhoBrentMontgomeryR64Mul63 pollardRhoR64Mul63 = new PollardRhoBrentMontgomeryR64Mul63();
-	private PollardRhoBrentMontgomery64 pollardRho64 = new PollardRhoBrentMontgomery64();
+	// for moderate semiprimes ECM is faster than Pollard-Rho from about 50 bit on, and faster than SIQS up to 64 bit
+	private TinyEcm64 tinyEcm = new TinyEcm64();
+	
+	/**
+	 * If the system property "jml.combined.rhoBeforeSiqs" is true, then a bounded Pollard-Rho run precedes siqs_smallArgs.
+	 * That pays off if the inputs are likely to have factors of 20-25 bits that were not removed by trial division.
+	 */
+	private static final boolean RHO_BEFORE_SIQS = Boolean.getBoolean("jml.combined.rhoBeforeSiqs");
+	private PollardRhoBrentMontgomery128 pollardRho128 = new PollardRhoBrentMontgomery128();
 	
 	// SIQS tuned for small N
-	private SIQS siqs_smallArgs = new SIQS(0.32F, 0.37F, null, 0.16F, new PowerOfSmallPrimesFinder(), new SIQSPolyGenerator(), new Sieve03gU(), new TDiv_QS_1Large_UBI(), 10, new MatrixSolver01_Gauss(), false);
+	private SIQS siqs_smallArgs = new SIQS(null, null, null, 0.16F, new PowerOfSmallPrimesFinder(), new SIQSPolyGenerator(), new Sieve03gU(), new TDiv_QS_1Large_UBI(), 10, new MatrixSolver01_Gauss(), false);
 
 	// The SIQS chosen for big arguments depends on constructor parameters
 	private FactorAlgorithm siqs_bigArgs;
 	
+	/**
+	 * If the system property "jml.combined.ecmBeforeSiqs" is true, then a limited ECM run precedes siqs_bigArgs.
+	 * That pays off if the inputs are likely to have factors of up to ~35 digits, e.g. if N is not a hard semiprime,
+	 * or if N is too big for SIQS anyway. For hard semiprimes the ECM time is wasted.
+	 */
+	private static final boolean ECM_BEFORE_SIQS = Boolean.getBoolean("jml.combined.ecmBeforeSiqs");
+	// With more than one thread the curves run in parallel.
+	// The worker threads of the scheduler are started on first use and stopped by shutdown().
+	private EcmMultiLimb ecm = new EcmMultiLimb();
+	private EcmCurveScheduler ecmScheduler;
+	
+	/**
+	 * ECM effort before SIQS: For N with at least ECM_MIN_BITS[i] bits, run ECM_CURVES[i] curves with B1 = ECM_B1[i].
+	 */
+	private static final int[] ECM_MIN_BITS = {150, 180, 220, 260, 300};
+	private static final int[] ECM_B1 = {2000, 11000, 50000, 250000, 1000000};
+	private static final int[] ECM_CURVES = {8, 12, 16, 20, 24};
+
+	/** bit size thresholds between the algorithms above, from the tuning profile */
+	private int[] thresholds;
+	
 	/**
 	 * Simple constructor, computing the amount of trial division automatically 
 	 * and using PSIQS with sun.misc.Unsafe features.
@@ -94,19 +127,26 @@ public class CombinedFactorAlgorithm extends FactorAlgorithm {
 	public CombinedFactorAlgorithm(int numberOfThreads, Integer tdivLimit, boolean permitUnsafeUsage, boolean profile) {
 		super(tdivLimit);
 		
+		if (ECM_BEFORE_SIQS && numberOfThreads > 1) {
+			// deterministic mode gives the same factors as the sequential ECM
+			ecmScheduler = new EcmCurveScheduler(ecm, numberOfThreads, true, 42);
+		}
+		
 		if (numberOfThreads==1) {
 			// Avoid multi-thread overhead if the requested number of threads is 1
 			Sieve sieve = permitUnsafeUsage ? new Sieve03gU() : new Sieve03g();
-			siqs_bigArgs = new SIQS(0.32F, 0.37F, null, null, new NoPowerFinder(), new SIQSPolyGenerator(), sieve, new TDiv_QS_2Large_UBI(), 10, new MatrixSolver02_BlockLanczos(), false);
+			siqs_bigArgs = new SIQS(null, null, null, null, new NoPowerFinder(), new SIQSPolyGenerator(), sieve, new TDiv_QS_2Large_UBI(), 10, new MatrixSolver02_BlockLanczos(), false);
 		} else {
 			if (permitUnsafeUsage) {
-				siqs_bigArgs = new PSIQS_U(0.32F, 0.37F, null, null, numberOfThreads, new NoPowerFinder(), new MatrixSolver02_BlockLanczos(), profile);
+				siqs_bigArgs = new PSIQS_U(null, null, null, null, numberOfThreads, new NoPowerFinder(), new MatrixSolver02_BlockLanczos(), profile);
 			} else {
-				siqs_bigArgs = new PSIQS(0.32F, 0.37F, null, null, numberOfThreads, new NoPowerFinder(), new MatrixSolver02_BlockLanczos(), profile);
+				siqs_bigArgs = new PSIQS(null, null, null, null, numberOfThreads, new NoPowerFinder(), new MatrixSolver02_BlockLanczos(), profile);
 			}
 		}
 	
 		// XXX: Other options that perform well: PowerOfSmallPrimesFinder, SingleBlockHybridSieve(U).
+		
+		thresholds = TuningProfile.get().getCombinedThresholds();
 	}
 
 	@Override
@@ -117,14 +157,55 @@ public class CombinedFactorAlgorithm extends FactorAlgorithm {
 	@Override
 	public BigInteger findSingleFactor(BigInteger N) {
 		int NBits = N.bitLength();
-		if (NBits<25) return tDiv31.findSingleFactor(N);
-		if (NBits<50) return hart.findSingleFactor(N);
-		if (NBits<57) return pollardRhoR64Mul63.findSingleFactor(N);
-		if (NBits<63) return pollardRho64.findSingleFactor(N);
-		if (NBits<97) return siqs_smallArgs.findSingleFactor(N);
+		if (NBits<thresholds[0]) return tDiv31.findSingleFactor(N);
+		if (NBits<thresholds[1]) return hart.findSingleFactor(N);
+		if (NBits<thresholds[2]) return pollardRhoR64Mul63.findSingleFactor(N);
+		if (NBits<thresholds[3]) return tinyEcm.findSingleFactor(N);
+		if (NBits<thresholds[4]) {
+			if (RHO_BEFORE_SIQS && NBits<=128) {
+				// about 5% of the SIQS time, enough to find most factors of 20-24 bits
+				BigInteger factor = pollardRho128.findSingleFactor(N, 1 << (NBits/12 + 5));
+				if (factor.compareTo(I_1) > 0) return factor;
+			}
+			return siqs_smallArgs.findSingleFactor(N);
+		}
+		if (ECM_BEFORE_SIQS) {
+			BigInteger factor = findFactorWithEcm(N, NBits);
+			if (factor != null) return factor;
+		}
 		return siqs_bigArgs.findSingleFactor(N);
 	}
 	
+	/**
+	 * Run a limited number of ECM curves with a B1 chosen from the size of N.
+	 * @param N
+	 * @param NBits
+	 * @return factor, or null if N is too small for ECM or no factor was found
+	 */
+	private BigInteger findFactorWithEcm(BigInteger N, int NBits) {
+		for (int i=ECM_MIN_BITS.length-1; i>=0; i--) {
+			if (NBits >= ECM_MIN_BITS[i]) {
+				if (ecmScheduler != null) return ecmScheduler.findSingleFactor(N, ECM_B1[i], ECM_CURVES[i]);
+				return ecm.findSingleFactor(N, ECM_B1[i], ECM_CURVES[i]);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Stop the worker threads of the parallel ECM. The algorithm can not be used anymore afterwards.
+	 */
+	public void shutdown() {
+		if (ecmScheduler != null) ecmScheduler.shutdown();
+	}
+	
+	/**
+	 * @return the algorithms used for the bit size bands separated by the thresholds, from small to big N
+	 */
+	FactorAlgorithm[] getBandAlgorithms() {
+		return new FactorAlgorithm[] {tDiv31, hart, pollardRhoR64Mul63, tinyEcm, siqs_smallArgs, siqs_bigArgs};
+	}
+	
 	/**
 	 * Run with command-line arguments or console input (if no command-line arguments are given).
 	 * Usage for executable jar file:
@@ -238,6 +319,7 @@ public class CombinedFactorAlgorithm extends FactorAlgorithm {
     	long t0 = System.currentTimeMillis();
     	CombinedFactorAlgorithm factorizer = new CombinedFactorAlgorithm(numberOfThreads, true);
     	SortedMultiset<BigInteger> result = factorizer.factor(N);
+    	factorizer.shutdown();
 		long duration = System.currentTimeMillis()-t0;
 		String durationStr = TimeUtil.timeStr(duration);
 		if (result.totalCount()==1) {
@@ -17,10 +17,15 @@ import static de.tilman_neumann.jml.base.BigIntConstants.*;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 
+import de.tilman_neumann.jml.factor.base.TuningProfile;
 import de.tilman_neumann.jml.factor.tdiv.TDiv;
+import de.tilman_neumann.jml.factor.tdiv.TDiv63InverseBatch;
+import de.tilman_neumann.jml.primes.certificates.PrimalityCertificate;
+import de.tilman_neumann.jml.primes.certificates.PrimalityProver;
 import de.tilman_neumann.jml.primes.probable.BPSWTest;
 import de.tilman_neumann.util.SortedMultiset;
 import de.tilman_neumann.util.SortedMultiset_BottomUp;
@@ -43,8 +48,16 @@ abstract public class FactorAlgorithm {
 	/** the number of primes needed to factor any int <= 2^31 - 1 using trial division */
 	protected static final int NUM_PRIMES_FOR_31_BIT_TDIV = 4793;
 
+	/** the maximum trial division limit; also used as the factor limit of the batch trial division */
+	private static final int MAX_TDIV_LIMIT = 1<<20;
+
+	/** the prover for factor(N, true), created on first use */
+	private static PrimalityProver prover = null;
+	
 	private BPSWTest bpsw = new BPSWTest();
 	private TDiv tdiv = new TDiv();
+	/** batch trial division for factor(long[]), created on first use */
+	private TDiv63InverseBatch tdivBatch = null;
 	
 	protected Integer tdivLimit;
 	
@@ -68,6 +81,22 @@ abstract public class FactorAlgorithm {
 	 * @return The prime factorization of N
 	 */
 	public SortedMultiset<BigInteger> factor(BigInteger N) {
+		return factor(N, false);
+	}
+
+	/**
+	 * Decomposes the argument N into prime factors, optionally proving the primality of the factors.
+	 * 
+	 * With proveFactors=false, factors > 64 bit are only probable primes.
+	 * With proveFactors=true, the primality of these factors is proven by a PrimalityProver;
+	 * their certificates can be obtained from PrimalityProver.getCachedCertificate(BigInteger) afterwards.
+	 * 
+	 * @param N Number to factor.
+	 * @param proveFactors if true then all prime factors are proven to be prime
+	 * @return The prime factorization of N
+	 * @throws IllegalStateException if proveFactors is true and a probable prime factor could not be proven, or a composite factor could not be factored
+	 */
+	public SortedMultiset<BigInteger> factor(BigInteger N, boolean proveFactors) {
 		SortedMultiset<BigInteger> primeFactors = new SortedMultiset_BottomUp<BigInteger>();
 		// first get rid of case |N|<=1:
 		if (N.abs().compareTo(I_1)<=0) {
@@ -104,9 +133,9 @@ abstract public class FactorAlgorithm {
 				// use "dictated" limit
 				actualTdivLimit = tdivLimit.intValue();
 			} else {
-				// adjust tdivLimit=2^e by experimental results
-				final double e = 10 + (Nbits-45)*0.07407407407; // constant 0.07.. = 10/135
-				actualTdivLimit = (int) Math.min(1<<20, Math.pow(2, e)); // upper bound 2^20
+				// adjust tdivLimit=2^e by experimental results, or by the tuning profile of this machine
+				final double e = TuningProfile.get().getTdivExponent(Nbits);
+				actualTdivLimit = (int) Math.min(MAX_TDIV_LIMIT, Math.pow(2, e)); // upper bound 2^20
 			}
 
 			N = tdiv.findSmallOddFactors(N, actualTdivLimit, primeFactors);
@@ -125,8 +154,17 @@ abstract public class FactorAlgorithm {
 			N = untestedFactors.remove(untestedFactors.size()-1);
 			if (bpsw.isProbablePrime(N)) { // TODO exploit tdiv done so far
 				// N is probable prime. In exceptional cases this prediction may be wrong and N composite
-				// -> then we would falsely predict N to be prime. BPSW is known to be exact for N <= 64 bit.
+				// -> then we would falsely predict N to be prime, unless proveFactors is set. BPSW is known to be exact for N <= 64 bit.
 				//LOG.debug(N + " is probable prime.");
+				if (!proveFactors || N.bitLength() <= 64) {
+					primeFactors.add(N);
+					continue;
+				}
+				PrimalityCertificate certificate = getProver().prove(N);
+				if (certificate == null) {
+					// Searching a factor of a probable prime would practically never terminate
+					throw new IllegalStateException("Could not prove the primality of probable prime " + N);
+				}
 				primeFactors.add(N);
 				continue;
 			}
@@ -135,6 +173,8 @@ abstract public class FactorAlgorithm {
 				// found factor
 				untestedFactors.add(factor1);
 				untestedFactors.add(N.divide(factor1));
+			} else if (proveFactors) {
+				throw new IllegalStateException("Factor algorithm " + getName() + " failed to find a factor of composite " + N);
 			} else {
 				// findSingleFactor() failed to find a factor of the composite N
 				if (DEBUG) LOG.error("Factor algorithm " + getName() + " failed to find a factor of composite " + N);
@@ -146,6 +186,115 @@ abstract public class FactorAlgorithm {
 		return primeFactors;
 	}
 	
+	private static synchronized PrimalityProver getProver() {
+		if (prover == null) {
+			prover = new PrimalityProver(Runtime.getRuntime().availableProcessors());
+		}
+		return prover;
+	}
+	
+	/**
+	 * Factor many numbers at once.
+	 * 
+	 * Small factors of all numbers are removed by a batched trial division first,
+	 * the remaining cofactors are factored by factor(BigInteger).
+	 * This is considerably faster than factoring the numbers one by one if many of them have small factors.
+	 * 
+	 * @param numbers with |N| < 2^63
+	 * @return the prime factorizations of the numbers, in the same order
+	 */
+	public List<SortedMultiset<BigInteger>> factor(long[] numbers) {
+		final int count = numbers.length;
+		List<SortedMultiset<BigInteger>> result = new ArrayList<SortedMultiset<BigInteger>>(count);
+		long[] rests = new long[count];
+		int maxBits = 0;
+		for (int i=0; i<count; i++) {
+			long N = numbers[i];
+			if (N>=-1 && N<=1) {
+				// trivial cases are handled by factor(BigInteger)
+				result.add(factor(BigInteger.valueOf(N)));
+				rests[i] = 1;
+				continue;
+			}
+			SortedMultiset<BigInteger> primeFactors = new SortedMultiset_BottomUp<BigInteger>();
+			result.add(primeFactors);
+			// make N positive:
+			if (N<0) {
+				primeFactors.add(I_MINUS_1);
+				N = -N;
+			}
+			// Remove multiples of 2:
+			int lsb = Long.numberOfTrailingZeros(N);
+			if (lsb > 0) {
+				primeFactors.add(I_2, lsb);
+				N >>>= lsb; // unsigned shift for N = -2^63
+			}
+			rests[i] = N;
+			maxBits = Math.max(maxBits, 64-Long.numberOfLeadingZeros(N));
+		}
+		
+		// trial division limit as in factor(BigInteger), but applied to all bit sizes
+		int actualTdivLimit;
+		if (tdivLimit != null) {
+			actualTdivLimit = Math.min(MAX_TDIV_LIMIT, tdivLimit.intValue());
+		} else {
+			final double e = TuningProfile.get().getTdivExponent(maxBits);
+			actualTdivLimit = (int) Math.min(MAX_TDIV_LIMIT, Math.pow(2, e));
+		}
+		if (tdivBatch == null) tdivBatch = new TDiv63InverseBatch(MAX_TDIV_LIMIT);
+		tdivBatch.setTestLimit(actualTdivLimit);
+		
+		// The batch trial division returns the smallest factor of each number. Numbers that had a factor are tested again,
+		// until no number has a factor <= actualTdivLimit anymore.
+		long[] batch = new long[count];
+		int[] batchIndex = new int[count];
+		int[] factors = new int[count];
+		int batchCount = 0;
+		for (int i=0; i<count; i++) {
+			if (rests[i] > 1) {
+				batch[batchCount] = rests[i];
+				batchIndex[batchCount++] = i;
+			}
+		}
+		while (batchCount > 0) {
+			tdivBatch.findSingleFactors(batch, batchCount, factors);
+			int nextBatchCount = 0;
+			for (int j=0; j<batchCount; j++) {
+				final int p = factors[j];
+				if (p > 1) {
+					final int i = batchIndex[j];
+					long N = batch[j];
+					int exp = 0;
+					do {
+						N /= p;
+						exp++;
+					} while (N%p == 0);
+					result.get(i).add(BigInteger.valueOf(p), exp);
+					rests[i] = N;
+					if (N > 1) {
+						batch[nextBatchCount] = N;
+						batchIndex[nextBatchCount++] = i;
+					}
+				}
+			}
+			batchCount = nextBatchCount;
+		}
+		
+		// factor the rests
+		final long tdivLimitSquare = actualTdivLimit * (long) actualTdivLimit;
+		for (int i=0; i<count; i++) {
+			final long N = rests[i];
+			if (N <= 1) continue;
+			if (N < tdivLimitSquare) {
+				// all primes below sqrt(N) have been tested, so N is prime
+				result.get(i).add(BigInteger.valueOf(N));
+			} else {
+				result.get(i).addAll(factor(BigInteger.valueOf(N)));
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Find a single factor of the given N, which is composite and odd.
 	 * @param N
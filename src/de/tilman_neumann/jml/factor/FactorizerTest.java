@@ -138,6 +138,7 @@ public class FactorizerTest {
 //			new TinyEcm64(),
 //			new TinyEcm64_MontSqr(),
 //			new TinyEcm64_MontInline(),
+//			new EcmMultiLimb(),
 //			new EllipticCurveMethod(),
 
 			// SIQS:
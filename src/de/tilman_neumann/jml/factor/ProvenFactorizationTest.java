@@ -0,0 +1,85 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor;
+
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.primes.certificates.PrimalityCertificate;
+import de.tilman_neumann.jml.primes.certificates.PrimalityProver;
+import de.tilman_neumann.util.ConfigUtil;
+import de.tilman_neumann.util.SortedMultiset;
+
+/**
+ * Test of proven factorizations with prime factors of 512 bit and more.
+ *
+ * @author agent
+ */
+public class ProvenFactorizationTest {
+	private static final Logger LOG = Logger.getLogger(ProvenFactorizationTest.class);
+
+	/**
+	 * A 512 bit prime for which no ECPP step exists with the discriminants of class number <= 8 and |D| <= 10000,
+	 * so that the prover needs to retry with more discriminants.
+	 */
+	private static final BigInteger HARD_PRIME = new BigInteger("7265031149125857014295275369080094332749453454365168056705792959975204038938565430331610633092512949609191006167348064794745741857295555328118229618399247");
+
+	private static void testProvenFactorization(FactorAlgorithm factorizer, BigInteger N, BigInteger... expectedFactors) {
+		long t0 = System.currentTimeMillis();
+		SortedMultiset<BigInteger> factors = factorizer.factor(N, true);
+		long duration = System.currentTimeMillis() - t0;
+
+		BigInteger product = BigInteger.ONE;
+		for (Map.Entry<BigInteger, Integer> entry : factors.entrySet()) {
+			final BigInteger factor = entry.getKey();
+			product = product.multiply(factor.pow(entry.getValue()));
+			if (factor.bitLength() > 64) {
+				PrimalityCertificate certificate = PrimalityProver.getCachedCertificate(factor);
+				assertNotNull("No certificate for " + factor, certificate);
+				assertTrue("Invalid certificate for " + factor, certificate.verify());
+			}
+		}
+		assertEquals(N, product);
+		for (BigInteger expectedFactor : expectedFactors) {
+			assertTrue(factors.containsKey(expectedFactor));
+		}
+		LOG.info("Proved factorization " + factors + " of " + N.bitLength() + " bit N in " + duration + " ms");
+	}
+
+	/**
+	 * Stand-alone test.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		// the 40 bit factors of the 552 bit test numbers can only be found by ECM
+		System.setProperty("jml.combined.ecmBeforeSiqs", "true");
+		ConfigUtil.initProject();
+		Random rng = new Random(512);
+		FactorAlgorithm factorizer = new CombinedFactorAlgorithm(1, false);
+
+		testProvenFactorization(factorizer, HARD_PRIME.multiply(BigInteger.valueOf(9 * 1000003)), HARD_PRIME);
+		for (int i=0; i<3; i++) {
+			final BigInteger p512 = BigInteger.probablePrime(512, rng);
+			final BigInteger q40 = BigInteger.probablePrime(40, rng);
+			testProvenFactorization(factorizer, p512.multiply(q40), p512, q40);
+		}
+		final BigInteger p600 = BigInteger.probablePrime(600, rng);
+		testProvenFactorization(factorizer, p600.multiply(BigInteger.valueOf(65537)), p600);
+	}
+}
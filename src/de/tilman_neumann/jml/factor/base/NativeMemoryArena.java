@@ -0,0 +1,155 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.base;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An arena of native memory blocks owned by a single sieve (and thus by a single thread).
+ * 
+ * Allocations from an arena are not synchronized. Only acquiring and closing an arena touch a global pool,
+ * which happens once per N and sieve, not once per allocation. A closed arena keeps its native blocks,
+ * so that the sieve for the next N (possibly running in a new thread) can reuse them without calling the allocator again.
+ * Blocks that were not used during a lease are freed when the arena is closed, so the retained memory follows the current N.
+ * 
+ * Block addresses are aligned to cache lines; blocks of at least HUGE_PAGE_SIZE bytes are aligned to HUGE_PAGE_SIZE,
+ * so that they can be backed by transparent huge pages.
+ * 
+ * @author agent
+ */
+public class NativeMemoryArena {
+	private static final Logger LOG = Logger.getLogger(NativeMemoryArena.class);
+	private static final boolean DEBUG = false;
+	
+	/** alignment of all blocks */
+	public static final int CACHE_LINE_SIZE = 64;
+	/** alignment of big blocks */
+	public static final int HUGE_PAGE_SIZE = 1<<21;
+	
+	/** maximum number of idle arenas kept in the pool */
+	private static final int MAX_IDLE_ARENAS = Runtime.getRuntime().availableProcessors();
+	
+	/** arenas that are not in use by any sieve */
+	private static final ArrayDeque<NativeMemoryArena> IDLE_ARENAS = new ArrayDeque<NativeMemoryArena>();
+	
+	private static class Block {
+		/** address returned by the allocator */
+		long rawAddress;
+		/** aligned address given to the user */
+		long address;
+		/** usable size starting at address */
+		long capacity;
+		/** true if the block has been handed out in the current lease */
+		boolean inUse;
+	}
+	
+	private final ArrayList<Block> blocks = new ArrayList<Block>();
+	private boolean leased;
+	
+	private NativeMemoryArena() {
+		// use acquire()
+	}
+	
+	/**
+	 * Get an arena from the pool, or a new one if the pool is empty.
+	 * @return arena for the exclusive use of the caller
+	 */
+	public static NativeMemoryArena acquire() {
+		NativeMemoryArena arena;
+		synchronized (IDLE_ARENAS) {
+			arena = IDLE_ARENAS.pollFirst();
+		}
+		if (arena == null) arena = new NativeMemoryArena();
+		arena.leased = true;
+		return arena;
+	}
+	
+	/**
+	 * Allocate a native memory block, reusing a block from a previous lease if one is big enough.
+	 * The content of the block is undefined.
+	 * 
+	 * @param size desired size in bytes
+	 * @return aligned address of the block
+	 */
+	public long allocate(long size) {
+		if (!leased) throw new IllegalStateException("Attempt to allocate from a closed arena");
+		// best fit among the free blocks; there are only a few blocks per arena
+		Block best = null;
+		for (Block block : blocks) {
+			if (!block.inUse && block.capacity >= size && (best == null || block.capacity < best.capacity)) {
+				best = block;
+			}
+		}
+		if (best == null) {
+			int alignment = size >= HUGE_PAGE_SIZE ? HUGE_PAGE_SIZE : CACHE_LINE_SIZE;
+			best = new Block();
+			best.rawAddress = UnsafeUtil.allocateMemory(size + alignment - 1);
+			best.address = (best.rawAddress + alignment - 1) & -alignment;
+			best.capacity = size;
+			blocks.add(best);
+			if (DEBUG) LOG.debug("Allocated new block of " + size + " bytes with alignment " + alignment);
+		} else {
+			if (DEBUG) LOG.debug("Reuse block of " + best.capacity + " bytes for " + size + " bytes");
+		}
+		best.inUse = true;
+		return best.address;
+	}
+	
+	/**
+	 * Release all blocks of this arena and return it to the pool. The caller must not use the arena nor any of its addresses afterwards.
+	 */
+	public void close() {
+		if (!leased) return;
+		leased = false;
+		// free blocks not needed in this lease, mark the others as free
+		for (int i=blocks.size()-1; i>=0; i--) {
+			Block block = blocks.get(i);
+			if (block.inUse) {
+				block.inUse = false;
+			} else {
+				UnsafeUtil.freeMemory(block.rawAddress);
+				blocks.remove(i);
+			}
+		}
+		synchronized (IDLE_ARENAS) {
+			if (IDLE_ARENAS.size() < MAX_IDLE_ARENAS) {
+				IDLE_ARENAS.addFirst(this); // LIFO: the most recently used arena has the best chance to be in cache
+				return;
+			}
+		}
+		freeAll();
+	}
+	
+	private void freeAll() {
+		for (Block block : blocks) {
+			UnsafeUtil.freeMemory(block.rawAddress);
+		}
+		blocks.clear();
+	}
+	
+	/**
+	 * Free the native memory of all idle arenas.
+	 */
+	public static void freeIdleArenas() {
+		synchronized (IDLE_ARENAS) {
+			for (NativeMemoryArena arena : IDLE_ARENAS) {
+				arena.freeAll();
+			}
+			IDLE_ARENAS.clear();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.base;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Process-wide tables of square roots as needed by the Hart and Lehman algorithms.
+ * 
+ * Each table is computed the first time it is requested and then shared by all instances of all algorithms
+ * that request a table with the same parameters, so constructing such an algorithm does not cost time or memory anymore.
+ * The returned arrays are shared and must not be modified.
+ * 
+ * If the system property "jml.tablesDir" names a directory, then tables are loaded from files in that directory
+ * via a read-only memory mapping (see TableFiles), which is much faster than computing them for big tables; missing files are
+ * computed once and stored there, so that later processes can use them.
+ * 
+ * @author agent
+ */
+public class SqrtTables {
+	private static final Logger LOG = Logger.getLogger(SqrtTables.class);
+
+	/** file format: table length followed by the doubles, see TableFiles */
+	private static final int FILE_VERSION = 1;
+	
+	private static final Map<String, double[]> TABLES = new HashMap<String, double[]>();
+	
+	private SqrtTables() {
+		// static class
+	}
+	
+	/**
+	 * Get the table of sqrt(i*kMult) for 0 <= i < size.
+	 * @param kMult
+	 * @param size
+	 * @return shared table
+	 */
+	public static double[] getSqrtKTable(int kMult, int size) {
+		return getSqrtKTable(kMult, size, 0);
+	}
+	
+	/**
+	 * Get the table of sqrt(i*kMult) for 0 <= i < size, with zeros at the positions where i*kMult is a multiple of skipModulus.
+	 * This is used by Hart algorithms that test two multipliers at once and skip the k that are already covered by the other one.
+	 * 
+	 * @param kMult
+	 * @param size
+	 * @param skipModulus 0 if no entries shall be skipped
+	 * @return shared table
+	 */
+	public static synchronized double[] getSqrtKTable(int kMult, int size, int skipModulus) {
+		String name = "sqrtK_" + kMult + "_" + size + (skipModulus != 0 ? "_skip" + skipModulus : "");
+		double[] table = TABLES.get(name);
+		if (table == null) {
+			table = load(name, size);
+			if (table == null) {
+				table = new double[size];
+				for (int i=1; i<size; i++) {
+					final long k = (long)i * kMult;
+					if (skipModulus == 0 || k % skipModulus != 0) {
+						table[i] = Math.sqrt(k);
+					}
+				}
+				store(name, table);
+			}
+			TABLES.put(name, table);
+		}
+		return table;
+	}
+	
+	/**
+	 * Get the table of sqrt(i) for 0 <= i < size.
+	 * @param size
+	 * @return shared table
+	 */
+	public static double[] getSqrtTable(int size) {
+		return getSqrtKTable(1, size, 0);
+	}
+	
+	/**
+	 * Get the table of 1/sqrt(i) for 0 < i < size; entry 0 is 0.
+	 * @param size
+	 * @return shared table
+	 */
+	public static synchronized double[] getInverseSqrtTable(int size) {
+		String name = "sqrtInv_" + size;
+		double[] table = TABLES.get(name);
+		if (table == null) {
+			table = load(name, size);
+			if (table == null) {
+				double[] sqrt = getSqrtTable(size);
+				table = new double[size];
+				for (int i=1; i<size; i++) {
+					table[i] = 1.0/sqrt[i];
+				}
+				store(name, table);
+			}
+			TABLES.put(name, table);
+		}
+		return table;
+	}
+	
+	/**
+	 * Load a table from the tables directory.
+	 * @param name
+	 * @param size expected table length
+	 * @return table, or null if there is no tables directory, no such file, or the file is not valid
+	 */
+	private static double[] load(String name, int size) {
+		ByteBuffer buffer = TableFiles.map(name, FILE_VERSION);
+		if (buffer == null) return null;
+		if (buffer.remaining() != 4 + 8L*size || buffer.getInt() != size) {
+			LOG.warn("Table file for " + name + " does not have the expected size " + size + " -> ignore it");
+			return null;
+		}
+		double[] table = new double[size];
+		buffer.asDoubleBuffer().get(table);
+		return table;
+	}
+	
+	/**
+	 * Store a table in the tables directory, if there is one.
+	 * @param name
+	 * @param table
+	 */
+	private static void store(String name, double[] table) {
+		if (TableFiles.getTableFile(name) == null) return;
+		ByteBuffer buffer = TableFiles.allocate(FILE_VERSION, 4 + 8*table.length);
+		buffer.putInt(table.length);
+		buffer.asDoubleBuffer().put(table);
+		TableFiles.store(name, buffer);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.base;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Access to files of precomputed tables in the directory given by the system property "jml.tablesDir".
+ * 
+ * A table file consists of a header (magic number and format version) followed by the table-specific payload,
+ * all numbers in little endian byte order. Files are mapped read-only, so that concurrent processes share
+ * the same pages of the operating system's page cache, and they are written under a temporary name first
+ * and then moved atomically, so that no process ever sees a partial file.
+ * 
+ * @author agent
+ */
+public class TableFiles {
+	private static final Logger LOG = Logger.getLogger(TableFiles.class);
+
+	/** the system property that may specify the directory of precomputed tables */
+	public static final String TABLES_DIR_PROPERTY = "jml.tablesDir";
+	
+	private static final int FILE_MAGIC = 0x4A4D4C54; // "JMLT"
+	
+	/** number of header bytes preceding the payload */
+	public static final int HEADER_BYTES = 8;
+	
+	private TableFiles() {
+		// static class
+	}
+	
+	/**
+	 * @param name table name
+	 * @return the file of the table with the given name, or null if no tables directory has been specified
+	 */
+	public static File getTableFile(String name) {
+		String dirName = System.getProperty(TABLES_DIR_PROPERTY);
+		if (dirName == null) return null;
+		return new File(dirName, name + ".bin");
+	}
+	
+	/**
+	 * Map the payload of a table file read-only.
+	 * @param name table name
+	 * @param version expected format version
+	 * @return little endian buffer positioned at the start of the payload, or null if there is no tables directory,
+	 *         no such file, or the file is not valid
+	 */
+	public static ByteBuffer map(String name, int version) {
+		File file = getTableFile(name);
+		if (file == null || !file.exists()) return null;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+				LOG.warn("Table file " + file + " has an invalid size of " + channel.size() + " bytes -> ignore it");
+				return null;
+			}
+			// the mapping stays valid after the channel has been closed
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.getInt() != FILE_MAGIC || buffer.getInt() != version) {
+				LOG.warn("Table file " + file + " has an invalid header -> ignore it");
+				return null;
+			}
+			return buffer;
+		} catch (IOException ioe) {
+			LOG.warn("Failed to map table file " + file + ": " + ioe);
+			return null;
+		}
+	}
+	
+	/**
+	 * Allocate a little endian buffer for a table file and write the header.
+	 * @param version format version
+	 * @param payloadBytes
+	 * @return buffer positioned at the start of the payload
+	 */
+	public static ByteBuffer allocate(int version, int payloadBytes) {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(FILE_MAGIC).putInt(version);
+		return buffer;
+	}
+	
+	/**
+	 * Store a table file in the tables directory, if there is one.
+	 * @param name table name
+	 * @param buffer buffer obtained from allocate() and filled completely
+	 * @return true if the file has been written
+	 */
+	public static boolean store(String name, ByteBuffer buffer) {
+		File file = getTableFile(name);
+		if (file == null) return false;
+		File tmpFile = null;
+		try {
+			File dir = file.getParentFile();
+			if (!dir.exists() && !dir.mkdirs()) {
+				LOG.warn("Could not create tables directory " + dir);
+				return false;
+			}
+			tmpFile = File.createTempFile(name, ".tmp", dir);
+			buffer.rewind();
+			try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw"); FileChannel channel = raf.getChannel()) {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LOG.info("Stored table " + name + " in " + file);
+			return true;
+		} catch (IOException ioe) {
+			LOG.warn("Failed to store table file " + file + ": " + ioe);
+			if (tmpFile != null) tmpFile.delete();
+			return false;
+		}
+	}
+}
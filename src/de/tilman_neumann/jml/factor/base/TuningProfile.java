@@ -0,0 +1,351 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.base;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Machine-dependent parameters of the factor algorithms, i.e. SIQS/PSIQS parameters per bit size,
+ * the trial division limit in FactorAlgorithm.factor() and the bit size thresholds of CombinedFactorAlgorithm.
+ *
+ * The default values are the experimental results found on the author's machine.
+ * A profile tuned for another machine can be created with AutoTuner and is stored in the file
+ * conf/tuning_&lt;hostname&gt;.properties; the system property "jml.tuningProfile" may point to another file.
+ * The profile is loaded the first time get() is called.
+ *
+ * @author agent
+ */
+public class TuningProfile {
+	private static final Logger LOG = Logger.getLogger(TuningProfile.class);
+
+	/** default multiplier for the prime base size */
+	public static final float DEFAULT_CMULT = 0.32F;
+	/** default multiplier for the sieve array size */
+	public static final float DEFAULT_MMULT = 0.37F;
+	/** default constant term of the sieve array size; 6144 was the best experimental result for small N */
+	public static final int DEFAULT_SIEVE_ARRAY_SIZE_OFFSET = 6144;
+	/** default constant term of the trial division limit exponent */
+	public static final double DEFAULT_TDIV_EXPONENT_BASE = 10;
+	/** default slope of the trial division limit exponent; 0.07.. = 10/135 */
+	public static final double DEFAULT_TDIV_EXPONENT_SLOPE = 0.07407407407;
+	/** the bit size at which the trial division limit exponent has its constant term */
+	public static final int TDIV_EXPONENT_BITS_OFFSET = 45;
+	/**
+	 * Default bit size thresholds of CombinedFactorAlgorithm: tDiv31 / Hart / PollardRhoR64Mul63 / TinyEcm64 / small SIQS / big SIQS.
+	 * 
+	 * Measured on the same set of 5000 moderate semiprimes per bit size for Hart, PollardRhoR64Mul63 and TinyEcm64,
+	 * and 1000 per bit size for TinyEcm64 vs. small SIQS:
+	 * Hart is fastest up to 47 bit (316 vs. 337 ms (TinyEcm64) and 433 ms (PollardRhoR64Mul63) at 47 bit).
+	 * TinyEcm64 is fastest from 48 bit on (154 vs. 177 ms (Hart) and 224 ms (PollardRhoR64Mul63) at 48 bit,
+	 * 339 vs. 671 ms (PollardRhoR64Mul63) at 56 bit, 404 vs. 1057 ms (small SIQS) at 64 bit).
+	 * 
+	 * PollardRhoR64Mul63 was not fastest at any bit size from 40 to 56 bit, so its band is intentionally empty
+	 * (threshold 2 == threshold 1). It is kept in the chain so that tuned profiles can still give it a band.
+	 * 65 is the biggest threshold supported by TinyEcm64.
+	 */
+	private static final int[] DEFAULT_COMBINED_THRESHOLDS = new int[] {25, 48, 48, 65, 97};
+	
+	/**
+	 * Version of the profile file format:
+	 * 1 = combined thresholds tDiv31 / Hart / PollardRhoR64Mul63 / PollardRho64 / small SIQS / big SIQS (files without version)
+	 * 2 = combined thresholds tDiv31 / Hart / PollardRhoR64Mul63 / TinyEcm64 / small SIQS / big SIQS
+	 */
+	private static final int FORMAT_VERSION = 2;
+
+	/** the system property that may specify the profile file */
+	private static final String PROFILE_FILE_PROPERTY = "jml.tuningProfile";
+
+	private static TuningProfile THE_PROFILE = null;
+
+	/**
+	 * SIQS parameters for one bit size.
+	 */
+	public static class SIQSParams {
+		public final float Cmult;
+		public final float Mmult;
+		public final float maxQRestExponent;
+		public final int sieveArraySizeOffset;
+
+		public SIQSParams(float Cmult, float Mmult, float maxQRestExponent, int sieveArraySizeOffset) {
+			this.Cmult = Cmult;
+			this.Mmult = Mmult;
+			this.maxQRestExponent = maxQRestExponent;
+			this.sieveArraySizeOffset = sieveArraySizeOffset;
+		}
+
+		@Override
+		public String toString() {
+			return Cmult + "," + Mmult + "," + maxQRestExponent + "," + sieveArraySizeOffset;
+		}
+	}
+
+	/** tuned SIQS parameters, sorted by bit size; empty if SIQS was not tuned */
+	private TreeMap<Integer, SIQSParams> siqsParams = new TreeMap<Integer, SIQSParams>();
+	private double tdivExponentBase = DEFAULT_TDIV_EXPONENT_BASE;
+	private double tdivExponentSlope = DEFAULT_TDIV_EXPONENT_SLOPE;
+	private int[] combinedThresholds = DEFAULT_COMBINED_THRESHOLDS.clone();
+
+	/**
+	 * Creates a profile with default values.
+	 */
+	public TuningProfile() {
+		// default values only
+	}
+
+	/**
+	 * @return the profile of this machine, loaded from the profile file if that exists, or the default profile otherwise
+	 */
+	public static synchronized TuningProfile get() {
+		if (THE_PROFILE == null) {
+			File file = getProfileFile();
+			THE_PROFILE = new TuningProfile();
+			if (file.exists()) {
+				try {
+					THE_PROFILE.load(file);
+					LOG.info("Loaded tuning profile " + file);
+				} catch (IOException | IllegalArgumentException e) {
+					LOG.error("Failed to load tuning profile " + file + ": " + e + ". Using default parameters.", e);
+					THE_PROFILE = new TuningProfile();
+				}
+			}
+		}
+		return THE_PROFILE;
+	}
+
+	/**
+	 * Replace the profile returned by get(). Algorithms constructed afterwards will use the new profile.
+	 * @param profile
+	 */
+	public static synchronized void set(TuningProfile profile) {
+		THE_PROFILE = profile;
+	}
+
+	/**
+	 * @return the file from which the profile of this machine is loaded and to which it is stored
+	 */
+	public static File getProfileFile() {
+		String fileName = System.getProperty(PROFILE_FILE_PROPERTY);
+		if (fileName != null) return new File(fileName);
+		File confDir = new File(System.getProperty("user.dir"), "conf");
+		return new File(confDir, "tuning_" + getHostName() + ".properties");
+	}
+
+	private static String getHostName() {
+		String hostName = System.getenv("HOSTNAME"); // Unix
+		if (hostName == null) hostName = System.getenv("COMPUTERNAME"); // Windows
+		if (hostName == null) {
+			try {
+				hostName = InetAddress.getLocalHost().getHostName();
+			} catch (IOException e) {
+				hostName = "localhost";
+			}
+		}
+		// keep the file name portable
+		return hostName.replaceAll("[^A-Za-z0-9_.-]", "_");
+	}
+
+	/**
+	 * Set the tuned SIQS parameters for the given bit size.
+	 * @param bits
+	 * @param params
+	 */
+	public void setSIQSParams(int bits, SIQSParams params) {
+		siqsParams.put(bits, params);
+	}
+
+	/**
+	 * Get the tuned SIQS parameters for N with the given number of bits.
+	 * Between tuned bit sizes the parameters are interpolated linearly, outside the tuned range the nearest tuned parameters are returned.
+	 * @param bits
+	 * @return tuned SIQS parameters, or null if SIQS has not been tuned
+	 */
+	public SIQSParams getSIQSParams(int bits) {
+		if (siqsParams.isEmpty()) return null;
+		Map.Entry<Integer, SIQSParams> lower = siqsParams.floorEntry(bits);
+		Map.Entry<Integer, SIQSParams> upper = siqsParams.ceilingEntry(bits);
+		if (lower == null) return upper.getValue();
+		if (upper == null || lower.getKey().intValue() == upper.getKey().intValue()) return lower.getValue();
+		SIQSParams p0 = lower.getValue();
+		SIQSParams p1 = upper.getValue();
+		float t = (bits - lower.getKey()) / (float) (upper.getKey() - lower.getKey());
+		return new SIQSParams(
+				p0.Cmult + t*(p1.Cmult - p0.Cmult),
+				p0.Mmult + t*(p1.Mmult - p0.Mmult),
+				p0.maxQRestExponent + t*(p1.maxQRestExponent - p0.maxQRestExponent),
+				Math.round(p0.sieveArraySizeOffset + t*(p1.sieveArraySizeOffset - p0.sieveArraySizeOffset)));
+	}
+
+	/**
+	 * The untuned maxQRestExponent as a function of the bit size of N.
+	 * @param bits
+	 * @return maxQRestExponent
+	 */
+	public static float getDefaultMaxQRestExponent(int bits) {
+		return (bits<=150) ? 0.16F : 0.16F + (bits-150.0F)/5250;
+	}
+
+	/**
+	 * Set the trial division limit exponent e = base + (bits-45)*slope.
+	 * @param base
+	 * @param slope
+	 */
+	public void setTdivExponent(double base, double slope) {
+		this.tdivExponentBase = base;
+		this.tdivExponentSlope = slope;
+	}
+
+	/**
+	 * @param bits
+	 * @return the exponent e of the trial division limit 2^e used in FactorAlgorithm.factor() for N with the given number of bits
+	 */
+	public double getTdivExponent(int bits) {
+		return tdivExponentBase + (bits - TDIV_EXPONENT_BITS_OFFSET) * tdivExponentSlope;
+	}
+
+	/**
+	 * Set the bit size thresholds of CombinedFactorAlgorithm.
+	 * @param thresholds 5 increasing values
+	 */
+	public void setCombinedThresholds(int[] thresholds) {
+		if (thresholds.length != DEFAULT_COMBINED_THRESHOLDS.length) {
+			throw new IllegalArgumentException("Expected " + DEFAULT_COMBINED_THRESHOLDS.length + " thresholds, but got " + thresholds.length);
+		}
+		for (int i=1; i<thresholds.length; i++) {
+			if (thresholds[i] < thresholds[i-1]) throw new IllegalArgumentException("Thresholds must be increasing, but got " + Arrays.toString(thresholds));
+		}
+		this.combinedThresholds = thresholds.clone();
+	}
+
+	/**
+	 * @return the bit size thresholds of CombinedFactorAlgorithm: tDiv31 / Hart / PollardRhoR64Mul63 / TinyEcm64 / small SIQS / big SIQS
+	 */
+	public int[] getCombinedThresholds() {
+		return combinedThresholds.clone();
+	}
+
+	/**
+	 * Load a profile from a properties file. Missing entries keep their current values.
+	 * @param file
+	 * @throws IOException
+	 * @throws IllegalArgumentException if an entry can not be parsed
+	 */
+	public void load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		try {
+			String versionStr = properties.getProperty("version");
+			int version = (versionStr != null) ? Integer.parseInt(versionStr.trim()) : 1;
+			if (version < 1 || version > FORMAT_VERSION) {
+				throw new IllegalArgumentException("Unsupported tuning profile version " + version + " in " + file);
+			}
+			for (String key : properties.stringPropertyNames()) {
+				String value = properties.getProperty(key).trim();
+				if (key.equals("version")) {
+					continue;
+				} else if (key.startsWith("siqs.")) {
+					int bits = Integer.parseInt(key.substring(5));
+					String[] tokens = value.split(",");
+					if (tokens.length != 4) throw new IllegalArgumentException("Illegal SIQS parameters " + key + "=" + value);
+					siqsParams.put(bits, new SIQSParams(Float.parseFloat(tokens[0].trim()), Float.parseFloat(tokens[1].trim()), Float.parseFloat(tokens[2].trim()), Integer.parseInt(tokens[3].trim())));
+				} else if (key.equals("tdiv.exponentBase")) {
+					tdivExponentBase = Double.parseDouble(value);
+				} else if (key.equals("tdiv.exponentSlope")) {
+					tdivExponentSlope = Double.parseDouble(value);
+				} else if (key.equals("combined.thresholds")) {
+					String[] tokens = value.split(",");
+					int[] thresholds = new int[tokens.length];
+					for (int i=0; i<tokens.length; i++) {
+						thresholds[i] = Integer.parseInt(tokens[i].trim());
+					}
+					if (version < 2) {
+						thresholds = migrateCombinedThresholds(thresholds);
+						LOG.info("Migrated combined thresholds of version " + version + " tuning profile " + file + " to " + Arrays.toString(thresholds));
+					}
+					setCombinedThresholds(thresholds);
+				} else {
+					LOG.warn("Ignoring unknown tuning profile entry " + key + "=" + value);
+				}
+			}
+		} catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("Illegal number in tuning profile " + file + ": " + nfe.getMessage(), nfe);
+		}
+	}
+
+	/**
+	 * Migrate combined thresholds of a version 1 profile, where the fourth band was PollardRho64.
+	 * The thresholds around that band have not been tuned for TinyEcm64, so they are reset to their defaults,
+	 * limited by the tuned thresholds that are still valid.
+	 * @param thresholds version 1 thresholds
+	 * @return version 2 thresholds
+	 */
+	private static int[] migrateCombinedThresholds(int[] thresholds) {
+		if (thresholds.length != DEFAULT_COMBINED_THRESHOLDS.length) return thresholds; // let setCombinedThresholds() complain
+		int[] migrated = thresholds.clone();
+		migrated[2] = Math.min(Math.max(DEFAULT_COMBINED_THRESHOLDS[2], migrated[1]), migrated[4]);
+		migrated[3] = Math.min(Math.max(DEFAULT_COMBINED_THRESHOLDS[3], migrated[2]), migrated[4]);
+		return migrated;
+	}
+
+	/**
+	 * Store this profile in a properties file.
+	 * @param file
+	 * @throws IOException
+	 */
+	public void store(File file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("version", String.valueOf(FORMAT_VERSION));
+		for (Map.Entry<Integer, SIQSParams> entry : siqsParams.entrySet()) {
+			properties.setProperty("siqs." + entry.getKey(), entry.getValue().toString());
+		}
+		properties.setProperty("tdiv.exponentBase", String.valueOf(tdivExponentBase));
+		properties.setProperty("tdiv.exponentSlope", String.valueOf(tdivExponentSlope));
+		StringBuilder thresholds = new StringBuilder();
+		for (int i=0; i<combinedThresholds.length; i++) {
+			if (i>0) thresholds.append(",");
+			thresholds.append(combinedThresholds[i]);
+		}
+		properties.setProperty("combined.thresholds", thresholds.toString());
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.exists()) dir.mkdirs();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "java-math-library tuning profile; siqs.<bits> = Cmult,Mmult,maxQRestExponent,sieveArraySizeOffset");
+		} finally {
+			out.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "siqs=" + siqsParams + ", tdivExponent=" + tdivExponentBase + "+(bits-" + TDIV_EXPONENT_BITS_OFFSET + ")*" + tdivExponentSlope + ", combinedThresholds=" + Arrays.toString(combinedThresholds);
+	}
+}
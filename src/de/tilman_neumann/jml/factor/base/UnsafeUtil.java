@@ -45,6 +45,8 @@ public class UnsafeUtil {
 		// register shutdown hook that checks release of all memory on normal shutdown
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 		    public void run() {
+		    	// memory retained for reuse by idle arenas is not a leak
+		    	NativeMemoryArena.freeIdleArenas();
 				if(TOTAL_ALLOCATED == 0) {
 					LOG.info("All native memory has been released.");
 				} else {
@@ -78,6 +80,7 @@ public class UnsafeUtil {
 	
 	/**
 	 * Allocate a native memory block.
+	 * Sieves should allocate from a NativeMemoryArena instead, which calls this method only when it needs to grow.
 	 * @param size desired size
 	 * @return address
 	 */
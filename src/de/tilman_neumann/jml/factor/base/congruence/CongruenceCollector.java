@@ -263,6 +263,13 @@ public class CongruenceCollector {
 		return smoothCongruences.size();
 	}
 
+	/**
+	 * @return number of perfect smooth congruences found so far, i.e. those that were not assembled from partials.
+	 */
+	public int getPerfectSmoothCount() {
+		return perfectSmoothCount;
+	}
+
 	/**
 	 * @return smooth congruences found so far.
 	 */
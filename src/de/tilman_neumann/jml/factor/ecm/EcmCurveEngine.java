@@ -0,0 +1,45 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.ecm;
+
+import java.math.BigInteger;
+
+/**
+ * An ECM implementation that can run single curves, so that curves can be distributed by an EcmCurveScheduler.
+ * Instances hold per-N workspace and are used by one thread at a time.
+ * 
+ * @author agent
+ */
+public interface EcmCurveEngine {
+	
+	/**
+	 * @return a new engine of the same kind and configuration, for another worker thread
+	 */
+	EcmCurveEngine newInstance();
+	
+	/**
+	 * Prepare for curves on N with stage 1 bound B1.
+	 * @param N odd composite
+	 * @param B1
+	 * @throws IllegalArgumentException if the engine does not support N or B1
+	 */
+	void initialize(BigInteger N, int B1);
+	
+	/**
+	 * Run one curve on the N given in initialize().
+	 * @param sigma curve parameter, 7 <= sigma < 2^31
+	 * @return a proper factor of N, or null if this curve did not find one
+	 */
+	BigInteger testCurve(long sigma);
+}
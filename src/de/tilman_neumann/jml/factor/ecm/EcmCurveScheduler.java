@@ -0,0 +1,236 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.ecm;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Runs the curves of an ECM search in parallel on a work-stealing pool.
+ * 
+ * Each curve i gets its own parameter sigma(seed, i), independent of the thread that runs it.
+ * As soon as a curve finds a factor, curves that have not started yet are skipped; running curves are completed.
+ * 
+ * In deterministic mode the result is the factor found by the curve with the smallest index, so it does not depend
+ * on the scheduling, and it is the same as when all curves are run sequentially. For that, a factor found by curve i
+ * only cancels curves with index > i.
+ * 
+ * @author agent
+ */
+public class EcmCurveScheduler {
+	private static final Logger LOG = Logger.getLogger(EcmCurveScheduler.class);
+	private static final boolean DEBUG = false;
+
+	/** The state of one search. */
+	private static class SearchState {
+		final BigInteger N;
+		final int B1;
+		final int curveCount;
+		/** index of the first curve that found a factor, or curveCount if none */
+		volatile int bestIndex;
+		BigInteger bestFactor;
+		
+		SearchState(BigInteger N, int B1, int curveCount) {
+			this.N = N;
+			this.B1 = B1;
+			this.curveCount = curveCount;
+			this.bestIndex = curveCount;
+		}
+		
+		synchronized void offer(int curveIndex, BigInteger factor) {
+			if (curveIndex < bestIndex) {
+				bestIndex = curveIndex;
+				bestFactor = factor;
+			}
+		}
+		
+		synchronized BigInteger getFactor() {
+			return bestFactor;
+		}
+	}
+
+	/** An engine of a worker thread, and the parameters it has been initialized for. */
+	private static class WorkerEngine {
+		final EcmCurveEngine engine;
+		BigInteger N;
+		int B1;
+		
+		WorkerEngine(EcmCurveEngine engine) {
+			this.engine = engine;
+		}
+	}
+	
+	/** Fork/join task for a range of curves; the pool balances the ranges by work stealing. */
+	private class CurveRange extends RecursiveAction {
+		private static final long serialVersionUID = -1510587440521347305L;
+		
+		private final SearchState state;
+		private final int from, to;
+		
+		CurveRange(SearchState state, int from, int to) {
+			this.state = state;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				runCurve(state, from);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new CurveRange(state, from, middle), new CurveRange(state, middle, to));
+		}
+	}
+	
+	/** the worker pool, created on first use */
+	private ForkJoinPool pool;
+	private boolean isShutdown = false;
+	private final int numberOfThreads;
+	private final boolean deterministic;
+	private final long seed;
+	private final ThreadLocal<WorkerEngine> workerEngines;
+	
+	/**
+	 * Full constructor.
+	 * @param prototype engine from which the engines of the worker threads are created
+	 * @param numberOfThreads
+	 * @param deterministic if true, the result does not depend on the scheduling
+	 * @param seed the seed for the curve parameters
+	 */
+	public EcmCurveScheduler(final EcmCurveEngine prototype, int numberOfThreads, boolean deterministic, long seed) {
+		this.numberOfThreads = numberOfThreads;
+		this.deterministic = deterministic;
+		this.seed = seed;
+		this.workerEngines = new ThreadLocal<WorkerEngine>() {
+			@Override
+			protected WorkerEngine initialValue() {
+				return new WorkerEngine(prototype.newInstance());
+			}
+		};
+	}
+	
+	/**
+	 * @return name including the parameters
+	 */
+	public String getName() {
+		return "EcmCurveScheduler(" + numberOfThreads + " threads" + (deterministic ? ", deterministic" : "") + ")";
+	}
+	
+	/**
+	 * The curve parameter of curve curveIndex, computed by the SplitMix64 mixing function of seed and curveIndex.
+	 * @param seed
+	 * @param curveIndex
+	 * @return sigma with 7 <= sigma < 2^31
+	 */
+	public static long sigma(long seed, int curveIndex) {
+		long z = seed + (curveIndex + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return 7 + ((z >>> 33) % ((1L<<31) - 7));
+	}
+	
+	/**
+	 * Run up to curveCount curves in parallel.
+	 * @param N odd composite
+	 * @param B1 stage 1 bound
+	 * @param curveCount maximum number of curves
+	 * @return a proper factor of N, or null if no curve found one
+	 */
+	public BigInteger findSingleFactor(BigInteger N, int B1, int curveCount) {
+		if (curveCount < 1) return null;
+		SearchState state = new SearchState(N, B1, curveCount);
+		getPool().invoke(new CurveRange(state, 0, curveCount));
+		BigInteger factor = state.getFactor();
+		if (DEBUG) LOG.debug("N=" + N + ", B1=" + B1 + ": found factor " + factor + " with curve " + state.bestIndex);
+		return factor;
+	}
+	
+	private void runCurve(SearchState state, int curveIndex) {
+		// skip curves that can not change the result anymore
+		int bestIndex = state.bestIndex;
+		if (deterministic ? curveIndex > bestIndex : bestIndex < state.curveCount) return;
+		
+		WorkerEngine worker = workerEngines.get();
+		if (worker.N != state.N || worker.B1 != state.B1) {
+			worker.engine.initialize(state.N, state.B1);
+			worker.N = state.N;
+			worker.B1 = state.B1;
+		}
+		BigInteger factor = worker.engine.testCurve(sigma(seed, curveIndex));
+		if (factor != null) state.offer(curveIndex, factor);
+	}
+	
+	private synchronized ForkJoinPool getPool() {
+		if (isShutdown) throw new IllegalStateException("EcmCurveScheduler has been shut down");
+		if (pool == null) {
+			pool = new ForkJoinPool(numberOfThreads); // worker threads are daemons
+		}
+		return pool;
+	}
+	
+	/**
+	 * Stop the worker threads. The scheduler can not be used anymore afterwards.
+	 */
+	public synchronized void shutdown() {
+		isShutdown = true;
+		if (pool != null) pool.shutdown();
+	}
+	
+	/**
+	 * Compare sequential ECM with the parallel scheduler, in deterministic and non-deterministic mode.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		int threads = ConfigUtil.NUMBER_OF_PROCESSORS;
+		Random rng = new Random(13);
+		
+		EcmMultiLimb sequential = new EcmMultiLimb();
+		EcmCurveScheduler deterministic = new EcmCurveScheduler(new EcmMultiLimb(), threads, true, 42);
+		EcmCurveScheduler fastest = new EcmCurveScheduler(new EcmMultiLimb(), threads, false, 42);
+		for (int i=0; i<6; i++) {
+			// 20-digit factor and a 150 bit cofactor
+			BigInteger N = BigInteger.probablePrime(66, rng).multiply(BigInteger.probablePrime(150, rng));
+			long t0 = System.currentTimeMillis();
+			BigInteger f0 = sequential.findSingleFactor(N, 11000, 200);
+			long t1 = System.currentTimeMillis();
+			BigInteger f1 = deterministic.findSingleFactor(N, 11000, 200);
+			long t2 = System.currentTimeMillis();
+			BigInteger f2 = fastest.findSingleFactor(N, 11000, 200);
+			long t3 = System.currentTimeMillis();
+			LOG.info("N=" + N + ": sequential found " + f0 + " in " + (t1-t0) + "ms, " + deterministic.getName() + " found " + f1 + " in " + (t2-t1) + "ms, "
+					 + fastest.getName() + " found " + f2 + " in " + (t3-t2) + "ms");
+			if (f0 == null ? f1 != null : !f0.equals(f1)) LOG.error("deterministic mode gave a different result than sequential ECM!");
+		}
+		
+		// TinyEcm64 curves
+		EcmCurveScheduler tiny = new EcmCurveScheduler(new TinyEcm64(), threads, true, 42);
+		for (int i=0; i<6; i++) {
+			BigInteger N = BigInteger.probablePrime(25, rng).multiply(BigInteger.probablePrime(35, rng));
+			LOG.info("N=" + N + ": " + tiny.getName() + " with TinyEcm64 found " + tiny.findSingleFactor(N, 205, 40));
+		}
+		deterministic.shutdown();
+		fastest.shutdown();
+		tiny.shutdown();
+	}
+}
@@ -0,0 +1,450 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.ecm;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.base.MontgomeryMultiLimb;
+import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.util.ConfigUtil;
+import de.tilman_neumann.util.TimeUtil;
+
+/**
+ * ECM for arbitrary odd N, using Montgomery curves By^2 = x^3 + Ax^2 + x in X:Z coordinates
+ * over fixed-width multi-limb Montgomery arithmetic (2-4 limbs for 65-256 bit N; more limbs work as well).
+ * 
+ * Curves are created with Suyama's parametrization, which gives group orders divisible by 12.
+ * Stage 1 multiplies the starting point by all prime powers <= B1 using the Montgomery ladder;
+ * the primes are multiplied into 63-bit chunks first, so that there are few ladders of moderate length.
+ * Stage 2 is the standard continuation with baby steps j*Q, 0<j<D/2, gcd(j, D)=1 and giant steps m*D*Q,
+ * covering all primes q = m*D +- j in (B1, B2]. Each (giant, baby) pair costs two multiplications,
+ * because X_g*Z_b - X_b*Z_g = (X_g-X_b)(Z_g+Z_b) - X_g*Z_g + X_b*Z_b and the last two products are precomputed.
+ * 
+ * This class is not thread-safe; concurrent callers need separate instances. EcmCurveScheduler runs the curves in parallel.
+ * 
+ * @author agent
+ */
+public class EcmMultiLimb extends FactorAlgorithm implements EcmCurveEngine {
+	private static final Logger LOG = Logger.getLogger(EcmMultiLimb.class);
+	private static final boolean DEBUG = false;
+	
+	/** B2 = B2_MULTIPLIER * B1 */
+	private static final int B2_MULTIPLIER = 50;
+	
+	/**
+	 * Standard B1 values and curve counts to find factors of the given number of decimal digits with high probability,
+	 * from the GMP-ECM documentation, for digits = 15, 20, 25, 30, 35.
+	 */
+	private static final int[] DIGITS = {15, 20, 25, 30, 35};
+	private static final int[] B1_VALUES = {2000, 11000, 50000, 250000, 1000000};
+	private static final int[] CURVE_COUNTS = {25, 90, 300, 700, 1800};
+	
+	/** seed for the curve parameters */
+	private long seed;
+	
+	// arithmetic and workspace for the current N
+	private MontgomeryMultiLimb mont;
+	private int B1;
+	private long B2;
+	private long[] a24;
+	private long[] sum, diff, u, v, tmp;
+	
+	// primes up to some bound, for stage 1 and for the prime test in stage 2
+	private int[] primes = new int[0];
+	private int primeCount = 0;
+	private int primeLimit = 1;
+	
+	/**
+	 * Default constructor, using a fixed seed for reproducible results.
+	 */
+	public EcmMultiLimb() {
+		this(42);
+	}
+	
+	/**
+	 * Constructor with a seed for the curve parameters.
+	 * @param seed
+	 */
+	public EcmMultiLimb(long seed) {
+		this.seed = seed;
+	}
+	
+	@Override
+	public EcmCurveEngine newInstance() {
+		return new EcmMultiLimb(seed);
+	}
+	
+	@Override
+	public String getName() {
+		return "EcmMultiLimb";
+	}
+	
+	/**
+	 * Run ECM with increasing bounds until a factor is found, up to the level for 35-digit factors.
+	 * Meant for N with factors much smaller than sqrt(N).
+	 * @param N odd composite
+	 * @return a factor, or 1 if none was found
+	 */
+	@Override
+	public BigInteger findSingleFactor(BigInteger N) {
+		if (!N.testBit(0)) return I_2;
+		// the smallest factor has at most half of the digits of N
+		int maxDigits = (int) Math.ceil(N.bitLength() * Math.log10(2) / 2);
+		for (int i=0; i<DIGITS.length; i++) {
+			BigInteger factor = findSingleFactor(N, B1_VALUES[i], CURVE_COUNTS[i]);
+			if (factor != null) return factor;
+			if (DIGITS[i] >= maxDigits) break;
+		}
+		return I_1;
+	}
+	
+	/**
+	 * Run ECM with a fixed number of curves. Curve i uses the parameter EcmCurveScheduler.sigma(seed, i),
+	 * so the result is the same as with an EcmCurveScheduler in deterministic mode.
+	 * @param N odd composite
+	 * @param B1 stage 1 bound
+	 * @param curves maximum number of curves
+	 * @return a proper factor of N, or null if none was found
+	 */
+	public BigInteger findSingleFactor(BigInteger N, int B1, int curves) {
+		if (!N.testBit(0)) return I_2;
+		initialize(N, B1);
+		for (int curve=0; curve<curves; curve++) {
+			long sigma = EcmCurveScheduler.sigma(seed, curve);
+			BigInteger factor = testCurve(sigma);
+			if (factor != null) {
+				if (DEBUG) LOG.debug("Found factor " + factor + " of N=" + N + " with curve " + curve + ", sigma=" + sigma);
+				return factor;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Set up the arithmetic and workspace for N, and make sure that the required primes are available.
+	 * @param N odd
+	 * @param B1
+	 */
+	@Override
+	public void initialize(BigInteger N, int B1) {
+		if (mont == null || !mont.getN().equals(N)) {
+			mont = new MontgomeryMultiLimb(N);
+			a24 = mont.newElement();
+			sum = mont.newElement();
+			diff = mont.newElement();
+			u = mont.newElement();
+			v = mont.newElement();
+			tmp = mont.newElement();
+		}
+		this.B1 = B1;
+		this.B2 = (long) B1 * B2_MULTIPLIER;
+		int requiredLimit = (int) Math.max(B1, Math.sqrt(B2 + STAGE2_D) + 1);
+		if (requiredLimit > primeLimit) {
+			computePrimes(requiredLimit);
+		}
+	}
+	
+	/**
+	 * Sieve of Eratosthenes for all primes <= limit.
+	 * @param limit
+	 */
+	private void computePrimes(int limit) {
+		boolean[] composite = new boolean[limit+1];
+		int count = 0;
+		int[] result = new int[Math.max(16, (int) (1.26 * limit / Math.log(limit)) + 16)]; // pi(x) < 1.26 x/ln(x)
+		for (int p=2; p<=limit; p++) {
+			if (composite[p]) continue;
+			result[count++] = p;
+			for (long q = (long)p*p; q<=limit; q+=p) {
+				composite[(int)q] = true;
+			}
+		}
+		primes = result;
+		primeCount = count;
+		primeLimit = limit;
+	}
+	
+	/**
+	 * Run one curve with the bounds given in initialize().
+	 * @param sigma Suyama parameter, sigma >= 6
+	 * @return a proper factor of N, or null if this curve did not find one
+	 */
+	@Override
+	public BigInteger testCurve(long sigma) {
+		BigInteger N = mont.getN();
+		// Suyama: u = sigma^2-5, v = 4*sigma, x0 = u^3, z0 = v^3, (A+2)/4 = (v-u)^3 * (3u+v) / (16*u^3*v)
+		BigInteger s = BigInteger.valueOf(sigma);
+		BigInteger uB = s.multiply(s).subtract(I_5).mod(N);
+		BigInteger vB = s.shiftLeft(2).mod(N);
+		BigInteger u3 = uB.modPow(I_3, N);
+		BigInteger vMinusU = vB.subtract(uB);
+		BigInteger numerator = vMinusU.pow(3).multiply(uB.multiply(I_3).add(vB)).mod(N);
+		BigInteger denominator = u3.multiply(vB).shiftLeft(4).mod(N);
+		BigInteger gcd = denominator.gcd(N);
+		if (!gcd.equals(I_1)) {
+			return gcd.compareTo(N) < 0 ? gcd : null;
+		}
+		mont.toMontgomery(numerator.multiply(denominator.modInverse(N)).mod(N), a24);
+		
+		long[] X = mont.newElement();
+		long[] Z = mont.newElement();
+		mont.toMontgomery(u3, X);
+		mont.toMontgomery(vB.modPow(I_3, N), Z);
+		
+		// stage 1
+		stage1(X, Z, B1);
+		BigInteger factor = checkFactor(Z);
+		if (factor != null) return factor;
+		if (mont.isZero(Z)) return null; // all prime factors of N found at once; try another curve
+		
+		// stage 2
+		long[] acc = stage2(X, Z, B1, B2);
+		return checkFactor(acc);
+	}
+	
+	private BigInteger checkFactor(long[] a) {
+		BigInteger N = mont.getN();
+		BigInteger gcd = mont.toBigInteger(a).gcd(N);
+		return (gcd.compareTo(I_1) > 0 && gcd.compareTo(N) < 0) ? gcd : null;
+	}
+	
+	/**
+	 * Multiply (X:Z) by all prime powers <= B1.
+	 * @param X
+	 * @param Z
+	 * @param B1
+	 */
+	private void stage1(long[] X, long[] Z, int B1) {
+		long[] X0 = mont.newElement(), Z0 = mont.newElement();
+		long[] X1 = mont.newElement(), Z1 = mont.newElement();
+		long chunk = 1;
+		for (int i=0; i<primeCount; i++) {
+			int p = primes[i];
+			if (p > B1) break;
+			long q = p;
+			while (q <= B1/p) q *= p;
+			if (chunk > Long.MAX_VALUE / q) {
+				ladder(X, Z, chunk, X0, Z0, X1, Z1);
+				mont.set(X0, X);
+				mont.set(Z0, Z);
+				chunk = 1;
+			}
+			chunk *= q;
+		}
+		if (chunk > 1) {
+			ladder(X, Z, chunk, X0, Z0, X1, Z1);
+			mont.set(X0, X);
+			mont.set(Z0, Z);
+		}
+	}
+	
+	/**
+	 * Montgomery ladder: (X0:Z0) = s*(X:Z) and (X1:Z1) = (s+1)*(X:Z).
+	 * @param X
+	 * @param Z
+	 * @param s multiplier >= 1
+	 * @param X0
+	 * @param Z0
+	 * @param X1
+	 * @param Z1
+	 */
+	private void ladder(long[] X, long[] Z, long s, long[] X0, long[] Z0, long[] X1, long[] Z1) {
+		mont.set(X, X0);
+		mont.set(Z, Z0);
+		dbl(X, Z, X1, Z1);
+		for (int bit = 62 - Long.numberOfLeadingZeros(s); bit >= 0; bit--) {
+			if (((s >>> bit) & 1) != 0) {
+				add(X1, Z1, X0, Z0, X, Z, X0, Z0);
+				dbl(X1, Z1, X1, Z1);
+			} else {
+				add(X0, Z0, X1, Z1, X, Z, X1, Z1);
+				dbl(X0, Z0, X0, Z0);
+			}
+		}
+	}
+	
+	/**
+	 * Point doubling (Xr:Zr) = 2*(X:Z); 3 multiplications and 2 squarings.
+	 */
+	private void dbl(long[] X, long[] Z, long[] Xr, long[] Zr) {
+		mont.add(X, Z, sum);
+		mont.sub(X, Z, diff);
+		mont.square(sum, sum);
+		mont.square(diff, diff);
+		mont.sub(sum, diff, tmp); // 4XZ
+		mont.mul(sum, diff, Xr);
+		mont.mul(a24, tmp, u);
+		mont.add(u, diff, u);
+		mont.mul(tmp, u, Zr);
+	}
+	
+	/**
+	 * Differential addition (Xr:Zr) = P + Q, given P-Q = (Xd:Zd); 4 multiplications and 2 squarings.
+	 * (Xr:Zr) may be P or Q, but not P-Q.
+	 */
+	private void add(long[] XP, long[] ZP, long[] XQ, long[] ZQ, long[] Xd, long[] Zd, long[] Xr, long[] Zr) {
+		mont.sub(XP, ZP, diff);
+		mont.add(XQ, ZQ, sum);
+		mont.mul(diff, sum, u);
+		mont.add(XP, ZP, sum);
+		mont.sub(XQ, ZQ, diff);
+		mont.mul(sum, diff, v);
+		mont.add(u, v, sum);
+		mont.sub(u, v, diff);
+		mont.square(sum, sum);
+		mont.square(diff, diff);
+		mont.mul(Zd, sum, Xr);
+		mont.mul(Xd, diff, Zr);
+	}
+	
+	/** giant step size for stage 2 */
+	private static final int STAGE2_D = 2310;
+	
+	/**
+	 * Standard continuation.
+	 * @param X
+	 * @param Z stage 1 point
+	 * @param B1
+	 * @param B2
+	 * @return the product of X_g*Z_b - X_b*Z_g over all pairs that represent a prime in (B1, B2]
+	 */
+	private long[] stage2(long[] X, long[] Z, int B1, long B2) {
+		final int D = STAGE2_D;
+		final int halfD = D/2;
+		
+		// baby steps j*Q for odd j < D/2; only those with gcd(j, D) = 1 are stored
+		int babyCount = 0;
+		int[] babyJ = new int[halfD];
+		long[][] babyX = new long[halfD][];
+		long[][] babyZ = new long[halfD][];
+		long[][] babyXZ = new long[halfD][];
+		long[] X2 = mont.newElement(), Z2 = mont.newElement();
+		dbl(X, Z, X2, Z2);
+		long[] Xprev = mont.newElement(), Zprev = mont.newElement(); // (j-2)Q
+		long[] Xcur = mont.newElement(), Zcur = mont.newElement(); // jQ
+		long[] Xnext = mont.newElement(), Znext = mont.newElement();
+		mont.set(X, Xcur);
+		mont.set(Z, Zcur);
+		for (int j=1; j<halfD; j+=2) {
+			if (j > 1) {
+				if (j == 3) {
+					add(X2, Z2, X, Z, X, Z, Xnext, Znext); // 3Q = 2Q + Q, difference Q
+				} else {
+					add(Xcur, Zcur, X2, Z2, Xprev, Zprev, Xnext, Znext); // jQ = (j-2)Q + 2Q, difference (j-4)Q
+				}
+				long[] swap = Xprev; Xprev = Xcur; Xcur = Xnext; Xnext = swap;
+				swap = Zprev; Zprev = Zcur; Zcur = Znext; Znext = swap;
+			}
+			if (j%3 != 0 && j%5 != 0 && j%7 != 0 && j%11 != 0) {
+				babyJ[babyCount] = j;
+				babyX[babyCount] = Xcur.clone();
+				babyZ[babyCount] = Zcur.clone();
+				long[] XZ = mont.newElement();
+				mont.mul(Xcur, Zcur, XZ);
+				babyXZ[babyCount] = XZ;
+				babyCount++;
+			}
+		}
+		
+		// giant steps: G = D*Q, and m*G for m from m0 = round(B1/D) on
+		long[] XG = mont.newElement(), ZG = mont.newElement();
+		long[] Xtmp = mont.newElement(), Ztmp = mont.newElement();
+		ladder(X, Z, D, XG, ZG, Xtmp, Ztmp);
+		int m0 = Math.max(1, (B1 + halfD) / D);
+		long[] Xm = mont.newElement(), Zm = mont.newElement(); // m*G
+		long[] Xm1 = mont.newElement(), Zm1 = mont.newElement(); // (m+1)*G
+		ladder(XG, ZG, m0, Xm, Zm, Xm1, Zm1);
+		
+		long[] acc = mont.newElement();
+		mont.setOne(acc);
+		long[] XZg = mont.newElement();
+		long[] t1 = mont.newElement(), t2 = mont.newElement();
+		boolean[] composite = new boolean[D+1];
+		for (long m=m0; (m-1)*D < B2; m++) {
+			long center = m*D;
+			markComposites(center - halfD, composite, D+1);
+			mont.mul(Xm, Zm, XZg);
+			for (int b=0; b<babyCount; b++) {
+				int j = babyJ[b];
+				long q1 = center - j, q2 = center + j;
+				boolean use1 = q1 > B1 && q1 <= B2 && !composite[halfD - j];
+				boolean use2 = q2 > B1 && q2 <= B2 && !composite[halfD + j];
+				if (use1 || use2) {
+					// acc *= X_g*Z_b - X_b*Z_g
+					mont.sub(Xm, babyX[b], t1);
+					mont.add(Zm, babyZ[b], t2);
+					mont.mul(t1, t2, t1);
+					mont.sub(t1, XZg, t1);
+					mont.add(t1, babyXZ[b], t1);
+					mont.mul(acc, t1, acc);
+				}
+			}
+			// (m+2)G = (m+1)G + G, difference mG
+			add(Xm1, Zm1, XG, ZG, Xm, Zm, Xtmp, Ztmp);
+			long[] swap = Xm; Xm = Xm1; Xm1 = Xtmp; Xtmp = swap;
+			swap = Zm; Zm = Zm1; Zm1 = Ztmp; Ztmp = swap;
+		}
+		return acc;
+	}
+	
+	/**
+	 * Sieve the window [start, start+length) by the stored primes.
+	 * @param start > 0
+	 * @param composite output: composite[i] is true iff start+i is not prime
+	 * @param length
+	 */
+	private void markComposites(long start, boolean[] composite, int length) {
+		for (int i=0; i<length; i++) composite[i] = false;
+		long end = start + length; // exclusive
+		for (int i=0; i<primeCount; i++) {
+			int p = primes[i];
+			long p2 = (long)p*p;
+			if (p2 >= end) break;
+			// first multiple of p in the window that is >= p^2
+			long first = Math.max(p2, ((start + p - 1) / p) * p);
+			for (long x=first; x<end; x+=p) {
+				composite[(int) (x-start)] = true;
+			}
+		}
+		for (long x=start; x<2 && x<end; x++) {
+			composite[(int) (x-start)] = true;
+		}
+	}
+	
+	/**
+	 * Test.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		Random rng = new Random(7);
+		EcmMultiLimb ecm = new EcmMultiLimb();
+		// N = p*q with p of 15-25 digits and a bigger cofactor q
+		int[][] testBits = {{50, 80}, {50, 150}, {66, 100}, {66, 180}, {83, 120}, {83, 200}};
+		for (int[] bits : testBits) {
+			BigInteger p = BigInteger.probablePrime(bits[0], rng);
+			BigInteger q = BigInteger.probablePrime(bits[1], rng);
+			BigInteger N = p.multiply(q);
+			long t0 = System.currentTimeMillis();
+			BigInteger factor = ecm.findSingleFactor(N);
+			long t1 = System.currentTimeMillis();
+			LOG.info("N = " + N + " (" + N.bitLength() + " bits, " + ecm.mont.getLimbCount() + " limbs): found factor " + factor + " in " + TimeUtil.timeStr(t1-t0) + (factor.equals(p) || factor.equals(q) ? "" : " (expected " + p + ")"));
+		}
+	}
+}
@@ -41,16 +41,22 @@ import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.base.Uint128;
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.pollardRho.PollardRho;
+import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
 import de.tilman_neumann.util.ConfigUtil;
 
 /**
  * A port of Ben Buhrow's tinyecm.c, an ECM implementation for unsigned 64 bit integers.
- * So far it works for inputs up to 62 bit, albeit not as fast as the C original.
+ * It works for inputs up to 64 bit, albeit not as fast as the C original.
  * The (lack of an) assembler instruction to multiply two 64 bit integers seems to make a big impact here...
  * 
+ * For N < 2^62, all sums and differences of residues fit into a signed long, which allows for the cheapest
+ * modular addition and subtraction. For bigger N, sums may overflow 64 bit and all comparisons must be unsigned;
+ * the <code>fullWidth</code> flag selects the required variants.
+ * 
  * @author Tilman Neumann
  */
-public class TinyEcm64 extends FactorAlgorithm {
+public class TinyEcm64 extends FactorAlgorithm implements EcmCurveEngine {
 	
 	private static class ecm_pt {
 		long X;
@@ -150,6 +156,27 @@ public class TinyEcm64 extends FactorAlgorithm {
 		18, 0 }; // last entry 0 or 1 makes no performance difference
 
 	long LCGSTATE;
+	
+	// EcmCurveEngine state for the current N
+	private long engineN;
+	private long engineRho;
+	private ecm_work engineWork;
+	
+	/** true if N >= 2^62, requiring the overflow-safe arithmetic */
+	private boolean fullWidth;
+	
+	/**
+	 * The primes < 2^10. Factors of very smooth N are all found on every curve, giving gcd=N,
+	 * so we remove small factors before running ECM.
+	 */
+	private static final int[] SMALL_PRIMES = new int[172];
+	
+	static {
+		AutoExpandingPrimesArray primesArray = AutoExpandingPrimesArray.get().ensurePrimeCount(SMALL_PRIMES.length);
+		for (int i=0; i<SMALL_PRIMES.length; i++) {
+			SMALL_PRIMES[i] = primesArray.getPrime(i);
+		}
+	}
 
 	public String getName() {
 		return "TinyEcm64";
@@ -164,6 +191,10 @@ public class TinyEcm64 extends FactorAlgorithm {
 	 */
 	long submod(long x, long y, long n) {
 	    final long r0 = x-y;
+	    if (fullWidth) {
+	    	// the sign of r0 is meaningless if x-y may exceed 63 bit
+	    	return (x+Long.MIN_VALUE < y+Long.MIN_VALUE) ? r0+n : r0;
+	    }
 		// This method's implementation history is quite an odyssey:
 		// * My first version was quite bad
 		// * Suggestion by Ben Buhrow, https://www.mersenneforum.org/showpost.php?p=524038&postcount=158: Much better
@@ -185,13 +216,17 @@ public class TinyEcm64 extends FactorAlgorithm {
 	long addmod(long x, long y, long n)
 	{
 	    long r0 = x+y;
+	    if (fullWidth) {
+	    	// catch the overflow of the addition, too
+	    	return (r0+Long.MIN_VALUE >= n+Long.MIN_VALUE || r0+Long.MIN_VALUE < x+Long.MIN_VALUE) ? r0-n : r0;
+	    }
 	    return (r0 >= n) ? r0-n : r0;
 	    // From https://www.mersenneforum.org/showpost.php?p=524038&postcount=158:
 	    // "With 64 bit operands you'd also have to check if (r0 < x), and trigger the subtract in that case as well.
 	    // In fact, this might be one reason why it isn't working for you now with 64 bit inputs... 
 	    // the addition will often overflow and the "%n" will incorrectly do nothing in that case."
 	    // Unfortunately, this would slow down the overall performance by 5-10%...
-	    //return (r0 >= n || Long.compareUnsigned(r0, x) < 0) ? r0-n : r0;
+	    // So we only do it if N >= 2^62 (fullWidth), see above.
 	}
 
 	/**
@@ -544,7 +579,19 @@ public class TinyEcm64 extends FactorAlgorithm {
 		ps2 = 0;
 		parity = 0;
 
-		while (divisor > 1) {
+		while (divisor+Long.MIN_VALUE > 1+Long.MIN_VALUE) {
+			if (dividend < 0) {
+				// dividend >= 2^63: only possible in the first two iterations for 64 bit p; the subtraction cascade needs signed values
+				q = Long.divideUnsigned(dividend, divisor) * ps1;
+				rem = Long.remainderUnsigned(dividend, divisor);
+				q += ps2;
+				parity = ~parity;
+				dividend = divisor;
+				divisor = rem;
+				ps2 = ps1;
+				ps1 = q;
+				continue;
+			}
 			rem = dividend - divisor;
 			t = rem - divisor;
 			if (rem >= divisor) {
@@ -668,7 +715,7 @@ public class TinyEcm64 extends FactorAlgorithm {
 		t3 = modinv_64(t4, n);
 		if (DEBUG) {
 			LOG.debug("t4=" + t4 + ", n=" + n + ", modinv t3 =" + t3);
-			assertTrue(t4 < n);
+			assertTrue(Long.compareUnsigned(t4, n) < 0);
 			BigInteger t4Big = new BigInteger(Long.toUnsignedString(t4));
 			BigInteger nBig = new BigInteger(Long.toUnsignedString(n));
 			BigInteger t3Big = new BigInteger(Long.toUnsignedString(t3));
@@ -716,6 +763,7 @@ public class TinyEcm64 extends FactorAlgorithm {
 		work.stg1_max = B1;
 		// pre-paired sequences have been prepared for this B2, so it is not an input
 
+		int fullGcdCount = 0;
 		for (curve = 0; /*curve < curves*/; curve++)
 		{
 			if (DEBUG) LOG.debug("curve=" + curve);
@@ -734,6 +782,12 @@ public class TinyEcm64 extends FactorAlgorithm {
 			{
 				return new EcmResult(result, curve + 1);
 			}
+			if (spGCD(P.Z, n) == n)
+			{
+				// all factors of n were found at once; if that happens repeatedly, n is too smooth for ECM
+				if (++fullGcdCount >= curves) return new EcmResult(1, curve + 1);
+				continue;
+			}
 
 			ecm_stage2(P, rho, work);
 			if (DEBUG) LOG.debug("curve=" + curve + ": stage2 finished");
@@ -744,13 +798,58 @@ public class TinyEcm64 extends FactorAlgorithm {
 			{
 				return new EcmResult(result, curve + 1);
 			}
-
+			if (spGCD(work.stg2acc, n) == n)
+			{
+				if (++fullGcdCount >= curves) return new EcmResult(1, curve + 1);
+			}
 		}
 
 //		/*if (DEBUG)*/ LOG.warn("No factor of N=" + n + " found after " + curves + " curves...");
 //		return new EcmResult(1, curve);
 	}
 
+	@Override
+	public EcmCurveEngine newInstance() {
+		return new TinyEcm64();
+	}
+	
+	/**
+	 * Prepare for single curves.
+	 * @param N odd composite with at most 64 bit
+	 * @param B1 one of the bounds 70, 85, 125, 165, 205 for which pre-paired stage 2 sequences exist
+	 * @throws IllegalArgumentException if N has more than 64 bit or there is no stage 2 sequence for B1
+	 */
+	@Override
+	public void initialize(BigInteger N, int B1) {
+		int NBits = N.bitLength();
+		if (NBits > 64) throw new IllegalArgumentException("N=" + N + " has " + NBits + " bit, but tinyEcm supports arguments up to 64 bit only.");
+		if (B1!=70 && B1!=85 && B1!=125 && B1!=165 && B1!=205) throw new IllegalArgumentException("B1=" + B1 + " is not supported, tinyEcm has stage 2 sequences for B1 = 70, 85, 125, 165, 205 only.");
+		engineN = N.longValue();
+		fullWidth = NBits > 62;
+		engineRho = setUpMontgomeryMult_v1(engineN);
+		engineWork = new ecm_work();
+		engineWork.n = engineN;
+		engineWork.stg1_max = B1;
+	}
+	
+	/**
+	 * Run one curve, like one iteration of the loop in tinyecm().
+	 * @param sigma 7 <= sigma < 2^31
+	 * @return factor or null
+	 */
+	@Override
+	public BigInteger testCurve(long sigma) {
+		ecm_pt P = new ecm_pt();
+		build(P, engineRho, engineWork, (int) sigma); // sigma != 0, so it is not replaced by a random value
+		P = ecm_stage1(engineRho, engineWork, P);
+		long result = check_factor(P.Z, engineN);
+		if (result > 1) return BigInteger.valueOf(result);
+		
+		ecm_stage2(P, engineRho, engineWork);
+		result = check_factor(engineWork.stg2acc, engineN);
+		return (result > 1) ? BigInteger.valueOf(result) : null;
+	}
+
 	ecm_pt ecm_stage1(long rho, ecm_work work, ecm_pt P)
 	{
 		long q;
@@ -1088,7 +1187,7 @@ public class TinyEcm64 extends FactorAlgorithm {
 	 * @param Nhat complement of N mod 2^64
 	 * @return Montgomery multiplication of a*b mod n
 	 */
-	public static long montMul64(long a, long b, long N, long Nhat) {
+	long montMul64(long a, long b, long N, long Nhat) {
 		// Step 1: Compute a*b
 		Uint128 ab = Uint128.mul64(a, b);
 		// Step 2: Compute t = ab * (-1/N) mod R
@@ -1100,13 +1199,19 @@ public class TinyEcm64 extends FactorAlgorithm {
 		// Since R=2^64, "x / R" just means to get the high part of x.
 		long r = ab.add_getHigh(Uint128.mul64(t, N));
 		// If the correct result is c, then now r==c or r==c+N.
-		r = r<N ? r : r-N; // required at ecm
+		if (fullWidth) {
+			// For N >= 2^63, c+N may exceed 64 bit; then the addition above overflowed and r < high(a*b).
+			// The comparisons must be unsigned, because for N >= 2^62 the result may have the top bit set.
+			if (r+Long.MIN_VALUE >= N+Long.MIN_VALUE || r+Long.MIN_VALUE < ab.getHigh()+Long.MIN_VALUE) r -= N;
+		} else {
+			r = r<N ? r : r-N; // required at ecm
+		}
 
 		if (DEBUG) {
 			//LOG.debug(a + " * " + b + " = " + r);
-			assertTrue(a >= 0 && a<N);
-			assertTrue(b >= 0 && b<N);
-			assertTrue(r >= 0 && r < N);
+			assertTrue(Long.compareUnsigned(a, N) < 0);
+			assertTrue(Long.compareUnsigned(b, N) < 0);
+			assertTrue(Long.compareUnsigned(r, N) < 0);
 		}
 		
 		return r;
@@ -1122,7 +1227,7 @@ public class TinyEcm64 extends FactorAlgorithm {
 	{
 		long f = spGCD(Z, n);
 		if (DEBUG) LOG.debug("check_factor: gcd(" + Z + ", " + n + ") = " + f);
-        return (f>1 && f<n) ? f : 0;
+        return (f>1 && f+Long.MIN_VALUE < n+Long.MIN_VALUE) ? f : 0;
 	}
 
 	public BigInteger findSingleFactor(BigInteger N) {
@@ -1133,8 +1238,8 @@ public class TinyEcm64 extends FactorAlgorithm {
 		if (DEBUG) LOG.debug("LCGSTATE = " + LCGSTATE);
 		
 		int NBits = N.bitLength();
-		if (NBits > 62) throw new IllegalArgumentException("N=" + N + " has " + NBits + " bit, but tinyEcm supports arguments up to 63 bit only.");
-		// TODO Try to make it work for 63, 64 bit numbers
+		if (NBits > 64) throw new IllegalArgumentException("N=" + N + " has " + NBits + " bit, but tinyEcm supports arguments up to 64 bit only.");
+		fullWidth = NBits > 62;
 		if (DEBUG) LOG.debug("N=" + N + " has " + NBits + " bits");
 		
 		// parameters for N <= 50 bit
@@ -1152,18 +1257,24 @@ public class TinyEcm64 extends FactorAlgorithm {
 		} else if (NBits <= 60) {
 			B1 = 165;
 			curves = 32;
-		} else if (NBits < 64) {
+		} else {
+			// B1=205 is the biggest bound with a pre-paired stage 2 sequence
 			B1 = 205;
 			curves = 40;
-		} else { // >= 64 bit can not happen here but we keep the data for the moment
-			B1 = 1000;
-			curves = 64;
 		}
 		if (DEBUG) LOG.debug("B1=" + B1 + ", curves=" + curves);
 		
+		long n = N.longValue();
+		for (int p : SMALL_PRIMES) {
+			if (Long.remainderUnsigned(n, p) == 0) return BigInteger.valueOf(p);
+		}
+		
 		if (DEBUG) LOG.debug("Try to factor N=" + N);
-		EcmResult result = tinyecm(N.longValue(), B1, curves);
-		return BigInteger.valueOf(result.f);
+		EcmResult result = tinyecm(n, B1, curves);
+		if (result.f > 1) return BigInteger.valueOf(result.f);
+		// N is too smooth for ECM
+		if (DEBUG) LOG.debug("tinyEcm failed to factor N=" + N + ", use PollardRho");
+		return new PollardRho().findSingleFactor(N);
 	}
 	
 	public static void main(String[] args) {
@@ -1208,12 +1319,19 @@ public class TinyEcm64 extends FactorAlgorithm {
 				69916262762899909L,
 				51113648728234999L,
 				55878279398722441L,
+				// 63 and 64 bit
+				6488226267619370801L, // = 1941241399 * 3342307799
+				6640203487830528103L, // = 15771193 * 421033683871
+				Long.parseUnsignedLong("9426904367729527169"), // = 3188550791 * 2956485559
+				Long.parseUnsignedLong("9747065269470581567"), // = 3201276877 * 3044742971
+				Long.parseUnsignedLong("11178325846617301529"), // = 59173561 * 188907438689
+				Long.parseUnsignedLong("17389949380327133263"), // = 2095351 * 8299301348713
 		};
 		
 		for (int i=0; i<testNumbers.length; i++) {
 			long N = testNumbers[i];
-			BigInteger factor = factorizer.findSingleFactor(BigInteger.valueOf(N));
-			LOG.info("Found factor " + factor + " of N=" + N);
+			BigInteger factor = factorizer.findSingleFactor(new BigInteger(Long.toUnsignedString(N)));
+			LOG.info("Found factor " + factor + " of N=" + Long.toUnsignedString(N));
 		}
 	}
 }
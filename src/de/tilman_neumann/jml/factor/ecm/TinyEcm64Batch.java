@@ -0,0 +1,561 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.ecm;
+
+import static de.tilman_neumann.jml.base.Montgomery64.*;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.factor.pollardRho.PollardRhoBrentMontgomery64;
+import de.tilman_neumann.jml.factor.pollardRho.PollardRhoBrentMontgomery64Batch;
+import de.tilman_neumann.jml.gcd.Gcd63;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * ECM for many N < 2^62 at once, e.g. for splitting the cofactors found in the quadratic sieve.
+ * 
+ * The per-N state of TinyEcm64 (N, its Montgomery constant and the curve points) is kept in parallel arrays
+ * ("structure of arrays") for up to K numbers. All lanes run the same curve schedule in lockstep:
+ * Stage 1 is a Montgomery ladder over the same multipliers, and stage 2 is a baby-step giant-step continuation
+ * with D=210 using a prime pairing table that only depends on B1. So the innermost loops run over the lanes,
+ * and the 64x64->128 bit multiplications of different lanes are independent, which lets the CPU overlap their latencies.
+ * 
+ * The curves use Suyama's parametrization as in EcmMultiLimb, with curve i having the parameter EcmCurveScheduler.sigma(seed, i).
+ * The bounds and curve counts are those of TinyEcm64 for the largest N in each group of lanes.
+ * Lanes that found a factor are removed from the working set; numbers without a factor after all curves
+ * are passed to PollardRhoBrentMontgomery64Batch.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author agent
+ */
+public class TinyEcm64Batch {
+	private static final Logger LOG = Logger.getLogger(TinyEcm64Batch.class);
+	private static final boolean DEBUG = false;
+	
+	/** default number of lanes */
+	public static final int DEFAULT_LANE_COUNT = 8;
+	
+	/** B2 = B2_MULTIPLIER * B1, as in TinyEcm64 */
+	private static final int B2_MULTIPLIER = 25;
+	
+	/** giant step size for stage 2 */
+	private static final int D = 210;
+	
+	/** the baby steps j < D/2 with gcd(j, D) = 1 */
+	private static final int[] BABY_J = computeBabySteps();
+	private static final int BABY_COUNT = BABY_J.length;
+	
+	private final int laneCount;
+	private final long seed;
+	
+	// lane state
+	private final long[] N, minusNInvModR, R2;
+	private final long[] X, Z, a24, acc;
+	/** the index of the number processed in each lane */
+	private final int[] index;
+	
+	// lane workspace
+	private final long[] X0, Z0, X1, Z1, X2, Z2, X3, Z3;
+	/** baby step points and X*Z, lane l of baby step b is at b*laneCount+l */
+	private final long[] babyX, babyZ, babyXZ;
+	
+	// schedule for the current B1
+	private int B1 = -1;
+	/** stage 1 multipliers: products of all prime powers <= B1, each fitting into a long */
+	private long[] stage1Chunks;
+	/** the first giant step */
+	private int m0;
+	/** stage2Pairs[i][b] is true if m0+i*D +- BABY_J[b] contains a prime in (B1, B2] */
+	private boolean[][] stage2Pairs;
+	
+	private Gcd63 gcd = new Gcd63();
+	private PollardRhoBrentMontgomery64 pollardRho64 = new PollardRhoBrentMontgomery64();
+	private PollardRhoBrentMontgomery64Batch pollardRhoBatch;
+	
+	/**
+	 * Constructor with the default number of lanes and a fixed seed.
+	 */
+	public TinyEcm64Batch() {
+		this(DEFAULT_LANE_COUNT, 42);
+	}
+	
+	/**
+	 * Full constructor.
+	 * @param laneCount the number of N processed in lockstep; 4..16 are reasonable values
+	 * @param seed seed for the curve parameters
+	 */
+	public TinyEcm64Batch(int laneCount, long seed) {
+		if (laneCount < 1) throw new IllegalArgumentException("laneCount must be positive, but is " + laneCount);
+		this.laneCount = laneCount;
+		this.seed = seed;
+		N = new long[laneCount];
+		minusNInvModR = new long[laneCount];
+		R2 = new long[laneCount];
+		X = new long[laneCount];
+		Z = new long[laneCount];
+		a24 = new long[laneCount];
+		acc = new long[laneCount];
+		index = new int[laneCount];
+		X0 = new long[laneCount];
+		Z0 = new long[laneCount];
+		X1 = new long[laneCount];
+		Z1 = new long[laneCount];
+		X2 = new long[laneCount];
+		Z2 = new long[laneCount];
+		X3 = new long[laneCount];
+		Z3 = new long[laneCount];
+		babyX = new long[BABY_COUNT * laneCount];
+		babyZ = new long[BABY_COUNT * laneCount];
+		babyXZ = new long[BABY_COUNT * laneCount];
+		pollardRhoBatch = new PollardRhoBrentMontgomery64Batch(laneCount);
+	}
+	
+	public String getName() {
+		return "TinyEcm64Batch(" + laneCount + ")";
+	}
+	
+	private static int[] computeBabySteps() {
+		int[] result = new int[D/2];
+		int count = 0;
+		for (int j=1; j<D/2; j+=2) {
+			if (j%3 != 0 && j%5 != 0 && j%7 != 0) result[count++] = j;
+		}
+		int[] babySteps = new int[count];
+		System.arraycopy(result, 0, babySteps, 0, count);
+		return babySteps;
+	}
+	
+	/**
+	 * Find a factor of each of the given numbers.
+	 * @param numbers odd composites
+	 * @return array with factors[i] a proper factor of numbers[i], or 1 if none was found
+	 */
+	public long[] findSingleFactors(long[] numbers) {
+		long[] factors = new long[numbers.length];
+		findSingleFactors(numbers, numbers.length, factors);
+		return factors;
+	}
+	
+	/**
+	 * Find a factor of each of the first count numbers.
+	 * @param numbers odd composites
+	 * @param count the number of entries of <code>numbers</code> to factor
+	 * @param factors output array, factors[i] is set to a proper factor of numbers[i], or 1 if none was found
+	 */
+	public void findSingleFactors(long[] numbers, int count, long[] factors) {
+		long[] rest = new long[laneCount];
+		int[] restIndex = new int[laneCount];
+		long[] restFactors = new long[laneCount];
+		int next = 0;
+		while (next < count) {
+			// fill lanes
+			int active = 0;
+			int maxBits = 0;
+			while (active < laneCount && next < count) {
+				final long n = numbers[next];
+				if ((n & 1) == 0) {
+					factors[next++] = 2;
+				} else if (n < 0 || n >= 1L<<62) {
+					factors[next] = pollardRho64.findSingleFactor(n);
+					next++;
+				} else {
+					initLane(active++, n, next++);
+					maxBits = Math.max(maxBits, 64 - Long.numberOfLeadingZeros(n));
+				}
+			}
+			if (active == 0) continue;
+			
+			// parameters from TinyEcm64
+			int B1, curves;
+			if (maxBits <= 50) {
+				B1 = 70;
+				curves = 24;
+			} else if (maxBits <= 52) {
+				B1 = 85;
+				curves = 24;
+			} else if (maxBits <= 56) {
+				B1 = 125;
+				curves = 24;
+			} else if (maxBits <= 60) {
+				B1 = 165;
+				curves = 32;
+			} else {
+				B1 = 205;
+				curves = 40;
+			}
+			if (B1 != this.B1) computeSchedule(B1);
+			
+			for (int curve=0; curve<curves && active>0; curve++) {
+				final long sigma = EcmCurveScheduler.sigma(seed, curve);
+				buildCurves(active, sigma);
+				stage1(active);
+				active = collectFactors(Z, active, factors);
+				if (active == 0) break;
+				stage2(active);
+				active = collectFactors(acc, active, factors);
+			}
+			
+			if (active > 0) {
+				if (DEBUG) LOG.debug(active + " numbers without factor after " + curves + " curves -> use Pollard-Rho");
+				for (int l=0; l<active; l++) {
+					rest[l] = N[l];
+					restIndex[l] = index[l];
+				}
+				pollardRhoBatch.findSingleFactors(rest, active, restFactors);
+				for (int l=0; l<active; l++) {
+					factors[restIndex[l]] = restFactors[l];
+				}
+			}
+		}
+	}
+	
+	private void initLane(int lane, long n, int i) {
+		N[lane] = n;
+		minusNInvModR[lane] = minusInverse(n);
+		// R^2 mod N: double 2^64 mod N another 64 times
+		long r = Long.remainderUnsigned(-n, n);
+		for (int k=0; k<64; k++) {
+			r <<= 1;
+			if (r >= n) r -= n;
+		}
+		R2[lane] = r;
+		index[lane] = i;
+	}
+	
+	/**
+	 * Compute the stage 1 multipliers and the stage 2 pairing table for B1.
+	 * @param B1
+	 */
+	private void computeSchedule(int B1) {
+		final int B2 = B1 * B2_MULTIPLIER;
+		final int halfD = D/2;
+		// sieve primes up to B2 + D
+		final int limit = B2 + D;
+		boolean[] composite = new boolean[limit+1];
+		composite[0] = composite[1] = true;
+		for (int p=2; p*p<=limit; p++) {
+			if (composite[p]) continue;
+			for (int q=p*p; q<=limit; q+=p) composite[q] = true;
+		}
+		
+		long[] chunks = new long[B1];
+		int chunkCount = 0;
+		long chunk = 1;
+		for (int p=2; p<=B1; p++) {
+			if (composite[p]) continue;
+			long q = p;
+			while (q <= B1/p) q *= p;
+			if (chunk > Long.MAX_VALUE / q) {
+				chunks[chunkCount++] = chunk;
+				chunk = 1;
+			}
+			chunk *= q;
+		}
+		if (chunk > 1) chunks[chunkCount++] = chunk;
+		stage1Chunks = new long[chunkCount];
+		System.arraycopy(chunks, 0, stage1Chunks, 0, chunkCount);
+		
+		m0 = Math.max(1, (B1 + halfD) / D);
+		int mCount = 0;
+		while ((m0 + mCount - 1) * D < B2) mCount++;
+		stage2Pairs = new boolean[mCount][BABY_COUNT];
+		for (int i=0; i<mCount; i++) {
+			final int center = (m0 + i) * D;
+			for (int b=0; b<BABY_COUNT; b++) {
+				final int q1 = center - BABY_J[b], q2 = center + BABY_J[b];
+				stage2Pairs[i][b] = (q1 > B1 && q1 <= B2 && !composite[q1]) || (q2 > B1 && q2 <= B2 && !composite[q2]);
+			}
+		}
+		this.B1 = B1;
+	}
+	
+	/**
+	 * Create the curve with Suyama parameter sigma for all lanes: u = sigma^2-5, v = 4*sigma, x0 = u^3, z0 = v^3,
+	 * (A+2)/4 = (v-u)^3 * (3u+v) / (16*u^3*v). A lane where the denominator is not invertible mod N
+	 * gets the point (0:0), which can not give a factor.
+	 * @param active number of active lanes
+	 * @param sigma
+	 */
+	private void buildCurves(int active, long sigma) {
+		for (int l=0; l<active; l++) {
+			final long n = N[l];
+			final long nh = minusNInvModR[l];
+			final long r2 = R2[l];
+			final long s = montMul62(sigma % n, r2, n, nh);
+			final long five = montMul62(5 % n, r2, n, nh);
+			final long u = subMod62(montMul62(s, s, n, nh), five, n);
+			final long s2 = addMod62(s, s, n);
+			final long v = addMod62(s2, s2, n);
+			final long u3 = montMul62(montMul62(u, u, n, nh), u, n, nh);
+			final long v3 = montMul62(montMul62(v, v, n, nh), v, n, nh);
+			final long vMinusU = subMod62(v, u, n);
+			final long u3Plus = addMod62(addMod62(addMod62(u, u, n), u, n), v, n);
+			final long numerator = montMul62(montMul62(montMul62(vMinusU, vMinusU, n, nh), vMinusU, n, nh), u3Plus, n, nh);
+			long denominator = montMul62(u3, v, n, nh);
+			for (int k=0; k<4; k++) denominator = addMod62(denominator, denominator, n);
+			// take the denominator out of Montgomery form and invert it
+			final long inverse = modInverse(montMul62(denominator, 1, n, nh), n);
+			if (inverse == 0) {
+				X[l] = Z[l] = 0;
+				a24[l] = 0;
+			} else {
+				X[l] = u3;
+				Z[l] = v3;
+				a24[l] = montMul62(numerator, montMul62(inverse, r2, n, nh), n, nh);
+			}
+		}
+	}
+	
+	/**
+	 * Multiply (X:Z) of all lanes by all prime powers <= B1.
+	 * @param active number of active lanes
+	 */
+	private void stage1(int active) {
+		for (long chunk : stage1Chunks) {
+			ladder(X, Z, chunk, X0, Z0, X1, Z1, active);
+			System.arraycopy(X0, 0, X, 0, active);
+			System.arraycopy(Z0, 0, Z, 0, active);
+		}
+	}
+	
+	/**
+	 * Montgomery ladder in all lanes: (X0:Z0) = s*(X:Z) and (X1:Z1) = (s+1)*(X:Z).
+	 * The control flow only depends on s, so the lane loop is the innermost loop.
+	 */
+	private void ladder(long[] X, long[] Z, long s, long[] X0, long[] Z0, long[] X1, long[] Z1, int active) {
+		System.arraycopy(X, 0, X0, 0, active);
+		System.arraycopy(Z, 0, Z0, 0, active);
+		dbl(X, Z, X1, Z1, active);
+		for (int bit = 62 - Long.numberOfLeadingZeros(s); bit >= 0; bit--) {
+			// A is doubled, B becomes A+B
+			final boolean one = ((s >>> bit) & 1) != 0;
+			final long[] XA = one ? X1 : X0, ZA = one ? Z1 : Z0;
+			final long[] XB = one ? X0 : X1, ZB = one ? Z0 : Z1;
+			for (int l=0; l<active; l++) {
+				final long n = N[l];
+				final long nh = minusNInvModR[l];
+				final long xa = XA[l], za = ZA[l], xb = XB[l], zb = ZB[l];
+				// differential addition, difference (X:Z)
+				final long u = montMul62(subMod62(xa, za, n), addMod62(xb, zb, n), n, nh);
+				final long v = montMul62(addMod62(xa, za, n), subMod62(xb, zb, n), n, nh);
+				final long w = addMod62(u, v, n);
+				final long y = subMod62(u, v, n);
+				XB[l] = montMul62(Z[l], montMul62(w, w, n, nh), n, nh);
+				ZB[l] = montMul62(X[l], montMul62(y, y, n, nh), n, nh);
+				// doubling
+				final long sum = addMod62(xa, za, n);
+				final long diff = subMod62(xa, za, n);
+				final long ss = montMul62(sum, sum, n, nh);
+				final long dd = montMul62(diff, diff, n, nh);
+				final long t = subMod62(ss, dd, n); // 4XZ
+				XA[l] = montMul62(ss, dd, n, nh);
+				ZA[l] = montMul62(t, addMod62(dd, montMul62(a24[l], t, n, nh), n), n, nh);
+			}
+		}
+	}
+	
+	/**
+	 * Point doubling (Xr:Zr) = 2*(X:Z) in all lanes.
+	 */
+	private void dbl(long[] X, long[] Z, long[] Xr, long[] Zr, int active) {
+		for (int l=0; l<active; l++) {
+			final long n = N[l];
+			final long nh = minusNInvModR[l];
+			final long x = X[l], z = Z[l];
+			final long sum = addMod62(x, z, n);
+			final long diff = subMod62(x, z, n);
+			final long ss = montMul62(sum, sum, n, nh);
+			final long dd = montMul62(diff, diff, n, nh);
+			final long t = subMod62(ss, dd, n);
+			Xr[l] = montMul62(ss, dd, n, nh);
+			Zr[l] = montMul62(t, addMod62(dd, montMul62(a24[l], t, n, nh), n), n, nh);
+		}
+	}
+	
+	/**
+	 * Differential addition (Xr:Zr) = P + Q in all lanes, given P-Q = (Xd:Zd). (Xr:Zr) may be P or Q.
+	 */
+	private void add(long[] XP, long[] ZP, long[] XQ, long[] ZQ, long[] Xd, long[] Zd, long[] Xr, long[] Zr, int active) {
+		for (int l=0; l<active; l++) {
+			final long n = N[l];
+			final long nh = minusNInvModR[l];
+			final long xp = XP[l], zp = ZP[l], xq = XQ[l], zq = ZQ[l];
+			final long u = montMul62(subMod62(xp, zp, n), addMod62(xq, zq, n), n, nh);
+			final long v = montMul62(addMod62(xp, zp, n), subMod62(xq, zq, n), n, nh);
+			final long w = addMod62(u, v, n);
+			final long y = subMod62(u, v, n);
+			Xr[l] = montMul62(Zd[l], montMul62(w, w, n, nh), n, nh);
+			Zr[l] = montMul62(Xd[l], montMul62(y, y, n, nh), n, nh);
+		}
+	}
+	
+	/**
+	 * Standard continuation in all lanes, accumulating X_g*Z_b - X_b*Z_g over all pairs of the pairing table in acc.
+	 * @param active number of active lanes
+	 */
+	private void stage2(int active) {
+		final int K = laneCount;
+		// baby steps: (X1:Z1) = (j-2)Q, (X0:Z0) = jQ, (X2:Z2) = 2Q
+		dbl(X, Z, X2, Z2, active);
+		System.arraycopy(X, 0, X0, 0, active);
+		System.arraycopy(Z, 0, Z0, 0, active);
+		int b = 0;
+		for (int j=1; j<D/2; j+=2) {
+			if (j == 3) {
+				System.arraycopy(X0, 0, X1, 0, active);
+				System.arraycopy(Z0, 0, Z1, 0, active);
+				add(X2, Z2, X, Z, X, Z, X0, Z0, active); // 3Q = 2Q + Q, difference Q
+			} else if (j > 3) {
+				add(X0, Z0, X2, Z2, X1, Z1, X3, Z3, active); // jQ = (j-2)Q + 2Q, difference (j-4)Q
+				System.arraycopy(X0, 0, X1, 0, active);
+				System.arraycopy(Z0, 0, Z1, 0, active);
+				System.arraycopy(X3, 0, X0, 0, active);
+				System.arraycopy(Z3, 0, Z0, 0, active);
+			}
+			if (b < BABY_COUNT && BABY_J[b] == j) {
+				final int offset = b*K;
+				for (int l=0; l<active; l++) {
+					babyX[offset+l] = X0[l];
+					babyZ[offset+l] = Z0[l];
+					babyXZ[offset+l] = montMul62(X0[l], Z0[l], N[l], minusNInvModR[l]);
+				}
+				b++;
+			}
+		}
+		
+		// giant steps: (X2:Z2) = G = D*Q, (X0:Z0) = m*G, (X1:Z1) = (m+1)*G
+		ladder(X, Z, D, X2, Z2, X3, Z3, active);
+		ladder(X2, Z2, m0, X0, Z0, X1, Z1, active);
+		for (int l=0; l<active; l++) {
+			acc[l] = montMul62(1 % N[l], R2[l], N[l], minusNInvModR[l]);
+		}
+		for (boolean[] pairs : stage2Pairs) {
+			for (int l=0; l<active; l++) {
+				final long n = N[l];
+				final long nh = minusNInvModR[l];
+				final long xg = X0[l], zg = Z0[l];
+				final long xzg = montMul62(xg, zg, n, nh);
+				long a = acc[l];
+				for (int i=0; i<BABY_COUNT; i++) {
+					if (pairs[i]) {
+						// a *= X_g*Z_b - X_b*Z_g = (X_g-X_b)(Z_g+Z_b) - X_g*Z_g + X_b*Z_b
+						final int offset = i*K+l;
+						long t = montMul62(subMod62(xg, babyX[offset], n), addMod62(zg, babyZ[offset], n), n, nh);
+						t = addMod62(subMod62(t, xzg, n), babyXZ[offset], n);
+						a = montMul62(a, t, n, nh);
+					}
+				}
+				acc[l] = a;
+			}
+			// (m+2)G = (m+1)G + G, difference mG
+			add(X1, Z1, X2, Z2, X0, Z0, X3, Z3, active);
+			System.arraycopy(X1, 0, X0, 0, active);
+			System.arraycopy(Z1, 0, Z0, 0, active);
+			System.arraycopy(X3, 0, X1, 0, active);
+			System.arraycopy(Z3, 0, Z1, 0, active);
+		}
+	}
+	
+	/**
+	 * Test gcd(values[l], N[l]) for all lanes, and remove lanes that found a proper factor.
+	 * @param values
+	 * @param active number of active lanes
+	 * @param factors output
+	 * @return new number of active lanes
+	 */
+	private int collectFactors(long[] values, int active, long[] factors) {
+		for (int l=active-1; l>=0; l--) {
+			final long n = N[l];
+			final long G = gcd.gcd(values[l], n);
+			if (G > 1 && G < n) {
+				if (DEBUG) LOG.debug("Found factor " + G + " of N=" + n);
+				factors[index[l]] = G;
+				active--;
+				moveLane(active, l);
+			}
+		}
+		return active;
+	}
+	
+	private void moveLane(int from, int to) {
+		if (from == to) return;
+		N[to] = N[from];
+		minusNInvModR[to] = minusNInvModR[from];
+		R2[to] = R2[from];
+		X[to] = X[from];
+		Z[to] = Z[from];
+		a24[to] = a24[from];
+		acc[to] = acc[from];
+		index[to] = index[from];
+	}
+	
+	/**
+	 * Extended Euclidean algorithm.
+	 * @param a 0 <= a < N
+	 * @param N N < 2^62
+	 * @return (1/a) mod N, or 0 if gcd(a, N) > 1
+	 */
+	private static long modInverse(long a, long N) {
+		long r0 = N, r1 = a;
+		long s0 = 0, s1 = 1;
+		while (r1 != 0) {
+			final long q = r0 / r1;
+			long tmp = r0 - q*r1; r0 = r1; r1 = tmp;
+			tmp = s0 - q*s1; s0 = s1; s1 = tmp;
+		}
+		if (r0 != 1) return 0;
+		return s0 < 0 ? s0 + N : s0;
+	}
+	
+	/**
+	 * Compare the batch kernel with TinyEcm64 on semiprimes with two factors of similar size, like the cofactors in SIQS.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		final int COUNT = 5000;
+		SecureRandom rng = new SecureRandom();
+		TinyEcm64 single = new TinyEcm64();
+		for (int bits=40; bits<=62; bits+=2) {
+			long[] numbers = new long[COUNT];
+			for (int i=0; i<COUNT; i++) {
+				long p = BigInteger.probablePrime(bits/2, rng).longValue();
+				long q = BigInteger.probablePrime(bits - bits/2, rng).longValue();
+				numbers[i] = p*q;
+			}
+			for (int laneCount : new int[] {1, 4, 8, 16}) {
+				TinyEcm64Batch batch = new TinyEcm64Batch(laneCount, 42);
+				long t0 = System.currentTimeMillis();
+				long[] factors = batch.findSingleFactors(numbers);
+				long t1 = System.currentTimeMillis();
+				int failures = 0;
+				for (int i=0; i<COUNT; i++) {
+					final long f = factors[i];
+					if (f<=1 || f>=numbers[i] || numbers[i]%f != 0) failures++;
+				}
+				LOG.info(bits + " bit: " + batch.getName() + " took " + (t1-t0) + "ms, failures = " + failures);
+			}
+			long t0 = System.currentTimeMillis();
+			for (int i=0; i<COUNT; i++) {
+				single.findSingleFactor(BigInteger.valueOf(numbers[i]));
+			}
+			long t1 = System.currentTimeMillis();
+			LOG.info(bits + " bit: " + single.getName() + " took " + (t1-t0) + "ms");
+		}
+	}
+}
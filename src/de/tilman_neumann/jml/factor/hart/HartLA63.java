@@ -18,6 +18,7 @@ import java.math.BigInteger;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.base.SqrtTables;
 import de.tilman_neumann.jml.factor.FactorException;
 import de.tilman_neumann.jml.factor.base.congruence.AQPair;
 import de.tilman_neumann.jml.factor.base.congruence.CongruenceCollector;
@@ -104,11 +105,8 @@ public class HartLA63 extends FactorAlgorithm {
 		this.extraCongruences = extraCongruences;
 		this.matrixSolver = matrixSolver;
 		
-		// Precompute sqrt(i*K_MULT) for all i < I_MAX
-		sqrt = new double[I_MAX];
-		for (int i=1; i<I_MAX; i++) {
-			sqrt[i] = Math.sqrt(i*K_MULT);
-		}
+		// Get sqrt(i*K_MULT) for all i < I_MAX
+		sqrt = SqrtTables.getSqrtKTable(K_MULT, I_MAX);
 	}
 
 	@Override
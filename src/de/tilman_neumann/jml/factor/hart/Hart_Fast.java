@@ -18,6 +18,7 @@ import java.math.BigInteger;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.base.SqrtTables;
 import de.tilman_neumann.jml.factor.tdiv.TDiv63Inverse;
 import de.tilman_neumann.jml.gcd.Gcd63;
 import de.tilman_neumann.util.ConfigUtil;
@@ -61,11 +62,8 @@ public class Hart_Fast extends FactorAlgorithm {
 	 */
 	public Hart_Fast(boolean doTDivFirst) {
 		this.doTDivFirst = doTDivFirst;
-		// Precompute sqrt(i*K_MULT) for all i < I_MAX
-		sqrt = new double[I_MAX];
-		for (int i=1; i<I_MAX; i++) {
-			sqrt[i] = Math.sqrt(i*K_MULT);
-		}
+		// Get sqrt(i*K_MULT) for all i < I_MAX
+		sqrt = SqrtTables.getSqrtKTable(K_MULT, I_MAX);
 	}
 	
 	@Override
@@ -18,6 +18,7 @@ import java.math.BigInteger;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.base.SqrtTables;
 import de.tilman_neumann.jml.factor.tdiv.TDiv63Inverse;
 import de.tilman_neumann.jml.gcd.Gcd63;
 import de.tilman_neumann.util.ConfigUtil;
@@ -66,17 +67,17 @@ public class Hart_Fast2Mult extends FactorAlgorithm {
 	private static final Logger LOG = Logger.getLogger(Hart_Fast2Mult.class);
 
 	// k multipliers.
-	private static final long K_MULT1 = 3465;
-	private static final long K_MULT2 = 315;
+	static final int K_MULT1 = 3465;
+	static final int K_MULT2 = 315;
 
 	/** 
 	 * Size of arrays: this is around 4*n^1/3.
 	 * 2^21 should work for all number n up to 2^52.
 	 */
-	private static final int I_MAX = 1<<21;
+	static final int I_MAX = 1<<21;
 
 	/** This constant is used for fast rounding of double values to long. */
-	private static final double ROUND_UP_DOUBLE = 0.9999999665;
+	static final double ROUND_UP_DOUBLE = 0.9999999665;
 
 	private final boolean doTDivFirst;
 	private final double[] sqrt1;
@@ -93,15 +94,9 @@ public class Hart_Fast2Mult extends FactorAlgorithm {
 	 */
 	public Hart_Fast2Mult(boolean doTDivFirst) {
 		this.doTDivFirst = doTDivFirst;
-		// Precompute sqrts for all k < I_MAX
-		sqrt1 = new double[I_MAX];
-		sqrt2 = new double[I_MAX];
-		for (int i=1; i<I_MAX; i++) {
-			sqrt1[i] = Math.sqrt(i*K_MULT1);
-			if ((i*K_MULT2) % K_MULT1 != 0) {
-				sqrt2[i] = Math.sqrt(i*K_MULT2);
-			}
-		}
+		// Get sqrts for all k < I_MAX; the sqrt2 entries of k that are multiples of K_MULT1 are 0 because those k are tested with sqrt1
+		sqrt1 = SqrtTables.getSqrtKTable(K_MULT1, I_MAX);
+		sqrt2 = SqrtTables.getSqrtKTable(K_MULT2, I_MAX, K_MULT1);
 	}
 
 	@Override
@@ -184,7 +179,7 @@ public class Hart_Fast2Mult extends FactorAlgorithm {
 	 * @param k
 	 * @return
 	 */
-	private long adjustA(long N, long x, long k) {
+	static long adjustA(long N, long x, long k) {
 		if ((k&1)==0) return x | 1;
 		
 		final long kNp1 = k*N+1;
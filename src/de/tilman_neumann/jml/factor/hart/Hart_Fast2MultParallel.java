@@ -0,0 +1,251 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.hart;
+
+import static de.tilman_neumann.jml.factor.hart.Hart_Fast2Mult.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.base.SqrtTables;
+import de.tilman_neumann.jml.factor.tdiv.TDiv63Inverse;
+import de.tilman_neumann.jml.gcd.Gcd63;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Multi-threaded variant of Hart_Fast2Mult for single hard semiprimes, where the latency of one factorization matters.
+ * 
+ * The k-index range is split into chunks that the worker threads claim in ascending order from a shared counter,
+ * so small k, which are the most likely to give a factor, are still tested first. As soon as some thread finds a factor,
+ * it sets the shared result, and the other threads stop after their current chunk.
+ * 
+ * Starting the threads costs some ten microseconds, so N with less than parallelMinBits bits are factored
+ * by a single-threaded Hart_Fast2Mult.
+ * 
+ * @author agent
+ */
+public class Hart_Fast2MultParallel extends FactorAlgorithm {
+	private static final Logger LOG = Logger.getLogger(Hart_Fast2MultParallel.class);
+	
+	/** default bit size from which on N are factored in parallel; Hart_Fast2Mult takes ~50us per hard semiprime of that size */
+	public static final int DEFAULT_PARALLEL_MIN_BITS = 52;
+	
+	/** number of k-indices claimed at once; each takes some 10 ns */
+	private static final int CHUNK_SIZE = 1024;
+
+	/** The state of one search. */
+	private static class SearchState {
+		final long N;
+		final long fourN;
+		final double sqrt4N;
+		final AtomicInteger nextChunk = new AtomicInteger(0);
+		/** the factor found, or 0 if none has been found yet */
+		volatile long factor = 0;
+		
+		SearchState(long N) {
+			this.N = N;
+			this.fourN = N<<2;
+			this.sqrt4N = Math.sqrt(N)*2;
+		}
+	}
+	
+	/** A worker claiming chunks of k-indices until a factor has been found or all k have been tested. */
+	private class Worker implements Callable<Void> {
+		private final SearchState state;
+		private final Gcd63 gcdEngine = new Gcd63();
+		
+		Worker(SearchState state) {
+			this.state = state;
+		}
+		
+		@Override
+		public Void call() {
+			while (state.factor == 0) {
+				int start = state.nextChunk.getAndIncrement() * CHUNK_SIZE;
+				if (start >= I_MAX) return null;
+				if (start == 0) start = 1;
+				long factor = testChunk(start, Math.min(start + CHUNK_SIZE, I_MAX));
+				if (factor > 1) {
+					state.factor = factor;
+					return null;
+				}
+			}
+			return null;
+		}
+		
+		private long testChunk(int start, int end) {
+			final long N = state.N;
+			final long fourN = state.fourN;
+			final double sqrt4N = state.sqrt4N;
+			long a, b, test, gcd;
+			long k1 = start * (long) K_MULT1;
+			long k2 = start * (long) K_MULT2;
+			for (int i=start; i<end; i++, k1 += K_MULT1, k2 += K_MULT2) {
+				a = (long) (sqrt4N * sqrt1[i] + ROUND_UP_DOUBLE);
+				a = adjustA(N, a, k1);
+				test = a*a - k1 * fourN;
+				b = (long) Math.sqrt(test);
+				if (b*b == test && (gcd = gcdEngine.gcd(a+b, N))>1 && gcd<N) {
+					return gcd;
+				}
+				if (sqrt2[i] > Double.MIN_VALUE) {
+					a = (long) (sqrt4N * sqrt2[i] + ROUND_UP_DOUBLE);
+					a = adjustA(N, a, k2);
+					test = a*a - k2 * fourN;
+					b = (long) Math.sqrt(test);
+					if (b*b == test && (gcd = gcdEngine.gcd(a+b, N))>1 && gcd<N) {
+						return gcd;
+					}
+				}
+			}
+			return 1;
+		}
+	}
+	
+	private final boolean doTDivFirst;
+	private final int numberOfThreads;
+	private final int parallelMinBits;
+	private final double[] sqrt1;
+	private final double[] sqrt2;
+	private final TDiv63Inverse tdiv = new TDiv63Inverse(I_MAX);
+	private final Hart_Fast2Mult sequential;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Constructor using the default threshold for parallel factoring.
+	 * @param doTDivFirst If true then trial division is done before the Hart loop.
+	 * @param numberOfThreads
+	 */
+	public Hart_Fast2MultParallel(boolean doTDivFirst, int numberOfThreads) {
+		this(doTDivFirst, numberOfThreads, DEFAULT_PARALLEL_MIN_BITS);
+	}
+	
+	/**
+	 * Full constructor.
+	 * @param doTDivFirst If true then trial division is done before the Hart loop.
+	 * @param numberOfThreads
+	 * @param parallelMinBits N with less bits are factored single-threaded
+	 */
+	public Hart_Fast2MultParallel(boolean doTDivFirst, int numberOfThreads, int parallelMinBits) {
+		this.doTDivFirst = doTDivFirst;
+		this.numberOfThreads = numberOfThreads;
+		this.parallelMinBits = parallelMinBits;
+		sqrt1 = SqrtTables.getSqrtKTable(K_MULT1, I_MAX);
+		sqrt2 = SqrtTables.getSqrtKTable(K_MULT2, I_MAX, K_MULT1);
+		sequential = new Hart_Fast2Mult(doTDivFirst);
+		pool = new ForkJoinPool(numberOfThreads); // worker threads are daemons
+	}
+
+	@Override
+	public String getName() {
+		return "Hart_Fast2MultParallel(" + doTDivFirst + ", " + numberOfThreads + " threads, parallelMinBits=" + parallelMinBits + ")";
+	}
+
+	@Override
+	public BigInteger findSingleFactor(BigInteger N) {
+		return BigInteger.valueOf(findSingleFactor(N.longValue()));
+	}
+
+	/**
+	 * Find a factor of long N.
+	 * @param N
+	 * @return factor of N
+	 */
+	public long findSingleFactor(long N) {
+		if (64 - Long.numberOfLeadingZeros(N) < parallelMinBits || numberOfThreads < 2) {
+			return sequential.findSingleFactor(N);
+		}
+		
+		if (doTDivFirst) {
+			// do trial division before the Hart loop
+			tdiv.setTestLimit((int) Math.cbrt(N));
+			final long factor = tdiv.findSingleFactor(N);
+			if (factor > 1) return factor;
+		}
+		
+		// test for exact squares
+		final long floorSqrtN = (long) Math.sqrt(N);
+		if (floorSqrtN*floorSqrtN == N) return floorSqrtN;
+
+		SearchState state = new SearchState(N);
+		List<Worker> workers = new ArrayList<Worker>(numberOfThreads);
+		for (int t=0; t<numberOfThreads; t++) {
+			workers.add(new Worker(state));
+		}
+		pool.invokeAll(workers);
+		if (state.factor == 0) {
+			LOG.error("Hart_Fast2MultParallel: Failed to factor N=" + N + ". Either it has factors < cbrt(N) needing trial division, or the arrays are too small.");
+			return 1;
+		}
+		return state.factor;
+	}
+	
+	/**
+	 * Stop the worker threads. The algorithm can not be used for N >= 2^parallelMinBits anymore afterwards.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Compare single-threaded and parallel factoring of hard semiprimes.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		int threads = Math.max(2, ConfigUtil.NUMBER_OF_PROCESSORS);
+		Hart_Fast2Mult sequential = new Hart_Fast2Mult(false);
+		Hart_Fast2MultParallel parallel = new Hart_Fast2MultParallel(false, threads, 0);
+		Random rng = new Random(17);
+		final int COUNT = 200;
+		for (int round=0; round<2; round++) { // the first round is warmup
+			for (int bits=44; bits<=62; bits+=2) {
+				long[] testNumbers = new long[COUNT];
+				for (int i=0; i<COUNT; i++) {
+					testNumbers[i] = BigInteger.probablePrime(bits/2, rng).longValue() * BigInteger.probablePrime(bits - bits/2, rng).longValue();
+				}
+				long t0 = System.nanoTime();
+				long[] factors1 = new long[COUNT];
+				for (int i=0; i<COUNT; i++) {
+					factors1[i] = sequential.findSingleFactor(testNumbers[i]);
+				}
+				long t1 = System.nanoTime();
+				long[] factors2 = new long[COUNT];
+				for (int i=0; i<COUNT; i++) {
+					factors2[i] = parallel.findSingleFactor(testNumbers[i]);
+				}
+				long t2 = System.nanoTime();
+				int failures = 0;
+				for (int i=0; i<COUNT; i++) {
+					long N = testNumbers[i];
+					if (factors2[i] <= 1 || factors2[i] >= N || N % factors2[i] != 0) {
+						if (failures < 10) LOG.error("N=" + N + ": Hart_Fast2Mult found " + factors1[i] + ", Hart_Fast2MultParallel found " + factors2[i]);
+						failures++;
+					}
+				}
+				LOG.info(bits + " bit: Hart_Fast2Mult took " + (t1-t0)/(1000*COUNT) + "us, Hart_Fast2MultParallel (" + threads + " threads) took "
+						 + (t2-t1)/(1000*COUNT) + "us per N, failures = " + failures);
+			}
+		}
+		parallel.shutdown();
+	}
+}
@@ -18,6 +18,7 @@ import java.math.BigInteger;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.base.SqrtTables;
 import de.tilman_neumann.jml.gcd.Gcd63;
 import de.tilman_neumann.util.ConfigUtil;
 
@@ -37,13 +38,9 @@ public class Hart_Simple extends FactorAlgorithm {
 	private final Gcd63 gcdEngine = new Gcd63();
 
 	public Hart_Simple() {
-		// Precompute sqrts for all possible k. 2^21 entries are enough for N~2^63.
+		// Get sqrts for all possible k. 2^21 entries are enough for N~2^63.
 		final int kMax = 1<<25;
-		sqrt = new double[kMax + 1];
-		for (int i = 1; i < sqrt.length; i++) {
-			final double sqrtI = Math.sqrt(i);
-			sqrt[i] = sqrtI;
-		}
+		sqrt = SqrtTables.getSqrtTable(kMax + 1);
 	}
 	
 	@Override
@@ -43,6 +43,21 @@ public class Hart_Squarefree extends FactorAlgorithm {
 	/** This constant is used for fast rounding of double values to long. */
 	private static final double ROUND_UP_DOUBLE = 0.9999999665;
 
+	/** The squarefree k-values and their sqrts are shared by all instances and computed on first use only. */
+	private static class KTables {
+		static final long[] K_ARRAY = new long[I_MAX];
+		static final double[] SQRT = new double[I_MAX];
+		static {
+			SquarefreeSequence63 sfs = new SquarefreeSequence63(1);
+			sfs.reset();
+			for (int i=0; i<I_MAX; i++) {
+				long s = sfs.next();
+				K_ARRAY[i] = s*K_MULT;
+				SQRT[i] = Math.sqrt(s*K_MULT);
+			}
+		}
+	}
+
 	private final boolean doTDivFirst;
 	private final double[] sqrt;
 	private final long[] kArray;
@@ -56,16 +71,8 @@ public class Hart_Squarefree extends FactorAlgorithm {
 	 */
 	public Hart_Squarefree(boolean doTDivFirst) {
 		this.doTDivFirst = doTDivFirst;
-		// Precompute sqrt(i*K_MULT) for all i < I_MAX
-		sqrt = new double[I_MAX];
-		kArray = new long[I_MAX];
-		SquarefreeSequence63 sfs = new SquarefreeSequence63(1);
-		sfs.reset();
-		for (int i=0; i<I_MAX; i++) {
-			long s = sfs.next();
-			kArray[i] = s*K_MULT;
-			sqrt[i] = Math.sqrt(s*K_MULT);
-		}
+		kArray = KTables.K_ARRAY;
+		sqrt = KTables.SQRT;
 	}
 	
 	@Override
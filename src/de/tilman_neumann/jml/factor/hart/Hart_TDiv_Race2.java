@@ -18,8 +18,9 @@ import java.math.BigInteger;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.base.SqrtTables;
+import de.tilman_neumann.jml.factor.tdiv.TDivTables;
 import de.tilman_neumann.jml.gcd.Gcd63;
-import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
 import de.tilman_neumann.util.ConfigUtil;
 
 /**
@@ -48,26 +49,20 @@ public class Hart_TDiv_Race2 extends FactorAlgorithm {
 	/** This constant is used for fast rounding of double values to long. */
 	private static final double ROUND_UP_DOUBLE = 0.9999999665;
 
-	private double[] sqrt;
-	private int[] primes;
-	private double[] reciprocals;
+	private final double[] sqrt;
+	private final int[] primes;
+	private final double[] reciprocals;
 	
-	private final AutoExpandingPrimesArray SMALL_PRIMES = AutoExpandingPrimesArray.get();
 	private final Gcd63 gcdEngine = new Gcd63();
 
 	/**
 	 * Full constructor.
 	 */
 	public Hart_TDiv_Race2() {
-		sqrt = new double[I_MAX];
-		primes = new int[I_MAX];
-		reciprocals = new double[I_MAX];
-		for (int i=1; i<I_MAX; i++) {
-			sqrt[i] = Math.sqrt(i*K_MULT);
-			int p = SMALL_PRIMES.getPrime(i);
-			primes[i] = p;
-			reciprocals[i] = 1.0/p;
-		}
+		sqrt = SqrtTables.getSqrtKTable(K_MULT, I_MAX);
+		TDivTables tables = TDivTables.get(I_MAX);
+		primes = tables.getPrimes();
+		reciprocals = tables.getReciprocals();
 	}
 	
 	@Override
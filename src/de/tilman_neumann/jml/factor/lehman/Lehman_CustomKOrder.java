@@ -43,12 +43,87 @@ public class Lehman_CustomKOrder extends FactorAlgorithm {
 
 	private final TDiv63Inverse tdiv = new TDiv63Inverse(K_MAX);
 
-	private double[][] sqrts;
-	private double[][] sqrtInvs;
-	private int[][] kArrays;
-	private int[] kArraySizes;
 	private static final float[] kLimitMultipliers = new float[] {16, 1, 1, 1, 1, 1, 1};
 
+	/**
+	 * The k-arrays and their sqrts are shared by all instances and computed on first use only.
+	 * They are built in two passes, first counting the k-values of each array and then filling the arrays,
+	 * so that no oversized temporary arrays are needed.
+	 */
+	private static class KTables {
+		static final int[][] K_ARRAYS = new int[ARRAY_COUNT][];
+		static final double[][] SQRTS = new double[ARRAY_COUNT][];
+		static final double[][] SQRT_INVS = new double[ARRAY_COUNT][];
+		static {
+			int[] kArraySizes = new int[ARRAY_COUNT];
+			forEachK(null, kArraySizes);
+			for (int i=0; i<ARRAY_COUNT; i++) {
+				int count = kArraySizes[i];
+				K_ARRAYS[i] = new int[count];
+				SQRTS[i] = new double[count];
+				SQRT_INVS[i] = new double[count];
+				kArraySizes[i] = 0;
+			}
+			forEachK(K_ARRAYS, kArraySizes);
+			for (int i=0; i<ARRAY_COUNT; i++) {
+				int[] kArray = K_ARRAYS[i];
+				for (int j=0; j<kArray.length; j++) {
+					final double sqrtK = Math.sqrt(kArray[j]);
+					SQRTS[i][j] = sqrtK;
+					SQRT_INVS[i][j] = 1.0/sqrtK;
+				}
+			}
+		}
+
+		/**
+		 * Arrange k in different arrays.
+		 * @param kArrays the arrays to fill, or null if k-values shall only be counted
+		 * @param kArraySizes counts of k-values per array
+		 */
+		private static void forEachK(int[][] kArrays, int[] kArraySizes) {
+			int k = 1;
+			for ( ; k <= K_MAX; k++) {
+				if (k%315==0 || k%495==0 || k%1155==0) {
+					addToArray(k, 0, kArrays, kArraySizes);
+				} else if (k%45==0 || k%105==0) { // 75 is bad here
+					addToArray(k, 1, kArrays, kArraySizes);
+				} else if (k%15==0 || k%63==0) { // 27, 35, 99 are bad here
+					addToArray(k, 2, kArrays, kArraySizes);
+				} else if (k%9==0 || k%21==0) { // 33, 35 are bad here
+					addToArray(k, 3, kArrays, kArraySizes);
+				} else if (k%3==0) {
+					addToArray(k, 4, kArrays, kArraySizes);
+				} else if (k%5==0) {
+					addToArray(k, 5, kArrays, kArraySizes);
+				} else {
+					addToArray(k, 6, kArrays, kArraySizes);
+				}
+			}
+			
+			// Add more k-values for the best multiplier.
+			// Including k%495==0 or k%1155==0 seems to be a performance penalty.
+			int kMaxWithMultiplier = (int)(kLimitMultipliers[0]*K_MAX);
+			for (; k <=kMaxWithMultiplier; k++) {
+				if (k%315==0) {
+					addToArray(k, 0, kArrays, kArraySizes);
+				}
+			}
+		}
+
+		private static void addToArray(int k, int baseIndex, int[][] kArrays, int[] kArraySizes) {
+			int refinedIndex = baseIndex;
+			if (k%2==0) refinedIndex++; // even k perform slightly worse
+			int arrayIndex = refinedIndex<MAX_ARRAY_INDEX ? refinedIndex : MAX_ARRAY_INDEX;
+			
+			if (kArrays != null) kArrays[arrayIndex][kArraySizes[arrayIndex]] = k;
+			kArraySizes[arrayIndex]++;
+		}
+	}
+
+	private final double[][] sqrts;
+	private final double[][] sqrtInvs;
+	private final int[][] kArrays;
+
 	private long N;
 	private long fourN;
 	private double sqrt4N;
@@ -62,65 +137,9 @@ public class Lehman_CustomKOrder extends FactorAlgorithm {
 	 */
 	public Lehman_CustomKOrder(boolean doTDivFirst) {
 		this.doTDivFirst = doTDivFirst;
-		// arrange k in different arrays
-		sqrts = new double[ARRAY_COUNT][K_MAX+1];
-		sqrtInvs = new double[ARRAY_COUNT][K_MAX+1];
-		kArrays = new int[ARRAY_COUNT][K_MAX+1];
-		kArraySizes = new int[ARRAY_COUNT];
-		int k = 1;
-		for ( ; k <= K_MAX; k++) {
-			if (k%315==0 || k%495==0 || k%1155==0) {
-				addToArray(k, 0);
-			} else if (k%45==0 || k%105==0) { // 75 is bad here
-				addToArray(k, 1);
-			} else if (k%15==0 || k%63==0) { // 27, 35, 99 are bad here
-				addToArray(k, 2);
-			} else if (k%9==0 || k%21==0) { // 33, 35 are bad here
-				addToArray(k, 3);
-			} else if (k%3==0) {
-				addToArray(k, 4);
-			} else if (k%5==0) {
-				addToArray(k, 5);
-			} else {
-				addToArray(k, 6);
-			}
-		}
-		
-		// Add more k-values for the best multiplier.
-		// Including k%495==0 or k%1155==0 seems to be a performance penalty.
-		int kMaxWithMultiplier = (int)(kLimitMultipliers[0]*K_MAX);
-		for (; k <=kMaxWithMultiplier; k++) {
-			if (k%315==0) {
-				addToArray(k, 0);
-			}
-		}
-			
-		// shrink arrays to counts
-		for (int i=0; i<ARRAY_COUNT; i++) {
-			int count = kArraySizes[i];
-			int[] kArrayTmp = new int[count];
-			System.arraycopy(kArrays[i], 0, kArrayTmp, 0, count);
-			kArrays[i] = kArrayTmp;
-			double[] sqrtsTmp = new double[count];
-			System.arraycopy(sqrts[i], 0, sqrtsTmp, 0, count);
-			sqrts[i] = sqrtsTmp;
-			double[] sqrtInvsTmp = new double[count];
-			System.arraycopy(sqrtInvs[i], 0, sqrtInvsTmp, 0, count);
-			sqrtInvs[i] = sqrtInvsTmp;
-		}
-	}
-
-	private void addToArray(int k, int baseIndex) {
-		int refinedIndex = baseIndex;
-		if (k%2==0) refinedIndex++; // even k perform slightly worse
-		int arrayIndex = refinedIndex<MAX_ARRAY_INDEX ? refinedIndex : MAX_ARRAY_INDEX;
-		
-		final double sqrtK = Math.sqrt(k);
-		int count = kArraySizes[arrayIndex];
-		kArrays[arrayIndex][count] = k;
-		sqrts[arrayIndex][count] = sqrtK;
-		sqrtInvs[arrayIndex][count] = 1.0/sqrtK;
-		kArraySizes[arrayIndex]++;
+		kArrays = KTables.K_ARRAYS;
+		sqrts = KTables.SQRTS;
+		sqrtInvs = KTables.SQRT_INVS;
 	}
 
 	@Override
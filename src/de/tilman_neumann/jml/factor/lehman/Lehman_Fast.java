@@ -18,6 +18,7 @@ import java.math.BigInteger;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.base.SqrtTables;
 import de.tilman_neumann.jml.gcd.Gcd63;
 import de.tilman_neumann.util.ConfigUtil;
 import de.tilman_neumann.jml.factor.tdiv.TDiv63Inverse;
@@ -59,15 +60,10 @@ public class Lehman_Fast extends FactorAlgorithm {
 	 */
 	public Lehman_Fast(boolean doTDivFirst) {
 		this.doTDivFirst = doTDivFirst;
-		// Precompute sqrts for all possible k. 2^21 entries are enough for N~2^63.
+		// Get sqrts for all possible k. 2^21 entries are enough for N~2^63.
 		final int kMax = 1<<21;
-		sqrt = new double[kMax + 1];
-		sqrtInv = new double[kMax + 1];
-		for (int i = 1; i < sqrt.length; i++) {
-			final double sqrtI = Math.sqrt(i);
-			sqrt[i] = sqrtI;
-			sqrtInv[i] = 1.0/sqrtI;
-		}
+		sqrt = SqrtTables.getSqrtTable(kMax + 1);
+		sqrtInv = SqrtTables.getInverseSqrtTable(kMax + 1);
 	}
 
 	@Override
@@ -0,0 +1,200 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.pollardRho;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.base.MontgomeryMultiLimb;
+import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Brent's improvement of Pollard's Rho algorithm for N of up to 128 bit, using two-limb Montgomery multiplication.
+ * 
+ * All residues are preallocated long[] arrays in Montgomery form, so the inner loop does not allocate anything.
+ * The differences |x-y| are accumulated in a product q, and only every m iterations a gcd(q, N) is computed.
+ * If that gcd is N, then the last block of m iterations is repeated from its start with a gcd after each step (backtracking).
+ * 
+ * The number of iterations can be bounded, which makes the algorithm a cheap hunt for factors of 20-30 bits
+ * of numbers that would otherwise be passed to SIQS. If the bound is hit, findSingleFactor() returns 1.
+ * 
+ * @see [Richard P. Brent: An improved Monte Carlo Factorization Algorithm, 1980]
+ * 
+ * @author agent
+ */
+public class PollardRhoBrentMontgomery128 extends FactorAlgorithm {
+	private static final Logger LOG = Logger.getLogger(PollardRhoBrentMontgomery128.class);
+	private static final boolean DEBUG = false;
+
+	private static final SecureRandom RNG = new SecureRandom();
+	
+	/** number of polynomials x^2+c tried before giving up on some N */
+	private static final int MAX_POLYNOMIALS = 4;
+	
+	/** iteration bound of findSingleFactor(BigInteger) if no other has been specified */
+	private final int maxIterations;
+	
+	/**
+	 * Unbounded constructor: findSingleFactor(BigInteger) runs until a factor has been found.
+	 */
+	public PollardRhoBrentMontgomery128() {
+		this(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Constructor with an iteration bound.
+	 * @param maxIterations maximum number of polynomial evaluations of findSingleFactor(BigInteger)
+	 */
+	public PollardRhoBrentMontgomery128(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+	
+	@Override
+	public String getName() {
+		return "PollardRhoBrentMontgomery128" + (maxIterations < Integer.MAX_VALUE ? "(" + maxIterations + ")" : "");
+	}
+	
+	@Override
+	public BigInteger findSingleFactor(BigInteger N) {
+		return findSingleFactor(N, maxIterations);
+	}
+	
+	/**
+	 * Number of iterations between gcd's. A BigInteger gcd costs about as much as 50-100 Montgomery multiplications;
+	 * bigger m reduce the gcd cost but make the backtracking more expensive. Experimentally, 128..512 perform similarly.
+	 * @param NBits
+	 * @return m
+	 */
+	static int getGcdInterval(int NBits) {
+		if (NBits <= 64) return 32;
+		if (NBits <= 96) return 128;
+		return 256;
+	}
+	
+	/**
+	 * Find a factor of N with at most maxIterations polynomial evaluations.
+	 * @param N composite number with N.bitLength() <= 128
+	 * @param maxIterations
+	 * @return factor of N, or 1 if none has been found
+	 */
+	public BigInteger findSingleFactor(BigInteger N, int maxIterations) {
+		if (N.bitLength() > 128) throw new IllegalArgumentException("PollardRhoBrentMontgomery128 supports only N with up to 128 bit, but N has " + N.bitLength() + " bit");
+		if (!N.testBit(0)) return I_2;
+		
+		final MontgomeryMultiLimb mont = new MontgomeryMultiLimb(N);
+		final int m = getGcdInterval(N.bitLength());
+		final long[] c = mont.newElement();
+		final long[] x = mont.newElement();
+		final long[] y = mont.newElement();
+		final long[] ys = mont.newElement();
+		final long[] q = mont.newElement();
+		final long[] diff = mont.newElement();
+		int iterations = 0;
+		
+		for (int polynomial=0; polynomial<MAX_POLYNOMIALS; polynomial++) {
+			// random c from [1, N-2] and start y from [0, N)
+			mont.toMontgomery(new BigInteger(N.bitLength(), RNG).mod(N.subtract(I_2)).add(I_1), c);
+			mont.toMontgomery(new BigInteger(N.bitLength(), RNG).mod(N), y);
+			mont.setOne(q);
+			
+			BigInteger G;
+			int r = 1;
+			do {
+				mont.set(y, x);
+				for (int i=r; i>0; i--) {
+					mont.square(y, y);
+					mont.add(y, c, y);
+				}
+				iterations += r;
+				int k = 0;
+				do {
+					mont.set(y, ys);
+					final int iMax = Math.min(m, r-k);
+					for (int i=iMax; i>0; i--) {
+						mont.square(y, y);
+						mont.add(y, c, y);
+						mont.sub(x, y, diff);
+						mont.mul(diff, q, q);
+					}
+					// if q==0 then G==N -> backtracking
+					G = mont.toBigInteger(q).gcd(N);
+					k += m;
+					iterations += iMax;
+					if (G.equals(I_1) && iterations >= maxIterations) {
+						if (DEBUG) LOG.debug("N=" + N + ": no factor found in " + iterations + " iterations");
+						return I_1;
+					}
+				} while (k<r && G.equals(I_1));
+				r <<= 1;
+			} while (G.equals(I_1));
+			
+			if (G.equals(N)) {
+				// backtracking: the factor was found in the last block, which had at most m steps
+				int i = 0;
+				do {
+					mont.square(ys, ys);
+					mont.add(ys, c, ys);
+					mont.sub(x, ys, diff);
+					G = mont.toBigInteger(diff).gcd(N);
+				} while (G.equals(I_1) && ++i < m);
+			}
+			if (G.compareTo(I_1)>0 && G.compareTo(N)<0) {
+				if (DEBUG) LOG.debug("N=" + N + ": found factor " + G + " after " + iterations + " iterations");
+				return G;
+			}
+			// otherwise try another polynomial
+		}
+		return I_1;
+	}
+	
+	/**
+	 * Find factors of 24 to 32 bit of random 80-128 bit numbers.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		Random rng = new Random(43);
+		PollardRhoBrentMontgomery128 rho = new PollardRhoBrentMontgomery128();
+		PollardRhoBrent rhoBrent = new PollardRhoBrent();
+		final int COUNT = 200;
+		for (int round=0; round<2; round++) { // the first round is warmup
+			for (int NBits=80; NBits<=128; NBits+=16) {
+				for (int factorBits=24; factorBits<=32; factorBits+=4) {
+					BigInteger[] testNumbers = new BigInteger[COUNT];
+					for (int i=0; i<COUNT; i++) {
+						testNumbers[i] = BigInteger.probablePrime(factorBits, rng).multiply(BigInteger.probablePrime(NBits-factorBits, rng));
+					}
+					String report = NBits + " bit N, " + factorBits + " bit factors:";
+					for (FactorAlgorithm algorithm : new FactorAlgorithm[] {rhoBrent, rho}) {
+						int failures = 0;
+						long t0 = System.nanoTime();
+						for (BigInteger N : testNumbers) {
+							BigInteger factor = algorithm.findSingleFactor(N);
+							if (factor.compareTo(I_1)<=0 || factor.compareTo(N)>=0 || N.mod(factor).signum()!=0) failures++;
+						}
+						long t1 = System.nanoTime();
+						report += " " + algorithm.getName() + " " + (t1-t0)/(1000*COUNT) + "us (" + failures + " fails),";
+					}
+					if (round==1) LOG.info(report);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.pollardRho;
+
+import static de.tilman_neumann.jml.base.Montgomery64.minusInverse;
+import static de.tilman_neumann.jml.base.Montgomery64.montMul62Lazy;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.gcd.Gcd63;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Brent's Pollard-Rho variant for many N at once, e.g. for splitting the 40-62 bit cofactors found in the quadratic sieve.
+ * 
+ * The state of up to K numbers is stored in parallel arrays ("structure of arrays"), and all of them run through
+ * the same schedule of Brent's algorithm in lockstep. The iteration schedule only depends on r, k and m, so the
+ * innermost loops run over the lanes, and the K Montgomery multiplications of one step are independent.
+ * This way the CPU can overlap the latencies of the 64x64->128 bit multiplications that dominate the single-N version
+ * PollardRhoBrentMontgomery64.
+ * 
+ * Lanes that found a factor are removed from the working set by moving the last active lane into their slot.
+ * Numbers with more than 62 bit are passed to PollardRhoBrentMontgomery64.
+ * 
+ * Like the other Montgomery variants we use R=2^64 and the polynomial x*(x+1). Because N < 2^62, the results of
+ * the Montgomery multiplication do not need to be reduced below 2N, which saves the final comparison.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author agent
+ */
+public class PollardRhoBrentMontgomery64Batch {
+	private static final Logger LOG = Logger.getLogger(PollardRhoBrentMontgomery64Batch.class);
+	private static final boolean DEBUG = false;
+
+	/** default number of lanes */
+	public static final int DEFAULT_LANE_COUNT = 8;
+	
+	/** numbers that did not show a factor until r exceeds this bound are considered unsplittable (e.g. prime) */
+	private static final int MAX_R = 1<<26;
+
+	private static final SecureRandom RNG = new SecureRandom();
+
+	private final int laneCount;
+	
+	// lane state
+	private final long[] N, minusNInvModR, x, y, ys, q;
+	/** the index of the number processed in each lane */
+	private final int[] index;
+	
+	private Gcd63 gcd = new Gcd63();
+	private PollardRhoBrentMontgomery64 pollardRho64 = new PollardRhoBrentMontgomery64();
+	
+	/**
+	 * Constructor with the default number of lanes.
+	 */
+	public PollardRhoBrentMontgomery64Batch() {
+		this(DEFAULT_LANE_COUNT);
+	}
+	
+	/**
+	 * Full constructor.
+	 * @param laneCount the number of N processed in lockstep; 4..16 are reasonable values
+	 */
+	public PollardRhoBrentMontgomery64Batch(int laneCount) {
+		if (laneCount < 1) throw new IllegalArgumentException("laneCount must be positive, but is " + laneCount);
+		this.laneCount = laneCount;
+		N = new long[laneCount];
+		minusNInvModR = new long[laneCount];
+		x = new long[laneCount];
+		y = new long[laneCount];
+		ys = new long[laneCount];
+		q = new long[laneCount];
+		index = new int[laneCount];
+	}
+	
+	public String getName() {
+		return "PollardRhoBrentMontgomery64Batch(" + laneCount + ")";
+	}
+	
+	/**
+	 * Find a factor of each of the given numbers.
+	 * @param numbers odd composites
+	 * @return array with factors[i] a proper factor of numbers[i], or 1 if none was found
+	 */
+	public long[] findSingleFactors(long[] numbers) {
+		long[] factors = new long[numbers.length];
+		findSingleFactors(numbers, numbers.length, factors);
+		return factors;
+	}
+	
+	/**
+	 * Find a factor of each of the first count numbers.
+	 * @param numbers odd composites
+	 * @param count the number of entries of <code>numbers</code> to factor
+	 * @param factors output array, factors[i] is set to a proper factor of numbers[i], or 1 if none was found
+	 */
+	public void findSingleFactors(long[] numbers, int count, long[] factors) {
+		int next = 0;
+		while (next < count) {
+			// fill lanes
+			int active = 0;
+			int maxBits = 0;
+			while (active < laneCount && next < count) {
+				final long n = numbers[next];
+				if ((n & 1) == 0) {
+					factors[next++] = 2;
+				} else if (n == 9) {
+					// N==9 would require to check if the gcd is 1 < gcd < N before returning it as a factor
+					factors[next++] = 3;
+				} else if (n < 0 || n >= 1L<<62) {
+					factors[next] = pollardRho64.findSingleFactor(n);
+					next++;
+				} else {
+					initLane(active++, n, next++);
+					maxBits = Math.max(maxBits, 64 - Long.numberOfLeadingZeros(n));
+				}
+			}
+			if (active > 0) {
+				runLanes(active, 2*maxBits, factors);
+			}
+		}
+	}
+	
+	private void initLane(int lane, long n, int i) {
+		N[lane] = n;
+		minusNInvModR[lane] = minusInverse(n);
+		// start with random y from [0, N)
+		y[lane] = (RNG.nextLong() >>> 1) % n;
+		q[lane] = 1;
+		index[lane] = i;
+	}
+	
+	/**
+	 * Brent's algorithm for all active lanes.
+	 * @param active number of active lanes
+	 * @param m number of iterations before gcd tests
+	 * @param factors output
+	 */
+	private void runLanes(int active, final int m, long[] factors) {
+		int r = 1;
+		while (active > 0) {
+			if (r > MAX_R) {
+				for (int l=0; l<active; l++) {
+					if (DEBUG) LOG.debug("Giving up on N=" + N[l]);
+					factors[index[l]] = 1;
+				}
+				return;
+			}
+			System.arraycopy(y, 0, x, 0, active);
+			for (int i=r; i>0; i--) {
+				for (int l=0; l<active; l++) {
+					final long yl = y[l];
+					y[l] = montMul62Lazy(yl, yl+1, N[l], minusNInvModR[l]);
+				}
+			}
+			int k = 0;
+			do {
+				System.arraycopy(y, 0, ys, 0, active);
+				final int iMax = Math.min(m, r-k);
+				for (int i=iMax; i>0; i--) {
+					for (int l=0; l<active; l++) {
+						final long n = N[l];
+						final long nHat = minusNInvModR[l];
+						final long yl = montMul62Lazy(y[l], y[l]+1, n, nHat);
+						y[l] = yl;
+						final long xl = x[l];
+						final long diff = xl<yl ? yl-xl : xl-yl;
+						q[l] = montMul62Lazy(diff, q[l], n, nHat);
+					}
+				}
+				// gcd tests; finished lanes are replaced by the last active lane
+				for (int l=active-1; l>=0; l--) {
+					final long n = N[l];
+					long G = gcd.gcd(q[l], n);
+					if (G == 1) continue;
+					if (G == n) G = backtrack(l);
+					if (G == n) {
+						// all prime factors were found at once -> restart this lane with a new random y
+						if (DEBUG) LOG.debug("Restart lane for N=" + n);
+						retry(l, factors);
+					} else {
+						factors[index[l]] = G;
+					}
+					active--;
+					moveLane(active, l);
+				}
+				k += m;
+			} while (k<r && active>0);
+			r <<= 1;
+		}
+	}
+	
+	/**
+	 * Step through the last block one by one.
+	 * @param l lane
+	 * @return factor, or N
+	 */
+	private long backtrack(int l) {
+		final long n = N[l];
+		final long nHat = minusNInvModR[l];
+		final long xl = x[l];
+		long ysl = ys[l];
+		long G;
+		do {
+			ysl = montMul62Lazy(ysl, ysl+1, n, nHat);
+			final long diff = xl<ysl ? ysl-xl : xl-ysl;
+			G = gcd.gcd(diff, n);
+		} while (G==1);
+		return G;
+	}
+	
+	/**
+	 * Rare case: Let the single-N implementation continue with new random start values.
+	 * @param l lane
+	 * @param factors output
+	 */
+	private void retry(int l, long[] factors) {
+		factors[index[l]] = pollardRho64.findSingleFactor(N[l]);
+	}
+
+	private void moveLane(int from, int to) {
+		if (from == to) return;
+		N[to] = N[from];
+		minusNInvModR[to] = minusNInvModR[from];
+		x[to] = x[from];
+		y[to] = y[from];
+		ys[to] = ys[from];
+		q[to] = q[from];
+		index[to] = index[from];
+	}
+	
+	/**
+	 * Compare the batch kernel with the single-N implementation on semiprimes with two factors of similar size,
+	 * like the cofactors in SIQS.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		final int COUNT = 5000;
+		SecureRandom rng = new SecureRandom();
+		PollardRhoBrentMontgomery64 single = new PollardRhoBrentMontgomery64();
+		for (int bits=40; bits<=62; bits+=2) {
+			long[] numbers = new long[COUNT];
+			for (int i=0; i<COUNT; i++) {
+				long p = BigInteger.probablePrime(bits/2, rng).longValue();
+				long q = BigInteger.probablePrime(bits - bits/2, rng).longValue();
+				numbers[i] = p*q;
+			}
+			for (int laneCount : new int[] {1, 4, 8, 16}) {
+				PollardRhoBrentMontgomery64Batch batch = new PollardRhoBrentMontgomery64Batch(laneCount);
+				long t0 = System.currentTimeMillis();
+				long[] factors = batch.findSingleFactors(numbers);
+				long t1 = System.currentTimeMillis();
+				int failures = 0;
+				for (int i=0; i<COUNT; i++) {
+					final long f = factors[i];
+					if (f<=1 || f>=numbers[i] || numbers[i]%f != 0) failures++;
+				}
+				LOG.info(bits + " bit: " + batch.getName() + " took " + (t1-t0) + "ms, failures = " + failures);
+			}
+			long t0 = System.currentTimeMillis();
+			for (int i=0; i<COUNT; i++) {
+				single.findSingleFactor(numbers[i]);
+			}
+			long t1 = System.currentTimeMillis();
+			LOG.info(bits + " bit: " + single.getName() + " took " + (t1-t0) + "ms");
+		}
+	}
+}
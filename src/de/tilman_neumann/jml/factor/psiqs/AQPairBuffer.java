@@ -26,6 +26,8 @@ public class AQPairBuffer {
 	private static final int INITIAL_BUFFER_SIZE = 100;
 	
 	private ArrayList<AQPair> aqPairs = new ArrayList<AQPair>(INITIAL_BUFFER_SIZE);
+	/** number of buffered AQ-pairs, readable without locking */
+	private volatile int size = 0;
 	
 	/**
 	 * Called by the control thread, indicating that it waits for AQPairs.
@@ -45,6 +47,7 @@ public class AQPairBuffer {
 			// get new data
 			ArrayList<AQPair> ret = aqPairs;
 			aqPairs = new ArrayList<AQPair>(INITIAL_BUFFER_SIZE);
+			size = 0;
 			return ret;
 		}
 	}
@@ -56,7 +59,15 @@ public class AQPairBuffer {
 	public void addAll(Collection<AQPair> newAQPairs) {
 		synchronized (this) { // block write from sieve threads and read access from control thread
 			aqPairs.addAll(newAQPairs);
+			size = aqPairs.size();
 			this.notify(); // notify control thread about incoming data
 		}
 	}
+
+	/**
+	 * @return the number of AQ-pairs currently waiting to be collected by the control thread
+	 */
+	public int size() {
+		return size;
+	}
 }
@@ -31,8 +31,8 @@ public class PSIQS extends PSIQSBase {
 
 	/**
 	 * Standard constructor.
-	 * @param Cmult multiplier for prime base size
-	 * @param Mmult multiplier for sieve array size
+	 * @param Cmult multiplier for prime base size; null means that it is taken from the tuning profile or the default
+	 * @param Mmult multiplier for sieve array size; null means that it is taken from the tuning profile or the default
 	 * @param wantedQCount hypercube dimension (null for automatic selection)
 	 * @param maxQRestExponent A Q with unfactored rest QRest is considered smooth if QRest <= N^maxQRestExponent.
 	 *                         Good values are 0.16..0.19; null means that it is determined automatically.
@@ -42,7 +42,7 @@ public class PSIQS extends PSIQSBase {
 	 * @param profile
 	 */
 	public PSIQS(
-			float Cmult, float Mmult, Integer wantedQCount, Float maxQRestExponent, int numberOfThreads,
+			Float Cmult, Float Mmult, Integer wantedQCount, Float maxQRestExponent, int numberOfThreads,
 			PowerFinder powerFinder, MatrixSolver matrixSolver, boolean profile) {
 		
 		super(Cmult, Mmult, maxQRestExponent, numberOfThreads, null, powerFinder, matrixSolver, new AParamGenerator01(wantedQCount), profile);
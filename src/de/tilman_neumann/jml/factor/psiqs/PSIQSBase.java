@@ -18,12 +18,15 @@ import static de.tilman_neumann.jml.base.BigIntConstants.*;
 import java.math.BigInteger;
 import java.util.ArrayList;
 
+import javax.management.ObjectName;
+
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
 import de.tilman_neumann.jml.factor.FactorException;
 import de.tilman_neumann.jml.factor.base.GlobalParameters;
 import de.tilman_neumann.jml.factor.base.PrimeBaseGenerator;
+import de.tilman_neumann.jml.factor.base.TuningProfile;
 import de.tilman_neumann.jml.factor.base.congruence.AQPair;
 import de.tilman_neumann.jml.factor.base.congruence.CongruenceCollector;
 import de.tilman_neumann.jml.factor.base.congruence.CongruenceCollectorReport;
@@ -66,6 +69,7 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 
 	// prime base configuration
 	private PrimeBaseGenerator primeBaseBuilder = new PrimeBaseGenerator();
+	private Float Cmult0;
 	protected float Cmult;
 
 	// a-param generator configuration
@@ -75,9 +79,12 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 	private ModularSqrtsEngine modularSqrtsEngine = new ModularSqrtsEngine();
 
 	// sieve configuration
+	private Float Mmult0;
 	protected float Mmult;
 	private Float maxQRestExponent0;
 	protected float maxQRestExponent;
+	/** machine-dependent parameters; if null then the constructor parameters and default formulas are used */
+	private TuningProfile tuningProfile = TuningProfile.get();
 	
 	// collects the congruences we find
 	private CongruenceCollector congruenceCollector;
@@ -88,10 +95,15 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 
 	protected PowerFinder powerFinder;
 	
+	/** live metrics, updated during the run */
+	private SIQSMetrics metrics = new SIQSMetrics();
+	/** the name of the metrics at the platform MBean server while a factorization is running, null if not registered */
+	private ObjectName metricsObjectName = null;
+	
 	/**
 	 * Standard constructor.
-	 * @param Cmult multiplier for prime base size
-	 * @param Mmult multiplier for sieve array size
+	 * @param Cmult multiplier for prime base size; null means that it is taken from the tuning profile or the default
+	 * @param Mmult multiplier for sieve array size; null means that it is taken from the tuning profile or the default
 	 * @param maxQRestExponent A Q with unfactored rest QRest is considered smooth if QRest <= N^maxQRestExponent.
 	 *                         Good values are 0.16..0.19; null means that it is determined automatically.
 	 * @param numberOfThreads
@@ -102,11 +114,11 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 	 * @param profile
 	 */
 	public PSIQSBase(
-			float Cmult, float Mmult, Float maxQRestExponent, int numberOfThreads, Integer d,
+			Float Cmult, Float Mmult, Float maxQRestExponent, int numberOfThreads, Integer d,
 			PowerFinder powerFinder, MatrixSolver matrixSolver, AParamGenerator apg, boolean profile) {
 		
-		this.Cmult = Cmult;
-		this.Mmult = Mmult;
+		this.Cmult0 = Cmult;
+		this.Mmult0 = Mmult;
 		this.maxQRestExponent0 = maxQRestExponent;
 		this.numberOfThreads = numberOfThreads;
 		this.d0 = d;
@@ -121,6 +133,21 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 
 	abstract public String getName();
 	
+	/**
+	 * Set the tuning profile to use.
+	 * @param tuningProfile a profile, or null to use only the constructor parameters and default formulas
+	 */
+	public void setTuningProfile(TuningProfile tuningProfile) {
+		this.tuningProfile = tuningProfile;
+	}
+	
+	/**
+	 * @return the live metrics of the current or last factorization; these can be polled from another thread
+	 */
+	public SIQSMetricsMXBean getMetrics() {
+		return metrics;
+	}
+	
 	/**
 	 * Test the current N.
 	 * @return factor, or null if no factor was found.
@@ -151,6 +178,15 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 		double N_dbl = N.doubleValue();
 		double lnN = Math.log(N_dbl);
 		double lnTerm = Math.sqrt(lnN * Math.log(lnN)); // (lnN)^0.5 * (lnlnN)^(1-0.5)
+		// explicit constructor parameters win over a tuning profile, the profile wins over the defaults
+		TuningProfile.SIQSParams tunedParams = (tuningProfile != null) ? tuningProfile.getSIQSParams(NBits) : null;
+		if (Cmult0 != null) {
+			Cmult = Cmult0;
+		} else if (tunedParams != null) {
+			Cmult = tunedParams.Cmult;
+		} else {
+			Cmult = TuningProfile.DEFAULT_CMULT;
+		}
 		double primeBaseSize_dbl = Math.exp(Cmult * lnTerm);
 		if (primeBaseSize_dbl > Integer.MAX_VALUE) {
 			LOG.error("N=" + N + " (" + NBits + " bits) is too big for SIQS!");
@@ -190,7 +226,15 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 
 		// compute sieve array size, a multiple of 256
 		int pMax = primesArray[primeBaseSize-1];
-		long proposedSieveArraySize = 6144 + (long) Math.exp(Mmult * lnTerm); // 6144 = best experimental result for small N
+		if (Mmult0 != null) {
+			Mmult = Mmult0;
+		} else if (tunedParams != null) {
+			Mmult = tunedParams.Mmult;
+		} else {
+			Mmult = TuningProfile.DEFAULT_MMULT;
+		}
+		int sieveArraySizeOffset = (tunedParams != null) ? tunedParams.sieveArraySizeOffset : TuningProfile.DEFAULT_SIEVE_ARRAY_SIZE_OFFSET;
+		long proposedSieveArraySize = sieveArraySizeOffset + (long) Math.exp(Mmult * lnTerm);
 		if (proposedSieveArraySize+pMax > Integer.MAX_VALUE) { // this might happen at N with ~ 650 bit or later
 			LOG.error("N=" + N + " (" + NBits + " bits) is too big for SIQS!");
 			return null;
@@ -201,8 +245,10 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 		// compute biggest QRest admitted for a smooth relation
 		if (maxQRestExponent0 != null) {
 			maxQRestExponent = maxQRestExponent0;
+		} else if (tunedParams != null) {
+			maxQRestExponent = tunedParams.maxQRestExponent;
 		} else {
-			maxQRestExponent = (NBits<=150) ? 0.16F : 0.16F + (NBits-150.0F)/5250;
+			maxQRestExponent = TuningProfile.getDefaultMaxQRestExponent(NBits);
 		}
 		double maxQRest = Math.pow(N_dbl, maxQRestExponent);
 
@@ -231,11 +277,19 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 		BaseArrays baseArrays = powerFinder.addPowers(kN, primesArray, tArray, logPArray, pinvArrayD, pinvArrayL, primeBaseSize, sieveParams);
 		if (profile) initNDuration += timer.capture();
 
+		// Reset live metrics. Registration at the platform MBean server is requested by the system property "jml.siqs.jmx".
+		// The MBean is unregistered when the factorization is finished, so instances do not leak via the MBean server.
+		if (Boolean.getBoolean("jml.siqs.jmx")) {
+			metricsObjectName = metrics.registerMBean(getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this)));
+		}
+		metrics.initialize(NBits, numberOfThreads, aqPairBuffer, requiredSmoothCongruenceCount);
+		
 		// Create and run threads: This is among the most expensive parts for N<=180 bit,
 		// much more expensive than all the other initializations for a new N.
 		PSIQSThreadBase[] threadArray = new PSIQSThreadBase[numberOfThreads];
 		for (int threadIndex=0; threadIndex<numberOfThreads; threadIndex++) {
 			threadArray[threadIndex] = createThread(k, N, kN, d, sieveParams, baseArrays, apg, aqPairBuffer, threadIndex, profile);
+			threadArray[threadIndex].setMetrics(metrics);
 			threadArray[threadIndex].start();
 		}
 		if (profile) createThreadDuration += timer.capture();
@@ -270,6 +324,8 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 						}
 					}
 				}
+				metrics.setCongruenceCounts(congruenceCollector.getSmoothCongruenceCount(), congruenceCollector.getPerfectSmoothCount(),
+						congruenceCollector.getPartialCongruenceCount(), requiredSmoothCongruenceCount);
 				if (profile) ccDuration += timer.capture();
 			}
 		} catch (FactorException fe) {
@@ -315,6 +371,7 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 					LOG.info("        " + ccReport.getPartialQSignCounts());
 					LOG.info("        " + ccReport.getSmoothQSignCounts());
 				}
+				LOG.info("    metrics: " + metrics);
 				LOG.info("    #solverRuns = " + solverRunCount + ", #tested null vectors = " + matrixSolver.getTestedNullVectorCount());
 				LOG.info("    Approximate phase timings: powerTest=" + powerTestDuration + "ms, initN=" + initNDuration + "ms, createThreads=" + createThreadDuration + "ms, initPoly=" + initPolyDuration + "ms, sieve=" + sieveDuration + "ms, tdiv=" + tdivDuration + "ms, cc=" + ccDuration + "ms, solver=" + solverDuration + "ms");
 				LOG.info("    -> initPoly sub-timings: " + polyReport.getPhaseTimings(numberOfThreads));
@@ -334,6 +391,10 @@ abstract public class PSIQSBase extends FactorAlgorithm {
 			apg.cleanUp();
 			congruenceCollector.cleanUp();
 			matrixSolver.cleanUp();
+			if (metricsObjectName != null) {
+				metrics.unregisterMBean(metricsObjectName);
+				metricsObjectName = null;
+			}
 			// done
 			return factor;
 		}
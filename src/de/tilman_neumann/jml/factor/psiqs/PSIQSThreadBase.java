@@ -37,6 +37,8 @@ abstract public class PSIQSThreadBase extends Thread {
 	protected Sieve sieve;
 	protected TDiv_QS auxFactorizer;
 	private AQPairBuffer aqPairBuffer;
+	private int threadIndex;
+	private SIQSMetrics metrics;
 	private boolean finishNow = false;
 
 	/**
@@ -72,6 +74,15 @@ abstract public class PSIQSThreadBase extends Thread {
 		polyGenerator.initializeForN(k, N, kN, d, sieveParams, baseArrays, apg, sieve, auxFactorizer, profile);
 		// synchronized buffer to pass AQ-pairs to the main thread -> the same object for all threads
 		this.aqPairBuffer = aqPairBuffer;
+		this.threadIndex = threadIndex;
+	}
+	
+	/**
+	 * Set the live metrics this thread shall update. Must be called before the thread is started.
+	 * @param metrics
+	 */
+	void setMetrics(SIQSMetrics metrics) {
+		this.metrics = metrics;
 	}
 	
 	public void run() {
@@ -80,12 +91,16 @@ abstract public class PSIQSThreadBase extends Thread {
 			polyGenerator.nextPolynomial();
 			
 			// run sieve and get the sieve locations x where Q(x) is sufficiently smooth
+			long t0 = System.nanoTime();
 			List<Integer> smoothXList = sieve.sieve();
 			//LOG.debug("Sieve found " + smoothXList.size() + " Q(x) smooth enough to be passed to trial division.");
 
 			// trial division stage: produce AQ-pairs
+			long t1 = System.nanoTime();
 			List<AQPair> aqPairs = auxFactorizer.testList(smoothXList);
 			//LOG.debug("Trial division found " + aqPairs.size() + " Q(x) smooth enough for a congruence.");
+			long t2 = System.nanoTime();
+			if (metrics != null) metrics.addPolynomial(threadIndex, smoothXList.size(), aqPairs.size(), t1-t0, t2-t1);
 
 			if (aqPairs.size()>0) {
 				// add all congruences synchronized and notify control thread
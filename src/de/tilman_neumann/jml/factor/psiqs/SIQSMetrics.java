@@ -0,0 +1,269 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.psiqs;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Live metrics of a PSIQS run, updated by the sieve threads and the control thread while the factorization is running.
+ * 
+ * The counters are cheap enough to be always on:
+ * -> Sieve threads update them once per polynomial. Shared counters are striped (LongAdder), so the threads do not contend
+ *    on a single cache line; the per-thread timings are single-writer slots that are 64 bytes apart.
+ * -> The control thread sets the congruence counts once per collected batch of AQ-pairs.
+ * -> Readers (the getters, JMX) never block the writers.
+ * 
+ * The estimated remaining time is a linear extrapolation of the smooth congruence count. Since the number of smooths
+ * assembled from partials grows faster than linear, the estimate is pessimistic, in particular in the first half of the run.
+ * 
+ * @author agent
+ */
+public class SIQSMetrics implements SIQSMetricsMXBean {
+	private static final Logger LOG = Logger.getLogger(SIQSMetrics.class);
+	
+	/** distance of the per-thread slots in longs, avoiding false sharing */
+	private static final int SLOT_STRIDE = 8;
+	
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	
+	private volatile int NBits;
+	private volatile long startNanos;
+	private volatile int threadCount;
+	private volatile AQPairBuffer aqPairBuffer;
+	
+	// updated by sieve threads
+	private final LongAdder polynomialCount = new LongAdder();
+	private final LongAdder sieveHitCount = new LongAdder();
+	private final LongAdder relationCount = new LongAdder();
+	private volatile AtomicLongArray threadSieveNanos = new AtomicLongArray(0);
+	private volatile AtomicLongArray threadTDivNanos = new AtomicLongArray(0);
+	
+	// updated by the control thread
+	private volatile int smoothCount, perfectSmoothCount, partialCount, requiredSmoothCount;
+	
+	/**
+	 * Reset all counters for a new N. Called by the control thread before the sieve threads are started.
+	 * @param NBits
+	 * @param threadCount
+	 * @param aqPairBuffer
+	 * @param requiredSmoothCount
+	 */
+	void initialize(int NBits, int threadCount, AQPairBuffer aqPairBuffer, int requiredSmoothCount) {
+		this.NBits = NBits;
+		this.threadCount = threadCount;
+		this.aqPairBuffer = aqPairBuffer;
+		polynomialCount.reset();
+		sieveHitCount.reset();
+		relationCount.reset();
+		threadSieveNanos = new AtomicLongArray(threadCount * SLOT_STRIDE);
+		threadTDivNanos = new AtomicLongArray(threadCount * SLOT_STRIDE);
+		smoothCount = 0;
+		perfectSmoothCount = 0;
+		partialCount = 0;
+		this.requiredSmoothCount = requiredSmoothCount;
+		startNanos = System.nanoTime();
+	}
+	
+	/**
+	 * Account a processed polynomial. Called by sieve thread threadIndex.
+	 * @param threadIndex
+	 * @param sieveHits number of sieve locations passed to trial division
+	 * @param relations number of AQ-pairs found
+	 * @param sieveNanos time spent in the sieve
+	 * @param tdivNanos time spent in trial division
+	 */
+	void addPolynomial(int threadIndex, int sieveHits, int relations, long sieveNanos, long tdivNanos) {
+		polynomialCount.increment();
+		sieveHitCount.add(sieveHits);
+		if (relations > 0) relationCount.add(relations);
+		// each slot has a single writer, so a plain read-modify-write with an ordered store is safe
+		int slot = threadIndex * SLOT_STRIDE;
+		AtomicLongArray sieveNanosArray = threadSieveNanos;
+		AtomicLongArray tdivNanosArray = threadTDivNanos;
+		if (slot < sieveNanosArray.length()) {
+			sieveNanosArray.lazySet(slot, sieveNanosArray.get(slot) + sieveNanos);
+			tdivNanosArray.lazySet(slot, tdivNanosArray.get(slot) + tdivNanos);
+		}
+	}
+	
+	/**
+	 * Set the congruence counts. Called by the control thread.
+	 * @param smoothCount
+	 * @param perfectSmoothCount
+	 * @param partialCount
+	 * @param requiredSmoothCount
+	 */
+	void setCongruenceCounts(int smoothCount, int perfectSmoothCount, int partialCount, int requiredSmoothCount) {
+		this.smoothCount = smoothCount;
+		this.perfectSmoothCount = perfectSmoothCount;
+		this.partialCount = partialCount;
+		this.requiredSmoothCount = requiredSmoothCount;
+	}
+	
+	/**
+	 * Register this object at the platform MBean server.
+	 * @param name the value of the "name" key of the object name
+	 * @return the object name, or null if the registration failed
+	 */
+	public ObjectName registerMBean(String name) {
+		try {
+			ObjectName objectName = new ObjectName("de.tilman_neumann.jml:type=SIQSMetrics,name=" + ObjectName.quote(name));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(this, objectName);
+			}
+			return objectName;
+		} catch (Exception e) {
+			// monitoring is optional, the factorization must work without it
+			LOG.warn("Could not register SIQS metrics MBean: " + e, e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Unregister this object from the platform MBean server.
+	 * @param objectName the object name returned by registerMBean()
+	 */
+	public void unregisterMBean(ObjectName objectName) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (Exception e) {
+			LOG.warn("Could not unregister SIQS metrics MBean: " + e, e);
+		}
+	}
+	
+	@Override
+	public int getNBits() {
+		return NBits;
+	}
+	
+	@Override
+	public long getElapsedMillis() {
+		return (startNanos == 0) ? 0 : (long) ((System.nanoTime() - startNanos) / NANOS_PER_MILLI);
+	}
+	
+	@Override
+	public long getPolynomialCount() {
+		return polynomialCount.sum();
+	}
+	
+	@Override
+	public long getSieveHitCount() {
+		return sieveHitCount.sum();
+	}
+	
+	@Override
+	public long getRelationCount() {
+		return relationCount.sum();
+	}
+	
+	@Override
+	public double getRelationsPerSecond() {
+		long elapsedMillis = getElapsedMillis();
+		return elapsedMillis > 0 ? relationCount.sum() * 1000.0 / elapsedMillis : 0;
+	}
+	
+	@Override
+	public double getTDivHitRate() {
+		long sieveHits = sieveHitCount.sum();
+		return sieveHits > 0 ? relationCount.sum() / (double) sieveHits : 0;
+	}
+	
+	@Override
+	public int getSmoothCount() {
+		return smoothCount;
+	}
+	
+	@Override
+	public int getPerfectSmoothCount() {
+		return perfectSmoothCount;
+	}
+	
+	@Override
+	public int getSmoothFromPartialsCount() {
+		return smoothCount - perfectSmoothCount;
+	}
+	
+	@Override
+	public int getPartialCount() {
+		return partialCount;
+	}
+	
+	@Override
+	public int getRequiredSmoothCount() {
+		return requiredSmoothCount;
+	}
+	
+	@Override
+	public double getCompletion() {
+		int required = requiredSmoothCount;
+		return required > 0 ? Math.min(1.0, smoothCount / (double) required) : 0;
+	}
+	
+	@Override
+	public long getEstimatedRemainingMillis() {
+		int smooths = smoothCount;
+		if (smooths == 0) return -1;
+		int missing = Math.max(0, requiredSmoothCount - smooths);
+		return (long) (getElapsedMillis() * (missing / (double) smooths));
+	}
+	
+	@Override
+	public int getQueueDepth() {
+		AQPairBuffer buffer = aqPairBuffer;
+		return buffer != null ? buffer.size() : 0;
+	}
+	
+	@Override
+	public long[] getThreadSieveMillis() {
+		return getThreadMillis(threadSieveNanos);
+	}
+	
+	@Override
+	public long[] getThreadTDivMillis() {
+		return getThreadMillis(threadTDivNanos);
+	}
+	
+	private long[] getThreadMillis(AtomicLongArray nanosArray) {
+		int count = Math.min(threadCount, nanosArray.length() / SLOT_STRIDE);
+		long[] result = new long[count];
+		for (int i=0; i<count; i++) {
+			result[i] = (long) (nanosArray.get(i * SLOT_STRIDE) / NANOS_PER_MILLI);
+		}
+		return result;
+	}
+	
+	@Override
+	public String toString() {
+		long sieveMillis = 0, tdivMillis = 0;
+		for (long millis : getThreadSieveMillis()) sieveMillis += millis;
+		for (long millis : getThreadTDivMillis()) tdivMillis += millis;
+		return "#polys = " + getPolynomialCount() + ", #sieveHits = " + getSieveHitCount() + ", #relations = " + getRelationCount()
+				+ String.format(" (%.1f/s, tdiv hit rate %.3f)", getRelationsPerSecond(), getTDivHitRate())
+				+ ", #smooth = " + smoothCount + " (perfect " + perfectSmoothCount + ", from partials " + getSmoothFromPartialsCount() + ")"
+				+ ", #partials = " + partialCount + ", required = " + requiredSmoothCount
+				+ String.format(", completion = %.1f%%", 100 * getCompletion()) + ", queue depth = " + getQueueDepth()
+				+ ", sieve = " + sieveMillis + "ms, tdiv = " + tdivMillis + "ms (sum over threads)";
+	}
+}
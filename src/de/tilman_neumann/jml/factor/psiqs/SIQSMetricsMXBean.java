@@ -0,0 +1,74 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.psiqs;
+
+/**
+ * Management interface of the live PSIQS metrics, so that they can be polled via JMX (e.g. with jconsole)
+ * while a factorization is running. All values refer to the current (or last) N.
+ * 
+ * @author agent
+ */
+public interface SIQSMetricsMXBean {
+	
+	/** @return bit length of the current N, or 0 if no factorization has been started yet */
+	int getNBits();
+	
+	/** @return milliseconds since the sieve threads for the current N have been started */
+	long getElapsedMillis();
+	
+	/** @return number of polynomials processed by all sieve threads */
+	long getPolynomialCount();
+	
+	/** @return number of sieve locations passed to trial division */
+	long getSieveHitCount();
+	
+	/** @return number of AQ-pairs (perfect smooths and partials) found by trial division */
+	long getRelationCount();
+	
+	/** @return relations found per second */
+	double getRelationsPerSecond();
+	
+	/** @return fraction of sieve hits that gave a relation in trial division */
+	double getTDivHitRate();
+	
+	/** @return number of smooth congruences collected so far, including those assembled from partials */
+	int getSmoothCount();
+	
+	/** @return number of perfect smooth congruences */
+	int getPerfectSmoothCount();
+	
+	/** @return number of smooth congruences assembled from cycles of partials */
+	int getSmoothFromPartialsCount();
+	
+	/** @return number of partial congruences */
+	int getPartialCount();
+	
+	/** @return number of smooth congruences required before the next solver run */
+	int getRequiredSmoothCount();
+	
+	/** @return smoothCount / requiredSmoothCount */
+	double getCompletion();
+	
+	/** @return estimated time until the next solver run in milliseconds, or -1 if there is no estimate yet */
+	long getEstimatedRemainingMillis();
+	
+	/** @return number of AQ-pairs waiting in the buffer between the sieve threads and the control thread */
+	int getQueueDepth();
+	
+	/** @return time spent in sieving per thread, in milliseconds */
+	long[] getThreadSieveMillis();
+	
+	/** @return time spent in trial division per thread, in milliseconds */
+	long[] getThreadTDivMillis();
+}
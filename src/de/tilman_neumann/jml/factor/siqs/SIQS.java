@@ -27,6 +27,7 @@ import de.tilman_neumann.jml.factor.FactorAlgorithm;
 import de.tilman_neumann.jml.factor.FactorException;
 import de.tilman_neumann.jml.factor.base.GlobalParameters;
 import de.tilman_neumann.jml.factor.base.PrimeBaseGenerator;
+import de.tilman_neumann.jml.factor.base.TuningProfile;
 import de.tilman_neumann.jml.factor.base.congruence.AQPair;
 import de.tilman_neumann.jml.factor.base.congruence.CongruenceCollector;
 import de.tilman_neumann.jml.factor.base.congruence.CongruenceCollectorReport;
@@ -70,6 +71,7 @@ public class SIQS extends FactorAlgorithm {
 	
 	private PurePowerTest powerTest = new PurePowerTest();
 	private KnuthSchroeppel multiplierFinder = new KnuthSchroeppel(); // used to compute the multiplier k
+	private Float Cmult0;
 	private float Cmult; // multiplier to compute prime base size
 	private PrimeBaseGenerator primeBaseBuilder = new PrimeBaseGenerator();
 	private ModularSqrtsEngine modularSqrtsEngine = new ModularSqrtsEngine(); // computes tArray
@@ -78,9 +80,12 @@ public class SIQS extends FactorAlgorithm {
 	private PowerFinder powerFinder;
 	
 	// sieve
+	private Float Mmult0;
 	private float Mmult;
 	private Float maxQRestExponent0;
 	private float maxQRestExponent;
+	/** machine-dependent parameters; if null then the constructor parameters and default formulas are used */
+	private TuningProfile tuningProfile = TuningProfile.get();
 	private Sieve sieve;
 	
 	// trial division engine
@@ -99,8 +104,8 @@ public class SIQS extends FactorAlgorithm {
 	
 	/**
 	 * Standard constructor.
-	 * @param Cmult multiplier for prime base size
-	 * @param Mmult multiplier for sieve array size
+	 * @param Cmult multiplier for prime base size; null means that it is taken from the tuning profile or the default
+	 * @param Mmult multiplier for sieve array size; null means that it is taken from the tuning profile or the default
 	 * @param wantedQCount the wanted number of q whose product gives the a-parameter
 	 * @param maxQRestExponent A Q with unfactored rest QRest is considered smooth if QRest <= N^maxQRestExponent.
 	 *                         Good values are 0.16..0.19; null means that it is determined automatically.
@@ -113,11 +118,11 @@ public class SIQS extends FactorAlgorithm {
 	 * @param profile use profile=true to generate timing informations
 	 */
 	public SIQS(
-			float Cmult, float Mmult, Integer wantedQCount, Float maxQRestExponent, PowerFinder powerFinder, PolyGenerator polyGenerator, 
+			Float Cmult, Float Mmult, Integer wantedQCount, Float maxQRestExponent, PowerFinder powerFinder, PolyGenerator polyGenerator, 
 			Sieve sieve, TDiv_QS auxFactorizer, int extraCongruences, MatrixSolver matrixSolver, boolean profile) {
 		
-		this.Cmult = Cmult;
-		this.Mmult = Mmult;
+		this.Cmult0 = Cmult;
+		this.Mmult0 = Mmult;
 		this.maxQRestExponent0 = maxQRestExponent;
 		this.powerFinder = powerFinder;
 		this.polyGenerator = polyGenerator;
@@ -136,6 +141,14 @@ public class SIQS extends FactorAlgorithm {
 		return "SIQS(Cmult=" + Cmult + ", Mmult=" + Mmult + ", qCount=" + apg.getQCount() + ", " + maxQRestExponentStr + ", " + powerFinder.getName() + ", " + polyGenerator.getName() + ", " + sieve.getName() + ", " + auxFactorizer.getName() + ", " + matrixSolver.getName() + ")";
 	}
 	
+	/**
+	 * Set the tuning profile to use.
+	 * @param tuningProfile a profile, or null to use only the constructor parameters and default formulas
+	 */
+	public void setTuningProfile(TuningProfile tuningProfile) {
+		this.tuningProfile = tuningProfile;
+	}
+	
 	/**
 	 * Test the current N.
 	 * @return factor, or null if no factor was found.
@@ -165,6 +178,15 @@ public class SIQS extends FactorAlgorithm {
 		double N_dbl = N.doubleValue();
 		double lnN = Math.log(N_dbl);
 		double lnTerm = Math.sqrt(lnN * Math.log(lnN)); // (lnN)^0.5 * (lnlnN)^(1-0.5)
+		// explicit constructor parameters win over a tuning profile, the profile wins over the defaults
+		TuningProfile.SIQSParams tunedParams = (tuningProfile != null) ? tuningProfile.getSIQSParams(NBits) : null;
+		if (Cmult0 != null) {
+			Cmult = Cmult0;
+		} else if (tunedParams != null) {
+			Cmult = tunedParams.Cmult;
+		} else {
+			Cmult = TuningProfile.DEFAULT_CMULT;
+		}
 		double primeBaseSize_dbl = Math.exp(Cmult * lnTerm);
 		if (primeBaseSize_dbl > Integer.MAX_VALUE) {
 			LOG.error("N=" + N + " (" + NBits + " bits) is too big for SIQS!");
@@ -199,7 +221,15 @@ public class SIQS extends FactorAlgorithm {
 		
 		// compute sieve array size, a multiple of 256
 		int pMax = primesArray[primeBaseSize-1];
-		long proposedSieveArraySize = 6144 + (long) Math.exp(Mmult * lnTerm); // 6144 = best experimental result for small N
+		if (Mmult0 != null) {
+			Mmult = Mmult0;
+		} else if (tunedParams != null) {
+			Mmult = tunedParams.Mmult;
+		} else {
+			Mmult = TuningProfile.DEFAULT_MMULT;
+		}
+		int sieveArraySizeOffset = (tunedParams != null) ? tunedParams.sieveArraySizeOffset : TuningProfile.DEFAULT_SIEVE_ARRAY_SIZE_OFFSET;
+		long proposedSieveArraySize = sieveArraySizeOffset + (long) Math.exp(Mmult * lnTerm);
 		if (proposedSieveArraySize+pMax > Integer.MAX_VALUE) { // this might happen at N with ~ 650 bit or later
 			LOG.error("N=" + N + " (" + NBits + " bits) is too big for SIQS!");
 			return null;
@@ -210,8 +240,10 @@ public class SIQS extends FactorAlgorithm {
 		// compute biggest QRest admitted for a smooth relation
 		if (maxQRestExponent0 != null) {
 			maxQRestExponent = maxQRestExponent0;
+		} else if (tunedParams != null) {
+			maxQRestExponent = tunedParams.maxQRestExponent;
 		} else {
-			maxQRestExponent = (NBits<=150) ? 0.16F : 0.16F + (NBits-150.0F)/5250;
+			maxQRestExponent = TuningProfile.getDefaultMaxQRestExponent(NBits);
 		}
 		double maxQRest = Math.pow(N_dbl, maxQRestExponent);
 
@@ -200,18 +200,7 @@ public class Sieve03g implements Sieve {
 
 		// collect results
 		List<Integer> smoothXList = new ArrayList<Integer>();
-		// let the sieve entry counter x run down to 0 is much faster because of the simpler exit condition
-		for (int x=sieveArraySize-1; x>=0; ) {
-			// Unfortunately, in Java we can not cast byte[] to int[] or long[].
-			// So we have to use 'or'. More than 4 'or's do not pay out.
-			if (((sieveArray[x--] | sieveArray[x--] | sieveArray[x--] | sieveArray[x--]) & 0x80) != 0) {
-				// at least one of the tested Q(x) is sufficiently smooth to be passed to trial division!
-				if (sieveArray[x+1] < 0) smoothXList.add(x+1);
-				if (sieveArray[x+2] < 0) smoothXList.add(x+2);
-				if (sieveArray[x+3] < 0) smoothXList.add(x+3);
-				if (sieveArray[x+4] < 0) smoothXList.add(x+4);
-			}
-		}
+		SieveKernels.collect(sieveArray, sieveArraySize, false, smoothXList);
 		if (profile) collectDuration += timer.capture();
 		
 		// re-initialize sieve array for negative x
@@ -269,18 +258,7 @@ public class Sieve03g implements Sieve {
 		if (profile) sieveDuration += timer.capture();
 
 		// collect results
-		// let the sieve entry counter x run down to 0 is much faster because of the simpler exit condition
-		for (int x=sieveArraySize-1; x>=0; ) {
-			// Unfortunately, in Java we can not cast byte[] to int[] or long[].
-			// So we have to use 'or'. More than 4 'or's do not pay out.
-			if (((sieveArray[x--] | sieveArray[x--] | sieveArray[x--] | sieveArray[x--]) & 0x80) != 0) {
-				// at least one of the tested Q(-x) is sufficiently smooth to be passed to trial division!
-				if (sieveArray[x+1] < 0) smoothXList.add(-(x+1));
-				if (sieveArray[x+2] < 0) smoothXList.add(-(x+2));
-				if (sieveArray[x+3] < 0) smoothXList.add(-(x+3));
-				if (sieveArray[x+4] < 0) smoothXList.add(-(x+4));
-			}
-		}
+		SieveKernels.collect(sieveArray, sieveArraySize, true, smoothXList);
 		if (profile) collectDuration += timer.capture();
 		return smoothXList;
 	}
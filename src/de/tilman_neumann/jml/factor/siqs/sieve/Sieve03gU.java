@@ -19,6 +19,7 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.BinarySearch;
+import de.tilman_neumann.jml.factor.base.NativeMemoryArena;
 import de.tilman_neumann.jml.factor.base.UnsafeUtil;
 import de.tilman_neumann.jml.factor.siqs.data.SolutionArrays;
 import de.tilman_neumann.util.Timer;
@@ -36,6 +37,9 @@ public class Sieve03gU implements Sieve {
 	private static final boolean DEBUG = false;
 	private static final Unsafe UNSAFE = UnsafeUtil.getUnsafe();
 
+	/** native memory of this sieve, reused for the next N */
+	private NativeMemoryArena arena;
+
 	// prime base
 	private int primeBaseSize;
 	/** we do not sieve with primes p_i, i<pMinIndex */
@@ -78,7 +82,8 @@ public class Sieve03gU implements Sieve {
 		// For primes p[i], i<p1Index, we need p[i]+sieveArraySize = 2*sieveArraySize entries.
 		this.sieveArraySize = sieveParams.sieveArraySize;
 		int sieveAllocationSize = Math.max(pMax+1, 2*sieveArraySize);
-		sieveArrayAddress = UnsafeUtil.allocateMemory(sieveAllocationSize);
+		arena = NativeMemoryArena.acquire();
+		sieveArrayAddress = arena.allocate(sieveAllocationSize);
 		if (DEBUG) LOG.debug("pMax = " + pMax + ", sieveArraySize = " + sieveArraySize + " --> sieveAllocationSize = " + sieveAllocationSize);
 
 		// profiling
@@ -351,6 +356,7 @@ public class Sieve03gU implements Sieve {
 	public void cleanUp() {
 		solutionArrays = null;
 		minSolutionCounts_m3 = null;
-		UnsafeUtil.freeMemory(sieveArrayAddress);
+		arena.close(); // keep native memory for the next N
+		arena = null;
 	}
 }
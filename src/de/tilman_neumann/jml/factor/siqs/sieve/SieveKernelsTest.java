@@ -0,0 +1,96 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.siqs.sieve;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Correctness and performance comparison of the scalar and wide collect kernels.
+ *
+ * @author agent
+ */
+public class SieveKernelsTest {
+	private static final Logger LOG = Logger.getLogger(SieveKernelsTest.class);
+
+	/** number of repetitions of each kernel */
+	private static final int NCOUNT = 2000;
+
+	private static final Random RNG = new Random(43);
+
+	private void testCollect(int sieveArraySize) {
+		// a sieve array with some 0.1% of entries having the high bit set
+		byte[] sieveArray = new byte[sieveArraySize];
+		for (int i=0; i<sieveArraySize; i++) {
+			sieveArray[i] = (byte) (RNG.nextInt(1000)==0 ? 128 + RNG.nextInt(128) : RNG.nextInt(128));
+		}
+		List<Integer> list1 = new ArrayList<Integer>();
+		List<Integer> list2 = new ArrayList<Integer>();
+		SieveKernels.collectScalar(sieveArray, sieveArraySize, true, list1);
+		SieveKernels.collectWide(sieveArray, sieveArraySize, true, list2);
+		assertEquals(list1.size(), list2.size());
+		Integer[] sorted1 = list1.toArray(new Integer[list1.size()]);
+		Integer[] sorted2 = list2.toArray(new Integer[list2.size()]);
+		Arrays.sort(sorted1);
+		Arrays.sort(sorted2);
+		assertTrue(Arrays.equals(sorted1, sorted2));
+
+		long t0 = System.currentTimeMillis();
+		for (int n=0; n<NCOUNT; n++) {
+			list1.clear();
+			SieveKernels.collectScalar(sieveArray, sieveArraySize, false, list1);
+		}
+		long t1 = System.currentTimeMillis();
+		for (int n=0; n<NCOUNT; n++) {
+			list2.clear();
+			SieveKernels.collectWide(sieveArray, sieveArraySize, false, list2);
+		}
+		long t2 = System.currentTimeMillis();
+		LOG.info("collect: sieveArraySize = " + sieveArraySize + ", hits = " + list1.size() + ": scalar took " + (t1-t0) + "ms, wide took " + (t2-t1) + "ms");
+	}
+
+	private void testPrecondition() {
+		try {
+			SieveKernels.collect(new byte[1000], 1000, false, new ArrayList<Integer>());
+			fail("collect() accepted sieveArraySize = 1000");
+		} catch (IllegalArgumentException e) {
+			// expected, 1000 is not a multiple of 16
+		}
+	}
+
+	/**
+	 * Test the collect kernels. The system property "jml.siqs.wideKernels" does not matter here,
+	 * because the scalar and wide implementations are called directly.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		SieveKernelsTest test = new SieveKernelsTest();
+		LOG.info("SieveKernels.USE_WIDE_COLLECT = " + SieveKernels.USE_WIDE_COLLECT);
+		test.testPrecondition();
+		for (int round=0; round<2; round++) { // the first round is warmup
+			for (int sieveArraySize=1<<14; sieveArraySize<=1<<20; sieveArraySize<<=2) {
+				test.testCollect(sieveArraySize);
+			}
+		}
+	}
+}
@@ -21,6 +21,7 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.BinarySearch;
+import de.tilman_neumann.jml.factor.base.NativeMemoryArena;
 import de.tilman_neumann.jml.factor.base.UnsafeUtil;
 import de.tilman_neumann.jml.factor.siqs.data.SolutionArrays;
 import de.tilman_neumann.util.Timer;
@@ -40,6 +41,9 @@ public class SingleBlockHybridSieveU implements Sieve {
 	private static final boolean DEBUG = false;
 	private static final Unsafe UNSAFE = UnsafeUtil.getUnsafe();
 
+	/** native memory of this sieve, reused for the next N */
+	private NativeMemoryArena arena;
+
 	// prime base
 	private int primeBaseSize;
 	/** we do not sieve with primes p_i, i<pMinIndex */
@@ -117,9 +121,10 @@ public class SingleBlockHybridSieveU implements Sieve {
 		// For large primes with 0 or 1 sieve locations we need to allocate pMax+1 entries;
 		// For primes p[i], i<p1Index, we need p[i]+sieveArraySize = 2*sieveArraySize entries.
 		int sieveAllocationSize = Math.max(pMax+1, 2*sieveArraySize);
-		sieveArrayAddress = UnsafeUtil.allocateMemory(sieveAllocationSize);
+		arena = NativeMemoryArena.acquire();
+		sieveArrayAddress = arena.allocate(sieveAllocationSize);
 		if (DEBUG) LOG.debug("pMax = " + pMax + ", sieveArraySize = " + sieveArraySize + " --> sieveAllocationSize = " + sieveAllocationSize);
-		sieveBlockAddress = UnsafeUtil.allocateMemory(effectiveBlockSize);
+		sieveBlockAddress = arena.allocate(effectiveBlockSize);
 
 		// profiling
 		this.profile = profile;
@@ -465,8 +470,8 @@ public class SingleBlockHybridSieveU implements Sieve {
 	@Override
 	public void cleanUp() {
 		solutionArrays = null;
-		UnsafeUtil.freeMemory(sieveArrayAddress);
-		UnsafeUtil.freeMemory(sieveBlockAddress);
+		arena.close(); // keep native memory for the next N
+		arena = null;
 		xPosArray = null;
 		xNegArray = null;
 		dPosArray = null;
@@ -21,6 +21,7 @@ import java.util.List;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.BinarySearch;
+import de.tilman_neumann.jml.factor.base.NativeMemoryArena;
 import de.tilman_neumann.jml.factor.base.UnsafeUtil;
 import de.tilman_neumann.jml.factor.siqs.data.SolutionArrays;
 import de.tilman_neumann.util.Timer;
@@ -36,6 +37,9 @@ public class SingleBlockSieveU implements Sieve {
 	private static final boolean DEBUG = false;
 	private static final Unsafe UNSAFE = UnsafeUtil.getUnsafe();
 
+	/** native memory of this sieve, reused for the next N */
+	private NativeMemoryArena arena;
+
 	// prime base
 	private int filteredBaseSize;
 	private int pMinIndex;
@@ -98,7 +102,8 @@ public class SingleBlockSieveU implements Sieve {
 		}
 
 		// create initialized block
-		initializedBlockAddress = UnsafeUtil.allocateMemory(effectiveBlockSize);
+		arena = NativeMemoryArena.acquire();
+		initializedBlockAddress = arena.allocate(effectiveBlockSize);
 		UNSAFE.setMemory(initializedBlockAddress, 256, initializer);
 		int filled = 256;
 		int unfilled = effectiveBlockSize-filled;
@@ -110,7 +115,7 @@ public class SingleBlockSieveU implements Sieve {
 		}
 
 		// allocate sieve block
-		sieveBlockAddress = UnsafeUtil.allocateMemory(effectiveBlockSize);
+		sieveBlockAddress = arena.allocate(effectiveBlockSize);
 
 		// allocate "bookkeeping arrays" (slightly too big because before filtering)
 		xPosArray = new long[mergedBaseSize];
@@ -391,8 +396,8 @@ public class SingleBlockSieveU implements Sieve {
 	
 	@Override
 	public void cleanUp() {
-		UnsafeUtil.freeMemory(sieveBlockAddress);
-		UnsafeUtil.freeMemory(initializedBlockAddress);
+		arena.close(); // keep native memory for the next N
+		arena = null;
 		xPosArray = null;
 		xNegArray = null;
 		dPosArray = null;
@@ -0,0 +1,363 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.squfof;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.factor.FactorAlgorithm;
+import de.tilman_neumann.jml.factor.hart.Hart_TDiv_Race;
+import de.tilman_neumann.jml.gcd.Gcd63;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Shanks' SQUFOF algorithm racing several multipliers k at once, for N < 2^63.
+ * 
+ * SquFoF63 and SquFoF31Preload try one multiplier after another, so the time to find a factor depends a lot on how
+ * many multipliers fail before a good one is found. Here the continued fraction expansions of all kN are advanced
+ * in turns of a few iterations, and the first form that leads to a proper factor wins. This reduces the worst-case
+ * time considerably. With more than one thread, each thread races a part of the multipliers, and all threads stop
+ * as soon as one of them found a factor.
+ * 
+ * kN is treated as an unsigned 64 bit number, so multipliers can be used as long as kN < 2^64.
+ * All other quantities of the expansion are smaller than 2*sqrt(kN) < 2^33.
+ * 
+ * @author agent
+ */
+public class SquFoF63Race extends FactorAlgorithm {
+	private static final Logger LOG = Logger.getLogger(SquFoF63Race.class);
+	private static final boolean DEBUG = false;
+	
+	/** the square-free products of 3, 5, 7 and 11, a popular multiplier set for racing SQUFOF */
+	public static final long[] DEFAULT_MULTIPLIERS = new long[] {1, 3, 5, 7, 11, 3*5, 3*7, 3*11, 5*7, 5*11, 7*11, 3*5*7, 3*5*11, 3*7*11, 5*7*11, 3*5*7*11};
+	
+	/**
+	 * Number of iterations of one form before the next form gets its turn.
+	 * Small values approximate the true race better; the cost of switching forms is small.
+	 */
+	private static final int SLICE_ITERATIONS = 8;
+	
+	/** each form is given up after ITERATIONS_MULT * (kN)^(1/4) iterations */
+	private static final double ITERATIONS_MULT = 3.0;
+	
+	/** if all forms failed, their iteration bounds are doubled at most that many times */
+	private static final int MAX_EXTENSIONS = 4;
+	
+	/** The state of the continued fraction expansion of one kN. */
+	private static final class Form {
+		final long k;
+		long kN, floorSqrtkN;
+		long P, Q, Qnext;
+		int i, maxI;
+		boolean active;
+		
+		Form(long k) {
+			this.k = k;
+		}
+	}
+	
+	/** A worker racing a subset of the forms. */
+	private class Worker implements Callable<Void> {
+		private final long N;
+		private final int firstForm;
+		private final Gcd63 gcdEngine = new Gcd63();
+		
+		Worker(long N, int firstForm) {
+			this.N = N;
+			this.firstForm = firstForm;
+		}
+		
+		@Override
+		public Void call() {
+			long factor = race(N, firstForm, numberOfThreads, gcdEngine);
+			if (factor > 1) result = factor;
+			return null;
+		}
+	}
+	
+	private final long[] multipliers;
+	private final Form[] forms;
+	private final int numberOfThreads;
+	private final ForkJoinPool pool;
+	private final Gcd63 gcdEngine = new Gcd63();
+
+	/** the factor found by some thread, or 0 */
+	private volatile long result;
+	
+	/**
+	 * Single-threaded race of the default multipliers.
+	 */
+	public SquFoF63Race() {
+		this(DEFAULT_MULTIPLIERS, 1);
+	}
+	
+	/**
+	 * Full constructor.
+	 * @param multipliers the multipliers k to race; should be square-free and odd, and are used in the given order
+	 * @param numberOfThreads if > 1, then the multipliers are distributed to that many threads
+	 */
+	public SquFoF63Race(long[] multipliers, int numberOfThreads) {
+		this.multipliers = multipliers.clone();
+		this.numberOfThreads = numberOfThreads;
+		forms = new Form[multipliers.length];
+		for (int i=0; i<multipliers.length; i++) {
+			forms[i] = new Form(multipliers[i]);
+		}
+		pool = numberOfThreads > 1 ? new ForkJoinPool(numberOfThreads) : null; // worker threads are daemons
+	}
+
+	@Override
+	public String getName() {
+		return "SquFoF63Race(" + multipliers.length + " multipliers" + (numberOfThreads > 1 ? ", " + numberOfThreads + " threads" : "") + ")";
+	}
+	
+	@Override
+	public BigInteger findSingleFactor(BigInteger N) {
+		if (N.bitLength() > 63) throw new IllegalArgumentException("SquFoF63Race.findSingleFactor() does not work for N>63 bit, but N=" + N);
+		return BigInteger.valueOf(findSingleFactor(N.longValue()));
+	}
+
+	/**
+	 * Find a factor of the given composite N.
+	 * @param N composite integer < 2^63
+	 * @return factor of N, or 1 if none of the multipliers found a factor even after extending the iteration bounds
+	 */
+	public long findSingleFactor(long N) {
+		if ((N&1)==0) return 2;
+		// a prime factor shared by N and some multiplier could not be found by the race
+		for (long k : multipliers) {
+			long gcd = gcdEngine.gcd(N, k);
+			if (gcd>1 && gcd<N) return gcd;
+		}
+		
+		// initialize all forms
+		for (Form form : forms) {
+			long factor = initialize(form, N);
+			if (factor > 1) return factor;
+		}
+		
+		for (int extension=0; ; extension++) {
+			long factor = runRace(N);
+			if (factor > 1 || extension == MAX_EXTENSIONS) return factor;
+			// all forms failed, which happens mostly if N is so big that only few multipliers can be used
+			if (DEBUG) LOG.debug("N=" + N + ": all forms failed, extension " + (extension+1));
+			for (Form form : forms) {
+				if (form.floorSqrtkN > 0) {
+					form.maxI <<= 1;
+					form.active = true;
+				}
+			}
+		}
+	}
+	
+	private long runRace(long N) {
+		if (pool == null) {
+			return race(N, 0, 1, gcdEngine);
+		}
+		result = 0;
+		List<Worker> workers = new ArrayList<Worker>(numberOfThreads);
+		for (int t=0; t<numberOfThreads; t++) {
+			workers.add(new Worker(N, t));
+		}
+		pool.invokeAll(workers);
+		return result > 1 ? result : 1;
+	}
+	
+	/**
+	 * Set up the expansion of kN.
+	 * @param form
+	 * @param N
+	 * @return a factor of N if kN is a square that reveals one, 0 otherwise
+	 */
+	private long initialize(Form form, long N) {
+		final long k = form.k;
+		form.active = false;
+		form.floorSqrtkN = 0; // marks unusable forms
+		if (Long.compareUnsigned(N, Long.divideUnsigned(-1L, k)) > 0) return 0; // kN would overflow 64 bit
+		
+		final long kN = k*N;
+		// floor(sqrt(kN)) of unsigned kN; the double estimate may be off by one
+		final double kNDouble = (kN >>> 1) * 2.0 + (kN & 1);
+		long s = (long) Math.sqrt(kNDouble);
+		while (Long.compareUnsigned(s*s, kN) > 0) s--;
+		while (Long.compareUnsigned((s+1)*(s+1), kN) <= 0) s++;
+		final long diff = kN - s*s;
+		if (diff == 0) {
+			// kN is square
+			long gcd = gcdEngine.gcd(N, s);
+			return (gcd>1 && gcd<N) ? gcd : 0;
+		}
+		form.kN = kN;
+		form.floorSqrtkN = s;
+		form.P = s;
+		form.Q = 1;
+		form.Qnext = diff;
+		form.i = 0;
+		form.maxI = (int) (ITERATIONS_MULT * Math.sqrt(Math.sqrt(kNDouble)));
+		form.active = true;
+		return 0;
+	}
+	
+	/**
+	 * Advance the forms firstForm, firstForm + formStep, ... in turns until a factor has been found or all of them are exhausted.
+	 * @param N
+	 * @param firstForm
+	 * @param formStep
+	 * @param gcdEngine
+	 * @return factor of N, or 1 if none was found
+	 */
+	private long race(long N, int firstForm, int formStep, Gcd63 gcdEngine) {
+		boolean anyActive = true;
+		while (anyActive) {
+			anyActive = false;
+			for (int f=firstForm; f<forms.length; f+=formStep) {
+				Form form = forms[f];
+				if (!form.active) continue;
+				long factor = advance(form, N, gcdEngine);
+				if (factor > 1) {
+					if (DEBUG) LOG.debug("N=" + N + ": multiplier k=" + form.k + " found factor " + factor + " after " + form.i + " iterations");
+					return factor;
+				}
+				if (form.active) anyActive = true;
+			}
+			if (result > 1) return 1; // another thread has been faster
+		}
+		return 1;
+	}
+	
+	/**
+	 * Run SLICE_ITERATIONS iterations of the given form.
+	 * @param form
+	 * @param N
+	 * @param gcdEngine
+	 * @return factor of N, or 0 if none has been found yet
+	 */
+	private long advance(Form form, long N, Gcd63 gcdEngine) {
+		final long floorSqrtkN = form.floorSqrtkN;
+		long P = form.P, Q = form.Q, Qnext = form.Qnext;
+		int i = form.i;
+		final int end = Math.min(i + SLICE_ITERATIONS, form.maxI);
+		long factor = 0;
+		while (i < end) {
+			// compute next values
+			final long P_im1 = P;
+			final long Q_im1 = Q;
+			Q = Qnext;
+			final long b = (floorSqrtkN + P_im1)/Q; // floor(rational result)
+			P = b*Q - P_im1;
+			Qnext = Q_im1 + b*(P_im1-P);
+			i++;
+			// [McMath 2004] points out that we have to look for a square Q_i at some even i.
+			// Here we test Q_i+1, so we have to look for square Q_i+1 at odd i!
+			if ((i&1)==1) {
+				final long QnextSqrt = (long) Math.sqrt(Qnext);
+				if (QnextSqrt*QnextSqrt == Qnext) {
+					factor = reverseIteration(form, N, P, QnextSqrt, gcdEngine);
+					if (factor > 1) break; // otherwise continue with this form
+				}
+			}
+		}
+		form.P = P;
+		form.Q = Q;
+		form.Qnext = Qnext;
+		form.i = i;
+		if (i >= form.maxI) form.active = false;
+		return factor;
+	}
+	
+	private long reverseIteration(Form form, long N, long found_P, long found_Q_sqrt, Gcd63 gcdEngine) {
+		final long floorSqrtkN = form.floorSqrtkN;
+		// initialization for second iteration step
+		long b_i = (floorSqrtkN-found_P)/found_Q_sqrt; // floor(rational result)
+		long P_i = b_i*found_Q_sqrt + found_P;
+		long Q_i = found_Q_sqrt;
+		// P_i <= floor(sqrt(kN)), so P_i^2 <= kN < 2^64 can be computed without overflow
+		long Q_ip1 = Long.divideUnsigned(form.kN - P_i*P_i, found_Q_sqrt);
+		
+		// second iteration step
+		long P_im1, Q_im1;
+		final int maxI = form.maxI;
+		int i = 0;
+		do {
+			// exit ?
+			if (++i==maxI) return 0;
+			// keep values from last round
+			P_im1 = P_i;
+			Q_im1 = Q_i;
+			Q_i = Q_ip1;
+			// compute next values
+			b_i = (floorSqrtkN+P_im1)/Q_i; // floor(rational result)
+			P_i = b_i*Q_i - P_im1;
+			Q_ip1 = Q_im1 + b_i*(P_im1-P_i);
+		} while (P_i != P_im1);
+		
+		// result
+		long gcd = gcdEngine.gcd(N, P_i);
+		return (gcd>1 && gcd<N) ? gcd : 0;
+	}
+	
+	/**
+	 * Stop the worker threads, if there are any. The algorithm can not be used anymore afterwards.
+	 */
+	public void shutdown() {
+		if (pool != null) pool.shutdown();
+	}
+	
+	/**
+	 * Compare SquFoF63Race single-threaded and parallel with SquFoF63 and Hart_TDiv_Race on hard semiprimes.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		int threads = Math.max(2, ConfigUtil.NUMBER_OF_PROCESSORS);
+		SquFoF63Race race = new SquFoF63Race();
+		SquFoF63Race parallelRace = new SquFoF63Race(DEFAULT_MULTIPLIERS, threads);
+		SquFoF63 squfof63 = new SquFoF63();
+		Hart_TDiv_Race hart = new Hart_TDiv_Race();
+		Random rng = new Random(19);
+		final int COUNT = 1000;
+		for (int round=0; round<2; round++) { // the first round is warmup
+			for (int bits=42; bits<=62; bits+=4) {
+				long[] testNumbers = new long[COUNT];
+				for (int i=0; i<COUNT; i++) {
+					testNumbers[i] = BigInteger.probablePrime(bits/2, rng).longValue() * BigInteger.probablePrime(bits - bits/2, rng).longValue();
+				}
+				String report = bits + " bit:";
+				FactorAlgorithm[] algorithms = new FactorAlgorithm[] {hart, squfof63, race, parallelRace};
+				for (FactorAlgorithm algorithm : algorithms) {
+					int failures = 0;
+					long maxDuration = 0;
+					long t0 = System.nanoTime();
+					for (long N : testNumbers) {
+						long s0 = System.nanoTime();
+						long factor = algorithm.findSingleFactor(BigInteger.valueOf(N)).longValue();
+						long duration = System.nanoTime() - s0;
+						if (duration > maxDuration) maxDuration = duration;
+						if (factor <= 1 || factor >= N || N % factor != 0) failures++;
+					}
+					long t1 = System.nanoTime();
+					report += " " + algorithm.getName() + " " + (t1-t0)/(1000*COUNT) + "us (max " + maxDuration/1000 + "us, " + failures + " fails),";
+				}
+				LOG.info(report);
+			}
+		}
+		parallelRace.shutdown();
+	}
+}
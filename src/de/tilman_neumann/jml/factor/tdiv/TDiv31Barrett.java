@@ -18,7 +18,6 @@ import java.math.BigInteger;
 import org.apache.log4j.Logger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
-import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
 import de.tilman_neumann.util.SortedMultiset;
 import de.tilman_neumann.util.SortedMultiset_BottomUp;
 
@@ -36,19 +35,13 @@ public class TDiv31Barrett extends FactorAlgorithm {
 	@SuppressWarnings("unused")
 	private static final Logger LOG = Logger.getLogger(TDiv31Barrett.class);
 
-	private AutoExpandingPrimesArray SMALL_PRIMES = AutoExpandingPrimesArray.get();	// "static" would be slightly slower
-
 	private int[] primes;
 	private long[] pinv;
 	
 	public TDiv31Barrett() {
-		primes = new int[NUM_PRIMES_FOR_31_BIT_TDIV];
-		pinv = new long[NUM_PRIMES_FOR_31_BIT_TDIV];
-		for (int i=0; i<NUM_PRIMES_FOR_31_BIT_TDIV; i++) {
-			int p = SMALL_PRIMES.getPrime(i);
-			primes[i] = p;
-			pinv[i] = (1L<<32)/p;
-		}
+		TDivTables tables = TDivTables.get(NUM_PRIMES_FOR_31_BIT_TDIV);
+		primes = tables.getPrimes();
+		pinv = tables.getBarrettInverses();
 	}
 	
 	@Override
@@ -16,7 +16,6 @@ package de.tilman_neumann.jml.factor.tdiv;
 import java.math.BigInteger;
 
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
-import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
 import de.tilman_neumann.util.SortedMultiset;
 import de.tilman_neumann.util.SortedMultiset_BottomUp;
 
@@ -36,8 +35,6 @@ import de.tilman_neumann.util.SortedMultiset_BottomUp;
  */
 public class TDiv31Inverse extends FactorAlgorithm {
 	
-	private AutoExpandingPrimesArray SMALL_PRIMES = AutoExpandingPrimesArray.get();	// "static" would be slightly slower
-
 	// The allowed discriminator bit size is d <= 53 - bitLength(N/p), thus d<=23 would be safe
 	// for any integer N and p>=2. d=10 is the value that performs best, determined by experiment.
 	private static final double DISCRIMINATOR = 1.0/(1<<10);
@@ -46,13 +43,9 @@ public class TDiv31Inverse extends FactorAlgorithm {
 	private double[] reciprocals;
 	
 	public TDiv31Inverse() {
-		primes = new int[NUM_PRIMES_FOR_31_BIT_TDIV];
-		reciprocals = new double[NUM_PRIMES_FOR_31_BIT_TDIV];
-		for (int i=0; i<NUM_PRIMES_FOR_31_BIT_TDIV; i++) {
-			int p = SMALL_PRIMES.getPrime(i);
-			primes[i] = p;
-			reciprocals[i] = 1.0/p;
-		}
+		TDivTables tables = TDivTables.get(NUM_PRIMES_FOR_31_BIT_TDIV);
+		primes = tables.getPrimes();
+		reciprocals = tables.getReciprocals();
 	}
 	
 	@Override
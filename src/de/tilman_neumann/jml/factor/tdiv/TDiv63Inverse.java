@@ -21,7 +21,6 @@ import org.apache.log4j.Logger;
 import de.tilman_neumann.jml.factor.FactorAlgorithm;
 import de.tilman_neumann.jml.factor.squfof.SquFoF63;
 import de.tilman_neumann.jml.primes.bounds.PrimeCountUpperBounds;
-import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
 import de.tilman_neumann.util.ConfigUtil;
 import de.tilman_neumann.util.SortedMultiset;
 import de.tilman_neumann.util.SortedMultiset_BottomUp;
@@ -44,8 +43,6 @@ import de.tilman_neumann.util.SortedMultiset_BottomUp;
 public class TDiv63Inverse extends FactorAlgorithm {
 	private static final Logger LOG = Logger.getLogger(TDiv63Inverse.class);
 	
-	private static AutoExpandingPrimesArray SMALL_PRIMES = AutoExpandingPrimesArray.get();
-
 	private static final int DISCRIMINATOR_BITS = 10; // experimental result
 	private static final double DISCRIMINATOR = 1.0/(1<<DISCRIMINATOR_BITS);
 
@@ -61,13 +58,9 @@ public class TDiv63Inverse extends FactorAlgorithm {
 		this.factorLimit = factorLimit;
 		pLimit = factorLimit; // default if not set explicitly
 		primeCountBound = (int) PrimeCountUpperBounds.combinedUpperBound(factorLimit);
-		primes = new int[primeCountBound];
-		reciprocals = new double[primeCountBound];
-		for (int i=0; i<primeCountBound; i++) {
-			int p = SMALL_PRIMES.getPrime(i);
-			primes[i] = p;
-			reciprocals[i] = 1.0/p;
-		}
+		TDivTables tables = TDivTables.get(primeCountBound);
+		primes = tables.getPrimes();
+		reciprocals = tables.getReciprocals();
 	}
 	
 	@Override
@@ -0,0 +1,398 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.tdiv;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.base.Montgomery64;
+import de.tilman_neumann.jml.primes.bounds.PrimeCountUpperBounds;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Trial division of many N < 2^63 at once, returning the smallest prime factor of each N up to some limit.
+ * 
+ * In contrast to TDiv63Inverse, the loop over primes is the outer loop, and the inner loop runs over 8 lanes,
+ * each holding one N in a local variable. The divisibility tests of one prime against all lanes are independent
+ * and combined without branches, so the CPU can overlap them.
+ * 
+ * The divisibility test uses the inverse of p modulo 2^64 instead of the double reciprocal 1/p:
+ * For odd p, p | N <=> N * p^-1 (mod 2^64) <= floor((2^64-1)/p) (unsigned comparison), see Granlund, Montgomery:
+ * "Division by invariant integers using multiplication", chapter 9. This test needs no division,
+ * and it is exact for all N < 2^64. So, unlike TDiv63Inverse, we do not need slow long divisions for small p and big N.
+ * 
+ * Lanes that found a factor are set to N=1 and skipped. Because most N have some very small factor,
+ * the first primes are tested in a scalar loop, and only the N that survive it enter the lanes.
+ * The remaining primes are processed in stages, and the lanes are refilled with the survivors after each stage.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author agent
+ */
+public class TDiv63InverseBatch {
+	private static final Logger LOG = Logger.getLogger(TDiv63InverseBatch.class);
+
+	/** number of N tested in parallel; the lane loop is unrolled by hand, so this must not be changed */
+	private static final int LANE_COUNT = 8;
+	
+	/** the numbers having a factor among the first primes are found by a scalar loop before they enter the lanes */
+	private static final int SMALL_PRIMES_END_INDEX = 32;
+	
+	/** each stage of primes is this factor bigger than the previous one */
+	private static final int STAGE_GROWTH = 8;
+	
+	/** the interval of prime indices after which lanes with p^2 > N are retired */
+	private static final int PRIME_CHECK_MASK = 63;
+
+	private final int factorLimit;
+	
+	private final int[] primes;
+	/** p^-1 (mod 2^64) */
+	private final long[] inverses;
+	/** floor((2^64-1)/p) */
+	private final long[] limits;
+	
+	/** the index of the first prime > pLimit */
+	private int pEndIndex;
+	
+	// lane state
+	private final long[] laneN = new long[LANE_COUNT];
+	private final int[] laneNumberIndex = new int[LANE_COUNT];
+	
+	// the numbers that passed the scalar test and the previous stages
+	private long[] workN = new long[0];
+	private int[] workNumberIndex = new int[0];
+	private int survivorCount;
+
+	/**
+	 * Create a batch trial division algorithm that is capable of finding factors up to factorLimit.
+	 * @param factorLimit
+	 */
+	public TDiv63InverseBatch(int factorLimit) {
+		this.factorLimit = factorLimit;
+		// one more prime than needed works as a sentinel for pEndIndex
+		int primeCount = (int) PrimeCountUpperBounds.combinedUpperBound(factorLimit) + 1;
+		primes = TDivTables.get(primeCount).getPrimes();
+		inverses = new long[primeCount];
+		limits = new long[primeCount];
+		for (int i=1; i<primeCount; i++) { // p=2 is treated separately
+			final long p = primes[i];
+			inverses[i] = Montgomery64.inverse(p);
+			limits[i] = Long.divideUnsigned(-1L, p);
+		}
+		setTestLimit(factorLimit);
+	}
+	
+	public String getName() {
+		return "TDiv63InverseBatch";
+	}
+
+	/**
+	 * Set the upper limit of primes to be tested in the next findSingleFactors() run.
+	 * pLimit must be smaller than the factorLimit parameter passed to the constructor.
+	 * @param pLimit
+	 * @throws IllegalStateException if pLimit > factorLimit
+	 */
+	public void setTestLimit(int pLimit) {
+		if (pLimit > factorLimit) {
+			throw new IllegalStateException("Requested pLimit=" + pLimit + " exceeds the factorLimit=" + factorLimit + " passed to the constructor!");
+		}
+		int i = 1;
+		while (i<inverses.length && primes[i]<=pLimit) i++;
+		pEndIndex = i;
+	}
+
+	/**
+	 * Find the smallest prime factor p <= pLimit of each of the given numbers.
+	 * @param numbers with |N| < 2^63
+	 * @return the smallest prime factor of each N, or 1 if N is prime or has no factor <= pLimit
+	 */
+	public int[] findSingleFactors(long[] numbers) {
+		int[] factors = new int[numbers.length];
+		findSingleFactors(numbers, numbers.length, factors);
+		return factors;
+	}
+	
+	/**
+	 * Find the smallest prime factor p <= pLimit of each of the first count numbers.
+	 * 
+	 * Numbers having a very small factor are identified by a scalar loop over the first primes.
+	 * The remaining numbers are tested in groups of LANE_COUNT numbers against stages of primes of geometrically growing size.
+	 * After each stage, the numbers still lacking a factor are compacted, so that the lanes stay mostly occupied.
+	 * 
+	 * @param numbers with |N| < 2^63
+	 * @param count the number of entries of numbers to process
+	 * @param factors the array to which the factors are written: the smallest prime factor of each N, or 1 if N is prime or has no factor <= pLimit
+	 */
+	public void findSingleFactors(long[] numbers, int count, int[] factors) {
+		if (workN.length < count) {
+			workN = new long[count];
+			workNumberIndex = new int[count];
+		}
+		final int smallPrimesEndIndex = Math.min(SMALL_PRIMES_END_INDEX, pEndIndex);
+		int workCount = 0;
+		for (int numberIndex=0; numberIndex<count; numberIndex++) {
+			long n = numbers[numberIndex];
+			if (n<0) n = -n; // sign does not matter
+			if (n<4) {
+				factors[numberIndex] = 1; // prime
+				continue;
+			}
+			if ((n&1)==0) {
+				factors[numberIndex] = 2; // N even
+				continue;
+			}
+			int i = 1;
+			for ( ; i<smallPrimesEndIndex; i++) {
+				final long t = n*inverses[i];
+				if ((t | (limits[i]-t)) >= 0) break;
+			}
+			if (i<smallPrimesEndIndex) {
+				factors[numberIndex] = n==primes[i] ? 1 : primes[i];
+			} else if (smallPrimesEndIndex==pEndIndex || n < primes[i]*(long)primes[i]) {
+				factors[numberIndex] = 1; // no factor <= pLimit, or N is prime
+			} else {
+				workN[workCount] = n;
+				workNumberIndex[workCount++] = numberIndex;
+			}
+		}
+		
+		for (int stageStart = smallPrimesEndIndex; stageStart < pEndIndex && workCount > 0; stageStart *= STAGE_GROWTH) {
+			final int stageEnd = Math.min(stageStart * STAGE_GROWTH, pEndIndex);
+			survivorCount = 0;
+			for (int w=0; w<workCount; w+=LANE_COUNT) {
+				processLanes(w, Math.min(LANE_COUNT, workCount-w), stageStart, stageEnd, factors);
+			}
+			workCount = survivorCount;
+		}
+		
+		// nothing found up to pLimit
+		for (int w=0; w<workCount; w++) {
+			factors[workNumberIndex[w]] = 1;
+		}
+	}
+	
+	/**
+	 * Test the given lanes against the primes with index in [startIndex, endIndex).
+	 * The N of all lanes are held in local variables; unused and finished lanes hold N=1, which is not divisible by any p.
+	 * The numbers without a factor are appended to the survivors at the front of the work arrays.
+	 * 
+	 * @param workStart index of the first number of the work arrays to process
+	 * @param live number of numbers to process
+	 * @param startIndex the index of the first prime to test
+	 * @param endIndex the index of the first prime not to test
+	 * @param factors
+	 */
+	private void processLanes(int workStart, int live, int startIndex, int endIndex, int[] factors) {
+		final int[] laneNumberIndex = this.laneNumberIndex;
+		for (int l=0; l<LANE_COUNT; l++) {
+			if (l < live) {
+				laneN[l] = workN[workStart+l];
+				laneNumberIndex[l] = workNumberIndex[workStart+l];
+			} else {
+				laneN[l] = 1;
+				laneNumberIndex[l] = -1;
+			}
+		}
+		long n0 = laneN[0];
+		long n1 = laneN[1];
+		long n2 = laneN[2];
+		long n3 = laneN[3];
+		long n4 = laneN[4];
+		long n5 = laneN[5];
+		long n6 = laneN[6];
+		long n7 = laneN[7];
+		
+		for (int i=startIndex; i<endIndex; i++) {
+			final long inv = inverses[i];
+			final long limit = limits[i];
+			// With t = N*p^-1 (mod 2^64) and limit < 2^63, p | N <=> t <= limit (unsigned) <=> (t | (limit-t)) >= 0 (signed).
+			// So some lane is divisible by p iff the "and" of all these terms is non-negative.
+			final long t0 = n0*inv;
+			final long t1 = n1*inv;
+			final long t2 = n2*inv;
+			final long t3 = n3*inv;
+			final long t4 = n4*inv;
+			final long t5 = n5*inv;
+			final long t6 = n6*inv;
+			final long t7 = n7*inv;
+			if (((t0 | (limit-t0)) & (t1 | (limit-t1)) & (t2 | (limit-t2)) & (t3 | (limit-t3)) &
+				 (t4 | (limit-t4)) & (t5 | (limit-t5)) & (t6 | (limit-t6)) & (t7 | (limit-t7))) >= 0) {
+				// p divides at least one N
+				if ((t0 | (limit-t0)) >= 0) {
+					factors[laneNumberIndex[0]] = n0==primes[i] ? 1 : primes[i];
+					n0 = 1;
+					live--;
+				}
+				if ((t1 | (limit-t1)) >= 0) {
+					factors[laneNumberIndex[1]] = n1==primes[i] ? 1 : primes[i];
+					n1 = 1;
+					live--;
+				}
+				if ((t2 | (limit-t2)) >= 0) {
+					factors[laneNumberIndex[2]] = n2==primes[i] ? 1 : primes[i];
+					n2 = 1;
+					live--;
+				}
+				if ((t3 | (limit-t3)) >= 0) {
+					factors[laneNumberIndex[3]] = n3==primes[i] ? 1 : primes[i];
+					n3 = 1;
+					live--;
+				}
+				if ((t4 | (limit-t4)) >= 0) {
+					factors[laneNumberIndex[4]] = n4==primes[i] ? 1 : primes[i];
+					n4 = 1;
+					live--;
+				}
+				if ((t5 | (limit-t5)) >= 0) {
+					factors[laneNumberIndex[5]] = n5==primes[i] ? 1 : primes[i];
+					n5 = 1;
+					live--;
+				}
+				if ((t6 | (limit-t6)) >= 0) {
+					factors[laneNumberIndex[6]] = n6==primes[i] ? 1 : primes[i];
+					n6 = 1;
+					live--;
+				}
+				if ((t7 | (limit-t7)) >= 0) {
+					factors[laneNumberIndex[7]] = n7==primes[i] ? 1 : primes[i];
+					n7 = 1;
+					live--;
+				}
+				if (live==0) return;
+			}
+			if ((i & PRIME_CHECK_MASK) == 0) {
+				// retire all lanes whose N is below the square of the next prime; those N are prime
+				final long p = primes[i+1];
+				final long pSquare = p*p;
+				if (n0 > 1 && n0 < pSquare) {
+					factors[laneNumberIndex[0]] = 1;
+					n0 = 1;
+					live--;
+				}
+				if (n1 > 1 && n1 < pSquare) {
+					factors[laneNumberIndex[1]] = 1;
+					n1 = 1;
+					live--;
+				}
+				if (n2 > 1 && n2 < pSquare) {
+					factors[laneNumberIndex[2]] = 1;
+					n2 = 1;
+					live--;
+				}
+				if (n3 > 1 && n3 < pSquare) {
+					factors[laneNumberIndex[3]] = 1;
+					n3 = 1;
+					live--;
+				}
+				if (n4 > 1 && n4 < pSquare) {
+					factors[laneNumberIndex[4]] = 1;
+					n4 = 1;
+					live--;
+				}
+				if (n5 > 1 && n5 < pSquare) {
+					factors[laneNumberIndex[5]] = 1;
+					n5 = 1;
+					live--;
+				}
+				if (n6 > 1 && n6 < pSquare) {
+					factors[laneNumberIndex[6]] = 1;
+					n6 = 1;
+					live--;
+				}
+				if (n7 > 1 && n7 < pSquare) {
+					factors[laneNumberIndex[7]] = 1;
+					n7 = 1;
+					live--;
+				}
+				if (live==0) return;
+			}
+		}
+		
+		// keep the numbers that have no factor yet for the next stage
+		if (n0 > 1) {
+			workN[survivorCount] = n0;
+			workNumberIndex[survivorCount++] = laneNumberIndex[0];
+		}
+		if (n1 > 1) {
+			workN[survivorCount] = n1;
+			workNumberIndex[survivorCount++] = laneNumberIndex[1];
+		}
+		if (n2 > 1) {
+			workN[survivorCount] = n2;
+			workNumberIndex[survivorCount++] = laneNumberIndex[2];
+		}
+		if (n3 > 1) {
+			workN[survivorCount] = n3;
+			workNumberIndex[survivorCount++] = laneNumberIndex[3];
+		}
+		if (n4 > 1) {
+			workN[survivorCount] = n4;
+			workNumberIndex[survivorCount++] = laneNumberIndex[4];
+		}
+		if (n5 > 1) {
+			workN[survivorCount] = n5;
+			workNumberIndex[survivorCount++] = laneNumberIndex[5];
+		}
+		if (n6 > 1) {
+			workN[survivorCount] = n6;
+			workNumberIndex[survivorCount++] = laneNumberIndex[6];
+		}
+		if (n7 > 1) {
+			workN[survivorCount] = n7;
+			workNumberIndex[survivorCount++] = laneNumberIndex[7];
+		}
+	}
+	
+	/**
+	 * Test correctness against TDiv63Inverse and compare performance.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		SecureRandom rng = new SecureRandom();
+		final int COUNT = 100000;
+		final int factorLimit = 1<<16;
+		TDiv63Inverse tdiv = new TDiv63Inverse(factorLimit + 1000); // the unrolled loop may test some primes beyond pLimit
+		tdiv.setTestLimit(factorLimit);
+		TDiv63InverseBatch tdivBatch = new TDiv63InverseBatch(factorLimit);
+		for (int bits=30; bits<=57; bits+=3) { // TDiv63Inverse needs bigger tables for N > 57 bit
+			// random odd numbers; their smallest factor is often small
+			long[] numbers = new long[COUNT];
+			for (int i=0; i<COUNT; i++) {
+				numbers[i] = new BigInteger(bits, rng).setBit(bits-1).longValue() | 1L;
+			}
+			long t0 = System.currentTimeMillis();
+			int[] factors1 = new int[COUNT];
+			for (int i=0; i<COUNT; i++) {
+				factors1[i] = tdiv.findSingleFactor(numbers[i]);
+			}
+			long t1 = System.currentTimeMillis();
+			int[] factors2 = tdivBatch.findSingleFactors(numbers);
+			long t2 = System.currentTimeMillis();
+			int failures = 0;
+			for (int i=0; i<COUNT; i++) {
+				// TDiv63Inverse returns N itself if N is a prime < factorLimit, and may find factors slightly above pLimit
+				long f1 = (factors1[i] == numbers[i] || factors1[i] > factorLimit) ? 1 : factors1[i];
+				if (f1 != factors2[i]) {
+					if (failures < 10) LOG.error("N=" + numbers[i] + ": TDiv63Inverse found " + factors1[i] + ", TDiv63InverseBatch found " + factors2[i]);
+					failures++;
+				}
+			}
+			LOG.info(bits + " bit: TDiv63Inverse took " + (t1-t0) + "ms, TDiv63InverseBatch took " + (t2-t1) + "ms, failures = " + failures);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.factor.tdiv;
+
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.factor.base.TableFiles;
+import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Process-wide tables for trial division: the first primes, their reciprocals 1/p as doubles,
+ * and the Barrett constants floor(2^32/p).
+ * 
+ * There is a single table in the process, big enough for the biggest number of primes requested so far.
+ * All instances of all trial division algorithms share its arrays and use the prefix they requested,
+ * so the arrays may be longer than requested and must not be modified.
+ * 
+ * By default, the primes are taken from AutoExpandingPrimesArray, which has to sieve them in every new JVM.
+ * If the system property "jml.tablesDir" names a directory containing a tables file written by the main() method
+ * of this class, then all tables are read from a read-only memory mapping of that file instead.
+ * That saves the sieving at startup; the tables are still copied into Java arrays, because the trial division loops
+ * are faster on arrays than on buffers.
+ * 
+ * The tables file is written by an explicit build step:
+ * <code>java -Djml.tablesDir=&lt;dir&gt; de.tilman_neumann.jml.factor.tdiv.TDivTables [primeCount]</code>
+ * 
+ * @author agent
+ */
+public class TDivTables {
+	private static final Logger LOG = Logger.getLogger(TDivTables.class);
+	
+	private static final String FILE_NAME = "tdiv";
+	
+	/** file format: prime count, followed by the primes (int), the reciprocals (double) and the Barrett constants (long) */
+	private static final int FILE_VERSION = 1;
+
+	/** default number of primes written by the build step; enough for all tdiv instances in this library */
+	private static final int DEFAULT_FILE_PRIME_COUNT = 1<<21;
+	
+	/** the single table, or null if no tables have been requested yet */
+	private static TDivTables TABLES = null;
+
+	/** the mapped tables file; null if there is none or it has been found invalid */
+	private static ByteBuffer fileBuffer;
+	private static int filePrimeCount;
+	private static boolean fileChecked = false;
+	
+	private final int[] primes;
+	private final double[] reciprocals;
+	private final long[] barrettInverses;
+
+	private TDivTables(int[] primes, double[] reciprocals, long[] barrettInverses) {
+		this.primes = primes;
+		this.reciprocals = reciprocals;
+		this.barrettInverses = barrettInverses;
+	}
+	
+	/**
+	 * Get the tables for (at least) the first primeCount primes.
+	 * @param primeCount
+	 * @return shared tables
+	 */
+	public static synchronized TDivTables get(int primeCount) {
+		int oldCount = (TABLES != null) ? TABLES.primes.length : 0;
+		if (primeCount > oldCount) {
+			// grow the single table; the prefix we already have is copied, only the new entries are loaded or computed
+			TDivTables tables = new TDivTables(new int[primeCount], new double[primeCount], new long[primeCount]);
+			if (TABLES != null) {
+				System.arraycopy(TABLES.primes, 0, tables.primes, 0, oldCount);
+				System.arraycopy(TABLES.reciprocals, 0, tables.reciprocals, 0, oldCount);
+				System.arraycopy(TABLES.barrettInverses, 0, tables.barrettInverses, 0, oldCount);
+			}
+			if (!tables.load(oldCount)) tables.compute(oldCount);
+			TABLES = tables;
+		}
+		return TABLES;
+	}
+	
+	/**
+	 * @return the primes, starting with p_0 = 2; the array may be longer than requested
+	 */
+	public int[] getPrimes() {
+		return primes;
+	}
+
+	/**
+	 * @return reciprocals 1.0/p of the primes; the array may be longer than requested
+	 */
+	public double[] getReciprocals() {
+		return reciprocals;
+	}
+
+	/**
+	 * @return Barrett constants floor(2^32/p) of the primes; the array may be longer than requested
+	 */
+	public long[] getBarrettInverses() {
+		return barrettInverses;
+	}
+
+	/**
+	 * Compute the table entries from index start on.
+	 * @param start
+	 */
+	private void compute(int start) {
+		int primeCount = primes.length;
+		AutoExpandingPrimesArray smallPrimes = AutoExpandingPrimesArray.get().ensurePrimeCount(primeCount);
+		for (int i=start; i<primeCount; i++) {
+			int p = smallPrimes.getPrime(i);
+			primes[i] = p;
+			reciprocals[i] = 1.0/p;
+			barrettInverses[i] = (1L<<32)/p;
+		}
+	}
+	
+	/**
+	 * Read the table entries from index start on from the mapped tables file.
+	 * @param start
+	 * @return true if the entries have been read, false if there is no valid tables file or it contains too few primes
+	 */
+	private boolean load(int start) {
+		if (!fileChecked) {
+			fileChecked = true;
+			ByteBuffer buffer = TableFiles.map(FILE_NAME, FILE_VERSION);
+			if (buffer != null) {
+				int count = buffer.getInt();
+				if (count >= 0 && buffer.remaining() == 20L*count) {
+					fileBuffer = buffer.slice().order(buffer.order());
+					filePrimeCount = count;
+				} else {
+					LOG.warn("TDiv tables file has an invalid size -> ignore it");
+				}
+			}
+		}
+		int primeCount = primes.length;
+		if (fileBuffer == null || primeCount > filePrimeCount) return false;
+		
+		// only the pages of the requested entries are touched
+		int count = primeCount - start;
+		ByteBuffer buffer = fileBuffer.duplicate().order(fileBuffer.order());
+		buffer.position(4*start);
+		buffer.asIntBuffer().get(primes, start, count);
+		buffer.position(4*filePrimeCount + 8*start);
+		buffer.asDoubleBuffer().get(reciprocals, start, count);
+		buffer.position(12*filePrimeCount + 8*start);
+		buffer.asLongBuffer().get(barrettInverses, start, count);
+		return true;
+	}
+	
+	/**
+	 * Write the tables file for the given number of primes into the tables directory.
+	 * @param primeCount
+	 * @return true if the file has been written
+	 */
+	public static boolean writeFile(int primeCount) {
+		if (TableFiles.getTableFile(FILE_NAME) == null) {
+			LOG.error("No tables directory specified, use -D" + TableFiles.TABLES_DIR_PROPERTY + "=<dir>");
+			return false;
+		}
+		TDivTables tables = new TDivTables(new int[primeCount], new double[primeCount], new long[primeCount]);
+		tables.compute(0);
+		ByteBuffer buffer = TableFiles.allocate(FILE_VERSION, 4 + 20*primeCount);
+		buffer.putInt(primeCount);
+		int payloadStart = buffer.position();
+		buffer.asIntBuffer().put(tables.primes);
+		buffer.position(payloadStart + 4*primeCount);
+		buffer.asDoubleBuffer().put(tables.reciprocals);
+		buffer.position(payloadStart + 12*primeCount);
+		buffer.asLongBuffer().put(tables.barrettInverses);
+		return TableFiles.store(FILE_NAME, buffer);
+	}
+	
+	/**
+	 * Build step writing the tables file.
+	 * @param args optional number of primes to store
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		int primeCount = args.length > 0 ? Integer.parseInt(args[0].trim()) : DEFAULT_FILE_PRIME_COUNT;
+		long t0 = System.currentTimeMillis();
+		boolean success = writeFile(primeCount);
+		LOG.info((success ? "Wrote" : "Failed to write") + " tdiv tables for " + primeCount + " primes in " + (System.currentTimeMillis()-t0) + "ms");
+	}
+}
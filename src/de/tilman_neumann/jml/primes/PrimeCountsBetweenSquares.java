@@ -15,7 +15,8 @@ package de.tilman_neumann.jml.primes;
 
 import org.apache.log4j.Logger;
 
-import de.tilman_neumann.jml.primes.exact.SegmentedSieve;
+import de.tilman_neumann.jml.primes.exact.PrimeChunkCallback;
+import de.tilman_neumann.jml.primes.exact.SegmentedSieve30;
 import de.tilman_neumann.jml.primes.exact.SieveCallback;
 import de.tilman_neumann.util.ConfigUtil;
 
@@ -24,10 +25,10 @@ import de.tilman_neumann.util.ConfigUtil;
  *
  * @author Tilman Neumann
  */
-public class PrimeCountsBetweenSquares implements SieveCallback {
+public class PrimeCountsBetweenSquares implements SieveCallback, PrimeChunkCallback {
 	private static final Logger LOG = Logger.getLogger(PrimeCountsBetweenSquares.class);
 	
-	private SegmentedSieve sieve;
+	private SegmentedSieve30 sieve;
 	private long limit;
 	private int count = 0;
 
@@ -38,7 +39,7 @@ public class PrimeCountsBetweenSquares implements SieveCallback {
 
 	
 	public PrimeCountsBetweenSquares(long limit) {
-		sieve = new SegmentedSieve(this);
+		sieve = new SegmentedSieve30(this);
 		this.limit = limit;
 	}
 
@@ -64,6 +65,13 @@ public class PrimeCountsBetweenSquares implements SieveCallback {
 		}
 	}
 	
+	@Override
+	public void processPrimes(long[] primes, int primesCount) {
+		for (int i=0; i<primesCount; i++) {
+			processPrime(primes[i]);
+		}
+	}
+	
 	public static void main(String[] args) {
 		ConfigUtil.initProject();
 		new PrimeCountsBetweenSquares(100000000000L).run();
@@ -0,0 +1,103 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.certificates;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+
+import java.math.BigInteger;
+
+import de.tilman_neumann.jml.roots.Roots;
+
+/**
+ * Elliptic curve primality certificate (Goldwasser, Kilian, Atkin, Morain): Let N be coprime to 6, E: y^2 = x^3 + ax + b
+ * a non-singular curve modulo N, m = k*q with a prime q > (N^(1/4)+1)^2, and P a point on E such that kP != O and qkP = O,
+ * computed with the pseudo-curve arithmetic modulo N. Then N is prime.
+ * 
+ * The certificate also stores the CM discriminant D of the curve, which is not needed for the verification.
+ * 
+ * @see [Crandall, Pomerance: Prime Numbers - A Computational Perspective, Theorem 7.6.1]
+ * @see [Atkin, Morain: Elliptic curves and primality proving, 1993]
+ * 
+ * @author agent
+ */
+public class EcppCertificate extends PrimalityCertificate {
+	
+	final int D;
+	final BigInteger a, b;
+	final BigInteger m, q;
+	final BigInteger x, y;
+	final PrimalityCertificate qCertificate;
+	
+	/**
+	 * Full constructor.
+	 * @param N
+	 * @param D CM discriminant of the curve
+	 * @param a curve parameter
+	 * @param b curve parameter
+	 * @param m curve order
+	 * @param q prime divisor of m
+	 * @param x x-coordinate of the point
+	 * @param y y-coordinate of the point
+	 * @param qCertificate the primality certificate of q
+	 */
+	public EcppCertificate(BigInteger N, int D, BigInteger a, BigInteger b, BigInteger m, BigInteger q, BigInteger x, BigInteger y, PrimalityCertificate qCertificate) {
+		super(N);
+		this.D = D;
+		this.a = a;
+		this.b = b;
+		this.m = m;
+		this.q = q;
+		this.x = x;
+		this.y = y;
+		this.qCertificate = qCertificate;
+	}
+	
+	/**
+	 * @param N
+	 * @return the bound (floor(N^(1/4))+1)^2 that the prime q must exceed
+	 */
+	static BigInteger getMinimumQ(BigInteger N) {
+		final BigInteger r = Roots.ithRoot(N, 4)[0].add(I_1);
+		return r.multiply(r);
+	}
+	
+	@Override
+	public boolean verify() {
+		if (N.compareTo(I_1) <= 0 || !N.gcd(I_6).equals(I_1)) return false;
+		if (!qCertificate.getN().equals(q) || q.compareTo(getMinimumQ(N)) <= 0) return false;
+		final BigInteger[] kq = m.divideAndRemainder(q);
+		if (kq[1].signum() != 0) return false;
+		
+		final PseudoCurve curve = new PseudoCurve(a, N);
+		final BigInteger[] P = new BigInteger[] {x, y};
+		if (!curve.isNonSingular(b) || !curve.contains(P, b)) return false;
+		try {
+			final BigInteger[] kP = curve.multiply(P, kq[0]);
+			if (kP == null || curve.multiply(kP, q) != null) return false;
+		} catch (ArithmeticException e) {
+			return false; // N is composite
+		}
+		return qCertificate.verify();
+	}
+	
+	@Override
+	public PrimalityCertificate[] getSubCertificates() {
+		return new PrimalityCertificate[] {qCertificate};
+	}
+	
+	@Override
+	public String getStepDescription() {
+		return "N=" + N + ": ECPP, D=" + D + ", a=" + a + ", b=" + b + ", m=" + m + ", q=" + q + ", P=(" + x + ", " + y + ")";
+	}
+}
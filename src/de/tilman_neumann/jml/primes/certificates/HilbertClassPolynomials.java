@@ -0,0 +1,336 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.certificates;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.precision.Precision;
+import de.tilman_neumann.jml.precision.Scale;
+import de.tilman_neumann.jml.roots.SqrtReal;
+import de.tilman_neumann.jml.transcendental.Exp;
+import de.tilman_neumann.jml.transcendental.Pi;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Hilbert class polynomials H_D(x) = prod (x - j(tau)) of imaginary quadratic discriminants D, where tau runs over the roots
+ * (-b + sqrt(D))/(2a) of the reduced binary quadratic forms (a, b, c) of discriminant D.
+ * The roots of H_D modulo a prime N are the j-invariants of the curves with complex multiplication by the order of discriminant D.
+ * 
+ * The polynomials are computed from floating point approximations of the j(tau) with enough precision to round the coefficients
+ * to integers, using j = E_4^3 / Delta with the q-expansions of the Eisenstein series E_4 and the discriminant function Delta.
+ * Computed polynomials are cached.
+ * 
+ * @see [Cohen: A Course in Computational Algebraic Number Theory, 7.6]
+ * 
+ * @author agent
+ */
+public class HilbertClassPolynomials {
+	private static final Logger LOG = Logger.getLogger(HilbertClassPolynomials.class);
+	private static final boolean DEBUG = false;
+	
+	private static final ConcurrentHashMap<Integer, BigInteger[]> POLYNOMIALS = new ConcurrentHashMap<Integer, BigInteger[]>();
+	
+	private HilbertClassPolynomials() {
+		// static class
+	}
+	
+	/**
+	 * @param D negative discriminant
+	 * @return true if D is a fundamental discriminant
+	 */
+	public static boolean isFundamentalDiscriminant(int D) {
+		if (D >= -2) return false;
+		final int absD = -D;
+		if ((absD & 3) == 3) return isSquareFree(absD); // D == 1 (mod 4)
+		if ((absD & 3) != 0) return false;
+		final int m = absD >> 2; // D/4 == 2 or 3 (mod 4) <=> m == 2 or 1 (mod 4)
+		return ((m & 3) == 1 || (m & 3) == 2) && isSquareFree(m);
+	}
+	
+	private static boolean isSquareFree(int n) {
+		for (int p=2; p*p <= n; p++) {
+			if (n % (p*p) == 0) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @param D negative discriminant
+	 * @return the reduced primitive forms (a, b, c) of discriminant D = b^2 - 4ac, with |b| <= a <= c and b >= 0 if |b| = a or a = c
+	 */
+	public static List<int[]> getReducedForms(int D) {
+		List<int[]> forms = new ArrayList<int[]>();
+		final int absD = -D;
+		for (int b = absD & 1; 3*b*b <= absD; b += 2) {
+			final int ac = (b*b + absD) >> 2;
+			for (int a = Math.max(b, 1); a*a <= ac; a++) {
+				if (ac % a != 0) continue;
+				final int c = ac / a;
+				if (gcd(gcd(a, b), c) != 1) continue;
+				forms.add(new int[] {a, b, c});
+				if (b > 0 && b < a && a < c) forms.add(new int[] {a, -b, c});
+			}
+		}
+		return forms;
+	}
+	
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+	
+	/**
+	 * @param D negative discriminant
+	 * @return the class number h(D)
+	 */
+	public static int getClassNumber(int D) {
+		return getReducedForms(D).size();
+	}
+	
+	/**
+	 * @param maxClassNumber
+	 * @param maxAbsD
+	 * @return the fundamental discriminants D with |D| <= maxAbsD and h(D) <= maxClassNumber, sorted by class number and then by |D|
+	 */
+	public static List<Integer> getDiscriminants(int maxClassNumber, int maxAbsD) {
+		List<Integer> discriminants = new ArrayList<Integer>();
+		final int[] classNumbers = new int[maxAbsD+1];
+		for (int absD = 3; absD <= maxAbsD; absD++) {
+			if (!isFundamentalDiscriminant(-absD)) continue;
+			classNumbers[absD] = getClassNumber(-absD);
+			if (classNumbers[absD] <= maxClassNumber) discriminants.add(-absD);
+		}
+		Collections.sort(discriminants, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer D1, Integer D2) {
+				final int h1 = classNumbers[-D1], h2 = classNumbers[-D2];
+				return h1 != h2 ? h1 - h2 : D2 - D1;
+			}
+		});
+		return discriminants;
+	}
+	
+	/**
+	 * @param D negative fundamental discriminant
+	 * @return the coefficients of H_D, lowest degree first; H_D is monic
+	 */
+	public static BigInteger[] getPolynomial(int D) {
+		BigInteger[] H = POLYNOMIALS.get(D);
+		if (H == null) {
+			H = computePolynomial(D);
+			POLYNOMIALS.put(D, H);
+		}
+		return H;
+	}
+	
+	private static BigInteger[] computePolynomial(int D) {
+		final List<int[]> forms = getReducedForms(D);
+		// log10 |j(tau)| ~ pi*sqrt|D|/a / ln(10); the coefficients are bounded by the product of (1 + |j|)
+		double magnitude = 0;
+		for (int[] form : forms) {
+			magnitude += Math.PI * Math.sqrt(-D) / form[0] / Math.log(10) + 1;
+		}
+		for (int digits = (int) magnitude + 30; ; digits <<= 1) {
+			BigInteger[] H = computePolynomial(D, forms, digits);
+			if (H != null) {
+				if (DEBUG) LOG.debug("H_" + D + " computed with " + digits + " digits: degree " + (H.length-1));
+				return H;
+			}
+		}
+	}
+	
+	/**
+	 * @param D
+	 * @param forms the reduced forms of discriminant D
+	 * @param digits precision in decimal digits
+	 * @return the coefficients of H_D, or null if the precision was not sufficient to round them to integers
+	 */
+	private static BigInteger[] computePolynomial(int D, List<int[]> forms, int digits) {
+		final MathContext mc = new MathContext(digits, RoundingMode.HALF_EVEN);
+		final BigDecimal pi = Pi.pi(Scale.valueOf(digits + 10));
+		final BigDecimal sqrtAbsD = SqrtReal.sqrt(BigDecimal.valueOf(-D), Scale.valueOf(digits + 10));
+		
+		// the product of (x - j(tau)), with complex coefficients stored as {re, im}, lowest degree first
+		BigDecimal[][] product = new BigDecimal[][] {{BigDecimal.ONE, BigDecimal.ZERO}};
+		for (int[] form : forms) {
+			final BigDecimal[] j = j(form[0], form[1], pi, sqrtAbsD, mc);
+			BigDecimal[][] newProduct = new BigDecimal[product.length + 1][];
+			newProduct[product.length] = product[product.length - 1];
+			for (int i = product.length - 1; i >= 0; i--) {
+				final BigDecimal[] jTimesCoeff = multiply(j, product[i], mc);
+				final BigDecimal[] lower = i > 0 ? product[i-1] : new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO};
+				newProduct[i] = new BigDecimal[] {lower[0].subtract(jTimesCoeff[0], mc), lower[1].subtract(jTimesCoeff[1], mc)};
+			}
+			product = newProduct;
+		}
+		
+		// round to integers; the imaginary parts cancel because the forms (a, b, c) and (a, -b, c) give conjugate roots
+		final BigDecimal maxError = new BigDecimal("0.01");
+		BigInteger[] H = new BigInteger[product.length];
+		for (int i = 0; i < product.length; i++) {
+			final BigDecimal re = product[i][0];
+			final BigDecimal rounded = re.setScale(0, RoundingMode.HALF_EVEN);
+			if (re.subtract(rounded).abs().compareTo(maxError) > 0 || product[i][1].abs().compareTo(maxError) > 0) return null;
+			H[i] = rounded.toBigIntegerExact();
+		}
+		return H;
+	}
+	
+	/**
+	 * Compute j(tau) for tau = (-b + sqrt(D))/(2a), using q = exp(2*pi*i*tau) = exp(-pi*sqrt|D|/a) * (cos(pi*b/a) - i*sin(pi*b/a)),
+	 * E_4 = 1 + 240 * sum sigma_3(n) q^n, Delta = q * (sum_k (-1)^k q^(k(3k-1)/2))^24 and j = E_4^3 / Delta.
+	 * @param a
+	 * @param b
+	 * @param pi
+	 * @param sqrtAbsD
+	 * @param mc
+	 * @return {re(j), im(j)}
+	 */
+	private static BigDecimal[] j(int a, int b, BigDecimal pi, BigDecimal sqrtAbsD, MathContext mc) {
+		final int digits = mc.getPrecision();
+		final BigDecimal x = pi.multiply(sqrtAbsD, mc).divide(BigDecimal.valueOf(a), mc);
+		final BigDecimal r = BigDecimal.ONE.divide(Exp.exp(x, Precision.valueOf(digits + 10)), mc);
+		final BigDecimal theta = pi.multiply(BigDecimal.valueOf(b), mc).divide(BigDecimal.valueOf(a), mc);
+		final BigDecimal[] q = new BigDecimal[] {r.multiply(cos(theta, mc), mc), r.multiply(sin(theta, mc), mc).negate()};
+		
+		// |q|^n < 10^-(digits+10) is negligible
+		final int nMax = (int) ((digits + 10 + 5) * Math.log(10) / x.doubleValue()) + 2;
+		BigDecimal[][] qPowers = new BigDecimal[nMax+1][];
+		qPowers[0] = new BigDecimal[] {BigDecimal.ONE, BigDecimal.ZERO};
+		for (int n = 1; n <= nMax; n++) {
+			qPowers[n] = multiply(qPowers[n-1], q, mc);
+		}
+		
+		BigDecimal[] E4 = new BigDecimal[] {BigDecimal.ONE, BigDecimal.ZERO};
+		for (int n = 1; n <= nMax; n++) {
+			final BigDecimal coefficient = BigDecimal.valueOf(240 * sigma3(n));
+			E4 = new BigDecimal[] {E4[0].add(qPowers[n][0].multiply(coefficient), mc), E4[1].add(qPowers[n][1].multiply(coefficient), mc)};
+		}
+		
+		// Euler's pentagonal number theorem: prod (1 - q^n) = sum_k (-1)^k q^(k(3k-1)/2), k = 0, 1, -1, 2, -2, ...
+		BigDecimal[] eta = new BigDecimal[] {BigDecimal.ONE, BigDecimal.ZERO};
+		for (int k = 1; ; k++) {
+			final int e1 = k*(3*k-1)/2, e2 = k*(3*k+1)/2;
+			if (e1 > nMax) break;
+			final int sign = (k & 1) == 0 ? 1 : -1;
+			eta = addSigned(eta, qPowers[e1], sign, mc);
+			if (e2 <= nMax) eta = addSigned(eta, qPowers[e2], sign, mc);
+		}
+		BigDecimal[] eta24 = eta;
+		for (int i = 0; i < 3; i++) {
+			eta24 = multiply(eta24, eta24, mc); // eta^8
+		}
+		eta24 = multiply(eta24, multiply(eta24, eta24, mc), mc); // eta^24
+		final BigDecimal[] delta = multiply(q, eta24, mc);
+		final BigDecimal[] E4cube = multiply(E4, multiply(E4, E4, mc), mc);
+		return divide(E4cube, delta, mc);
+	}
+	
+	private static long sigma3(int n) {
+		long sum = 0;
+		for (int d = 1; d*d <= n; d++) {
+			if (n % d != 0) continue;
+			sum += (long) d*d*d;
+			final int e = n / d;
+			if (e != d) sum += (long) e*e*e;
+		}
+		return sum;
+	}
+	
+	private static BigDecimal[] addSigned(BigDecimal[] x, BigDecimal[] y, int sign, MathContext mc) {
+		return sign > 0 ? new BigDecimal[] {x[0].add(y[0], mc), x[1].add(y[1], mc)} : new BigDecimal[] {x[0].subtract(y[0], mc), x[1].subtract(y[1], mc)};
+	}
+	
+	private static BigDecimal[] multiply(BigDecimal[] x, BigDecimal[] y, MathContext mc) {
+		final BigDecimal re = x[0].multiply(y[0]).subtract(x[1].multiply(y[1]), mc);
+		final BigDecimal im = x[0].multiply(y[1]).add(x[1].multiply(y[0]), mc);
+		return new BigDecimal[] {re, im};
+	}
+	
+	private static BigDecimal[] divide(BigDecimal[] x, BigDecimal[] y, MathContext mc) {
+		final BigDecimal norm = y[0].multiply(y[0]).add(y[1].multiply(y[1]), mc);
+		final BigDecimal re = x[0].multiply(y[0]).add(x[1].multiply(y[1])).divide(norm, mc);
+		final BigDecimal im = x[1].multiply(y[0]).subtract(x[0].multiply(y[1])).divide(norm, mc);
+		return new BigDecimal[] {re, im};
+	}
+	
+	/**
+	 * @param theta |theta| <= pi
+	 * @param mc
+	 * @return cos(theta) by the Taylor series
+	 */
+	private static BigDecimal cos(BigDecimal theta, MathContext mc) {
+		return taylorSeries(theta, 0, mc);
+	}
+	
+	/**
+	 * @param theta |theta| <= pi
+	 * @param mc
+	 * @return sin(theta) by the Taylor series
+	 */
+	private static BigDecimal sin(BigDecimal theta, MathContext mc) {
+		return taylorSeries(theta, 1, mc);
+	}
+	
+	private static BigDecimal taylorSeries(BigDecimal theta, int firstExponent, MathContext mc) {
+		if (theta.signum() == 0) return firstExponent == 0 ? BigDecimal.ONE : BigDecimal.ZERO;
+		final BigDecimal epsilon = BigDecimal.ONE.movePointLeft(mc.getPrecision() + 5);
+		final BigDecimal thetaSquare = theta.multiply(theta, mc);
+		BigDecimal term = firstExponent == 0 ? BigDecimal.ONE : theta;
+		BigDecimal sum = term;
+		for (int n = firstExponent + 2; term.abs().compareTo(epsilon) > 0; n += 2) {
+			term = term.multiply(thetaSquare, mc).divide(BigDecimal.valueOf(-(long)n*(n-1)), mc);
+			sum = sum.add(term, mc);
+		}
+		return sum;
+	}
+	
+	/**
+	 * Print the discriminants of small class numbers and some class polynomials.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		List<Integer> discriminants = getDiscriminants(4, 500);
+		LOG.info(discriminants.size() + " discriminants with h <= 4 and |D| <= 500: " + discriminants);
+		for (int D : new int[] {-3, -4, -7, -8, -11, -19, -43, -67, -163, -15, -20, -23, -56}) {
+			BigInteger[] H = getPolynomial(D);
+			StringBuilder builder = new StringBuilder();
+			for (int i = H.length-1; i >= 0; i--) {
+				builder.append(i == H.length-1 ? "" : " + ").append(H[i]).append(i > 0 ? "*x^" + i : "");
+			}
+			LOG.info("H_" + D + " = " + builder);
+		}
+		long t0 = System.currentTimeMillis();
+		List<Integer> bigDiscriminants = getDiscriminants(8, 10000);
+		for (int D : bigDiscriminants) {
+			getPolynomial(D);
+		}
+		LOG.info("Computing the class polynomials of " + bigDiscriminants.size() + " discriminants with h <= 8 and |D| <= 10000 took " + (System.currentTimeMillis() - t0) + " ms");
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.certificates;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+
+import java.math.BigInteger;
+
+/**
+ * Pocklington's N-1 certificate: Let N-1 = F*R, where the complete factorization of F is known and F > sqrt(N).
+ * If for each prime q dividing F there is a witness a with a^(N-1) == 1 (mod N) and gcd(a^((N-1)/q) - 1, N) = 1,
+ * then each prime p dividing N satisfies p == 1 (mod F), hence p > sqrt(N), and N is prime.
+ * 
+ * @see [Crandall, Pomerance: Prime Numbers - A Computational Perspective, Theorem 4.1.3]
+ * 
+ * @author agent
+ */
+public class PocklingtonCertificate extends PrimalityCertificate {
+	
+	private final BigInteger[] factors;
+	private final int[] exponents;
+	private final BigInteger[] witnesses;
+	private final PrimalityCertificate[] factorCertificates;
+	
+	/**
+	 * Full constructor.
+	 * @param N
+	 * @param factors the distinct prime factors q_i of F
+	 * @param exponents the exponents of q_i in F
+	 * @param witnesses the witnesses a_i for q_i
+	 * @param factorCertificates the primality certificates of q_i
+	 */
+	public PocklingtonCertificate(BigInteger N, BigInteger[] factors, int[] exponents, BigInteger[] witnesses, PrimalityCertificate[] factorCertificates) {
+		super(N);
+		this.factors = factors;
+		this.exponents = exponents;
+		this.witnesses = witnesses;
+		this.factorCertificates = factorCertificates;
+	}
+	
+	@Override
+	public boolean verify() {
+		if (N.compareTo(I_2) <= 0 || !N.testBit(0)) return false;
+		final BigInteger Nm1 = N.subtract(I_1);
+		BigInteger F = I_1;
+		for (int i=0; i<factors.length; i++) {
+			final BigInteger q = factors[i];
+			if (exponents[i] < 1 || !factorCertificates[i].getN().equals(q)) return false;
+			F = F.multiply(q.pow(exponents[i]));
+			final BigInteger a = witnesses[i];
+			if (!a.modPow(Nm1, N).equals(I_1)) return false;
+			if (!a.modPow(Nm1.divide(q), N).subtract(I_1).gcd(N).equals(I_1)) return false;
+		}
+		if (Nm1.mod(F).signum() != 0 || F.multiply(F).compareTo(N) <= 0) return false;
+		
+		for (PrimalityCertificate factorCertificate : factorCertificates) {
+			if (!factorCertificate.verify()) return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public PrimalityCertificate[] getSubCertificates() {
+		return factorCertificates;
+	}
+	
+	@Override
+	public String getStepDescription() {
+		StringBuilder builder = new StringBuilder("N=" + N + ": Pocklington, N-1 = F*R with F =");
+		for (int i=0; i<factors.length; i++) {
+			builder.append(i==0 ? " " : " * ").append(factors[i]);
+			if (exponents[i] > 1) builder.append('^').append(exponents[i]);
+		}
+		builder.append(", witnesses =");
+		for (BigInteger a : witnesses) {
+			builder.append(' ').append(a);
+		}
+		return builder.toString();
+	}
+}
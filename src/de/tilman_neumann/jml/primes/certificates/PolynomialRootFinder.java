@@ -0,0 +1,172 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.certificates;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Root finding for polynomials that split into distinct linear factors modulo a (probable) prime N,
+ * using the equal-degree splitting of Cantor and Zassenhaus: For random d, gcd((x+d)^((N-1)/2) - 1, f)
+ * is a non-trivial factor of f with probability about 1/2.
+ * 
+ * Polynomials are arrays of coefficients in [0, N), lowest degree first.
+ * If a leading coefficient is not invertible modulo N, then an ArithmeticException is thrown, proving that N is composite.
+ * 
+ * @author agent
+ */
+class PolynomialRootFinder {
+	
+	private static final int MAX_SPLIT_ATTEMPTS = 100;
+	
+	private final BigInteger N;
+	private final Random rng;
+	
+	PolynomialRootFinder(BigInteger N, Random rng) {
+		this.N = N;
+		this.rng = rng;
+	}
+	
+	/**
+	 * Find one root of f modulo N.
+	 * @param f polynomial with integer coefficients, assumed to split into distinct linear factors modulo N
+	 * @return a root of f, or null if none was found
+	 * @throws ArithmeticException if N is found to be composite
+	 */
+	BigInteger findRoot(BigInteger[] f) {
+		BigInteger[] g = makeMonic(reduce(f));
+		final BigInteger exponent = N.shiftRight(1); // (N-1)/2
+		int attempts = 0;
+		while (g.length > 2) {
+			if (++attempts > MAX_SPLIT_ATTEMPTS) return null;
+			final BigInteger d = new BigInteger(N.bitLength() + 8, rng).mod(N);
+			BigInteger[] h = powMod(new BigInteger[] {d, I_1}, exponent, g);
+			h = h.clone();
+			h[0] = h[0].subtract(I_1).mod(N);
+			h = trim(h);
+			final BigInteger[] factor = gcd(g, h);
+			if (factor.length > 1 && factor.length < g.length) {
+				// continue with the smaller factor
+				final BigInteger[] cofactor = divide(g, factor);
+				g = factor.length <= cofactor.length ? factor : cofactor;
+			}
+		}
+		if (g.length != 2) return null;
+		return g[0].negate().mod(N); // g = x + g0
+	}
+	
+	private BigInteger[] reduce(BigInteger[] f) {
+		BigInteger[] r = new BigInteger[f.length];
+		for (int i=0; i<f.length; i++) {
+			r[i] = f[i].mod(N);
+		}
+		return trim(r);
+	}
+	
+	private static BigInteger[] trim(BigInteger[] f) {
+		int length = f.length;
+		while (length > 0 && f[length-1].signum() == 0) length--;
+		return length == f.length ? f : Arrays.copyOf(f, length);
+	}
+	
+	private BigInteger[] makeMonic(BigInteger[] f) {
+		final BigInteger leadInverse = f[f.length-1].modInverse(N);
+		BigInteger[] r = new BigInteger[f.length];
+		for (int i=0; i<f.length; i++) {
+			r[i] = f[i].multiply(leadInverse).mod(N);
+		}
+		return r;
+	}
+	
+	private BigInteger[] multiply(BigInteger[] f, BigInteger[] g) {
+		if (f.length == 0 || g.length == 0) return new BigInteger[0];
+		BigInteger[] r = new BigInteger[f.length + g.length - 1];
+		Arrays.fill(r, I_0);
+		for (int i=0; i<f.length; i++) {
+			for (int j=0; j<g.length; j++) {
+				r[i+j] = r[i+j].add(f[i].multiply(g[j]));
+			}
+		}
+		for (int i=0; i<r.length; i++) {
+			r[i] = r[i].mod(N);
+		}
+		return trim(r);
+	}
+	
+	/**
+	 * @param f
+	 * @param g monic
+	 * @return f mod g
+	 */
+	private BigInteger[] remainder(BigInteger[] f, BigInteger[] g) {
+		BigInteger[] r = f.clone();
+		final int dg = g.length - 1;
+		for (int i = r.length-1; i >= dg; i--) {
+			final BigInteger c = r[i];
+			if (c.signum() == 0) continue;
+			for (int j=0; j<=dg; j++) {
+				r[i-dg+j] = r[i-dg+j].subtract(c.multiply(g[j])).mod(N);
+			}
+		}
+		return trim(Arrays.copyOf(r, Math.min(r.length, dg)));
+	}
+	
+	/**
+	 * @param f
+	 * @param g monic divisor of f
+	 * @return f/g
+	 */
+	private BigInteger[] divide(BigInteger[] f, BigInteger[] g) {
+		BigInteger[] r = f.clone();
+		final int dg = g.length - 1;
+		BigInteger[] quotient = new BigInteger[f.length - dg];
+		for (int i = r.length-1; i >= dg; i--) {
+			final BigInteger c = r[i];
+			quotient[i-dg] = c;
+			if (c.signum() == 0) continue;
+			for (int j=0; j<=dg; j++) {
+				r[i-dg+j] = r[i-dg+j].subtract(c.multiply(g[j])).mod(N);
+			}
+		}
+		return quotient;
+	}
+	
+	private BigInteger[] powMod(BigInteger[] base, BigInteger exponent, BigInteger[] g) {
+		BigInteger[] result = new BigInteger[] {I_1};
+		for (int i = exponent.bitLength()-1; i >= 0; i--) {
+			result = remainder(multiply(result, result), g);
+			if (exponent.testBit(i)) result = remainder(multiply(result, base), g);
+		}
+		return result;
+	}
+	
+	/**
+	 * @param f monic
+	 * @param g
+	 * @return the monic gcd of f and g
+	 */
+	private BigInteger[] gcd(BigInteger[] f, BigInteger[] g) {
+		BigInteger[] a = f, b = g;
+		while (b.length > 0) {
+			b = makeMonic(b);
+			BigInteger[] r = remainder(a, b);
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.certificates;
+
+import java.math.BigInteger;
+
+/**
+ * A certificate for the primality of N that can be checked independently of the way it was found.
+ * 
+ * A certificate reduces the primality of N to the primality of some smaller numbers, which have certificates themselves,
+ * down to numbers < 2^64 whose primality is decided by the deterministic BPSW test.
+ * 
+ * @author agent
+ */
+abstract public class PrimalityCertificate {
+	
+	protected final BigInteger N;
+	
+	protected PrimalityCertificate(BigInteger N) {
+		this.N = N;
+	}
+	
+	/**
+	 * @return the number proven to be prime
+	 */
+	public BigInteger getN() {
+		return N;
+	}
+	
+	/**
+	 * Check this certificate, including all certificates it depends on.
+	 * @return true if the certificate proves that N is prime
+	 */
+	abstract public boolean verify();
+	
+	/**
+	 * @return the certificates of the smaller primes this certificate depends on
+	 */
+	abstract public PrimalityCertificate[] getSubCertificates();
+	
+	/**
+	 * @return a one-line description of this certificate step
+	 */
+	abstract public String getStepDescription();
+	
+	/**
+	 * @return the number of certificate steps down to the primes < 2^64, counting this one
+	 */
+	public int getDepth() {
+		int maxSubDepth = 0;
+		for (PrimalityCertificate subCertificate : getSubCertificates()) {
+			maxSubDepth = Math.max(maxSubDepth, subCertificate.getDepth());
+		}
+		return maxSubDepth + 1;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		appendTo(builder, "");
+		return builder.toString();
+	}
+	
+	private void appendTo(StringBuilder builder, String indent) {
+		builder.append(indent).append(getStepDescription()).append('\n');
+		for (PrimalityCertificate subCertificate : getSubCertificates()) {
+			subCertificate.appendTo(builder, indent + "  ");
+		}
+	}
+}
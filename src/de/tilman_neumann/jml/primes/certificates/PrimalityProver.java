@@ -0,0 +1,580 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.certificates;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.modular.JacobiSymbol;
+import de.tilman_neumann.jml.modular.ModularSqrt_BB;
+import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
+import de.tilman_neumann.jml.primes.probable.PrPTest;
+import de.tilman_neumann.jml.roots.SqrtExact;
+import de.tilman_neumann.jml.roots.SqrtInt;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Computes primality certificates for (probable) primes N.
+ * 
+ * Primes < 2^64 get a SmallPrimeCertificate. For bigger N, a Pocklington certificate is tried first,
+ * which works if N-1 has enough small factors or is a small multiple of a prime. Otherwise, the elliptic curve primality proving
+ * method of Atkin and Morain is used: For fundamental discriminants D of small class number, we solve 4N = u^2 + |D|v^2 by Cornacchia's algorithm,
+ * and look for a curve order m = N+1-t among the possible traces t that is a smooth number times a probable prime q > (N^(1/4)+1)^2.
+ * The discriminants are examined in batches by several threads. If the discriminants of class number <= 8 give no usable curve order,
+ * the search is repeated with class numbers <= 24. The curve with order m is constructed from a root of the Hilbert class polynomial of D,
+ * then the primality of q is proven recursively, preferring the smallest q.
+ * 
+ * All certificates found are cached, including the sub-certificates, so that factors that occur again are not proven twice.
+ * 
+ * @see [Atkin, Morain: Elliptic curves and primality proving, 1993]
+ * @see [Cohen: A Course in Computational Algebraic Number Theory, 9.2]
+ * 
+ * @author agent
+ */
+public class PrimalityProver {
+	private static final Logger LOG = Logger.getLogger(PrimalityProver.class);
+	private static final boolean DEBUG = false;
+	
+	/** all certificates found so far, by the proven prime */
+	private static final ConcurrentHashMap<BigInteger, PrimalityCertificate> CERTIFICATE_CACHE = new ConcurrentHashMap<BigInteger, PrimalityCertificate>();
+	
+	/** the CM discriminants, sorted by class number */
+	private static final List<Integer> DISCRIMINANTS = HilbertClassPolynomials.getDiscriminants(8, 10000);
+	
+	/**
+	 * More discriminants, tried only if no ECPP step was found with the first set.
+	 * At 512 bit, the first set misses about one N in ten.
+	 */
+	private static final class ExtendedDiscriminants {
+		static final List<Integer> LIST = getExtendedDiscriminants();
+		
+		private static List<Integer> getExtendedDiscriminants() {
+			List<Integer> discriminants = new ArrayList<Integer>(HilbertClassPolynomials.getDiscriminants(24, 100000));
+			discriminants.removeAll(DISCRIMINANTS);
+			return discriminants;
+		}
+	}
+	
+	/** odd primes < 2^16 for the removal of small factors */
+	private static final int[] SMALL_PRIMES;
+	
+	/** products of consecutive small primes < 2^31; PRODUCT_END[i] is the index of the first small prime not in PRODUCTS[i] */
+	private static final long[] PRODUCTS;
+	private static final int[] PRODUCT_END;
+	
+	static {
+		AutoExpandingPrimesArray primesArray = AutoExpandingPrimesArray.get().ensureLimit(1<<16);
+		SMALL_PRIMES = new int[primesArray.getInsertPosition(1<<16) - 1];
+		for (int i=0; i<SMALL_PRIMES.length; i++) {
+			SMALL_PRIMES[i] = primesArray.getPrime(i+1); // skip 2
+		}
+		ArrayList<Long> products = new ArrayList<Long>();
+		ArrayList<Integer> productEnds = new ArrayList<Integer>();
+		int i = 0;
+		while (i < SMALL_PRIMES.length) {
+			long product = SMALL_PRIMES[i++];
+			while (i < SMALL_PRIMES.length && product * SMALL_PRIMES[i] < (1L<<31)) {
+				product *= SMALL_PRIMES[i++];
+			}
+			products.add(product);
+			productEnds.add(i);
+		}
+		PRODUCTS = new long[products.size()];
+		PRODUCT_END = new int[products.size()];
+		for (int j=0; j<PRODUCTS.length; j++) {
+			PRODUCTS[j] = products.get(j);
+			PRODUCT_END[j] = productEnds.get(j);
+		}
+	}
+	
+	/** a curve order m = k*q, with k a product of small primes and q a probable prime */
+	private static final class Candidate {
+		final int D;
+		final BigInteger m, k, q;
+		
+		Candidate(int D, BigInteger m, BigInteger k, BigInteger q) {
+			this.D = D;
+			this.m = m;
+			this.k = k;
+			this.q = q;
+		}
+	}
+	
+	/** searches the candidates of one discriminant */
+	private static final class CandidateSearch implements Callable<List<Candidate>> {
+		private final BigInteger N;
+		private final int D;
+		private final BigInteger minQ;
+		
+		CandidateSearch(BigInteger N, int D, BigInteger minQ) {
+			this.N = N;
+			this.D = D;
+			this.minQ = minQ;
+		}
+		
+		@Override
+		public List<Candidate> call() {
+			return findCandidates(N, D, minQ);
+		}
+	}
+	
+	private final int numberOfThreads;
+	/** null if there is only one thread */
+	private final ForkJoinPool pool;
+	
+	/**
+	 * Full constructor.
+	 * @param numberOfThreads the number of threads searching for curves
+	 */
+	public PrimalityProver(int numberOfThreads) {
+		if (numberOfThreads < 1) throw new IllegalArgumentException("numberOfThreads must be positive, but is " + numberOfThreads);
+		this.numberOfThreads = numberOfThreads;
+		pool = numberOfThreads > 1 ? new ForkJoinPool(numberOfThreads) : null; // worker threads are daemons
+	}
+	
+	/**
+	 * @param p
+	 * @return the certificate of p if it has been proven prime before, otherwise null
+	 */
+	public static PrimalityCertificate getCachedCertificate(BigInteger p) {
+		return CERTIFICATE_CACHE.get(p);
+	}
+	
+	/**
+	 * Compute a primality certificate for N.
+	 * @param N
+	 * @return certificate, or null if N is not prime or no proof was found
+	 */
+	public PrimalityCertificate prove(BigInteger N) {
+		if (N.compareTo(I_2) < 0) return null;
+		PrimalityCertificate certificate = CERTIFICATE_CACHE.get(N);
+		if (certificate != null) return certificate;
+		
+		if (N.bitLength() <= 64) {
+			certificate = new SmallPrimeCertificate(N);
+			if (!certificate.verify()) return null;
+		} else {
+			if (!N.testBit(0) || !new PrPTest().isProbablePrime(N)) return null;
+			final Random rng = new Random(N.hashCode()); // reproducible certificates
+			certificate = provePocklington(N);
+			if (certificate == null) certificate = proveEcpp(N, rng);
+			if (certificate == null) return null;
+		}
+		CERTIFICATE_CACHE.put(N, certificate);
+		return certificate;
+	}
+	
+	/**
+	 * Try to prove N by Pocklington's theorem, if N-1 is a smooth number times at most one probable prime.
+	 * @param N probable prime > 2^64
+	 * @return certificate or null
+	 */
+	private PrimalityCertificate provePocklington(BigInteger N) {
+		final BigInteger Nm1 = N.subtract(I_1);
+		ArrayList<BigInteger> factors = new ArrayList<BigInteger>();
+		ArrayList<Integer> exponents = new ArrayList<Integer>();
+		final BigInteger R = removeSmallFactors(Nm1, factors, exponents);
+		final BigInteger F = Nm1.divide(R);
+		ArrayList<PrimalityCertificate> factorCertificates = new ArrayList<PrimalityCertificate>();
+		for (BigInteger q : factors) {
+			factorCertificates.add(new SmallPrimeCertificate(q));
+		}
+		if (F.multiply(F).compareTo(N) <= 0) {
+			// R must be a prime, too
+			if (R.equals(I_1) || !new PrPTest().isProbablePrime(R)) return null;
+			final PrimalityCertificate RCertificate = prove(R);
+			if (RCertificate == null) return null;
+			factors.add(R);
+			exponents.add(1);
+			factorCertificates.add(RCertificate);
+		}
+		
+		final int count = factors.size();
+		BigInteger[] witnesses = new BigInteger[count];
+		for (int i=0; i<count; i++) {
+			final BigInteger q = factors.get(i);
+			for (int a = 2; ; a++) {
+				if (a > 1000) return null;
+				final BigInteger aBig = BigInteger.valueOf(a);
+				if (!aBig.modPow(Nm1, N).equals(I_1)) return null; // N is composite
+				final BigInteger gcd = aBig.modPow(Nm1.divide(q), N).subtract(I_1).gcd(N);
+				if (gcd.equals(I_1)) {
+					witnesses[i] = aBig;
+					break;
+				}
+				if (!gcd.equals(N)) return null; // N is composite
+			}
+		}
+		final int[] exponentArray = new int[count];
+		for (int i=0; i<count; i++) {
+			exponentArray[i] = exponents.get(i);
+		}
+		if (DEBUG) LOG.debug("Pocklington certificate for N=" + N + " with " + count + " factors");
+		return new PocklingtonCertificate(N, factors.toArray(new BigInteger[count]), exponentArray, witnesses,
+				factorCertificates.toArray(new PrimalityCertificate[count]));
+	}
+	
+	/**
+	 * Prove N by the Atkin-Morain ECPP method.
+	 * @param N probable prime > 2^64
+	 * @param rng
+	 * @return certificate or null
+	 */
+	private PrimalityCertificate proveEcpp(BigInteger N, Random rng) {
+		PrimalityCertificate certificate = proveEcpp(N, DISCRIMINANTS, rng);
+		if (certificate == null) {
+			if (DEBUG) LOG.debug("Retry ECPP for N=" + N + " with class numbers <= 24");
+			certificate = proveEcpp(N, ExtendedDiscriminants.LIST, rng);
+		}
+		return certificate;
+	}
+	
+	/**
+	 * Prove N by the Atkin-Morain ECPP method using the given discriminants.
+	 * @param N probable prime > 2^64
+	 * @param discriminants
+	 * @param rng
+	 * @return certificate or null
+	 */
+	private PrimalityCertificate proveEcpp(BigInteger N, List<Integer> discriminants, Random rng) {
+		final BigInteger minQ = EcppCertificate.getMinimumQ(N);
+		final int batchSize = 8 * numberOfThreads;
+		for (int start = 0; start < discriminants.size(); start += batchSize) {
+			List<Candidate> candidates = searchCandidates(N, discriminants.subList(start, Math.min(start + batchSize, discriminants.size())), minQ);
+			// prefer the biggest descent
+			Collections.sort(candidates, new Comparator<Candidate>() {
+				@Override
+				public int compare(Candidate c1, Candidate c2) {
+					return c1.q.compareTo(c2.q);
+				}
+			});
+			for (Candidate candidate : candidates) {
+				final BigInteger[] curveAndPoint = findCurveAndPoint(N, candidate, rng);
+				if (curveAndPoint == null) continue;
+				final PrimalityCertificate qCertificate = prove(candidate.q);
+				if (qCertificate == null) continue;
+				if (DEBUG) LOG.debug("ECPP step N=" + N + " -> q=" + candidate.q + " with D=" + candidate.D);
+				return new EcppCertificate(N, candidate.D, curveAndPoint[0], curveAndPoint[1], candidate.m, candidate.q, curveAndPoint[2], curveAndPoint[3], qCertificate);
+			}
+		}
+		if (DEBUG) LOG.debug("No ECPP step found for N=" + N);
+		return null;
+	}
+	
+	private List<Candidate> searchCandidates(BigInteger N, List<Integer> discriminants, BigInteger minQ) {
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		if (pool == null) {
+			for (int D : discriminants) {
+				candidates.addAll(findCandidates(N, D, minQ));
+			}
+			return candidates;
+		}
+		List<CandidateSearch> searches = new ArrayList<CandidateSearch>(discriminants.size());
+		for (int D : discriminants) {
+			searches.add(new CandidateSearch(N, D, minQ));
+		}
+		for (Future<List<Candidate>> future : pool.invokeAll(searches)) {
+			try {
+				candidates.addAll(future.get());
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return candidates;
+	}
+	
+	/**
+	 * Find the curve orders m of discriminant D modulo N, that are a product of small primes and a probable prime q with minQ < q < N.
+	 * @param N
+	 * @param D
+	 * @param minQ
+	 * @return candidates
+	 */
+	private static List<Candidate> findCandidates(BigInteger N, int D, BigInteger minQ) {
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		if (new JacobiSymbol().jacobiSymbol(D, N) != 1) return candidates;
+		final BigInteger[] uv = cornacchia(N, D);
+		if (uv == null) return candidates;
+		final BigInteger u = uv[0], v = uv[1];
+		
+		// the possible traces t of curves with CM by D
+		ArrayList<BigInteger> traces = new ArrayList<BigInteger>();
+		traces.add(u);
+		if (D == -4) {
+			traces.add(v.shiftLeft(1));
+		} else if (D == -3) {
+			final BigInteger v3 = v.multiply(I_3);
+			traces.add(u.add(v3).shiftRight(1));
+			traces.add(u.subtract(v3).shiftRight(1));
+		}
+		final BigInteger Np1 = N.add(I_1);
+		final PrPTest prpTest = new PrPTest();
+		for (BigInteger t : traces) {
+			for (BigInteger m : new BigInteger[] {Np1.subtract(t), Np1.add(t)}) {
+				final BigInteger q = removeSmallFactors(m, null, null);
+				if (q.compareTo(minQ) > 0 && q.compareTo(N) < 0 && prpTest.isProbablePrime(q)) {
+					candidates.add(new Candidate(D, m, m.divide(q), q));
+				}
+			}
+		}
+		return candidates;
+	}
+	
+	/**
+	 * Solve 4N = u^2 + |D|v^2 by the modified Cornacchia algorithm.
+	 * @param N probable prime with Jacobi(D|N) = 1
+	 * @param D
+	 * @return {u, v}, or null if there is no solution
+	 */
+	private static BigInteger[] cornacchia(BigInteger N, int D) {
+		final BigInteger DModN = BigInteger.valueOf(D).mod(N);
+		BigInteger x0 = new ModularSqrt_BB().modularSqrt(DModN, N);
+		if (!x0.multiply(x0).subtract(DModN).mod(N).equals(I_0)) return null; // N is composite
+		if (x0.testBit(0) != ((D & 1) != 0)) x0 = N.subtract(x0); // x0 == D (mod 2)
+		
+		final BigInteger fourN = N.shiftLeft(2);
+		final BigInteger limit = SqrtInt.iSqrt(fourN)[0];
+		BigInteger a = N.shiftLeft(1), b = x0;
+		while (b.compareTo(limit) > 0) {
+			final BigInteger r = a.mod(b);
+			a = b;
+			b = r;
+		}
+		final BigInteger[] cr = fourN.subtract(b.multiply(b)).divideAndRemainder(BigInteger.valueOf(-D));
+		if (cr[1].signum() != 0) return null;
+		final BigInteger v = SqrtExact.exactSqrt(cr[0]);
+		return v == null ? null : new BigInteger[] {b, v};
+	}
+	
+	/**
+	 * Remove all factors < 2^16 from m.
+	 * @param m positive
+	 * @param factors if not null, the distinct small prime factors of m are added to this list
+	 * @param exponents if not null, their exponents are added to this list
+	 * @return the cofactor of m without small factors
+	 */
+	private static BigInteger removeSmallFactors(BigInteger m, List<BigInteger> factors, List<Integer> exponents) {
+		final int lsb = m.getLowestSetBit();
+		if (lsb > 0) {
+			m = m.shiftRight(lsb);
+			if (factors != null) {
+				factors.add(I_2);
+				exponents.add(lsb);
+			}
+		}
+		// residues modulo products of small primes, by a Horner scheme over the 32 bit words of m
+		final int[] words = toWords(m);
+		int j = 0;
+		for (int k=0; k<PRODUCTS.length; k++) {
+			final long product = PRODUCTS[k];
+			long r = 0;
+			for (int word : words) {
+				r = ((r << 32) | (word & 0xFFFFFFFFL)) % product;
+			}
+			for (; j<PRODUCT_END[k]; j++) {
+				final int p = SMALL_PRIMES[j];
+				if (r % p != 0) continue;
+				final BigInteger pBig = BigInteger.valueOf(p);
+				int exponent = 0;
+				while (true) {
+					final BigInteger[] qr = m.divideAndRemainder(pBig);
+					if (qr[1].signum() != 0) break;
+					m = qr[0];
+					exponent++;
+				}
+				if (factors != null) {
+					factors.add(pBig);
+					exponents.add(exponent);
+				}
+			}
+		}
+		return m;
+	}
+	
+	/**
+	 * @param N positive
+	 * @return the 32 bit words of N, most significant first
+	 */
+	private static int[] toWords(BigInteger N) {
+		final byte[] bytes = N.toByteArray(); // big-endian, maybe with a leading 0 byte
+		final int[] words = new int[(bytes.length + 3) >> 2];
+		for (int i=0; i<bytes.length; i++) {
+			final int pos = bytes.length - 1 - i;
+			words[words.length - 1 - (i>>2)] |= (bytes[pos] & 0xFF) << ((i&3) << 3);
+		}
+		return words;
+	}
+	
+	/**
+	 * Construct a curve modulo N with the order m of the candidate, and a point P on it with kP != O and qkP = O.
+	 * @param N
+	 * @param candidate
+	 * @param rng
+	 * @return {a, b, x, y}, or null if no curve was found
+	 */
+	private static BigInteger[] findCurveAndPoint(BigInteger N, Candidate candidate, Random rng) {
+		final JacobiSymbol jacobiEngine = new JacobiSymbol();
+		final ModularSqrt_BB sqrtEngine = new ModularSqrt_BB();
+		final int D = candidate.D;
+		try {
+			// the twists of the curves with j-invariant root of H_D
+			ArrayList<BigInteger[]> curves = new ArrayList<BigInteger[]>();
+			if (D == -3) {
+				// j=0: y^2 = x^3 + g^i, where g is neither a square nor a cube
+				final BigInteger g = findNonResidue(N, rng, true);
+				BigInteger b = I_1;
+				for (int i=0; i<6; i++) {
+					curves.add(new BigInteger[] {I_0, b});
+					b = b.multiply(g).mod(N);
+				}
+			} else if (D == -4) {
+				// j=1728: y^2 = x^3 + g^i*x, where g is not a square
+				final BigInteger g = findNonResidue(N, rng, false);
+				BigInteger a = I_1;
+				for (int i=0; i<4; i++) {
+					curves.add(new BigInteger[] {a, I_0});
+					a = a.multiply(g).mod(N);
+				}
+			} else {
+				final BigInteger j = new PolynomialRootFinder(N, rng).findRoot(HilbertClassPolynomials.getPolynomial(D));
+				if (j == null) return null;
+				// y^2 = x^3 + 3kx + 2k with k = j/(1728-j) has j-invariant j; the quadratic twist by c has a*c^2, b*c^3
+				final BigInteger k = j.multiply(BigInteger.valueOf(1728).subtract(j).modInverse(N)).mod(N);
+				final BigInteger a = k.multiply(I_3).mod(N), b = k.shiftLeft(1).mod(N);
+				final BigInteger c = findNonResidue(N, rng, false);
+				final BigInteger c2 = c.multiply(c).mod(N);
+				curves.add(new BigInteger[] {a, b});
+				curves.add(new BigInteger[] {a.multiply(c2).mod(N), b.multiply(c2).multiply(c).mod(N)});
+			}
+			
+			for (BigInteger[] curve : curves) {
+				final BigInteger a = curve[0], b = curve[1];
+				final PseudoCurve pseudoCurve = new PseudoCurve(a, N);
+				if (!pseudoCurve.isNonSingular(b)) continue;
+				for (int attempt = 0; attempt < 10; attempt++) {
+					final BigInteger[] P = findPoint(N, a, b, rng, jacobiEngine, sqrtEngine);
+					final BigInteger[] kP = pseudoCurve.multiply(P, candidate.k);
+					if (kP == null) continue; // try another point
+					if (pseudoCurve.multiply(kP, candidate.q) == null) return new BigInteger[] {a, b, P[0], P[1]};
+					break; // the order of this curve is not m
+				}
+			}
+		} catch (ArithmeticException e) {
+			if (DEBUG) LOG.debug(N + " is composite: " + e);
+		}
+		return null;
+	}
+	
+	/**
+	 * @param N
+	 * @param rng
+	 * @param nonCube if true, the result must not be a cube, either
+	 * @return a random quadratic non-residue modulo N
+	 * @throws ArithmeticException if N is found to be composite
+	 */
+	private static BigInteger findNonResidue(BigInteger N, Random rng, boolean nonCube) {
+		final BigInteger Nm1 = N.subtract(I_1);
+		final BigInteger cubeExponent = Nm1.divide(I_3);
+		for (int attempt = 0; attempt < 1000; attempt++) {
+			final BigInteger g = new BigInteger(N.bitLength() + 8, rng).mod(N);
+			if (g.signum() == 0) continue;
+			if (!g.modPow(N.shiftRight(1), N).equals(Nm1)) continue;
+			if (nonCube && g.modPow(cubeExponent, N).equals(I_1)) continue;
+			return g;
+		}
+		throw new ArithmeticException("No non-residue found, N=" + N + " is composite");
+	}
+	
+	/**
+	 * @return a random point on y^2 = x^3 + ax + b (mod N)
+	 * @throws ArithmeticException if N is found to be composite
+	 */
+	private static BigInteger[] findPoint(BigInteger N, BigInteger a, BigInteger b, Random rng, JacobiSymbol jacobiEngine, ModularSqrt_BB sqrtEngine) {
+		for (int attempt = 0; attempt < 1000; attempt++) {
+			final BigInteger x = new BigInteger(N.bitLength() + 8, rng).mod(N);
+			final BigInteger rhs = x.multiply(x).add(a).multiply(x).add(b).mod(N);
+			if (rhs.signum() == 0 || jacobiEngine.jacobiSymbol(rhs, N) != 1) continue;
+			final BigInteger y = sqrtEngine.modularSqrt(rhs, N);
+			if (!y.multiply(y).subtract(rhs).mod(N).equals(I_0)) throw new ArithmeticException("Wrong square root, N=" + N + " is composite");
+			return new BigInteger[] {x, y};
+		}
+		throw new ArithmeticException("No point found, N=" + N + " is composite");
+	}
+	
+	/**
+	 * Shut down the worker threads.
+	 */
+	public void shutdown() {
+		if (pool != null) pool.shutdown();
+	}
+	
+	/**
+	 * Prove random primes of different sizes, verify the certificates, and check that modified certificates are rejected.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		Random rng = new Random(47);
+		PrimalityProver prover = new PrimalityProver(Math.max(1, Runtime.getRuntime().availableProcessors()));
+		for (int bits : new int[] {80, 128, 192, 256, 384, 512}) {
+			long proveTime = 0, verifyTime = 0;
+			int maxDepth = 0;
+			final int count = bits <= 128 ? 10 : 3;
+			for (int i=0; i<count; i++) {
+				final BigInteger p = BigInteger.probablePrime(bits, rng);
+				long t0 = System.currentTimeMillis();
+				final PrimalityCertificate certificate = prover.prove(p);
+				long t1 = System.currentTimeMillis();
+				if (certificate == null) {
+					LOG.error("Failed to prove the primality of " + p);
+					continue;
+				}
+				if (!certificate.verify()) LOG.error("Certificate of " + p + " is not valid:\n" + certificate);
+				long t2 = System.currentTimeMillis();
+				proveTime += t1-t0;
+				verifyTime += t2-t1;
+				maxDepth = Math.max(maxDepth, certificate.getDepth());
+			}
+			LOG.info(bits + " bit: Proving " + count + " primes took " + proveTime + " ms, verifying " + verifyTime + " ms, max certificate depth = " + maxDepth);
+		}
+		
+		// composites must not get a certificate, and modified certificates must be rejected
+		final BigInteger p = BigInteger.probablePrime(200, rng);
+		final BigInteger composite = p.multiply(BigInteger.probablePrime(100, rng));
+		if (prover.prove(composite) != null) LOG.error("Composite " + composite + " got a certificate");
+		final PrimalityCertificate certificate = prover.prove(p);
+		LOG.info("Certificate of " + p + ":\n" + certificate);
+		if (certificate instanceof EcppCertificate) {
+			EcppCertificate ecpp = (EcppCertificate) certificate;
+			EcppCertificate wrongN = new EcppCertificate(composite, ecpp.D, ecpp.a, ecpp.b, ecpp.m, ecpp.q, ecpp.x, ecpp.y, ecpp.qCertificate);
+			EcppCertificate wrongPoint = new EcppCertificate(p, ecpp.D, ecpp.a, ecpp.b, ecpp.m, ecpp.q, ecpp.x, ecpp.y.add(I_1), ecpp.qCertificate);
+			EcppCertificate wrongOrder = new EcppCertificate(p, ecpp.D, ecpp.a, ecpp.b, ecpp.m.add(ecpp.q), ecpp.q, ecpp.x, ecpp.y, ecpp.qCertificate);
+			if (wrongN.verify() || wrongPoint.verify() || wrongOrder.verify()) LOG.error("A modified certificate has been accepted");
+		}
+		prover.shutdown();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.certificates;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+
+import java.math.BigInteger;
+
+/**
+ * Affine arithmetic on the elliptic curve y^2 = x^3 + ax + b modulo N, where N is not known to be prime.
+ * 
+ * Points are {x, y} arrays with entries in [0, N); null represents the point at infinity.
+ * If a denominator is not invertible modulo N, or the points do not allow to decide between doubling and the point at infinity,
+ * then an ArithmeticException is thrown; this proves that N is composite.
+ * Otherwise the results are correct modulo each prime dividing N, which is what ECPP certificates require.
+ * 
+ * @author agent
+ */
+class PseudoCurve {
+	
+	private final BigInteger a;
+	private final BigInteger N;
+	
+	/**
+	 * @param a curve parameter
+	 * @param N modulus
+	 */
+	PseudoCurve(BigInteger a, BigInteger N) {
+		this.a = a.mod(N);
+		this.N = N;
+	}
+	
+	/**
+	 * @param P
+	 * @param Q
+	 * @return P+Q
+	 * @throws ArithmeticException if N is found to be composite
+	 */
+	BigInteger[] add(BigInteger[] P, BigInteger[] Q) {
+		if (P == null) return Q;
+		if (Q == null) return P;
+		BigInteger lambda;
+		if (P[0].equals(Q[0])) {
+			if (P[1].add(Q[1]).mod(N).signum() == 0) return null; // Q = -P
+			if (!P[1].equals(Q[1])) throw new ArithmeticException("Inconsistent points, N=" + N + " is composite");
+			return twice(P);
+		}
+		lambda = Q[1].subtract(P[1]).multiply(Q[0].subtract(P[0]).modInverse(N)).mod(N);
+		final BigInteger x = lambda.multiply(lambda).subtract(P[0]).subtract(Q[0]).mod(N);
+		final BigInteger y = lambda.multiply(P[0].subtract(x)).subtract(P[1]).mod(N);
+		return new BigInteger[] {x, y};
+	}
+	
+	/**
+	 * @param P
+	 * @return 2P
+	 * @throws ArithmeticException if N is found to be composite
+	 */
+	BigInteger[] twice(BigInteger[] P) {
+		if (P == null || P[1].signum() == 0) return null;
+		final BigInteger x2 = P[0].multiply(P[0]);
+		final BigInteger lambda = x2.add(x2).add(x2).add(a).multiply(P[1].shiftLeft(1).modInverse(N)).mod(N);
+		final BigInteger x = lambda.multiply(lambda).subtract(P[0].shiftLeft(1)).mod(N);
+		final BigInteger y = lambda.multiply(P[0].subtract(x)).subtract(P[1]).mod(N);
+		return new BigInteger[] {x, y};
+	}
+	
+	/**
+	 * @param P
+	 * @param k non-negative
+	 * @return kP
+	 * @throws ArithmeticException if N is found to be composite
+	 */
+	BigInteger[] multiply(BigInteger[] P, BigInteger k) {
+		BigInteger[] result = null;
+		for (int i = k.bitLength()-1; i >= 0; i--) {
+			result = twice(result);
+			if (k.testBit(i)) result = add(result, P);
+		}
+		return result;
+	}
+	
+	/**
+	 * @param P
+	 * @param b curve parameter
+	 * @return true if P is on the curve y^2 = x^3 + ax + b (mod N)
+	 */
+	boolean contains(BigInteger[] P, BigInteger b) {
+		final BigInteger x = P[0], y = P[1];
+		if (x.signum() < 0 || x.compareTo(N) >= 0 || y.signum() < 0 || y.compareTo(N) >= 0) return false;
+		return y.multiply(y).subtract(x.multiply(x).add(a).multiply(x)).subtract(b).mod(N).signum() == 0;
+	}
+	
+	/**
+	 * @param b curve parameter
+	 * @return true if the discriminant 4a^3 + 27b^2 is coprime to N
+	 */
+	boolean isNonSingular(BigInteger b) {
+		final BigInteger disc = a.pow(3).shiftLeft(2).add(b.multiply(b).multiply(BigInteger.valueOf(27))).mod(N);
+		return disc.gcd(N).equals(I_1);
+	}
+}
@@ -0,0 +1,49 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.certificates;
+
+import java.math.BigInteger;
+
+import de.tilman_neumann.jml.primes.probable.BPSWTest64;
+
+/**
+ * Certificate for a prime N < 2^64. There is no BPSW pseudoprime below 2^64, so the BPSW test is a proof in that range.
+ * 
+ * @see [Feitsma, Galway: Tables of base-2 pseudoprimes < 2^64]
+ * 
+ * @author agent
+ */
+public class SmallPrimeCertificate extends PrimalityCertificate {
+	
+	private static final PrimalityCertificate[] NO_SUB_CERTIFICATES = new PrimalityCertificate[0];
+	
+	public SmallPrimeCertificate(BigInteger N) {
+		super(N);
+	}
+	
+	@Override
+	public boolean verify() {
+		return N.signum() > 0 && N.bitLength() <= 64 && new BPSWTest64().isProbablePrimeUnsigned(N.longValue());
+	}
+	
+	@Override
+	public PrimalityCertificate[] getSubCertificates() {
+		return NO_SUB_CERTIFICATES;
+	}
+	
+	@Override
+	public String getStepDescription() {
+		return "N=" + N + ": BPSW, N < 2^64";
+	}
+}
@@ -13,9 +13,11 @@
  */
 package de.tilman_neumann.jml.primes.exact;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.log4j.Logger;
 
-import de.tilman_neumann.jml.BinarySearch;
 import de.tilman_neumann.jml.primes.bounds.NthPrimeUpperBounds;
 import de.tilman_neumann.jml.primes.bounds.PrimeCountUpperBounds;
 
@@ -24,18 +26,86 @@ import de.tilman_neumann.jml.primes.bounds.PrimeCountUpperBounds;
  * 
  * Singleton implementation to avoid spending too much memory on the primes in different instances.
  * 
+ * The primes are stored append-only in chunks of fixed size, so an expansion only sieves the new interval (oldLimit, newLimit]
+ * and never copies or re-sieves the primes found before. The stored primes are published as an immutable snapshot
+ * via a volatile field, so reading threads never lock. Only expansions are serialized.
+ * 
+ * Expansions can be run ahead of demand in a background thread, either explicitly by prefetchPrimeCount(),
+ * or automatically when getPrime() approaches the end of the stored primes and setRunAhead(true) has been called.
+ * 
+ * The primes are stored as int, so the limit is Integer.MAX_VALUE. CompactPrimesTable provides larger prime tables at ~1 byte per prime.
+ * 
  * @author Tilman Neumann
  */
-public class AutoExpandingPrimesArray implements SieveCallback {
+public class AutoExpandingPrimesArray {
 	private static final Logger LOG = Logger.getLogger(AutoExpandingPrimesArray.class);
 	private static final boolean DEBUG = false;
 	
-	// variables must be initialized to avoid exceptions in ensureMaxPrime()
-	private int[] array = new int[] {2}; // the array to store the primes
-	private int count = 1; // actual element count
-	private int capacity = 1; // maximal array capacity
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1<<CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE-1;
+	
+	/** primes are stored as int */
+	private static final int MAX_LIMIT = Integer.MAX_VALUE;
+	
+	/** pi(2^31 - 1) */
+	private static final int MAX_COUNT = 105097565;
+	
+	/** for limits >= this bound, expansions size the chunk table by an exact prime count, which then costs less than 5% of the sieve */
+	private static final int EXACT_COUNT_MIN_LIMIT = 1<<24;
+	
+	/** expansions publish the new primes after each window of this many numbers */
+	private static final int PUBLISH_WINDOW = 1<<24;
+	
+	/** single daemon thread for background expansions */
+	private static final ForkJoinPool BACKGROUND_POOL = new ForkJoinPool(1);
+	
+	/**
+	 * Immutable snapshot of the stored primes. The chunk arrays are shared with later snapshots,
+	 * but entries below count are never modified after publication.
+	 */
+	private static final class State {
+		final int[][] chunks;
+		/** number of primes */
+		final int count;
+		/** all primes <= limit are contained */
+		final long limit;
+		
+		State(int[][] chunks, int count, long limit) {
+			this.chunks = chunks;
+			this.count = count;
+			this.limit = limit;
+		}
+	}
+	
+	/**
+	 * Receives the primes from the sieve and appends them to the chunks. Only used by the expanding thread.
+	 */
+	private final class Appender implements SieveCallback, PrimeChunkCallback {
+		@Override
+		public void processPrime(long prime) {
+			append((int) prime);
+		}
+		
+		@Override
+		public void processPrimes(long[] primes, int count) {
+			for (int i=0; i<count; i++) {
+				append((int) primes[i]);
+			}
+		}
+	}
+	
+	private volatile State state;
 	
-	private BinarySearch bs = new BinarySearch();
+	/** the writer's view of the chunks, guarded by expansionLock */
+	private int[][] chunks;
+	private int writeCount;
+	
+	private final Object expansionLock = new Object();
+	private final SegmentedSieve30 sieve = new SegmentedSieve30(new Appender());
+	
+	private final AtomicBoolean backgroundExpansionPending = new AtomicBoolean();
+	private volatile boolean runAhead = false;
 	
 	// singleton
 	private static final AutoExpandingPrimesArray THE_PRIMES_ARRAY = new AutoExpandingPrimesArray();
@@ -44,17 +114,29 @@ public class AutoExpandingPrimesArray implements SieveCallback {
 		return THE_PRIMES_ARRAY;
 	}
 	
+	/**
+	 * Constructor for a private instance; normally the singleton get() should be used.
+	 */
+	public AutoExpandingPrimesArray() {
+		chunks = new int[16][];
+		chunks[0] = new int[CHUNK_SIZE];
+		chunks[0][0] = 2;
+		writeCount = 1;
+		state = new State(chunks, 1, 2);
+	}
+	
 	/**
 	 * Ensures that the array contains at least the first 'desiredCount' primes.
 	 * @param desiredCount
 	 * @return PrimeGenerator
 	 */
 	public AutoExpandingPrimesArray ensurePrimeCount(int desiredCount) {
-		if (count < desiredCount) {
+		if (state.count < desiredCount) {
+			if (desiredCount > MAX_COUNT) throw new IllegalArgumentException("At most " + MAX_COUNT + " primes can be stored, but " + desiredCount + " were requested");
 			// The current primes array is to small -> expansion needed.
 			// Compute (tight) bound such that there are at least count primes in (0, nthPrimeUpperBound]
-			long nthPrimeUpperBound = NthPrimeUpperBounds.combinedUpperBound(desiredCount);
-			fetchPrimes(desiredCount, nthPrimeUpperBound);
+			long nthPrimeUpperBound = Math.min(MAX_LIMIT, NthPrimeUpperBounds.combinedUpperBound(desiredCount));
+			expand(nthPrimeUpperBound);
 		}
 		return this;
 	}
@@ -65,22 +147,63 @@ public class AutoExpandingPrimesArray implements SieveCallback {
 	 * @return PrimeGenerator
 	 */
 	public AutoExpandingPrimesArray ensureLimit(int x) {
-		if (array[count-1] < x) {
+		if (state.limit < x) {
 			// The current primes array is to small -> expansion needed.
-			// Compute upper bound for the number of primes in (0, x]
-			int countUpperBound = (int) PrimeCountUpperBounds.combinedUpperBound(x);
-			fetchPrimes(countUpperBound, x);
-			if (DEBUG) LOG.debug("pMax = " + array[count-1] + ", x = " + x);
+			expand(x);
+			if (DEBUG) LOG.debug("pMax = " + getPrime(state.count-1) + ", x = " + x);
+		}
+		return this;
+	}
+	
+	/**
+	 * Start an expansion to at least 'desiredCount' primes in a background thread, if no background expansion is running yet.
+	 * @param desiredCount
+	 * @return PrimeGenerator
+	 */
+	public AutoExpandingPrimesArray prefetchPrimeCount(final int desiredCount) {
+		if (state.count < desiredCount && backgroundExpansionPending.compareAndSet(false, true)) {
+			BACKGROUND_POOL.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						ensurePrimeCount(Math.min(desiredCount, MAX_COUNT));
+					} finally {
+						backgroundExpansionPending.set(false);
+					}
+				}
+			});
 		}
 		return this;
 	}
 	
+	/**
+	 * @param runAhead if true then getPrime() starts a background expansion to twice the current prime count
+	 * whenever it accesses an index in the last eighth of the stored primes
+	 */
+	public void setRunAhead(boolean runAhead) {
+		this.runAhead = runAhead;
+	}
+	
 	/**
 	 * @param x
 	 * @return the index where x would be inserted into the prime array.
 	 */
 	public int getInsertPosition(int x) {
-		return bs.getInsertPosition(array, count, x);
+		final State state = this.state;
+		final int[][] chunks = state.chunks;
+		final int count = state.count;
+		if (count<=0 || chunks[(count-1) >>> CHUNK_BITS][(count-1) & CHUNK_MASK] <= x) return count;
+		int left = 0;
+		int right = count-1;
+		do {
+			final int median = (left+right)>>>1;
+			if (chunks[median >>> CHUNK_BITS][median & CHUNK_MASK] <= x) {
+				left = median + 1;
+			} else {
+				right = median;
+			}
+		} while (left!=right);
+		return left;
 	}
 
 	/**
@@ -92,38 +215,66 @@ public class AutoExpandingPrimesArray implements SieveCallback {
 	 * @return n.th prime, where n starts at 0, e.g. p[0] = 2
 	 */
 	public int getPrime(int n) {
+		State state = this.state;
+		final int count = state.count;
 		if (count <= n) {
 			// The current primes array is too small -> expansion needed.
-			int nextCount = 3*count; // trade-off between speed and memory waste
-			// Compute (tight) bound such that there are at least count primes in (0, nthPrimeUpperBound]
-			long nthPrimeUpperBound = NthPrimeUpperBounds.combinedUpperBound(nextCount);
-			fetchPrimes(nextCount, nthPrimeUpperBound);
+			// Since the old primes are kept, doubling is enough
+			ensurePrimeCount(Math.max(n+1, Math.min(count<<1, MAX_COUNT)));
+			state = this.state;
+		} else if (runAhead && n >= count - (count>>3)) {
+			prefetchPrimeCount(count<<1);
 		}
-		return array[n];
+		return state.chunks[n >>> CHUNK_BITS][n & CHUNK_MASK];
 	}
 	
 	/**
-	 * Run the sieve to expand the primes array. Thread-safe.
-	 * @param desiredCount wanted number of primes
-	 * @param limit maximum value to be checked for being prime.
+	 * Expand the stored primes to all primes <= newLimit, sieving only the new interval.
+	 * Thread-safe; the new primes are published after each window.
+	 * @param newLimit
 	 */
-	private synchronized void fetchPrimes(int desiredCount, long limit) {
-		// Is the array still too small when the current thread gets its go?
-		if (desiredCount > count) {
-			array = new int[desiredCount];
-			capacity = desiredCount;
-			count = 0;
-			SegmentedSieve segmentedSieve = new SegmentedSieve(this);
-			segmentedSieve.sieve(limit);
+	private void expand(long newLimit) {
+		synchronized (expansionLock) {
+			// Is the array still too small when the current thread gets its go?
+			long limit = state.limit;
+			if (newLimit <= limit) return;
+			// Compute the exact number or an upper bound for the number of primes in (0, newLimit]
+			ensureChunkCapacity(newLimit >= EXACT_COUNT_MIN_LIMIT ? PrimeCount.pi(newLimit) : PrimeCountUpperBounds.combinedUpperBound(newLimit));
+			while (limit < newLimit) {
+				final long windowLimit = Math.min(newLimit, limit + PUBLISH_WINDOW);
+				sieve.sieve(limit+1, windowLimit);
+				limit = windowLimit;
+				// publish: all writes into the chunks happen-before the volatile write
+				state = new State(chunks, writeCount, limit);
+			}
+			if (DEBUG) LOG.debug("Expanded to limit " + limit + ", count = " + writeCount);
 		}
 	}
-
+	
+	/**
+	 * Make sure that the outer chunks array can take the given number of primes, so that appending needs no further copy.
+	 * @param primeCount
+	 */
+	private void ensureChunkCapacity(long primeCount) {
+		final int neededChunks = (int) ((primeCount + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+		if (neededChunks > chunks.length) {
+			// the old snapshots keep the old outer array; the chunks themselves are shared
+			int[][] grown = new int[neededChunks][];
+			System.arraycopy(chunks, 0, grown, 0, chunks.length);
+			chunks = grown;
+		}
+	}
+	
 	/**
-	 * Fallback method: Receives new primes from the sieve and stores them in the array.
+	 * Append a new prime. Only called by the expanding thread.
+	 * @param prime
 	 */
-	@Override
-	public void processPrime(long prime) {
-		if (count == capacity) return; // array is full
-		array[count++] = (int) prime;
+	private void append(int prime) {
+		final int chunkIndex = writeCount >>> CHUNK_BITS;
+		if (chunkIndex == chunks.length) ensureChunkCapacity(((long) chunks.length << (CHUNK_BITS+1)));
+		int[] chunk = chunks[chunkIndex];
+		if (chunk == null) chunks[chunkIndex] = chunk = new int[CHUNK_SIZE];
+		chunk[writeCount & CHUNK_MASK] = prime;
+		writeCount++;
 	}
 }
@@ -15,7 +15,7 @@ package de.tilman_neumann.jml.primes.exact;
 
 import de.tilman_neumann.jml.primes.exact.SieveCallback;
 
-public class CollectingCallback implements SieveCallback {
+public class CollectingCallback implements SieveCallback, PrimeChunkCallback {
 	private int capacity;
 	public int count;
 	public int[] array;
@@ -31,4 +31,11 @@ public class CollectingCallback implements SieveCallback {
 		//LOG.debug("Set p(" + count + ") = " + prime);
 		array[count++] = (int) prime;
 	}
-}
\ No newline at end of file
+	
+	public void processPrimes(long[] primes, int primesCount) {
+		int n = Math.min(primesCount, capacity - count);
+		for (int i=0; i<n; i++) {
+			array[count++] = (int) primes[i];
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,361 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.exact;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.primes.bounds.NthPrimeUpperBounds;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Compact auto-expanding table of all primes up to a limit that is not restricted to int, as an alternative to AutoExpandingPrimesArray
+ * for very large prime tables.
+ * 
+ * The odd primes are stored as half gaps (p_j - p_(j-1))/2 in one byte each, with an absolute checkpoint every 64 primes.
+ * This takes about 1.13 bytes per prime instead of 4 or 8 bytes, e.g. ~515 MB for the 455 million primes below 10^10.
+ * Sequential iteration just adds up gaps; random access adds at most 63 gaps to the nearest checkpoint.
+ * Half gaps > 255 (starting near 3*10^11) are escaped by a zero byte and stored in a hash map.
+ * 
+ * Like AutoExpandingPrimesArray, the table is append-only: expansions sieve only the new interval,
+ * readers work on immutable snapshots published via a volatile field and never lock.
+ * 
+ * @author agent
+ */
+public class CompactPrimesTable {
+	private static final Logger LOG = Logger.getLogger(CompactPrimesTable.class);
+	private static final boolean DEBUG = false;
+	
+	/** one checkpoint every 2^CHECKPOINT_BITS odd primes */
+	private static final int CHECKPOINT_BITS = 6;
+	private static final int CHECKPOINT_MASK = (1<<CHECKPOINT_BITS) - 1;
+	
+	/** gaps are stored in chunks of 2^CHUNK_BITS bytes */
+	private static final int CHUNK_BITS = 20;
+	private static final int CHUNK_SIZE = 1<<CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE-1;
+	private static final int CHECKPOINTS_PER_CHUNK = CHUNK_SIZE >> CHECKPOINT_BITS;
+	
+	/** expansions publish the new primes after each window of this many numbers */
+	private static final long PUBLISH_WINDOW = 1L<<26;
+	
+	/**
+	 * Immutable snapshot of the table. The chunks are shared with later snapshots,
+	 * but entries below oddCount are never modified after publication.
+	 */
+	private static final class State {
+		final byte[][] gapChunks;
+		final long[][] checkpointChunks;
+		/** number of odd primes */
+		final long oddCount;
+		/** all primes <= limit are contained */
+		final long limit;
+		
+		State(byte[][] gapChunks, long[][] checkpointChunks, long oddCount, long limit) {
+			this.gapChunks = gapChunks;
+			this.checkpointChunks = checkpointChunks;
+			this.oddCount = oddCount;
+			this.limit = limit;
+		}
+		
+		/**
+		 * @param j index of an odd prime, j < oddCount
+		 * @return the j.th odd prime, e.g. 3 for j=0
+		 */
+		long getOddPrime(long j, ConcurrentHashMap<Long, Long> escapedPrimes) {
+			final int chunkIndex = (int) (j >>> CHUNK_BITS);
+			final int offset = (int) (j & CHUNK_MASK);
+			final byte[] gaps = gapChunks[chunkIndex];
+			final int checkpointStart = offset & ~CHECKPOINT_MASK;
+			long p = checkpointChunks[chunkIndex][offset >> CHECKPOINT_BITS];
+			for (int i=checkpointStart+1; i<=offset; i++) {
+				final int halfGap = gaps[i] & 0xFF;
+				p = (halfGap != 0) ? p + (halfGap << 1) : escapedPrimes.get((((long) chunkIndex) << CHUNK_BITS) + i);
+			}
+			return p;
+		}
+	}
+	
+	private volatile State state;
+	
+	/** odd prime index -> odd prime, for half gaps that do not fit into a byte */
+	private final ConcurrentHashMap<Long, Long> escapedPrimes = new ConcurrentHashMap<Long, Long>();
+	
+	/** the writer's view, guarded by expansionLock */
+	private byte[][] gapChunks;
+	private long[][] checkpointChunks;
+	private long writeCount;
+	private long lastPrime;
+	
+	private final Object expansionLock = new Object();
+	
+	private final class Appender implements SieveCallback, PrimeChunkCallback {
+		@Override
+		public void processPrime(long prime) {
+			append(prime);
+		}
+		
+		@Override
+		public void processPrimes(long[] primes, int count) {
+			for (int i=0; i<count; i++) {
+				append(primes[i]);
+			}
+		}
+	}
+	
+	private final SegmentedSieve30 sieve = new SegmentedSieve30(new Appender());
+	
+	/**
+	 * Constructor for an empty table, containing only the prime 2.
+	 */
+	public CompactPrimesTable() {
+		gapChunks = new byte[16][];
+		checkpointChunks = new long[16][];
+		writeCount = 0;
+		lastPrime = 2;
+		state = new State(gapChunks, checkpointChunks, 0, 2);
+	}
+	
+	/**
+	 * Ensures that the table contains all primes <= x.
+	 * @param x
+	 * @return this
+	 */
+	public CompactPrimesTable ensureLimit(long x) {
+		if (state.limit < x) expand(x);
+		return this;
+	}
+	
+	/**
+	 * Ensures that the table contains at least the first 'desiredCount' primes.
+	 * @param desiredCount
+	 * @return this
+	 */
+	public CompactPrimesTable ensurePrimeCount(long desiredCount) {
+		if (size() < desiredCount) expand(NthPrimeUpperBounds.combinedUpperBound(desiredCount));
+		return this;
+	}
+	
+	/**
+	 * @return the number of primes in the table
+	 */
+	public long size() {
+		return state.oddCount + 1;
+	}
+	
+	/**
+	 * @return the table contains all primes <= this limit
+	 */
+	public long getLimit() {
+		return state.limit;
+	}
+	
+	/**
+	 * Get the n.th prime, e.g. p[0]=2. The table is expanded if required.
+	 * @param n
+	 * @return n.th prime, where n starts at 0, e.g. p[0] = 2
+	 */
+	public long getPrime(long n) {
+		if (n == 0) return 2;
+		State state = this.state;
+		if (state.oddCount < n) {
+			// since the old primes are kept, doubling is enough
+			ensurePrimeCount(Math.max(n+1, state.oddCount<<1));
+			state = this.state;
+		}
+		return state.getOddPrime(n-1, escapedPrimes);
+	}
+	
+	/**
+	 * @param x
+	 * @return the index where x would be inserted into the table, i.e. the number of stored primes <= x
+	 */
+	public long getInsertPosition(long x) {
+		if (x < 2) return 0;
+		final State state = this.state;
+		final long oddCount = state.oddCount;
+		if (oddCount == 0 || x < 3) return 1;
+		// binary search for the last checkpoint <= x
+		long left = 0, right = (oddCount-1) >>> CHECKPOINT_BITS;
+		if (getCheckpoint(state, left) > x) return 1;
+		while (left < right) {
+			final long median = (left+right+1)>>>1;
+			if (getCheckpoint(state, median) <= x) {
+				left = median;
+			} else {
+				right = median-1;
+			}
+		}
+		// sequential search behind the checkpoint
+		long j = left << CHECKPOINT_BITS;
+		final long jEnd = Math.min(j + CHECKPOINT_MASK + 1, oddCount);
+		long p = getCheckpoint(state, left);
+		final byte[] gaps = state.gapChunks[(int) (j >>> CHUNK_BITS)];
+		for (j++; j<jEnd; j++) {
+			final int halfGap = gaps[(int) (j & CHUNK_MASK)] & 0xFF;
+			p = (halfGap != 0) ? p + (halfGap << 1) : escapedPrimes.get(j);
+			if (p > x) break;
+		}
+		return j + 1; // j odd primes plus the prime 2
+	}
+	
+	private static long getCheckpoint(State state, long checkpointIndex) {
+		return state.checkpointChunks[(int) (checkpointIndex / CHECKPOINTS_PER_CHUNK)][(int) (checkpointIndex % CHECKPOINTS_PER_CHUNK)];
+	}
+	
+	/**
+	 * Iterate over the primes stored at the time of the call, starting at the given index.
+	 * Sequential iteration is much faster than random access.
+	 * @param fromIndex
+	 * @return iterator
+	 */
+	public PrimitiveIterator.OfLong iterator(final long fromIndex) {
+		final State state = this.state;
+		return new PrimitiveIterator.OfLong() {
+			private long n = fromIndex;
+			private long p = -1;
+			
+			@Override
+			public boolean hasNext() {
+				return n <= state.oddCount;
+			}
+			
+			@Override
+			public long nextLong() {
+				if (n > state.oddCount) throw new NoSuchElementException();
+				if (n == 0) {
+					n++;
+					return 2;
+				}
+				final long j = n-1;
+				if (p < 0 || (j & CHECKPOINT_MASK) == 0) {
+					p = state.getOddPrime(j, escapedPrimes);
+				} else {
+					final int halfGap = state.gapChunks[(int) (j >>> CHUNK_BITS)][(int) (j & CHUNK_MASK)] & 0xFF;
+					p = (halfGap != 0) ? p + (halfGap << 1) : escapedPrimes.get(j);
+				}
+				n++;
+				return p;
+			}
+		};
+	}
+	
+	/**
+	 * @return the approximate memory used by the table in bytes
+	 */
+	public long getMemoryBytes() {
+		final State state = this.state;
+		long chunks = (state.oddCount + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+		return chunks * (CHUNK_SIZE + 8L*CHECKPOINTS_PER_CHUNK) + 64L*escapedPrimes.size();
+	}
+	
+	/**
+	 * Expand the table to all primes <= newLimit, sieving only the new interval.
+	 * Thread-safe; the new primes are published after each window.
+	 * @param newLimit
+	 */
+	private void expand(long newLimit) {
+		synchronized (expansionLock) {
+			long limit = state.limit;
+			while (limit < newLimit) {
+				final long windowLimit = Math.min(newLimit, limit + PUBLISH_WINDOW);
+				sieve.sieve(limit+1, windowLimit);
+				limit = windowLimit;
+				// publish: all writes into the chunks happen-before the volatile write
+				state = new State(gapChunks, checkpointChunks, writeCount, limit);
+			}
+			if (DEBUG) LOG.debug("Expanded to limit " + limit + ", count = " + (writeCount+1));
+		}
+	}
+	
+	/**
+	 * Append an odd prime. Only called by the expanding thread.
+	 * @param prime
+	 */
+	private void append(long prime) {
+		final long j = writeCount;
+		final int chunkIndex = (int) (j >>> CHUNK_BITS);
+		final int offset = (int) (j & CHUNK_MASK);
+		if (offset == 0) {
+			if (chunkIndex == gapChunks.length) {
+				// old snapshots keep the old outer arrays; the chunks themselves are shared
+				byte[][] grownGaps = new byte[chunkIndex<<1][];
+				System.arraycopy(gapChunks, 0, grownGaps, 0, chunkIndex);
+				gapChunks = grownGaps;
+				long[][] grownCheckpoints = new long[chunkIndex<<1][];
+				System.arraycopy(checkpointChunks, 0, grownCheckpoints, 0, chunkIndex);
+				checkpointChunks = grownCheckpoints;
+			}
+			gapChunks[chunkIndex] = new byte[CHUNK_SIZE];
+			checkpointChunks[chunkIndex] = new long[CHECKPOINTS_PER_CHUNK];
+		}
+		if ((offset & CHECKPOINT_MASK) == 0) {
+			checkpointChunks[chunkIndex][offset >> CHECKPOINT_BITS] = prime;
+		} else {
+			final long halfGap = (prime - lastPrime) >> 1;
+			if (halfGap <= 255) {
+				gapChunks[chunkIndex][offset] = (byte) halfGap;
+			} else {
+				escapedPrimes.put(j, prime); // gap byte stays 0
+			}
+		}
+		lastPrime = prime;
+		writeCount = j+1;
+	}
+	
+	/**
+	 * Test memory and access performance, compared to AutoExpandingPrimesArray.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		final long limit = 2000000000L;
+		long t0 = System.currentTimeMillis();
+		CompactPrimesTable table = new CompactPrimesTable().ensureLimit(limit);
+		long t1 = System.currentTimeMillis();
+		long size = table.size();
+		LOG.info("CompactPrimesTable: Building the table of all " + size + " primes <= " + limit + " took " + (t1-t0) + " ms, memory = " + table.getMemoryBytes() + " bytes = " + String.format("%.3f", table.getMemoryBytes() / (double) size) + " bytes per prime");
+		
+		AutoExpandingPrimesArray primesArray = new AutoExpandingPrimesArray().ensureLimit((int) limit);
+		int count = primesArray.getInsertPosition((int) limit);
+		if (count != size) LOG.error("AutoExpandingPrimesArray has " + count + " primes, CompactPrimesTable " + size);
+		
+		// sequential access
+		t0 = System.currentTimeMillis();
+		PrimitiveIterator.OfLong iterator = table.iterator(0);
+		long sum1 = 0;
+		while (iterator.hasNext()) sum1 += iterator.nextLong();
+		t1 = System.currentTimeMillis();
+		long sum2 = 0;
+		for (int i=0; i<count; i++) sum2 += primesArray.getPrime(i);
+		long t2 = System.currentTimeMillis();
+		LOG.info("Sequential access: CompactPrimesTable took " + (t1-t0) + " ms, AutoExpandingPrimesArray took " + (t2-t1) + " ms" + (sum1 != sum2 ? " - ERROR: different sums!" : ""));
+		
+		// random access
+		java.util.Random rng = new java.util.Random(42);
+		int[] indices = new int[10000000];
+		for (int i=0; i<indices.length; i++) indices[i] = rng.nextInt(count);
+		t0 = System.currentTimeMillis();
+		sum1 = 0;
+		for (int i : indices) sum1 += table.getPrime(i);
+		t1 = System.currentTimeMillis();
+		sum2 = 0;
+		for (int i : indices) sum2 += primesArray.getPrime(i);
+		t2 = System.currentTimeMillis();
+		LOG.info("Random access: CompactPrimesTable took " + (t1-t0) + " ms, AutoExpandingPrimesArray took " + (t2-t1) + " ms" + (sum1 != sum2 ? " - ERROR: different sums!" : ""));
+	}
+}
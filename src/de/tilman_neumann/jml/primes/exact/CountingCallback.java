@@ -17,12 +17,16 @@ package de.tilman_neumann.jml.primes.exact;
  * Simple callback just counting the primes coming in.
  * @author Tilman Neumann
  */
-public class CountingCallback implements SieveCallback {
+public class CountingCallback implements SieveCallback, PrimeChunkCallback {
 	private long count = 0;
 	
 	public void processPrime(long prime) {
 		count++;
 	}
+	
+	public void processPrimes(long[] primes, int count) {
+		this.count += count;
+	}
 
 	public long getCount() {
 		return count;
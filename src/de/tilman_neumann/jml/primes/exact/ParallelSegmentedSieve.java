@@ -0,0 +1,262 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.exact;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Multi-threaded segmented sieve for an interval [start, limit], based on SegmentedSieve30.
+ * 
+ * The interval is split into chunks that are sieved by a pool of worker threads. There are two delivery modes:
+ * <ul>
+ * <li>Unordered: Each worker thread passes its primes to its own callback. This is the fastest mode, suited for counting or summing primes.
+ *     The results of the callbacks have to be combined by the caller.</li>
+ * <li>Ordered: The primes of each chunk are buffered and passed to a single callback in ascending order by the calling thread.
+ *     At most maxPendingChunks chunks are sieved ahead of the delivery, so the memory requirements are bounded.</li>
+ * </ul>
+ * 
+ * @author agent
+ */
+public class ParallelSegmentedSieve {
+	private static final Logger LOG = Logger.getLogger(ParallelSegmentedSieve.class);
+	
+	/** default chunk size in bytes of the wheel representation; 2^20 bytes cover 31.5 million numbers */
+	public static final int DEFAULT_CHUNK_BYTES = 1<<20;
+	
+	/**
+	 * The split of an interval into chunks. Chunk boundaries are aligned to the bytes of the wheel representation.
+	 */
+	private static class Chunks {
+		final long start;
+		final long limit;
+		final long firstByte;
+		final int chunkBytes;
+		final long count;
+		final int[] sievingPrimes;
+		
+		Chunks(long start, long limit, int chunkBytes) {
+			this.start = start;
+			this.limit = limit;
+			this.firstByte = start/30;
+			this.chunkBytes = chunkBytes;
+			long totalBytes = limit/30 + 1 - firstByte;
+			this.count = (totalBytes + chunkBytes - 1) / chunkBytes;
+			this.sievingPrimes = SegmentedSieve30.computeSievingPrimes(SegmentedSieve30.isqrt(limit));
+		}
+		
+		void sieve(SegmentedSieve30 sieve, long k) {
+			long chunkStartByte = firstByte + k*chunkBytes;
+			long chunkStart = Math.max(start, 30*chunkStartByte);
+			long chunkLimit = Math.min(limit, 30*(chunkStartByte+chunkBytes) - 1);
+			sieve.sieve(chunkStart, chunkLimit, sievingPrimes);
+		}
+	}
+	
+	/**
+	 * A worker of the unordered mode, taking chunks until all are done.
+	 */
+	private static class UnorderedWorker implements Callable<Void> {
+		private final Chunks chunks;
+		private final AtomicLong nextChunk;
+		private final SieveCallback callback;
+		
+		UnorderedWorker(Chunks chunks, AtomicLong nextChunk, SieveCallback callback) {
+			this.chunks = chunks;
+			this.nextChunk = nextChunk;
+			this.callback = callback;
+		}
+		
+		@Override
+		public Void call() {
+			SegmentedSieve30 sieve = new SegmentedSieve30(callback);
+			for (long k = nextChunk.getAndIncrement(); k < chunks.count; k = nextChunk.getAndIncrement()) {
+				chunks.sieve(sieve, k);
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * A sieve with its buffer, reused by the chunk tasks of one thread in ordered mode.
+	 */
+	private static class BufferedSieve {
+		final PrimeBuffer buffer = new PrimeBuffer();
+		final SegmentedSieve30 sieve = new SegmentedSieve30(buffer);
+	}
+	
+	/**
+	 * A task of the ordered mode, sieving a single chunk into a buffer.
+	 */
+	private class OrderedTask implements Callable<long[]> {
+		private final Chunks chunks;
+		private final long k;
+		
+		OrderedTask(Chunks chunks, long k) {
+			this.chunks = chunks;
+			this.k = k;
+		}
+		
+		@Override
+		public long[] call() {
+			BufferedSieve bufferedSieve = bufferedSieves.get();
+			chunks.sieve(bufferedSieve.sieve, k);
+			return bufferedSieve.buffer.take();
+		}
+	}
+	
+	private final int numberOfThreads;
+	private final int chunkBytes;
+	private final int maxPendingChunks;
+	private final ForkJoinPool pool;
+	
+	private final ThreadLocal<BufferedSieve> bufferedSieves = new ThreadLocal<BufferedSieve>() {
+		@Override
+		protected BufferedSieve initialValue() {
+			return new BufferedSieve();
+		}
+	};
+	
+	/**
+	 * Constructor with default chunk size and at most 2*numberOfThreads pending chunks in ordered mode.
+	 * @param numberOfThreads
+	 */
+	public ParallelSegmentedSieve(int numberOfThreads) {
+		this(numberOfThreads, DEFAULT_CHUNK_BYTES, 2*numberOfThreads);
+	}
+	
+	/**
+	 * Full constructor.
+	 * @param numberOfThreads
+	 * @param chunkBytes the size of the chunks in bytes of the wheel representation; each byte covers 30 numbers
+	 * @param maxPendingChunks the maximum number of chunks sieved ahead of the delivery in ordered mode
+	 */
+	public ParallelSegmentedSieve(int numberOfThreads, int chunkBytes, int maxPendingChunks) {
+		if (numberOfThreads < 1 || chunkBytes < 1 || maxPendingChunks < 1) {
+			throw new IllegalArgumentException("numberOfThreads, chunkBytes and maxPendingChunks must be positive");
+		}
+		this.numberOfThreads = numberOfThreads;
+		this.chunkBytes = chunkBytes;
+		this.maxPendingChunks = maxPendingChunks;
+		pool = new ForkJoinPool(numberOfThreads); // worker threads are daemons
+	}
+	
+	/**
+	 * Pass all primes p with start <= p <= limit to the given callbacks in no particular order.
+	 * There is one worker per callback, so the callbacks do not need to be thread-safe.
+	 * 
+	 * @param start
+	 * @param limit
+	 * @param callbacks one callback for each worker; typically numberOfThreads
+	 */
+	public void sieveUnordered(long start, long limit, SieveCallback[] callbacks) {
+		if (start > limit) return;
+		Chunks chunks = new Chunks(Math.max(start, 0), limit, chunkBytes);
+		AtomicLong nextChunk = new AtomicLong();
+		List<UnorderedWorker> workers = new ArrayList<UnorderedWorker>(callbacks.length);
+		for (SieveCallback callback : callbacks) {
+			workers.add(new UnorderedWorker(chunks, nextChunk, callback));
+		}
+		for (Future<Void> future : pool.invokeAll(workers)) {
+			try {
+				future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Pass all primes p with start <= p <= limit to the callback in ascending order.
+	 * The callback is only invoked by the calling thread.
+	 * If it implements PrimeChunkCallback, then it gets the primes of each chunk at once.
+	 * 
+	 * @param start
+	 * @param limit
+	 * @param callback
+	 */
+	public void sieveOrdered(long start, long limit, SieveCallback callback) {
+		if (start > limit) return;
+		Chunks chunks = new Chunks(Math.max(start, 0), limit, chunkBytes);
+		PrimeChunkCallback chunkCallback = (callback instanceof PrimeChunkCallback) ? (PrimeChunkCallback) callback : null;
+		ArrayDeque<ForkJoinTask<long[]>> pending = new ArrayDeque<ForkJoinTask<long[]>>(maxPendingChunks);
+		long k = 0;
+		while (k < chunks.count || !pending.isEmpty()) {
+			while (k < chunks.count && pending.size() < maxPendingChunks) {
+				pending.add(pool.submit(new OrderedTask(chunks, k++)));
+			}
+			long[] primes = pending.poll().join();
+			if (chunkCallback != null) {
+				chunkCallback.processPrimes(primes, primes.length);
+			} else {
+				for (long prime : primes) {
+					callback.processPrime(prime);
+				}
+			}
+		}
+	}
+	
+	public int getNumberOfThreads() {
+		return numberOfThreads;
+	}
+	
+	/**
+	 * Stop the worker threads.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+	
+	/**
+	 * Test performance of the two modes with different numbers of threads, compared to the single-threaded SegmentedSieve30.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		for (long limit = 100000000; limit <= 10000000000L; limit *= 10) {
+			long t0 = System.currentTimeMillis();
+			CountingCallback callback = new CountingCallback();
+			new SegmentedSieve30(callback).sieve(limit);
+			LOG.info("Sieving x <= " + limit + ": SegmentedSieve30 found " + callback.getCount() + " primes in " + (System.currentTimeMillis()-t0) + " ms");
+			
+			for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+				ParallelSegmentedSieve parallelSieve = new ParallelSegmentedSieve(threads);
+				CountingCallback[] callbacks = new CountingCallback[threads];
+				for (int t=0; t<threads; t++) callbacks[t] = new CountingCallback();
+				t0 = System.currentTimeMillis();
+				parallelSieve.sieveUnordered(0, limit, callbacks);
+				long count = 0;
+				for (CountingCallback c : callbacks) count += c.getCount();
+				long t1 = System.currentTimeMillis();
+				CountingCallback orderedCallback = new CountingCallback();
+				parallelSieve.sieveOrdered(0, limit, orderedCallback);
+				long t2 = System.currentTimeMillis();
+				LOG.info("    " + threads + " threads: unordered mode found " + count + " primes in " + (t1-t0) + " ms, ordered mode found " + orderedCallback.getCount() + " primes in " + (t2-t1) + " ms");
+				parallelSieve.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.exact;
+
+import java.util.Arrays;
+
+/**
+ * A growing buffer collecting primes from a sieve, used where primes have to be stored between sieving and consumption.
+ * 
+ * @author agent
+ */
+class PrimeBuffer implements SieveCallback, PrimeChunkCallback {
+	long[] primes = new long[1024];
+	int count = 0;
+	
+	@Override
+	public void processPrime(long prime) {
+		if (count == primes.length) {
+			primes = Arrays.copyOf(primes, primes.length << 1);
+		}
+		primes[count++] = prime;
+	}
+	
+	@Override
+	public void processPrimes(long[] chunk, int chunkCount) {
+		if (count + chunkCount > primes.length) {
+			primes = Arrays.copyOf(primes, Math.max(primes.length << 1, count + chunkCount));
+		}
+		System.arraycopy(chunk, 0, primes, count, chunkCount);
+		count += chunkCount;
+	}
+	
+	/**
+	 * @return the primes collected so far; the buffer is emptied
+	 */
+	long[] take() {
+		long[] result = Arrays.copyOf(primes, count);
+		count = 0;
+		return result;
+	}
+}
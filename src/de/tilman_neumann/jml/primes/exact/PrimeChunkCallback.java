@@ -0,0 +1,34 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.exact;
+
+/**
+ * Callback interface for sieves delivering primes in chunks instead of one by one.
+ * 
+ * A SieveCallback passed to SegmentedSieve30 or ParallelSegmentedSieve that also implements this interface
+ * receives all primes via processPrimes(). This saves one (typically megamorphic) interface call per prime,
+ * and allows the client to process the primes in a tight loop of its own.
+ * 
+ * @author agent
+ */
+public interface PrimeChunkCallback {
+	/**
+	 * Process the next chunk of primes, in ascending order within the chunk.
+	 * The buffer is reused by the sieve, so its content is only valid during this call.
+	 * 
+	 * @param primes buffer holding the primes
+	 * @param count the number of valid entries primes[0]...primes[count-1]
+	 */
+	void processPrimes(long[] primes, int count);
+}
@@ -0,0 +1,525 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.exact;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.primes.bounds.NthPrimeUpperBounds;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Exact prime counting function pi(x) and n.th prime.
+ * 
+ * pi(x) is computed by the combinatorial method of Meissel, Lehmer, Lagarias, Miller and Odlyzko (LMO):
+ * With y = alpha * x^(1/3) and a = pi(y), pi(x) = phi(x, a) + a - 1 - P2(x, a), where phi(x, a) counts the numbers <= x
+ * without prime factors <= y, and P2(x, a) the numbers <= x with exactly two such prime factors.
+ * phi(x, a) is the sum of the contributions of
+ * -> the ordinary leaves mu(n) * phi(x/n, c) for n <= y, computed from a table for the first c primes,
+ * -> the special leaves -mu(m) * phi(x/(p_b*m), b-1), computed by a segmented sieve of the interval [1, x/y]
+ *    that removes p_b after all special leaves with index b in the current segment have been counted.
+ * 
+ * For p_b > sqrt(y), lpf(m) > p_b implies that m is prime, so only primes m need to be visited.
+ * 
+ * The running time is roughly O(x^(2/3)); the memory requirement is dominated by the primes up to sqrt(x) needed for P2.
+ * A parallel Deleglise-Rivat implementation would be the next step for arguments beyond 10^15.
+ * 
+ * The n.th prime is computed as pi(li^-1(n)) followed by sieving the small distance to p_n.
+ * 
+ * @author agent
+ */
+public class PrimeCount {
+	private static final Logger LOG = Logger.getLogger(PrimeCount.class);
+	private static final boolean DEBUG = false;
+	
+	/** below this bound pi(x) is computed by sieving */
+	private static final long SIEVE_LIMIT = 1L<<20;
+	
+	/** the number of primes covered by the phi table */
+	private static final int C = 6;
+	
+	/** 2*3*5*7*11*13 */
+	private static final int PRIMORIAL_C = 30030;
+	
+	/** phi(PRIMORIAL_C, C) */
+	private static final int PHI_PRIMORIAL_C = 5760;
+	
+	/** PHI_TABLE[r] = phi(r, C) for 0 <= r < PRIMORIAL_C */
+	private static final int[] PHI_TABLE = new int[PRIMORIAL_C];
+	
+	/** segment size of the special leaves sieve in bits, a multiple of BLOCK_BITS */
+	private static final int SEGMENT_BITS = 1<<18;
+	
+	/** the sieve keeps counts of unsieved bits in blocks of this size */
+	private static final int BLOCK_BITS = 1<<10;
+	private static final int BLOCK_BITS_LOG = 10;
+	
+	/** window size for sieving to the n.th prime */
+	private static final int WINDOW = 1<<22;
+	
+	static {
+		final int[] smallPrimes = {2, 3, 5, 7, 11, 13};
+		int count = 0;
+		for (int r=0; r<PRIMORIAL_C; r++) {
+			boolean coprime = true;
+			for (int p : smallPrimes) {
+				if (r%p == 0) {
+					coprime = false;
+					break;
+				}
+			}
+			if (coprime) count++;
+			PHI_TABLE[r] = count;
+		}
+	}
+	
+	private PrimeCount() {
+		// static class
+	}
+	
+	/**
+	 * @param n
+	 * @return phi(n, C) = the number of integers 1 <= k <= n not divisible by any of the first C primes
+	 */
+	private static long phiC(long n) {
+		return (n / PRIMORIAL_C) * PHI_PRIMORIAL_C + PHI_TABLE[(int) (n % PRIMORIAL_C)];
+	}
+	
+	/**
+	 * The prime counting function.
+	 * @param x
+	 * @return the number of primes p <= x
+	 */
+	public static long pi(long x) {
+		if (x < SIEVE_LIMIT) return piBySieve(x);
+		return piLMO(x, alpha(x));
+	}
+	
+	/**
+	 * The tuning factor alpha in y = alpha * x^(1/3), balancing the cost of the special leaves sieve on [1, x/y]
+	 * against the number of leaves growing with y. Measured optima are about 3 for x=10^10 and 4 for x=10^14.
+	 * @param x
+	 * @return alpha
+	 */
+	private static double alpha(long x) {
+		return 2 + 0.25 * (Math.log10(x) - 6);
+	}
+	
+	private static long piBySieve(long x) {
+		if (x < 2) return 0;
+		CountingCallback callback = new CountingCallback();
+		new SegmentedSieve30(callback).sieve(x);
+		return callback.getCount();
+	}
+	
+	static long piLMO(long x, double alpha) {
+		final long sqrtx = SegmentedSieve30.isqrt(x);
+		final long cbrtx = icbrt(x);
+		final int y = (int) Math.min(sqrtx, (long) (alpha * cbrtx));
+		
+		// primes p_1, ..., p_a <= y, with a sentinel at index 0
+		final int[] primes = primesUpTo(y);
+		final int a = primes.length - 1;
+		
+		// least prime factors and Moebius function up to y; lpf(1) = infinity
+		final int[] lpf = new int[y+1];
+		final byte[] mu = new byte[y+1];
+		for (int n=1; n<=y; n++) {
+			lpf[n] = Integer.MAX_VALUE;
+			mu[n] = 1;
+		}
+		for (int b=1; b<=a; b++) {
+			final int p = primes[b];
+			for (int n=p; n<=y; n+=p) {
+				if (lpf[n] == Integer.MAX_VALUE) lpf[n] = p;
+				mu[n] = (byte) -mu[n];
+			}
+			final long pSquare = p*(long)p;
+			for (long n=pSquare; n<=y; n+=pSquare) {
+				mu[(int) n] = 0;
+			}
+		}
+		
+		// ordinary leaves
+		long S1 = 0;
+		final int pC = primes[C];
+		for (int n=1; n<=y; n++) {
+			if (mu[n] != 0 && lpf[n] > pC) {
+				S1 += mu[n] * phiC(x/n);
+			}
+		}
+		
+		final long S2 = specialLeaves(x, y, primes, lpf, mu);
+		final long P2 = P2(x, y, a, sqrtx);
+		if (DEBUG) LOG.debug("x=" + x + ", y=" + y + ", a=" + a + ": S1=" + S1 + ", S2=" + S2 + ", P2=" + P2);
+		return S1 + S2 + a - 1 - P2;
+	}
+	
+	/**
+	 * Compute the contribution of the special leaves, -mu(m) * phi(x/(p_b*m), b-1) for C < b < a, y/p_b < m <= y, lpf(m) > p_b.
+	 * All x/(p_b*m) are <= z = x/y. The interval [1, z] is sieved in segments; for each b the sieve is in the state
+	 * where all multiples of p_1, ..., p_(b-1) are removed, and phi[b] holds the count of unsieved numbers below the segment.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param primes
+	 * @param lpf
+	 * @param mu
+	 * @return sum of special leaves
+	 */
+	private static long specialLeaves(long x, int y, int[] primes, int[] lpf, byte[] mu) {
+		final int a = primes.length - 1;
+		final long z = x / y;
+		final long[] sieve = new long[SEGMENT_BITS >> 6];
+		final int[] blockCounts = new int[SEGMENT_BITS >> BLOCK_BITS_LOG];
+		final long[] phi = new long[a+1];
+		// pi(n) for n <= y
+		final int[] piTable = new int[y+1];
+		for (int n=2, b=0; n<=y; n++) {
+			if (b < a && primes[b+1] == n) b++;
+			piTable[n] = b;
+		}
+		// for p_b > sqrt(y), lpf(m) > p_b implies that m is prime
+		final int sqrty = SegmentedSieve30.isqrt(y);
+		long S2 = 0;
+		for (long low = 1; low <= z; low += SEGMENT_BITS) {
+			final long high = Math.min(low + SEGMENT_BITS, z + 1); // exclusive
+			final int bits = (int) (high - low);
+			
+			// bit i represents low + i
+			final int words = (bits + 63) >> 6;
+			for (int w=0; w<words; w++) sieve[w] = -1L;
+			if ((bits & 63) != 0) sieve[words-1] = (1L << (bits & 63)) - 1;
+			for (int w=words; w<sieve.length; w++) sieve[w] = 0;
+			// remove the multiples of the first C primes
+			for (int b=1; b<=C; b++) {
+				final int p = primes[b];
+				for (long k = firstMultiple(p, low) - low; k < bits; k += p) {
+					sieve[(int) (k >>> 6)] &= ~(1L << k);
+				}
+			}
+			long segmentCount = 0;
+			final int blocks = (bits + BLOCK_BITS - 1) >> BLOCK_BITS_LOG;
+			for (int k=0; k<blocks; k++) {
+				int blockCount = 0;
+				final int wEnd = Math.min(words, (k+1) << (BLOCK_BITS_LOG-6));
+				for (int w = k << (BLOCK_BITS_LOG-6); w < wEnd; w++) {
+					blockCount += Long.bitCount(sieve[w]);
+				}
+				blockCounts[k] = blockCount;
+				segmentCount += blockCount;
+			}
+			
+			for (int b=C+1; b<a; b++) {
+				final long p = primes[b];
+				// x/(p*m) is in [low, high) iff x/(p*high) < m <= x/(p*low)
+				final long minM = Math.max(x / (p*high), y / p);
+				final long maxM = Math.min(x / (p*low), y);
+				// m needs lpf(m) > p, so there are no more leaves in this and in the following segments
+				if (p >= maxM) break;
+				
+				// count the leaves in ascending order of x/(p*m), counting the unsieved bits incrementally
+				int counted = 0; // bits [0, counted) have been counted
+				long count = 0;
+				if (p > sqrty) {
+					// m = primes[l] prime, mu(m) = -1
+					final int lMin = piTable[(int) Math.min(Math.max(minM, p), maxM)];
+					for (int l = piTable[(int) maxM]; l > lMin; l--) {
+						final int i = (int) (x / (p*primes[l]) - low);
+						count += countBits(sieve, blockCounts, counted, i);
+						counted = i+1;
+						S2 += phi[b] + count;
+					}
+				} else {
+					for (long m = maxM; m > minM; m--) {
+						if (mu[(int) m] != 0 && lpf[(int) m] > p) {
+							final int i = (int) (x / (p*m) - low);
+							count += countBits(sieve, blockCounts, counted, i);
+							counted = i+1;
+							S2 -= mu[(int) m] * (phi[b] + count);
+						}
+					}
+				}
+				phi[b] += segmentCount;
+				
+				// remove the odd multiples of p
+				long k = firstMultiple(p, low);
+				if ((k & 1) == 0) k += p;
+				for (k -= low; k < bits; k += 2*p) {
+					final int w = (int) (k >>> 6);
+					final long mask = 1L << k;
+					if ((sieve[w] & mask) != 0) {
+						sieve[w] &= ~mask;
+						blockCounts[(int) (k >>> BLOCK_BITS_LOG)]--;
+						segmentCount--;
+					}
+				}
+			}
+		}
+		return S2;
+	}
+	
+	/**
+	 * Count set bits in a range, using the block counts to skip full blocks.
+	 * @param sieve
+	 * @param blockCounts
+	 * @param from
+	 * @param to
+	 * @return the number of set bits with indices from <= i <= to
+	 */
+	private static long countBits(long[] sieve, int[] blockCounts, int from, int to) {
+		int block = from >> BLOCK_BITS_LOG;
+		final int targetBlock = to >> BLOCK_BITS_LOG;
+		if (block >= targetBlock) return countBits(sieve, from, to); // also covers from > to
+		long count = countBits(sieve, from, ((block+1) << BLOCK_BITS_LOG) - 1);
+		for (block++; block < targetBlock; block++) {
+			count += blockCounts[block];
+		}
+		return count + countBits(sieve, targetBlock << BLOCK_BITS_LOG, to);
+	}
+	
+	/**
+	 * @param sieve
+	 * @param from
+	 * @param to
+	 * @return the number of set bits with indices from <= i <= to
+	 */
+	private static int countBits(long[] sieve, int from, int to) {
+		if (from > to) return 0;
+		final int w0 = from >> 6, w1 = to >> 6;
+		final long lowMask = -1L << from; // shifts are mod 64
+		final long highMask = -1L >>> (63 - (to & 63));
+		if (w0 == w1) return Long.bitCount(sieve[w0] & lowMask & highMask);
+		int count = Long.bitCount(sieve[w0] & lowMask);
+		for (int w=w0+1; w<w1; w++) {
+			count += Long.bitCount(sieve[w]);
+		}
+		return count + Long.bitCount(sieve[w1] & highMask);
+	}
+	
+	/**
+	 * @param p
+	 * @param low
+	 * @return the smallest multiple of p >= low
+	 */
+	private static long firstMultiple(long p, long low) {
+		return ((low + p - 1) / p) * p;
+	}
+	
+	/**
+	 * Compute P2(x, a) = sum_{y < p <= sqrt(x)} (pi(x/p) - pi(p) + 1), the number of integers <= x having exactly two prime factors > y.
+	 * The pi(x/p) are obtained by sieving the interval (sqrt(x), x/y] once, with x/p in ascending order.
+	 * 
+	 * @param x
+	 * @param y
+	 * @param a pi(y)
+	 * @param sqrtx
+	 * @return P2(x, a)
+	 */
+	private static long P2(long x, int y, int a, long sqrtx) {
+		// primes in (y, sqrt(x)]
+		PrimeBuffer buffer = new PrimeBuffer();
+		new SegmentedSieve30(buffer).sieve(y+1, sqrtx);
+		final long[] primes = buffer.primes;
+		final int count = buffer.count;
+		if (count == 0) return 0;
+		final long b = a + count; // pi(sqrt(x))
+		
+		// sum_{i=a+1}^{b} (1 - pi(p_i)) = sum_{i=a+1}^{b} (1 - i)
+		long P2 = (b - a) - (a + 1 + b) * (b - a) / 2;
+		
+		PiTargetCallback targetCallback = new PiTargetCallback(x, primes, count, b);
+		new SegmentedSieve30(targetCallback).sieve(sqrtx+1, x / primes[0]);
+		targetCallback.finish();
+		return P2 + targetCallback.sum;
+	}
+	
+	/**
+	 * Sums up pi(x/p_i) for the primes p_i in (y, sqrt(x)] while receiving the primes in (sqrt(x), x/y] in ascending order.
+	 */
+	private static class PiTargetCallback implements SieveCallback, PrimeChunkCallback {
+		private final long x;
+		private final long[] divisors;
+		/** index of the divisor whose target x/p is the next to be completed; iterated downwards */
+		private int i;
+		private long target;
+		/** pi of the last prime received */
+		private long pi;
+		long sum = 0;
+		
+		PiTargetCallback(long x, long[] divisors, int count, long piStart) {
+			this.x = x;
+			this.divisors = divisors;
+			this.i = count - 1;
+			this.target = x / divisors[i];
+			this.pi = piStart;
+		}
+		
+		@Override
+		public void processPrime(long prime) {
+			while (i >= 0 && prime > target) {
+				completeTarget();
+			}
+			pi++;
+		}
+
+		@Override
+		public void processPrimes(long[] primes, int count) {
+			for (int k=0; k<count; k++) {
+				final long prime = primes[k];
+				while (i >= 0 && prime > target) {
+					completeTarget();
+				}
+				pi++;
+			}
+		}
+		
+		private void completeTarget() {
+			sum += pi;
+			if (--i >= 0) target = x / divisors[i];
+		}
+		
+		/**
+		 * Complete the targets not exceeded by any prime.
+		 */
+		void finish() {
+			while (i >= 0) completeTarget();
+		}
+	}
+	
+	/**
+	 * @param x
+	 * @return floor(x^(1/3))
+	 */
+	private static long icbrt(long x) {
+		long r = (long) Math.cbrt(x);
+		while (r*r*r > x) r--;
+		while ((r+1)*(r+1)*(r+1) <= x) r++;
+		return r;
+	}
+	
+	/**
+	 * @param y
+	 * @return array of the primes <= y, at indices 1, 2, ...; index 0 holds the sentinel 1
+	 */
+	private static int[] primesUpTo(int y) {
+		PrimeBuffer buffer = new PrimeBuffer();
+		new SegmentedSieve30(buffer).sieve(y);
+		int[] primes = new int[buffer.count + 1];
+		primes[0] = 1;
+		for (int i=0; i<buffer.count; i++) {
+			primes[i+1] = (int) buffer.primes[i];
+		}
+		return primes;
+	}
+	
+	/**
+	 * The logarithmic integral li(x) = int_0^x dt/ln(t), computed by Ramanujan's series.
+	 * @param x > 1
+	 * @return li(x)
+	 */
+	static double li(double x) {
+		final double gamma = 0.5772156649015329;
+		final double lnx = Math.log(x);
+		double sum = 0;
+		double factor = 1; // (-1)^(n-1) ln(x)^n / (n! 2^(n-1))
+		double innerSum = 0; // sum_{k=0}^{(n-1)/2} 1/(2k+1)
+		for (int n=1; n<1000; n++) {
+			factor *= lnx / n;
+			if (n > 1) factor *= -0.5;
+			if (((n-1) & 1) == 0) innerSum += 1.0 / (n);
+			double term = factor * innerSum;
+			sum += term;
+			if (Math.abs(term) < 1e-17 * Math.abs(sum)) break;
+		}
+		return gamma + Math.log(lnx) + Math.sqrt(x) * sum;
+	}
+	
+	/**
+	 * @param n
+	 * @return an approximation of li^-1(n), computed by Newton iteration
+	 */
+	static double inverseLi(double n) {
+		double x = n * Math.log(n) + 2;
+		for (int k=0; k<100; k++) {
+			double dx = (li(x) - n) * Math.log(x);
+			x -= dx;
+			if (Math.abs(dx) < 0.5) break;
+		}
+		return x;
+	}
+	
+	/**
+	 * Compute the n.th prime, e.g. nthPrime(1) = 2.
+	 * @param n >= 1
+	 * @return n.th prime
+	 */
+	public static long nthPrime(long n) {
+		if (n < 1) throw new IllegalArgumentException("n must be positive, but is " + n);
+		if (n < 100000) {
+			PrimeIterator iterator = new PrimeIterator(0, NthPrimeUpperBounds.combinedUpperBound(n));
+			for (long i=1; i<n; i++) iterator.nextLong();
+			return iterator.nextLong();
+		}
+		
+		final long guess = (long) inverseLi(n);
+		long count = pi(guess);
+		if (DEBUG) LOG.debug("n=" + n + ": guess=" + guess + ", pi(guess)=" + count);
+		if (count < n) {
+			// p_n > guess
+			PrimeIterator iterator = new PrimeIterator(guess+1, NthPrimeUpperBounds.combinedUpperBound(n));
+			long prime;
+			do {
+				prime = iterator.nextLong();
+			} while (++count < n);
+			return prime;
+		}
+		// p_n <= guess: sieve backwards window by window
+		PrimeBuffer buffer = new PrimeBuffer();
+		SegmentedSieve30 sieve = new SegmentedSieve30(buffer);
+		for (long high = guess; ; high -= WINDOW) {
+			buffer.count = 0;
+			sieve.sieve(Math.max(0, high - WINDOW + 1), high);
+			final int windowCount = buffer.count;
+			if (count - windowCount < n) {
+				return buffer.primes[(int) (n - (count - windowCount) - 1)];
+			}
+			count -= windowCount;
+		}
+	}
+	
+	/**
+	 * Test correctness against sieving and performance.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		for (long x = 1000; x <= 10000000000L; x *= 10) {
+			for (long dx = -3; dx <= 3; dx++) {
+				long pi = pi(x+dx);
+				long piSieve = piBySieve(x+dx);
+				if (pi != piSieve) LOG.error("pi(" + (x+dx) + ") = " + pi + " is wrong, correct value = " + piSieve);
+			}
+		}
+		LOG.info("Correctness test finished.");
+		
+		for (long x = 1000000; x <= 100000000000000L; x *= 10) {
+			long t0 = System.currentTimeMillis();
+			long pi = pi(x);
+			long t1 = System.currentTimeMillis();
+			long nthPrime = nthPrime(pi);
+			long t2 = System.currentTimeMillis();
+			LOG.info("pi(" + x + ") = " + pi + " took " + (t1-t0) + " ms, nthPrime(" + pi + ") = " + nthPrime + " took " + (t2-t1) + " ms");
+		}
+	}
+}
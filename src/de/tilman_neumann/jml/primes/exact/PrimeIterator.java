@@ -0,0 +1,80 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.exact;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Iterator over the primes p with start <= p <= limit.
+ * 
+ * The primes are generated window by window with SegmentedSieve30, so the iterator does not need more memory
+ * than the sieving primes up to sqrt(limit) and the primes of one window.
+ * 
+ * @author agent
+ */
+public class PrimeIterator implements PrimitiveIterator.OfLong {
+	/** window size in bytes of the wheel representation; each byte covers 30 numbers */
+	private static final int WINDOW_BYTES = SegmentedSieve30.DEFAULT_SEGMENT_BYTES;
+	
+	private final long limit;
+	private final int[] sievingPrimes;
+	private final PrimeBuffer buffer = new PrimeBuffer();
+	private final SegmentedSieve30 sieve = new SegmentedSieve30(buffer);
+	
+	/** the start of the next window to sieve */
+	private long nextWindowStart;
+	
+	/** the primes of the current window */
+	private long[] primes;
+	private int size = 0;
+	private int pos = 0;
+	
+	/**
+	 * Full constructor.
+	 * @param start smallest number to test for prime
+	 * @param limit biggest number to test for prime
+	 */
+	public PrimeIterator(long start, long limit) {
+		this.nextWindowStart = Math.max(start, 0);
+		this.limit = limit;
+		this.sievingPrimes = SegmentedSieve30.computeSievingPrimes(SegmentedSieve30.isqrt(Math.max(limit, 0)));
+	}
+	
+	@Override
+	public boolean hasNext() {
+		while (pos == size) {
+			if (nextWindowStart > limit) return false;
+			sieveNextWindow();
+		}
+		return true;
+	}
+	
+	@Override
+	public long nextLong() {
+		if (!hasNext()) throw new NoSuchElementException();
+		return primes[pos++];
+	}
+	
+	private void sieveNextWindow() {
+		long windowLimit = Math.min(limit, 30*(nextWindowStart/30 + WINDOW_BYTES) - 1);
+		sieve.sieve(nextWindowStart, windowLimit, sievingPrimes);
+		// the window primes stay in the buffer until the next window is sieved
+		primes = buffer.primes;
+		size = buffer.count;
+		pos = 0;
+		buffer.count = 0;
+		nextWindowStart = windowLimit + 1;
+	}
+}
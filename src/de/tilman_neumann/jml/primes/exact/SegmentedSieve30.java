@@ -0,0 +1,641 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.exact;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Segmented sieve of Eratosthenes on a mod 30 wheel, modelled on Kim Walisch's primesieve (http://primesieve.org).
+ * 
+ * Each byte of a segment represents 30 consecutive numbers, and its 8 bits the numbers coprime to 30 among them,
+ * with residues 1, 7, 11, 13, 17, 19, 23, 29. A set bit means "still a prime candidate".
+ * 
+ * The sieving primes are handled in three classes:
+ * -> 7, 11, 13, 17 are removed by copying a pre-sieved pattern of 7*11*13*17 bytes into each new segment,
+ *    19, 23, 29, 31 by combining it with two more patterns.
+ * -> Small primes hit each segment many times. Since 8 consecutive multiples coprime to 30 span exactly p bytes,
+ *    the 8 offsets and bit masks of one wheel cycle are computed once per segment, and the crossing-off loop is unrolled.
+ * -> Large primes hit a segment at most a few times. They are stored in buckets, one per segment ahead,
+ *    and a large prime is only touched in those segments that contain one of its multiples.
+ * 
+ * The segment is reused, so no memory is allocated during sieving except for growing buckets.
+ * 
+ * If the callback implements PrimeChunkCallback, too, then the primes are delivered in chunks of up to CHUNK_SIZE primes.
+ * 
+ * @author agent
+ */
+public class SegmentedSieve30 {
+	private static final Logger LOG = Logger.getLogger(SegmentedSieve30.class);
+	
+	/** default segment size in bytes, fitting into the L1 cache; each byte represents 30 numbers */
+	public static final int DEFAULT_SEGMENT_BYTES = 1<<15;
+	
+	/** the maximum number of primes delivered at once to a PrimeChunkCallback */
+	public static final int CHUNK_SIZE = 1024;
+	
+	/** the residues mod 30 represented by the bits of a byte */
+	private static final int[] WHEEL = {1, 7, 11, 13, 17, 19, 23, 29};
+	
+	/** distances to the next wheel residue; 29 -> 31 */
+	private static final int[] WHEEL_STEP = {6, 4, 2, 4, 2, 4, 6, 2};
+	
+	/** the bit index of residues mod 30, or -1 for residues not coprime to 30 */
+	private static final int[] BIT_INDEX = new int[30];
+	
+	/** the smallest wheel index j with WHEEL[j] >= r */
+	private static final int[] NEXT_WHEEL_INDEX = new int[30];
+	
+	/**
+	 * For a sieving prime p with p%30 = WHEEL[pi] and its multiple p*m with m%30 = WHEEL[j]:
+	 * MASK[8*pi+j] is the bit representing p*m, and the byte index of the next multiple p*(m+WHEEL_STEP[j]) is
+	 * (p/30)*WHEEL_STEP[j] + BYTE_STEP_EXTRA[8*pi+j] bytes ahead.
+	 */
+	private static final int[] MASK = new int[64];
+	private static final int[] BYTE_STEP_EXTRA = new int[64];
+	
+	/** WORD_OFFSETS[i] is the number represented by bit i of a little endian long word, relative to the number represented by its first byte */
+	private static final int[] WORD_OFFSETS = new int[64];
+	
+	/** 7*11*13*17 */
+	private static final int PRESIEVE_BYTES = 17017;
+	
+	/** pre-sieved pattern: pattern[i] belongs to all bytes with index == i (mod PRESIEVE_BYTES) */
+	private static final byte[] PRESIEVE_PATTERN = new byte[PRESIEVE_BYTES];
+	
+	/** the primes not found by sieving */
+	private static final int[] PRESIEVED_PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31};
+	
+	/** the smallest prime that is sieved */
+	private static final int FIRST_SIEVING_PRIME = 37;
+	
+	static {
+		for (int r=0; r<30; r++) BIT_INDEX[r] = -1;
+		for (int j=0; j<8; j++) BIT_INDEX[WHEEL[j]] = j;
+		for (int r=0, j=0; r<30; r++) {
+			if (WHEEL[j] < r) j++;
+			NEXT_WHEEL_INDEX[r] = j;
+		}
+		for (int i=0; i<64; i++) {
+			WORD_OFFSETS[i] = 30*(i>>3) + WHEEL[i&7];
+		}
+		for (int pi=0; pi<8; pi++) {
+			for (int j=0; j<8; j++) {
+				int r = (WHEEL[pi]*WHEEL[j]) % 30; // residue of p*m
+				MASK[8*pi+j] = 1 << BIT_INDEX[r];
+				BYTE_STEP_EXTRA[8*pi+j] = (r + WHEEL[pi]*WHEEL_STEP[j]) / 30;
+			}
+		}
+		fillPattern(PRESIEVE_PATTERN, new int[] {7, 11, 13, 17});
+	}
+	
+	/**
+	 * Fill pattern with the wheel bits of all numbers that are not multiples of the given primes.
+	 * @param pattern
+	 * @param primes
+	 */
+	private static void fillPattern(byte[] pattern, int[] primes) {
+		for (int i=0; i<pattern.length; i++) pattern[i] = (byte) 0xFF;
+		for (int p : primes) {
+			for (long n=p; n<30L*pattern.length; n+=p) {
+				int bit = BIT_INDEX[(int) (n%30)];
+				if (bit >= 0) pattern[(int) (n/30)] &= ~(1<<bit);
+			}
+		}
+	}
+	
+	private SieveCallback clientCallback;
+	
+	/** the client callback if it implements PrimeChunkCallback, otherwise null */
+	private PrimeChunkCallback chunkCallback;
+	
+	/** the buffer for chunk delivery, and the number of primes in it */
+	private long[] chunk;
+	private int chunkCount;
+	
+	private final int segmentBytes;
+	
+	/** primes >= largePrimeThreshold are sieved via buckets */
+	private final int largePrimeThreshold;
+	
+	/**
+	 * Second pre-sieve stage: patterns for 19*23 and 29*31 bytes, repeated to a length of segmentBytes + period,
+	 * so that they can be combined with a segment from any start offset in a single loop.
+	 */
+	private final byte[] pattern19x23;
+	private final byte[] pattern29x31;
+	private final ByteBuffer buffer19x23;
+	private final ByteBuffer buffer29x31;
+
+	/**
+	 * Constructor with the default segment size.
+	 * @param clientCallback receives the primes; if it implements PrimeChunkCallback, too, then the primes are delivered in chunks
+	 */
+	public SegmentedSieve30(SieveCallback clientCallback) {
+		this(clientCallback, DEFAULT_SEGMENT_BYTES);
+	}
+	
+	/**
+	 * Full constructor.
+	 * @param clientCallback receives the primes; if it implements PrimeChunkCallback, too, then the primes are delivered in chunks
+	 * @param segmentBytes segment size in bytes, typically the size of the L1 or L2 cache. Each byte represents 30 numbers.
+	 * Must be a multiple of 8 and at least 64.
+	 */
+	public SegmentedSieve30(SieveCallback clientCallback, int segmentBytes) {
+		if (segmentBytes < 64 || (segmentBytes & 7) != 0) {
+			throw new IllegalArgumentException("segmentBytes must be a multiple of 8 and >= 64, but is " + segmentBytes);
+		}
+		this.clientCallback = clientCallback;
+		if (clientCallback instanceof PrimeChunkCallback) {
+			chunkCallback = (PrimeChunkCallback) clientCallback;
+			chunk = new long[CHUNK_SIZE];
+		}
+		this.segmentBytes = segmentBytes;
+		// primes with less than ~2 hits per segment go to the buckets
+		this.largePrimeThreshold = 4*segmentBytes;
+		pattern19x23 = new byte[segmentBytes + 19*23];
+		fillPattern(pattern19x23, new int[] {19, 23});
+		pattern29x31 = new byte[segmentBytes + 29*31];
+		fillPattern(pattern29x31, new int[] {29, 31});
+		buffer19x23 = ByteBuffer.wrap(pattern19x23).order(ByteOrder.LITTLE_ENDIAN);
+		buffer29x31 = ByteBuffer.wrap(pattern29x31).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Generate primes.
+	 * @param limit biggest number to test for prime
+	 */
+	public void sieve(long limit) {
+		sieve(0, limit);
+	}
+	
+	/**
+	 * Generate the primes p with start <= p <= limit.
+	 * @param start smallest number to test for prime
+	 * @param limit biggest number to test for prime
+	 */
+	public void sieve(long start, long limit) {
+		sieve(start, limit, computeSievingPrimes(isqrt(limit)));
+	}
+	
+	/**
+	 * Generate the primes p with start <= p <= limit, using precomputed sieving primes.
+	 * This allows to share the sieving primes between the threads of a parallel sieve.
+	 * 
+	 * @param start smallest number to test for prime
+	 * @param limit biggest number to test for prime
+	 * @param sievingPrimes the primes FIRST_SIEVING_PRIME <= p <= sqrt(limit) in ascending order; more are permitted
+	 */
+	void sieve(long start, long limit, int[] sievingPrimes) {
+		if (start < 0) start = 0;
+		if (start > limit) return;
+		
+		chunkCount = 0;
+		sieveSegments(start, limit, sievingPrimes);
+		if (chunkCallback != null && chunkCount > 0) {
+			chunkCallback.processPrimes(chunk, chunkCount);
+		}
+	}
+	
+	private void sieveSegments(long start, long limit, int[] sievingPrimes) {
+		for (int p : PRESIEVED_PRIMES) {
+			if (p > limit) return;
+			if (p >= start) {
+				if (chunkCallback != null) {
+					chunk[chunkCount++] = p;
+				} else {
+					clientCallback.processPrime(p);
+				}
+			}
+		}
+		
+		final int sqrt = isqrt(limit);
+		final int sievingPrimesCount = sievingPrimes.length;
+		
+		// state of small primes: p/30, index 8*pi+j, next byte offset relative to the current segment
+		final int[] smallQ = new int[sievingPrimesCount];
+		final int[] smallIndex = new int[sievingPrimesCount];
+		final int[] smallNext = new int[sievingPrimesCount];
+		int smallCount = 0;
+		
+		// large primes: a ring of buckets, one for each of the next segments.
+		// A bucket entry consists of p/30, the index 8*pi+j, and the byte offset relative to the segment of the bucket.
+		final int maxStepBytes = (sqrt/30)*6 + 6;
+		final int bucketCount = maxStepBytes/segmentBytes + 2;
+		final int[][] buckets = new int[bucketCount][];
+		final int[] bucketSizes = new int[bucketCount];
+		for (int b=0; b<bucketCount; b++) buckets[b] = new int[3*16];
+		int currentBucket = 0;
+		
+		final long firstByte = start/30;
+		final long endByte = limit/30 + 1;
+		final byte[] segment = new byte[(int) Math.min(segmentBytes, endByte-firstByte)];
+		// long access to the byte arrays, intrinsified on Java 9+
+		final ByteBuffer segmentBuffer = ByteBuffer.wrap(segment).order(ByteOrder.LITTLE_ENDIAN);
+		int nextSievingPrime = 0;
+		for (long segmentStart=firstByte; segmentStart<endByte; segmentStart+=segmentBytes) {
+			final int bytes = (int) Math.min(segmentBytes, endByte-segmentStart);
+			// the smallest and the biggest number represented by this segment
+			final long segmentBase = 30*segmentStart;
+			final long segmentEnd = 30*(segmentStart+bytes) - 1;
+			
+			presieve(segment, segmentBuffer, bytes, segmentStart);
+			if (segmentStart == firstByte) {
+				// remove numbers < start
+				final int r = (int) (start - segmentBase);
+				segment[0] &= ~((1 << NEXT_WHEEL_INDEX[r]) - 1);
+			}
+			
+			// add new sieving primes p with p^2 <= segmentEnd; their first multiple is p*m >= max(p^2, segmentBase) with m coprime to 30
+			for ( ; nextSievingPrime<sievingPrimesCount; nextSievingPrime++) {
+				final int p = sievingPrimes[nextSievingPrime];
+				if (p > sqrt) break;
+				final long pSquare = p*(long)p;
+				if (pSquare > segmentEnd) break;
+				final int q = p/30;
+				final int pi = BIT_INDEX[p%30];
+				final long offset;
+				final int index;
+				if (pSquare >= segmentBase) {
+					offset = pSquare/30 - segmentStart;
+					index = 9*pi; // 8*pi + j with j=pi, because m=p
+				} else {
+					// only possible in the first segment of a range
+					long m = (segmentBase + p - 1) / p;
+					final int j = NEXT_WHEEL_INDEX[(int) (m%30)];
+					m += WHEEL[j] - m%30;
+					offset = (p*m)/30 - segmentStart;
+					index = 8*pi + j;
+				}
+				if (p < largePrimeThreshold) {
+					smallQ[smallCount] = q;
+					smallIndex[smallCount] = index;
+					smallNext[smallCount++] = (int) offset;
+				} else {
+					int b = (currentBucket + (int) (offset/segmentBytes)) % bucketCount;
+					addToBucket(buckets, bucketSizes, b, q, index, (int) (offset%segmentBytes));
+				}
+			}
+			
+			// small primes
+			for (int i=0; i<smallCount; i++) {
+				smallNext[i] = crossOffSmall(segment, bytes, smallQ[i], smallIndex, i, smallNext[i]) - bytes;
+			}
+			
+			// large primes
+			final int[] bucket = buckets[currentBucket];
+			final int bucketSize = bucketSizes[currentBucket];
+			bucketSizes[currentBucket] = 0;
+			for (int e=0; e<bucketSize; e+=3) {
+				final int q = bucket[e];
+				final int pi8 = bucket[e+1] & ~7;
+				int j = bucket[e+1] & 7;
+				int offset = bucket[e+2];
+				// in the last segment of a range the offset may be beyond the segment
+				while (offset < bytes) {
+					segment[offset] &= ~MASK[pi8+j];
+					offset += q*WHEEL_STEP[j] + BYTE_STEP_EXTRA[pi8+j];
+					j = (j+1) & 7;
+				}
+				int b = (currentBucket + offset/segmentBytes) % bucketCount;
+				addToBucket(buckets, bucketSizes, b, q, pi8+j, offset%segmentBytes);
+			}
+			currentBucket = (currentBucket+1) % bucketCount;
+			
+			if (chunkCallback != null) {
+				collectPrimeChunks(segment, bytes, segmentStart, limit);
+			} else {
+				collectPrimes(segment, bytes, segmentStart, limit);
+			}
+		}
+	}
+	
+	/**
+	 * Initialize the segment with the pre-sieved patterns.
+	 * @param segment
+	 * @param segmentBuffer little endian long view of segment
+	 * @param bytes segment size
+	 * @param segmentStart index of the first byte of the segment
+	 */
+	private void presieve(byte[] segment, ByteBuffer segmentBuffer, int bytes, long segmentStart) {
+		int patternOffset = (int) (segmentStart % PRESIEVE_BYTES);
+		for (int filled=0; filled<bytes; ) {
+			int len = Math.min(bytes-filled, PRESIEVE_BYTES-patternOffset);
+			System.arraycopy(PRESIEVE_PATTERN, patternOffset, segment, filled, len);
+			filled += len;
+			patternOffset = 0;
+		}
+		final int offset19x23 = (int) (segmentStart % (19*23)), offset29x31 = (int) (segmentStart % (29*31));
+		int i = 0;
+		for ( ; i+8<=bytes; i+=8) {
+			segmentBuffer.putLong(i, segmentBuffer.getLong(i) & buffer19x23.getLong(offset19x23+i) & buffer29x31.getLong(offset29x31+i));
+		}
+		for ( ; i<bytes; i++) {
+			segment[i] &= pattern19x23[offset19x23+i] & pattern29x31[offset29x31+i];
+		}
+		if (segmentStart == 0) segment[0] &= ~1; // 1 is not prime
+	}
+	
+	/**
+	 * Cross off the multiples of a small prime in the segment.
+	 * @param segment
+	 * @param bytes segment size
+	 * @param q p/30
+	 * @param indexes array of the indices 8*pi+j; the entry at position i is updated
+	 * @param i
+	 * @param offset byte offset of the next multiple
+	 * @return byte offset of the first multiple behind the segment
+	 */
+	private static int crossOffSmall(byte[] segment, int bytes, int q, int[] indexes, int i, int offset) {
+		final int pi8 = indexes[i] & ~7;
+		int j = indexes[i] & 7;
+		final int p = 30*q + WHEEL[pi8>>3];
+		if (p < bytes>>1) {
+			offset = crossOffUnrolled(segment, bytes, q, p, pi8, j, offset);
+			// now offset is the first multiple of a full cycle that does not fit completely into the segment
+		}
+		// remaining multiples one by one
+		while (offset < bytes) {
+			segment[offset] &= ~MASK[pi8+j];
+			offset += q*WHEEL_STEP[j] + BYTE_STEP_EXTRA[pi8+j];
+			j = (j+1) & 7;
+		}
+		indexes[i] = pi8 + j;
+		return offset;
+	}
+	
+	/**
+	 * Cross off full cycles of 8 multiples.
+	 * @param segment
+	 * @param bytes
+	 * @param q
+	 * @param p
+	 * @param pi8
+	 * @param j
+	 * @param offset
+	 * @return offset of the first multiple of the first cycle that does not fit into the segment completely
+	 */
+	private static int crossOffUnrolled(byte[] segment, int bytes, int q, int p, int pi8, int j, int offset) {
+		// 8 consecutive multiples span exactly p bytes. Compute their offsets relative to the first one and their masks.
+		final int j1 = (j+1)&7, j2 = (j+2)&7, j3 = (j+3)&7, j4 = (j+4)&7, j5 = (j+5)&7, j6 = (j+6)&7, j7 = (j+7)&7;
+		final int o1 = q*WHEEL_STEP[j] + BYTE_STEP_EXTRA[pi8+j];
+		final int o2 = o1 + q*WHEEL_STEP[j1] + BYTE_STEP_EXTRA[pi8+j1];
+		final int o3 = o2 + q*WHEEL_STEP[j2] + BYTE_STEP_EXTRA[pi8+j2];
+		final int o4 = o3 + q*WHEEL_STEP[j3] + BYTE_STEP_EXTRA[pi8+j3];
+		final int o5 = o4 + q*WHEEL_STEP[j4] + BYTE_STEP_EXTRA[pi8+j4];
+		final int o6 = o5 + q*WHEEL_STEP[j5] + BYTE_STEP_EXTRA[pi8+j5];
+		final int o7 = o6 + q*WHEEL_STEP[j6] + BYTE_STEP_EXTRA[pi8+j6];
+		final int m0 = ~MASK[pi8+j], m1 = ~MASK[pi8+j1], m2 = ~MASK[pi8+j2], m3 = ~MASK[pi8+j3];
+		final int m4 = ~MASK[pi8+j4], m5 = ~MASK[pi8+j5], m6 = ~MASK[pi8+j6], m7 = ~MASK[pi8+j7];
+		for (final int unrolledLimit = bytes - o7; offset < unrolledLimit; offset += p) {
+			segment[offset] &= m0;
+			segment[offset+o1] &= m1;
+			segment[offset+o2] &= m2;
+			segment[offset+o3] &= m3;
+			segment[offset+o4] &= m4;
+			segment[offset+o5] &= m5;
+			segment[offset+o6] &= m6;
+			segment[offset+o7] &= m7;
+		}
+		return offset;
+	}
+	
+	private static void addToBucket(int[][] buckets, int[] bucketSizes, int b, int q, int index, int offset) {
+		int size = bucketSizes[b];
+		int[] bucket = buckets[b];
+		if (size == bucket.length) {
+			int[] grown = new int[bucket.length << 1];
+			System.arraycopy(bucket, 0, grown, 0, size);
+			buckets[b] = bucket = grown;
+		}
+		bucket[size] = q;
+		bucket[size+1] = index;
+		bucket[size+2] = offset;
+		bucketSizes[b] = size + 3;
+	}
+	
+	/**
+	 * Pass the primes of the segment to the callback.
+	 * @param segment
+	 * @param bytes
+	 * @param segmentStart
+	 * @param limit
+	 */
+	private void collectPrimes(byte[] segment, int bytes, long segmentStart, long limit) {
+		final SieveCallback clientCallback = this.clientCallback;
+		final long segmentBase = 30*segmentStart;
+		// 8 bytes at once; the limit only needs to be checked in the last segment
+		final int fullWords = (30*(segmentStart+bytes) - 1 <= limit) ? bytes>>3 : 0;
+		final ByteBuffer buffer = ByteBuffer.wrap(segment).order(ByteOrder.LITTLE_ENDIAN);
+		for (int w=0; w<fullWords; w++) {
+			long bits = buffer.getLong(w<<3);
+			final long base = segmentBase + 240L*w;
+			while (bits != 0) {
+				clientCallback.processPrime(base + WORD_OFFSETS[Long.numberOfTrailingZeros(bits)]);
+				bits &= bits-1; // clear lowest set bit
+			}
+		}
+		long base = segmentBase + 30L*(fullWords<<3);
+		for (int i=fullWords<<3; i<bytes; i++, base+=30) {
+			int bits = segment[i] & 0xFF;
+			while (bits != 0) {
+				final long prime = base + WHEEL[Integer.numberOfTrailingZeros(bits)];
+				if (prime > limit) return;
+				clientCallback.processPrime(prime);
+				bits &= bits-1;
+			}
+		}
+	}
+	
+	/**
+	 * Add the primes of the segment to the chunk buffer, and pass the chunk to the callback whenever the buffer is nearly full.
+	 * @param segment
+	 * @param bytes
+	 * @param segmentStart
+	 * @param limit
+	 */
+	private void collectPrimeChunks(byte[] segment, int bytes, long segmentStart, long limit) {
+		final PrimeChunkCallback chunkCallback = this.chunkCallback;
+		final long[] chunk = this.chunk;
+		int count = chunkCount;
+		final long segmentBase = 30*segmentStart;
+		final int fullWords = (30*(segmentStart+bytes) - 1 <= limit) ? bytes>>3 : 0;
+		final ByteBuffer buffer = ByteBuffer.wrap(segment).order(ByteOrder.LITTLE_ENDIAN);
+		for (int w=0; w<fullWords; w++) {
+			// a word contains at most 64 primes
+			if (count > CHUNK_SIZE-64) {
+				chunkCallback.processPrimes(chunk, count);
+				count = 0;
+			}
+			long bits = buffer.getLong(w<<3);
+			final long base = segmentBase + 240L*w;
+			while (bits != 0) {
+				chunk[count++] = base + WORD_OFFSETS[Long.numberOfTrailingZeros(bits)];
+				bits &= bits-1;
+			}
+		}
+		long base = segmentBase + 30L*(fullWords<<3);
+		for (int i=fullWords<<3; i<bytes; i++, base+=30) {
+			if (count > CHUNK_SIZE-8) {
+				chunkCallback.processPrimes(chunk, count);
+				count = 0;
+			}
+			int bits = segment[i] & 0xFF;
+			while (bits != 0) {
+				final long prime = base + WHEEL[Integer.numberOfTrailingZeros(bits)];
+				if (prime > limit) {
+					chunkCount = count;
+					return;
+				}
+				chunk[count++] = prime;
+				bits &= bits-1;
+			}
+		}
+		chunkCount = count;
+	}
+	
+	/**
+	 * @param n
+	 * @return floor(sqrt(n)) for 0 <= n < 2^62
+	 */
+	static int isqrt(long n) {
+		long sqrt = (long) Math.sqrt(n);
+		while (sqrt*sqrt > n) sqrt--;
+		while ((sqrt+1)*(sqrt+1) <= n) sqrt++;
+		return (int) sqrt;
+	}
+	
+	/**
+	 * Compute the sieving primes FIRST_SIEVING_PRIME <= p <= sqrt by a simple sieve of Eratosthenes.
+	 * @param sqrt
+	 * @return sieving primes
+	 */
+	static int[] computeSievingPrimes(int sqrt) {
+		boolean[] isComposite = new boolean[sqrt+1];
+		int count = 0;
+		for (int i=2; i<=sqrt; i++) {
+			if (!isComposite[i]) {
+				if (i >= FIRST_SIEVING_PRIME) count++;
+				for (long j = i*(long)i; j <= sqrt; j+=i) {
+					isComposite[(int)j] = true;
+				}
+			}
+		}
+		int[] primes = new int[count];
+		for (int i=FIRST_SIEVING_PRIME, k=0; i<=sqrt; i+=2) {
+			if (!isComposite[i]) primes[k++] = i;
+		}
+		return primes;
+	}
+	
+	private static class SumCallback implements SieveCallback {
+		long sum;
+		
+		@Override
+		public void processPrime(long prime) {
+			sum += prime;
+		}
+	}
+	
+	private static class XorCallback implements SieveCallback {
+		long xor;
+		
+		@Override
+		public void processPrime(long prime) {
+			xor ^= prime;
+		}
+	}
+	
+	private static class MaxCallback implements SieveCallback {
+		long max;
+		
+		@Override
+		public void processPrime(long prime) {
+			if (prime > max) max = prime;
+		}
+	}
+	
+	private static class ChunkedSumCallback implements SieveCallback, PrimeChunkCallback {
+		long sum;
+		
+		@Override
+		public void processPrime(long prime) {
+			sum += prime;
+		}
+		
+		@Override
+		public void processPrimes(long[] primes, int count) {
+			long sum = this.sum;
+			for (int i=0; i<count; i++) {
+				sum += primes[i];
+			}
+			this.sum = sum;
+		}
+	}
+	
+	/**
+	 * Compare per-prime delivery and chunk delivery of the primes <= limit, summing up the primes.
+	 * Before, the per-prime call site is made megamorphic by sieving with several callback classes, like in real applications.
+	 * @param limit
+	 */
+	private static void testChunkDelivery(long limit) {
+		for (int i=0; i<3; i++) {
+			new SegmentedSieve30(new XorCallback()).sieve(limit);
+			new SegmentedSieve30(new MaxCallback()).sieve(limit);
+		}
+		long bestPerPrime = Long.MAX_VALUE, bestChunked = Long.MAX_VALUE;
+		long sum1 = 0, sum2 = 0;
+		for (int round=0; round<5; round++) {
+			long t0 = System.nanoTime();
+			SumCallback sumCallback = new SumCallback();
+			new SegmentedSieve30(sumCallback).sieve(limit);
+			long t1 = System.nanoTime();
+			ChunkedSumCallback chunkedSumCallback = new ChunkedSumCallback();
+			new SegmentedSieve30(chunkedSumCallback).sieve(limit);
+			long t2 = System.nanoTime();
+			bestPerPrime = Math.min(bestPerPrime, t1-t0);
+			bestChunked = Math.min(bestChunked, t2-t1);
+			sum1 = sumCallback.sum;
+			sum2 = chunkedSumCallback.sum;
+		}
+		LOG.info("Summing primes <= " + limit + ": per-prime delivery took " + bestPerPrime/1000000 + " ms (sum=" + sum1 + "), chunk delivery took " + bestChunked/1000000 + " ms (sum=" + sum2 + ")");
+	}
+	
+	/**
+	 * Test performance without load caused by processPrime(), compared to SegmentedSieve.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		for (long limit = 1000000; limit <= 10000000000L; limit *= 10) {
+			long t0 = System.nanoTime();
+			CountingCallback callback = new CountingCallback();
+			new SegmentedSieve30(callback).sieve(limit);
+			long t1 = System.nanoTime();
+			String report = "Sieving x <= " + limit + ": SegmentedSieve30 found " + callback.getCount() + " primes in " + ((t1-t0) / 1000000) + " ms";
+			if (limit <= 1000000000L) {
+				CountingCallback callback2 = new CountingCallback();
+				new SegmentedSieve(callback2).sieve(limit);
+				long t2 = System.nanoTime();
+				report += ", SegmentedSieve found " + callback2.getCount() + " primes in " + ((t2-t1) / 1000000) + " ms";
+			}
+			LOG.info(report);
+		}
+		testChunkDelivery(1000000000L);
+	}
+}
@@ -18,6 +18,7 @@ import org.apache.log4j.Logger;
 import de.tilman_neumann.jml.primes.bounds.NthPrimeUpperBounds;
 import de.tilman_neumann.jml.primes.exact.CountingCallback;
 import de.tilman_neumann.jml.primes.exact.SegmentedSieve;
+import de.tilman_neumann.jml.primes.exact.SegmentedSieve30;
 import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
 import de.tilman_neumann.util.ConfigUtil;
 
@@ -56,11 +57,51 @@ public class SieveTest {
 		    	assertEquals(correctResult[i], segmentedResult[i]);
 	    	}
 			
+			// test wheel-30 segmented sieve
+			CollectingCallback segmented30Callback = new CollectingCallback(count);
+	    	SegmentedSieve30 segmentedSieve30 = new SegmentedSieve30(segmented30Callback);
+			segmentedSieve30.sieve(nthPrimeUpperBound);
+			int[] segmented30Result = segmented30Callback.array;
+	    	assertEquals(count, segmented30Callback.count);
+	    	for (int i=0; i<count; i++) {
+		    	assertEquals(correctResult[i], segmented30Result[i]);
+	    	}
+			
+			// test parallel sieve in ordered mode, with small chunks
+			CollectingCallback parallelCallback = new CollectingCallback(count);
+			ParallelSegmentedSieve parallelSieve = new ParallelSegmentedSieve(2, 4096, 4);
+			parallelSieve.sieveOrdered(0, nthPrimeUpperBound, parallelCallback);
+			parallelSieve.shutdown();
+			int[] parallelResult = parallelCallback.array;
+	    	assertEquals(count, parallelCallback.count);
+	    	for (int i=0; i<count; i++) {
+		    	assertEquals(correctResult[i], parallelResult[i]);
+	    	}
+			
+			// test prime iterator
+			PrimeIterator primeIterator = new PrimeIterator(0, nthPrimeUpperBound);
+	    	for (int i=0; i<count; i++) {
+		    	assertEquals(correctResult[i], primeIterator.nextLong());
+	    	}
+			
+			// test prime counting
+			int lastPrime = correctResult[count-1];
+			assertEquals(count, PrimeCount.pi(lastPrime));
+			assertEquals(count-1, PrimeCount.pi(lastPrime-1));
+			assertEquals(lastPrime, PrimeCount.nthPrime(count));
+			
 			// test sieve facade
 	    	AutoExpandingPrimesArray primesArray = AutoExpandingPrimesArray.get().ensurePrimeCount(count);
 	    	for (int i=0; i<count; i++) {
 		    	assertEquals(correctResult[i], primesArray.getPrime(i));
 	    	}
+	    	
+			// test compact primes table
+	    	CompactPrimesTable primesTable = new CompactPrimesTable().ensurePrimeCount(count);
+	    	for (int i=0; i<count; i++) {
+		    	assertEquals(correctResult[i], primesTable.getPrime(i));
+	    	}
+	    	assertEquals(count, primesTable.getInsertPosition(lastPrime));
 		}
 	}
 	
@@ -91,6 +132,13 @@ public class SieveTest {
 				LOG.debug("    Accessing " + count + " primes took " + (System.currentTimeMillis()-start) + "ms (" + oddPrimesCount + " odd primes found)");
 			}
 
+			// Test compact primes table: No int restriction, ~1.13 bytes per prime, slower random access
+			if (count <= 1000000000) {
+				start = System.currentTimeMillis();
+				CompactPrimesTable primesTable = new CompactPrimesTable().ensurePrimeCount(count);
+				LOG.info("CompactPrimesTable took " + (System.currentTimeMillis()-start) + "ms to identify the first " + count + " primes, using " + primesTable.getMemoryBytes() + " bytes.");
+			}
+
 			// Test segmented sieve
 			long nthPrimeUpperBound = NthPrimeUpperBounds.combinedUpperBound(count);
 			CountingCallback callback = new CountingCallback();
@@ -98,6 +146,13 @@ public class SieveTest {
 	    	start = System.currentTimeMillis();
 			segmentedSieve.sieve(nthPrimeUpperBound);
 			LOG.info("SegementedSieve took " + (System.currentTimeMillis()-start) + "ms to identify the first " + count + " primes.");
+			
+			// Test wheel-30 segmented sieve
+			callback = new CountingCallback();
+	    	SegmentedSieve30 segmentedSieve30 = new SegmentedSieve30(callback);
+	    	start = System.currentTimeMillis();
+			segmentedSieve30.sieve(nthPrimeUpperBound);
+			LOG.info("SegmentedSieve30 took " + (System.currentTimeMillis()-start) + "ms to identify the first " + count + " primes.");
 		}
 	}
 	
@@ -42,23 +42,29 @@ public class BPSWTest {
 	//private TDivPrimeTest tdiv = new TDivPrimeTest();
 	private MillerRabinTest millerRabinTest = new MillerRabinTest();
 	private LucasTest lucasTest = new LucasTest();
+	private BPSWTest64 bpsw64 = new BPSWTest64();
+	private BPSWTestMultiLimb bpswMultiLimb = new BPSWTestMultiLimb();
+	/** created on first use in nextProbablePrime(), because most users only need the prime test */
+	private PrimeSearch primeSearch = null;
 
     public boolean isProbablePrime(long N) {
-    	return isProbablePrime(BigInteger.valueOf(N)); // TODO: faster implementation for long?
+    	return bpsw64.isProbablePrime(N);
     }
 
     public boolean isProbablePrime(BigInteger N) {
         N = N.abs(); // sign is irrelevant
-        if (!N.testBit(0)) return N.equals(I_2); // even N>2 is not prime
-
-        // For small N, trial division is much faster than BPSW
-        if (N.bitLength() < 32) {
-        	return TDivPrimeTest.getInstance().isPrime(N.intValue());
+        // For N < 2^64, BPSW with Montgomery arithmetic on longs is much faster than trial division or the BigInteger BPSW
+        if (N.bitLength() <= 64) {
+        	return bpsw64.isProbablePrimeUnsigned(N.longValue());
         }
+        if (!N.testBit(0)) return false; // even N>2 is not prime
         
-		// Test residues % 30030. Note that N<30030 have been exclude by trial division above.
+		// Test residues % 30030. Note that N<30030 have been handled above.
 		if (!primeRestsMod30030.contains(N.mod(BIG_30030).intValue())) return false;
 
+		// Up to 512 bit, BPSW with fixed-width Montgomery arithmetic is faster than with BigIntegers
+		if (N.bitLength() <= BPSWTestMultiLimb.MAX_BITS) return bpswMultiLimb.isProbablePrime(N);
+		
 		// The Lucas test is not carried out if N fails the base 2 Miller-Rabin test.
         return millerRabinTest.testSingleBase(N, I_2) && lucasTest.isStrongProbablePrime(N);
     }
@@ -72,12 +78,8 @@ public class BPSWTest {
     	if (N.bitLength()>=256) return N.nextProbablePrime();
     	
         N = N.abs(); // sign is irrelevant
-        if (N.bitLength()<=1) return I_2;
-    	// skip argument and make even argument odd
-        N = N.testBit(0) ? N.add(I_2) : N.add(I_1);
-    	
-    	// loop to next prime
-    	while (!isProbablePrime(N)) N = N.add(I_2);
-    	return N;
+        // sieve a window of candidates and test the survivors
+        if (primeSearch == null) primeSearch = new PrimeSearch();
+        return primeSearch.nextPrime(N);
     }
 }
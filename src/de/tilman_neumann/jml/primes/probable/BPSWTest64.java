@@ -0,0 +1,465 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.probable;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.I_2;
+import static de.tilman_neumann.jml.base.Montgomery64.*;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.modular.JacobiSymbol;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * BPSW test for 64 bit numbers: a strong probable prime test to base 2 followed by an extra strong Lucas probable prime test,
+ * with Montgomery arithmetic on longs (R=2^64) instead of BigIntegers.
+ * Nothing is allocated.
+ * 
+ * There is no BPSW pseudoprime below 2^64, so this is a deterministic prime test for all arguments.
+ * The arguments of isProbablePrimeUnsigned() are interpreted as unsigned numbers, which covers the full range N < 2^64.
+ * 
+ * @see [Feitsma, Galway: Tables of base-2 pseudoprimes < 2^64]
+ * 
+ * @author agent
+ */
+public class BPSWTest64 {
+	private static final Logger LOG = Logger.getLogger(BPSWTest64.class);
+
+	/** The 7 Miller-Rabin bases found by Jim Sinclair, for the performance comparison with PrPTest before it used this class */
+	private static final BigInteger[] SINCLAIR_BASES = new BigInteger[] {I_2, BigInteger.valueOf(325), BigInteger.valueOf(9375), BigInteger.valueOf(28178), BigInteger.valueOf(450775), BigInteger.valueOf(9780504), BigInteger.valueOf(1795265022)};
+
+	/** IS_COPRIME_TO_30030[N % 30030] is false if N has a factor 2, 3, 5, 7, 11 or 13 */
+	private static final boolean[] IS_COPRIME_TO_30030 = createCoprimeTable(30030);
+	
+	private JacobiSymbol jacobiEngine = new JacobiSymbol();
+	
+	/** indices of the numbers that need the full test in the batch test */
+	private int[] pending = new int[16];
+	
+	private static boolean[] createCoprimeTable(int modulus) {
+		boolean[] table = new boolean[modulus];
+		for (int r=0; r<modulus; r++) {
+			table[r] = r%2!=0 && r%3!=0 && r%5!=0 && r%7!=0 && r%11!=0 && r%13!=0;
+		}
+		return table;
+	}
+	
+	/**
+	 * Test if |N| is prime.
+	 * @param N
+	 * @return true if |N| is prime
+	 */
+	public boolean isProbablePrime(long N) {
+		return isProbablePrimeUnsigned(N<0 ? -N : N); // -Long.MIN_VALUE = 2^63 is correctly interpreted as unsigned
+	}
+	
+	/**
+	 * Test if the unsigned 64 bit number N is prime.
+	 * @param N
+	 * @return true if N is prime
+	 */
+	public boolean isProbablePrimeUnsigned(long N) {
+		if ((N&1)==0) return N==2;
+		if (N>=0 && N<17) return N==3 || N==5 || N==7 || N==11 || N==13;
+		if (!IS_COPRIME_TO_30030[(int) Long.remainderUnsigned(N, 30030)]) return false;
+		if (N>=0 && N<17*17) return true;
+		
+		// Montgomery setup
+		final long NInv = inverse(N);
+		final long one = Long.remainderUnsigned(-N, N); // R mod N = (2^64 - N) mod N
+		
+		// The Lucas test is not carried out if N fails the base 2 Miller-Rabin test.
+		return isStrongProbablePrimeBase2(N, NInv, one) && isExtraStrongLucasProbablePrime(N, NInv, one);
+	}
+	
+	/**
+	 * Test a batch of unsigned 64 bit numbers. The result is the same as from calling isProbablePrimeUnsigned() for each of them,
+	 * but the base 2 strong probable prime tests of the numbers that pass the residue check are carried out four at a time,
+	 * with interleaved Montgomery multiplications. Since the four exponentiations are independent, the CPU can overlap
+	 * their multiplications instead of waiting for the latency of a single dependency chain.
+	 * 
+	 * @param N the numbers to test
+	 * @param count the number of entries of N to test
+	 * @param result result[i] is set to true if N[i] is prime, false otherwise
+	 */
+	public void isProbablePrimeUnsigned(long[] N, int count, boolean[] result) {
+		// collect the numbers that need the base 2 test
+		if (pending.length < count) pending = new int[count];
+		int pendingCount = 0;
+		for (int i=0; i<count; i++) {
+			final long n = N[i];
+			if ((n&1)==0 || (n>=0 && n<17*17) || !IS_COPRIME_TO_30030[(int) Long.remainderUnsigned(n, 30030)]) {
+				result[i] = isProbablePrimeUnsigned(n); // cheap here
+			} else {
+				pending[pendingCount++] = i;
+			}
+		}
+		
+		// groups of four; an incomplete last group is filled up with copies of its first entry
+		for (int g=0; g<pendingCount; g+=4) {
+			final int i0 = pending[g];
+			final int i1 = g+1<pendingCount ? pending[g+1] : i0;
+			final int i2 = g+2<pendingCount ? pending[g+2] : i0;
+			final int i3 = g+3<pendingCount ? pending[g+3] : i0;
+			final int sprpMask = isStrongProbablePrimeBase2(N[i0], N[i1], N[i2], N[i3]);
+			result[i0] = (sprpMask&1)!=0 && isExtraStrongLucasProbablePrime(N[i0]);
+			result[i1] = (sprpMask&2)!=0 && isExtraStrongLucasProbablePrime(N[i1]);
+			result[i2] = (sprpMask&4)!=0 && isExtraStrongLucasProbablePrime(N[i2]);
+			result[i3] = (sprpMask&8)!=0 && isExtraStrongLucasProbablePrime(N[i3]);
+		}
+	}
+	
+	/**
+	 * Strong probable prime test to base 2 of four numbers at once.
+	 * The four exponentiations run in lockstep over the bits of the largest exponent;
+	 * the leading zero bits of smaller exponents just square R mod N, which does not change it.
+	 * 
+	 * @param N0 odd, > 17^2
+	 * @param N1 odd, > 17^2
+	 * @param N2 odd, > 17^2
+	 * @param N3 odd, > 17^2
+	 * @return bit mask with bit i set if Ni is a strong probable prime to base 2
+	 */
+	private static int isStrongProbablePrimeBase2(long N0, long N1, long N2, long N3) {
+		final long NInv0 = inverse(N0), NInv1 = inverse(N1), NInv2 = inverse(N2), NInv3 = inverse(N3);
+		final long one0 = Long.remainderUnsigned(-N0, N0), one1 = Long.remainderUnsigned(-N1, N1);
+		final long one2 = Long.remainderUnsigned(-N2, N2), one3 = Long.remainderUnsigned(-N3, N3);
+		final int s0 = Long.numberOfTrailingZeros(N0-1), s1 = Long.numberOfTrailingZeros(N1-1);
+		final int s2 = Long.numberOfTrailingZeros(N2-1), s3 = Long.numberOfTrailingZeros(N3-1);
+		final long d0 = (N0-1) >>> s0, d1 = (N1-1) >>> s1, d2 = (N2-1) >>> s2, d3 = (N3-1) >>> s3;
+		
+		long x0 = one0, x1 = one1, x2 = one2, x3 = one3;
+		for (int i = 63 - Long.numberOfLeadingZeros(d0 | d1 | d2 | d3); i >= 0; i--) {
+			x0 = montMul(x0, x0, N0, NInv0);
+			x1 = montMul(x1, x1, N1, NInv1);
+			x2 = montMul(x2, x2, N2, NInv2);
+			x3 = montMul(x3, x3, N3, NInv3);
+			// branch-free conditional doubling: add x or 0
+			x0 = addMod(x0, x0 & -((d0 >>> i) & 1), N0);
+			x1 = addMod(x1, x1 & -((d1 >>> i) & 1), N1);
+			x2 = addMod(x2, x2 & -((d2 >>> i) & 1), N2);
+			x3 = addMod(x3, x3 & -((d3 >>> i) & 1), N3);
+		}
+		
+		int result = 0;
+		if (finishStrongProbablePrimeTest(x0, s0, N0, NInv0, one0)) result |= 1;
+		if (finishStrongProbablePrimeTest(x1, s1, N1, NInv1, one1)) result |= 2;
+		if (finishStrongProbablePrimeTest(x2, s2, N2, NInv2, one2)) result |= 4;
+		if (finishStrongProbablePrimeTest(x3, s3, N3, NInv3, one3)) result |= 8;
+		return result;
+	}
+	
+	/**
+	 * The squaring part of the strong probable prime test.
+	 * @param x a^d (mod N) in Montgomery representation
+	 * @param s the exponent of 2 in N-1 = d*2^s
+	 * @param N
+	 * @param NInv N^-1 mod 2^64
+	 * @param one R mod N
+	 * @return true if N is a strong probable prime to base a
+	 */
+	private static boolean finishStrongProbablePrimeTest(long x, int s, long N, long NInv, long one) {
+		final long minusOne = N - one;
+		if (x == one || x == minusOne) return true;
+		for (int r=1; r<s; r++) {
+			x = montMul(x, x, N, NInv);
+			if (x == minusOne) return true;
+			if (x == one) return false; // a non-trivial square root of 1
+		}
+		return false;
+	}
+	
+	private boolean isExtraStrongLucasProbablePrime(long N) {
+		return isExtraStrongLucasProbablePrime(N, inverse(N), Long.remainderUnsigned(-N, N));
+	}
+	
+	/**
+	 * Strong probable prime test to base 2.
+	 * @param N odd
+	 * @param NInv N^-1 mod 2^64
+	 * @param one R mod N
+	 * @return true if N is a strong probable prime to base 2
+	 */
+	private static boolean isStrongProbablePrimeBase2(long N, long NInv, long one) {
+		final long minusOne = N - one;
+		final long Nm1 = N - 1;
+		final int s = Long.numberOfTrailingZeros(Nm1);
+		final long d = Nm1 >>> s;
+		
+		// x = 2^d (mod N), left-to-right binary powering where the multiplication by 2 is a modular doubling
+		long x = one;
+		for (int i = 63 - Long.numberOfLeadingZeros(d); i >= 0; i--) {
+			x = montMul(x, x, N, NInv);
+			if (((d >>> i) & 1) != 0) x = addMod(x, x, N);
+		}
+		if (x == one || x == minusOne) return true;
+		for (int r=1; r<s; r++) {
+			x = montMul(x, x, N, NInv);
+			if (x == minusOne) return true;
+			if (x == one) return false; // a non-trivial square root of 1
+		}
+		return false;
+	}
+	
+	/**
+	 * Extra strong Lucas probable prime test [Baillie, Wagstaff 1980] with Q=1 and P the first value in 3, 4, 5, ... with Jacobi(P^2-4|N) = -1.
+	 * 
+	 * With Q=1, the Lucas chain only needs V_k and V_(k+1): V_2k = V_k^2 - 2, V_(2k+1) = V_k*V_(k+1) - P.
+	 * That are 2 independent multiplications per bit, compared to 3.5 for the strong test with Selfridge's parameters.
+	 * U_d is not needed explicitly, because D*U_d = 2V_(d+1) - P*V_d, and gcd(D, N)=1.
+	 * 
+	 * Like the strong test, the extra strong test combined with the base 2 strong probable prime test has no pseudoprimes below 2^64.
+	 * 
+	 * @see [Baillie, Fiori, Wagstaff: Strengthening the Baillie-PSW primality test, Math. Comp. 90 (2021)]
+	 * 
+	 * @param N odd
+	 * @param NInv N^-1 mod 2^64
+	 * @param one R mod N
+	 * @return true if N is an extra strong Lucas probable prime
+	 */
+	private boolean isExtraStrongLucasProbablePrime(long N, long NInv, long one) {
+		// We will never find a P with Jacobi(P^2-4|N) == -1 if N is a perfect square -> do square-test before.
+		if (isSquare(N)) return false;
+		
+		// Now get first P with Jacobi(P^2-4|N) == -1
+		int P = 3;
+		while (true) {
+			int jacobi = jacobiSymbol(P*P-4, N);
+			if (jacobi == -1) break;
+			if (jacobi == 0) return false; // gcd(P^2-4, N) > 1, and a prime N > 17^2 would need P-2 >= N or P+2 >= N
+			P++;
+		}
+		final long Pm = toMontgomery(P, N, one);
+		final long two = addMod(one, one, N);
+		
+		// delta = N - Jacobi(D|N) = N+1 = d*2^s, d odd. N+1 does not overflow because 2^64-1 is divisible by 3.
+		final long delta = N + 1;
+		final int s = Long.numberOfTrailingZeros(delta);
+		final long d = delta >>> s;
+		
+		// run the Lucas chain from k=1 to k=d
+		long Vk = Pm; // V_1 = P
+		long Vk1 = subMod(montMul(Pm, Pm, N, NInv), two, N); // V_2 = P^2 - 2
+		for (int i = 62 - Long.numberOfLeadingZeros(d); i >= 0; i--) {
+			if (((d >>> i) & 1) != 0) {
+				// k -> 2k+1
+				Vk = subMod(montMul(Vk, Vk1, N, NInv), Pm, N);
+				Vk1 = subMod(montMul(Vk1, Vk1, N, NInv), two, N);
+			} else {
+				// k -> 2k
+				Vk1 = subMod(montMul(Vk, Vk1, N, NInv), Pm, N);
+				Vk = subMod(montMul(Vk, Vk, N, NInv), two, N);
+			}
+		}
+		// U_d == 0 (mod N) and V_d == +-2 (mod N)
+		if ((Vk == two || Vk == N - two) && addMod(Vk1, Vk1, N) == montMul(Pm, Vk, N, NInv)) return true;
+		
+		// test V_(d*2^r) == 0 (mod N) for 0<=r<s-1
+		for (int r=0; r<s-1; r++) {
+			if (Vk == 0) return true;
+			Vk = subMod(montMul(Vk, Vk, N, NInv), two, N);
+		}
+		return false;
+	}
+	
+	/**
+	 * @param x small signed number with |x| < N
+	 * @param N
+	 * @param one R mod N
+	 * @return x*R mod N
+	 */
+	private static long toMontgomery(int x, long N, long one) {
+		long result = 0;
+		long multipleOfR = one;
+		for (int bits = x>0 ? x : -x; bits != 0; bits >>>= 1) {
+			if ((bits&1) != 0) result = addMod(result, multipleOfR, N);
+			multipleOfR = addMod(multipleOfR, multipleOfR, N);
+		}
+		return (x<0 && result != 0) ? N - result : result;
+	}
+	
+	/**
+	 * Jacobi symbol (D|N) for odd D and odd N, using quadratic reciprocity to reduce it to a symbol of ints.
+	 * @param D
+	 * @param N unsigned
+	 * @return Jacobi(D|N)
+	 */
+	private int jacobiSymbol(int D, long N) {
+		int t = 1;
+		int a = D;
+		if (a < 0) {
+			a = -a;
+			if ((N&3) == 3) t = -t; // (-1|N) = -1 for N == 3 (mod 4)
+		}
+		if ((a&3) == 3 && (N&3) == 3) t = -t; // a == N == 3 (mod 4)
+		return t * jacobiEngine.jacobiSymbol((int) Long.remainderUnsigned(N, a), a);
+	}
+	
+	/**
+	 * @param N unsigned
+	 * @return true if N is a perfect square
+	 */
+	private static boolean isSquare(long N) {
+		// the double conversion of the unsigned N may be off by some units; floor(sqrt(N)) < 2^32
+		long s = (long) Math.sqrt((N >>> 1) * 2.0 + (N & 1));
+		if (s > 0xFFFFFFFFL) s = 0xFFFFFFFFL;
+		while (Long.compareUnsigned(s*s, N) > 0) s--;
+		while (s < 0xFFFFFFFFL && Long.compareUnsigned((s+1)*(s+1), N) <= 0) s++;
+		return s*s == N;
+	}
+	
+	private static void testCorrectness(Random rng) {
+		BPSWTest64 bpsw64 = new BPSWTest64();
+		// all N < 2^16
+		for (int N=-65536; N<65536; N++) {
+			assertEquals("N=" + N, BigInteger.valueOf(Math.abs(N)).isProbablePrime(100), bpsw64.isProbablePrime(N));
+		}
+		// strong pseudoprimes to base 2, Carmichael numbers, squares and big primes
+		long[] specials = new long[] {2047, 3277, 4033, 4681, 8321, 561, 1105, 1729, 3215031751L, 2152302898747L, 3474749660383L, 
+				341550071728321L, 3825123056546413051L, 1194649, 12327121, 4294967291L*4294967291L, 9223372036854775783L, -1L-58, -1L-82, -1L};
+		for (long N : specials) {
+			BigInteger big = new BigInteger(Long.toUnsignedString(N));
+			assertEquals("N=" + Long.toUnsignedString(N), big.isProbablePrime(100), bpsw64.isProbablePrimeUnsigned(N));
+		}
+		// random N of all sizes, including primes
+		final int RANDOM_COUNT = 2000;
+		for (int bits=17; bits<=64; bits++) {
+			for (int i=0; i<RANDOM_COUNT; i++) {
+				BigInteger big = (i&1)==0 ? new BigInteger(bits, rng) : BigInteger.probablePrime(bits, rng);
+				assertEquals("N=" + big, big.isProbablePrime(100), bpsw64.isProbablePrimeUnsigned(big.longValue()));
+			}
+			LOG.info(bits + " bit: " + RANDOM_COUNT + " random numbers and primes passed");
+		}
+		// batch test
+		boolean[] batchResult = new boolean[specials.length];
+		for (int count=0; count<=specials.length; count++) {
+			bpsw64.isProbablePrimeUnsigned(specials, count, batchResult);
+			for (int i=0; i<count; i++) {
+				assertEquals("N=" + Long.toUnsignedString(specials[i]), bpsw64.isProbablePrimeUnsigned(specials[i]), batchResult[i]);
+			}
+		}
+		LOG.info("BPSWTest64 correctness test passed");
+	}
+	
+	/**
+	 * Compare the performance with the algorithms that BPSWTest and PrPTest used for 64 bit numbers before:
+	 * trial division for N < 2^31, the BPSW test with BigIntegers, and the Miller-Rabin test with Sinclair's bases.
+	 * @param rng
+	 */
+	private static void testPerformance(Random rng) {
+		BPSWTest64 bpsw64 = new BPSWTest64();
+		TDivPrimeTest tdiv = TDivPrimeTest.getInstance();
+		MillerRabinTest millerRabinTest = new MillerRabinTest();
+		LucasTest lucasTest = new LucasTest();
+		final int COUNT = 100000;
+		for (int bits : new int[] {20, 31, 32, 42, 52, 63}) {
+			// odd numbers coprime to 30030 and primes, so that the test itself is measured
+			long[] testNumbers = new long[COUNT];
+			BigInteger[] bigTestNumbers = new BigInteger[COUNT];
+			for (int i=0; i<COUNT; ) {
+				BigInteger big = (i&1)==0 ? new BigInteger(bits, rng) : BigInteger.probablePrime(bits, rng);
+				long N = big.longValue();
+				if (N > 17*17 && IS_COPRIME_TO_30030[(int) (N % 30030)]) {
+					bigTestNumbers[i] = big;
+					testNumbers[i++] = N;
+				}
+			}
+			int count64 = 0, countBatch = 0, countBPSW = 0, countSinclair = 0, countTDiv = 0;
+			long t0 = System.nanoTime();
+			for (long N : testNumbers) {
+				if (bpsw64.isProbablePrime(N)) count64++;
+			}
+			long t1 = System.nanoTime();
+			boolean[] batchResult = new boolean[COUNT];
+			bpsw64.isProbablePrimeUnsigned(testNumbers, COUNT, batchResult);
+			for (boolean isPrime : batchResult) {
+				if (isPrime) countBatch++;
+			}
+			long t2 = System.nanoTime();
+			for (BigInteger N : bigTestNumbers) {
+				if (millerRabinTest.testSingleBase(N, I_2) && lucasTest.isStrongProbablePrime(N)) countBPSW++;
+			}
+			long t3 = System.nanoTime();
+			for (BigInteger N : bigTestNumbers) {
+				// the Sinclair bases fail for N dividing one of them, but those are excluded here
+				if (millerRabinTest.testBases(N, SINCLAIR_BASES)) countSinclair++;
+			}
+			long t4 = System.nanoTime();
+			String tdivResult = "";
+			if (bits < 32) {
+				for (long N : testNumbers) {
+					if (tdiv.isPrime((int) N)) countTDiv++;
+				}
+				long t5 = System.nanoTime();
+				assertEquals(count64, countTDiv);
+				tdivResult = ", trial division " + (t5-t4)/COUNT + "ns";
+			}
+			assertEquals(count64, countBatch);
+			assertEquals(count64, countBPSW);
+			assertEquals(count64, countSinclair);
+			LOG.info(bits + " bit: BPSWTest64 " + (t1-t0)/COUNT + "ns, BPSWTest64 batch " + (t2-t1)/COUNT + "ns, BigInteger BPSW " + (t3-t2)/COUNT
+					 + "ns, Sinclair Miller-Rabin " + (t4-t3)/COUNT + "ns" + tdivResult + " per number");
+		}
+	}
+	
+	/**
+	 * Compare the performance with the path that BPSWTest and PrPTest used for N < 2^31 before,
+	 * i.e. a check for even N followed by trial division, on uniformly random numbers and on primes.
+	 * Unlike testPerformance(), the random numbers include those with small factors, where trial division stops early.
+	 * @param rng
+	 */
+	private static void testSmallArgumentPerformance(Random rng) {
+		BPSWTest64 bpsw64 = new BPSWTest64();
+		TDivPrimeTest tdiv = TDivPrimeTest.getInstance();
+		final int COUNT = 100000;
+		for (int bits : new int[] {8, 12, 16, 20, 24, 28, 31}) {
+			for (boolean primes : new boolean[] {false, true}) {
+				BigInteger[] testNumbers = new BigInteger[COUNT];
+				for (int i=0; i<COUNT; i++) {
+					testNumbers[i] = primes ? BigInteger.probablePrime(bits, rng) : new BigInteger(bits, rng).setBit(bits-1);
+				}
+				int countTDiv = 0, count64 = 0;
+				long t0 = System.nanoTime();
+				for (BigInteger N : testNumbers) {
+					if (N.testBit(0) ? tdiv.isPrime(N.intValue()) : N.equals(I_2)) countTDiv++;
+				}
+				long t1 = System.nanoTime();
+				for (BigInteger N : testNumbers) {
+					if (bpsw64.isProbablePrimeUnsigned(N.longValue())) count64++;
+				}
+				long t2 = System.nanoTime();
+				assertEquals(countTDiv, count64);
+				LOG.info(bits + " bit " + (primes ? "primes" : "random numbers") + ": trial division " + (t1-t0)/COUNT + "ns, BPSWTest64 " + (t2-t1)/COUNT + "ns per number");
+			}
+		}
+	}
+	
+	/**
+	 * Test correctness against BigInteger.isProbablePrime() and compare performance with the BigInteger-based tests.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		Random rng = new Random(41);
+		testCorrectness(rng);
+		for (int round=0; round<2; round++) { // the first round is warmup
+			testPerformance(rng);
+			testSmallArgumentPerformance(rng);
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.probable;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.base.MontgomeryMultiLimb;
+import de.tilman_neumann.jml.modular.JacobiSymbol;
+import de.tilman_neumann.jml.roots.SqrtExact;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * BPSW test for numbers of 65 to 512 bit: a strong probable prime test to base 2 followed by a strong Lucas probable prime test
+ * with Selfridge's parameters, like BPSWTest64, but with fixed-width Montgomery arithmetic on arrays of longs (R=2^(64k)).
+ * All multiplications are carried out in place on a few residue arrays allocated per test,
+ * instead of allocating new BigIntegers in every step of BigInteger.modPow() and the BigInteger Lucas chain.
+ * 
+ * For bigger numbers BigInteger.modPow() becomes faster, because it uses sliding windows and Karatsuba squaring.
+ * 
+ * Instances are not thread-safe.
+ * 
+ * @author agent
+ */
+public class BPSWTestMultiLimb {
+	private static final Logger LOG = Logger.getLogger(BPSWTestMultiLimb.class);
+
+	/** the multi-limb test is faster than the BigInteger BPSW test up to this bit length */
+	public static final int MAX_BITS = 512;
+	
+	private JacobiSymbol jacobiEngine = new JacobiSymbol();
+	private BPSWTest64 bpsw64 = new BPSWTest64();
+
+	/**
+	 * Test if |N| is a probable prime. There is no trial division except the one of BPSWTest64 for N < 2^64,
+	 * so callers testing numbers with small factors should check residues before.
+	 * @param N
+	 * @return true if |N| is a probable prime
+	 */
+	public boolean isProbablePrime(BigInteger N) {
+		N = N.abs(); // sign is irrelevant
+		if (N.bitLength() <= 64) return bpsw64.isProbablePrimeUnsigned(N.longValue());
+		if (!N.testBit(0)) return false;
+		
+		MontgomeryMultiLimb mont = new MontgomeryMultiLimb(N);
+		// The Lucas test is not carried out if N fails the base 2 Miller-Rabin test.
+		return isStrongProbablePrimeBase2(mont, N) && isStrongLucasProbablePrime(mont, N);
+	}
+	
+	/**
+	 * Strong probable prime test to base 2.
+	 * @param mont Montgomery arithmetic modulo N
+	 * @param N odd
+	 * @return true if N is a strong probable prime to base 2
+	 */
+	private static boolean isStrongProbablePrimeBase2(MontgomeryMultiLimb mont, BigInteger N) {
+		final BigInteger Nm1 = N.subtract(I_1);
+		final int s = Nm1.getLowestSetBit();
+		final BigInteger d = Nm1.shiftRight(s);
+		
+		long[] one = mont.newElement();
+		mont.setOne(one);
+		long[] minusOne = mont.newElement();
+		mont.sub(minusOne, one, minusOne); // 0 - 1
+		
+		// x = 2^d (mod N), left-to-right binary powering where the multiplication by 2 is a modular doubling
+		long[] x = mont.newElement();
+		mont.setOne(x);
+		for (int i = d.bitLength()-1; i >= 0; i--) {
+			mont.square(x, x);
+			if (d.testBit(i)) mont.add(x, x, x);
+		}
+		if (mont.equals(x, one) || mont.equals(x, minusOne)) return true;
+		for (int r=1; r<s; r++) {
+			mont.square(x, x);
+			if (mont.equals(x, minusOne)) return true;
+			if (mont.equals(x, one)) return false; // a non-trivial square root of 1
+		}
+		return false;
+	}
+	
+	/**
+	 * Strong Lucas probable prime test with parameters P=1, D the first value in 5, -7, 9, -11, 13, -15, ... with Jacobi(D|N) = -1,
+	 * and Q=(1-D)/4, computing V_k, V_(k+1) and Q^k like BPSWTest64.
+	 * 
+	 * @param mont Montgomery arithmetic modulo N
+	 * @param N odd
+	 * @return true if N is a strong Lucas probable prime
+	 */
+	private boolean isStrongLucasProbablePrime(MontgomeryMultiLimb mont, BigInteger N) {
+		// We will never find a D with Jacobi(D|N) == -1 if N is a perfect square -> do square-test before.
+		if (SqrtExact.exactSqrt(N) != null) return false;
+		
+		// Now get first D with Jacobi(D|N) == -1
+		int D = 5;
+		while (true) {
+			int jacobi = jacobiEngine.jacobiSymbol(D, N);
+			if (jacobi == -1) break;
+			if (jacobi == 0) return false; // N > 2^64 has a factor |D| < N
+			D = D>0 ? -D-2 : -D+2;
+		}
+		long[] Qm = mont.newElement();
+		mont.toMontgomery(BigInteger.valueOf((1-D)/4), Qm);
+		
+		// delta = N - Jacobi(D|N) = N+1 = d*2^s, d odd
+		final BigInteger delta = N.add(I_1);
+		final int s = delta.getLowestSetBit();
+		final BigInteger d = delta.shiftRight(s);
+		
+		// run the Lucas chain from k=1 to k=d
+		long[] Vk = mont.newElement();
+		mont.setOne(Vk); // V_1 = P
+		long[] Vk1 = mont.newElement();
+		long[] tmp = mont.newElement();
+		mont.add(Qm, Qm, tmp);
+		mont.sub(Vk, tmp, Vk1); // V_2 = P^2 - 2Q
+		long[] Qk = mont.newElement();
+		mont.set(Qm, Qk); // Q^1
+		long[] Qk1 = mont.newElement();
+		for (int i = d.bitLength()-2; i >= 0; i--) {
+			if (d.testBit(i)) {
+				// k -> 2k+1
+				mont.mul(Qk, Qm, Qk1);
+				mont.mul(Vk, Vk1, Vk);
+				mont.sub(Vk, Qk, Vk);
+				mont.square(Vk1, Vk1);
+				mont.add(Qk1, Qk1, tmp);
+				mont.sub(Vk1, tmp, Vk1);
+				mont.mul(Qk, Qk1, Qk);
+			} else {
+				// k -> 2k
+				mont.mul(Vk, Vk1, Vk1);
+				mont.sub(Vk1, Qk, Vk1);
+				mont.square(Vk, Vk);
+				mont.add(Qk, Qk, tmp);
+				mont.sub(Vk, tmp, Vk);
+				mont.square(Qk, Qk);
+			}
+		}
+		// If U_d == 0 (mod N) or V_d == 0 (mod N) then N is a strong Lucas probable prime
+		if (mont.isZero(Vk)) return true;
+		mont.add(Vk1, Vk1, tmp);
+		if (mont.equals(tmp, Vk)) return true;
+		
+		// test V_(d*2^r) == 0 (mod N) for 0<r<s
+		for (int r=1; r<s; r++) {
+			mont.square(Vk, Vk);
+			mont.add(Qk, Qk, tmp);
+			mont.sub(Vk, tmp, Vk);
+			if (mont.isZero(Vk)) return true;
+			mont.square(Qk, Qk);
+		}
+		return false;
+	}
+	
+	private static void testCorrectness(Random rng) {
+		BPSWTestMultiLimb bpswMultiLimb = new BPSWTestMultiLimb();
+		// random N of all sizes, including primes and products of two primes
+		for (int bits=60; bits<=600; bits++) {
+			for (int i=0; i<300; i++) {
+				BigInteger N;
+				switch (i%3) {
+				case 0: N = new BigInteger(bits, rng); break;
+				case 1: N = BigInteger.probablePrime(bits, rng); break;
+				default: N = BigInteger.probablePrime(bits/2, rng).multiply(BigInteger.probablePrime(bits - bits/2, rng));
+				}
+				assertEquals("N=" + N, N.isProbablePrime(100), bpswMultiLimb.isProbablePrime(N));
+			}
+		}
+		// squares of primes, Carmichael numbers and strong pseudoprimes to base 2
+		BigInteger p = BigInteger.probablePrime(100, rng);
+		BigInteger[] specials = new BigInteger[] {p.multiply(p), new BigInteger("3825123056546413051").multiply(new BigInteger("3825123056546413051")),
+				new BigInteger("3317044064679887385961981"), new BigInteger("318665857834031151167461"), new BigInteger("7999252175582851"),
+				new BigInteger("55245642489451")};
+		for (BigInteger N : specials) {
+			assertEquals("N=" + N, N.isProbablePrime(100), bpswMultiLimb.isProbablePrime(N));
+		}
+		LOG.info("BPSWTestMultiLimb correctness test passed");
+	}
+	
+	private static void testPerformance(Random rng) {
+		BPSWTestMultiLimb bpswMultiLimb = new BPSWTestMultiLimb();
+		MillerRabinTest millerRabinTest = new MillerRabinTest();
+		LucasTest lucasTest = new LucasTest();
+		for (int bits : new int[] {65, 128, 192, 256, 320, 384, 512, 1024}) {
+			// odd numbers and primes, so that both tests are measured
+			final int count = 40000000 / (bits*bits) + 100;
+			BigInteger[] testNumbers = new BigInteger[count];
+			for (int i=0; i<count; i++) {
+				testNumbers[i] = (i&1)==0 ? new BigInteger(bits, rng).setBit(bits-1).setBit(0) : BigInteger.probablePrime(bits, rng);
+			}
+			int count1 = 0, count2 = 0;
+			long t0 = System.nanoTime();
+			for (BigInteger N : testNumbers) {
+				if (millerRabinTest.testSingleBase(N, I_2) && lucasTest.isStrongProbablePrime(N)) count1++;
+			}
+			long t1 = System.nanoTime();
+			for (BigInteger N : testNumbers) {
+				if (bpswMultiLimb.isProbablePrime(N)) count2++;
+			}
+			long t2 = System.nanoTime();
+			assertEquals(count1, count2);
+			LOG.info(bits + " bit: BigInteger BPSW took " + (t1-t0)/count + "ns, BPSWTestMultiLimb took " + (t2-t1)/count + "ns per number");
+		}
+	}
+	
+	/**
+	 * Test correctness against BigInteger.isProbablePrime() and compare performance with the BigInteger BPSW test.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		Random rng = new Random(43);
+		testCorrectness(rng);
+		for (int round=0; round<2; round++) { // the first round is warmup
+			testPerformance(rng);
+		}
+	}
+}
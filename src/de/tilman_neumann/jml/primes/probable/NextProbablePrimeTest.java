@@ -40,6 +40,7 @@ public class NextProbablePrimeTest {
 	private static final int NCOUNT = 1000;
 
 	private static final BPSWTest bpsw = new BPSWTest();
+	private static final PrimeSearch primeSearch = new PrimeSearch();
 	
 	/**
 	 * Verify that the corrected lower/upper integers of sqrt(N) are computed.
@@ -60,6 +61,8 @@ public class NextProbablePrimeTest {
 				try {
 					BigInteger nextProbablePrime_bpsw = bpsw.nextProbablePrime(n);
 					assertEquals(nextProbablePrime, nextProbablePrime_bpsw);
+					assertEquals(nextProbablePrime, primeSearch.nextPrime(n));
+					if (nBits < 63) assertEquals(nextProbablePrime.longValue(), primeSearch.nextPrime(n.longValue()));
 				} catch (AssertionError ae) {
 					LOG.error("Failure at n=" + n + ": " + ae, ae);
 				}
@@ -95,6 +98,14 @@ public class NextProbablePrimeTest {
 			duration = System.currentTimeMillis() - startMillis;
 			addToMap(duration_2_algLists, duration, "BPSW");
 
+			// test PrimeSearch
+			startMillis = System.currentTimeMillis();
+			for (BigInteger n : testSet) {
+				primeSearch.nextPrime(n);
+			}
+			duration = System.currentTimeMillis() - startMillis;
+			addToMap(duration_2_algLists, duration, "PrimeSearch");
+
 			// test built-in method
 			startMillis = System.currentTimeMillis();
 			for (BigInteger n : testSet) {
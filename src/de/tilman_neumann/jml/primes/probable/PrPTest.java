@@ -21,20 +21,14 @@ import java.util.HashSet;
 /**
  * A probable prime test for arbitrary precision numbers.
  * 
- * For N<32 bit it does trial division. Otherwise it checks the residues of N % 30030, and then 
- * does a Miller-Rabin test with Sinclairs bases for N<64 bit, or a BPSW test for larger N.
- * 
- * Note that both the Sinclair-Miller-Rabin and BPSW test are considered deterministic prime tests for N<=2^64.
+ * For N<2^64 it does the BPSW test of BPSWTest64 using Montgomery arithmetic on longs, which is deterministic in that range.
+ * For larger N it checks the residues of N % 30030, and then does a BPSW test with BigIntegers.
  * 
  * See http://en.wikipedia.org/wiki/Baillie-PSW_primality_test
- * and http://miller-rabin.appspot.com/.
  * 
  * @author Tilman Neumann
  */
 public class PrPTest {
-	/** The 7 Miller-Rabin bases found by Jim Sinclair */
-	private static final BigInteger[] SINCLAIR_BASES = new BigInteger[] {I_2, BigInteger.valueOf(325), BigInteger.valueOf(9375), BigInteger.valueOf(28178), BigInteger.valueOf(450775), BigInteger.valueOf(9780504), BigInteger.valueOf(1795265022)};
-
 	/** 2*3*5*7*11*13 = 30030 */
 	private static final BigInteger BIG_30030 = BigInteger.valueOf(30030);
 
@@ -50,32 +44,27 @@ public class PrPTest {
 	//private TDivPrimeTest tdiv = new TDivPrimeTest();
 	private MillerRabinTest millerRabinTest = new MillerRabinTest();
 	private LucasTest lucasTest = new LucasTest();
+	private BPSWTest64 bpsw64 = new BPSWTest64();
+	private BPSWTestMultiLimb bpswMultiLimb = new BPSWTestMultiLimb();
 
     public boolean isProbablePrime(long N) {
-    	return isProbablePrime(BigInteger.valueOf(N)); // TODO: faster implementation for long?
+    	return bpsw64.isProbablePrime(N);
     }
 
     public boolean isProbablePrime(BigInteger N) {
         N = N.abs(); // sign is irrelevant
-        if (!N.testBit(0)) return N.equals(I_2); // even N>2 is not prime
-
-        // For small N, trial division is much faster than BPSW
-        int Nbits = N.bitLength();
-        if (Nbits < 32) {
-        	return TDivPrimeTest.getInstance().isPrime(N.intValue());
+        // For N < 2^64, BPSW with Montgomery arithmetic on longs is faster than trial division or a Miller-Rabin test with BigIntegers
+        if (N.bitLength() <= 64) {
+        	return bpsw64.isProbablePrimeUnsigned(N.longValue());
         }
+        if (!N.testBit(0)) return false; // even N>2 is not prime
         
-		// Test residues % 30030. Note that N<30030 have been exclude by trial division above.
+		// Test residues % 30030. Note that N<30030 have been handled above.
 		if (!primeRestsMod30030.contains(N.mod(BIG_30030).intValue())) return false;
 
-        if (Nbits < 64) {
-        	// For N<64 bit, a deterministic Miller-Rabin test is faster than BPSW.
-        	// Note that the algorithm would fail for N = 3, 5, 13, 19, 73, 193, 407521, 299210837, 
-        	// which are the factors of the bases. But all these N < 32 bit are tested by tdiv above,
-        	// so no problem here...
-    		return millerRabinTest.testBases(N, SINCLAIR_BASES);
-        }
-
+		// Up to 512 bit, BPSW with fixed-width Montgomery arithmetic is faster than with BigIntegers
+		if (N.bitLength() <= BPSWTestMultiLimb.MAX_BITS) return bpswMultiLimb.isProbablePrime(N);
+		
 		// Do BPSW test: The Lucas test is not carried out if N fails the base 2 Miller-Rabin test.
         return millerRabinTest.testSingleBase(N, I_2) && lucasTest.isStrongProbablePrime(N);
     }
@@ -0,0 +1,494 @@
+/*
+ * java-math-library is a Java library focused on number theory, but not necessarily limited to it. It is based on the PSIQS 4.0 factoring project.
+ * Copyright (C) 2018 Tilman Neumann (www.tilman-neumann.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program;
+ * if not, see <http://www.gnu.org/licenses/>.
+ */
+package de.tilman_neumann.jml.primes.probable;
+
+import static de.tilman_neumann.jml.base.BigIntConstants.*;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+import org.apache.log4j.Logger;
+
+import de.tilman_neumann.jml.primes.exact.AutoExpandingPrimesArray;
+import de.tilman_neumann.jml.primes.exact.PrimeIterator;
+import de.tilman_neumann.util.ConfigUtil;
+
+/**
+ * Search for primes near given numbers or in a given range, for long and BigInteger arguments.
+ * 
+ * Instead of testing N, N+2, N+4, ... one after another, a window of odd candidates is sieved by small primes first,
+ * and only the survivors are tested. For long arguments, the survivors are passed in batches to BPSWTest64,
+ * which carries out the base 2 Montgomery Miller-Rabin tests of four candidates interleaved.
+ * BigInteger survivors are tested by BPSWTestMultiLimb up to 512 bit, and by the BigInteger BPSW test above.
+ * Prime ranges below 2^40 are computed exactly by the segmented sieve.
+ * 
+ * All results are primes for long arguments; for BigInteger arguments with more than 64 bits they are BPSW probable primes.
+ * Instances are not thread-safe.
+ * 
+ * @author agent
+ */
+public class PrimeSearch {
+	private static final Logger LOG = Logger.getLogger(PrimeSearch.class);
+	private static final boolean DEBUG = false;
+	
+	/** the largest prime < 2^63 */
+	private static final long MAX_LONG_PRIME = 9223372036854775783L;
+	
+	/** odd primes < 2^16 used to sieve the candidate windows */
+	private static final int[] SIEVE_PRIMES = computeSievePrimes(1<<16);
+	
+	/**
+	 * products of consecutive sieve primes < 2^31, so that the residues of a BigInteger modulo all sieve primes
+	 * can be computed with few multiple-precision divisions. PRODUCT_END[i] is the index of the first sieve prime not in PRODUCTS[i].
+	 */
+	private static final long[] PRODUCTS;
+	private static final int[] PRODUCT_END;
+	
+	static {
+		ArrayList<long[]> products = new ArrayList<long[]>();
+		int i = 0;
+		while (i < SIEVE_PRIMES.length) {
+			long product = SIEVE_PRIMES[i++];
+			while (i < SIEVE_PRIMES.length && product * SIEVE_PRIMES[i] < (1L<<31)) {
+				product *= SIEVE_PRIMES[i++];
+			}
+			products.add(new long[] {product, i});
+		}
+		PRODUCTS = new long[products.size()];
+		PRODUCT_END = new int[products.size()];
+		for (int j=0; j<PRODUCTS.length; j++) {
+			PRODUCTS[j] = products.get(j)[0];
+			PRODUCT_END[j] = (int) products.get(j)[1];
+		}
+	}
+	
+	/** number of odd candidates and sieve primes for nextPrime() and prevPrime() with long arguments */
+	private static final int LONG_WINDOW = 128;
+	private static final int LONG_SIEVE_PRIME_COUNT = 48;
+	
+	/** number of odd candidates per window in primesInRange() */
+	private static final int RANGE_WINDOW = 1<<15;
+	
+	/** primesInRange() up to this limit is computed by the segmented sieve */
+	private static final long SEGMENTED_SIEVE_LIMIT = 1L<<40;
+	
+	/** long arguments up to this limit are handled by the long methods */
+	private static final BigInteger LONG_LIMIT = BigInteger.valueOf(Long.MAX_VALUE);
+	
+	private final BPSWTest64 bpsw64 = new BPSWTest64();
+	private final BPSWTestMultiLimb bpswMultiLimb = new BPSWTestMultiLimb();
+	private final MillerRabinTest millerRabinTest = new MillerRabinTest();
+	private final LucasTest lucasTest = new LucasTest();
+	
+	/** composite[i] is true if the i.th odd number of the current window has a sieve prime factor */
+	private boolean[] composite = new boolean[LONG_WINDOW];
+	private long[] candidates = new long[LONG_WINDOW];
+	private boolean[] isPrime = new boolean[LONG_WINDOW];
+	
+	private static int[] computeSievePrimes(int limit) {
+		AutoExpandingPrimesArray primesArray = AutoExpandingPrimesArray.get().ensureLimit(limit);
+		int count = primesArray.getInsertPosition(limit);
+		int[] primes = new int[count-1];
+		for (int i=1; i<count; i++) {
+			primes[i-1] = primesArray.getPrime(i); // skip 2
+		}
+		return primes;
+	}
+	
+	/**
+	 * @param N
+	 * @return the smallest prime > N
+	 * @throws IllegalArgumentException if there is no such prime < 2^63
+	 */
+	public long nextPrime(long N) {
+		if (N < 2) return 2;
+		if (N >= MAX_LONG_PRIME) throw new IllegalArgumentException("There is no long prime > " + N);
+		long base = (N+1) | 1; // the first odd number > N
+		while (true) {
+			final int windowSize = (int) Math.min(LONG_WINDOW, (MAX_LONG_PRIME - base)/2 + 1);
+			sieveWindow(base, windowSize, LONG_SIEVE_PRIME_COUNT);
+			// test the survivors in ascending order, in batches of four
+			int count = 0;
+			for (int i=0; i<windowSize; i++) {
+				if (composite[i]) continue;
+				candidates[count++] = base + 2*i;
+				if (count == 4) {
+					long prime = firstPrime(count);
+					if (prime > 0) return prime;
+					count = 0;
+				}
+			}
+			if (count > 0) {
+				long prime = firstPrime(count);
+				if (prime > 0) return prime;
+			}
+			base += 2*windowSize;
+		}
+	}
+	
+	/**
+	 * @param N
+	 * @return the largest prime < N
+	 * @throws IllegalArgumentException if N <= 2
+	 */
+	public long prevPrime(long N) {
+		if (N <= 2) throw new IllegalArgumentException("There is no prime < " + N);
+		if (N == 3) return 2;
+		long top = (N-2) | 1; // the largest odd number < N
+		while (top >= 3) {
+			final long base = Math.max(3, top - 2*(LONG_WINDOW-1));
+			final int windowSize = (int) ((top - base)/2 + 1);
+			sieveWindow(base, windowSize, LONG_SIEVE_PRIME_COUNT);
+			// test the survivors in descending order, in batches of four
+			int count = 0;
+			for (int i=windowSize-1; i>=0; i--) {
+				if (composite[i]) continue;
+				candidates[count++] = base + 2*i;
+				if (count == 4) {
+					long prime = firstPrime(count);
+					if (prime > 0) return prime;
+					count = 0;
+				}
+			}
+			if (count > 0) {
+				long prime = firstPrime(count);
+				if (prime > 0) return prime;
+			}
+			top = base - 2;
+		}
+		return 2;
+	}
+	
+	/**
+	 * Batch test of the first 'count' candidates.
+	 * @param count
+	 * @return the first candidate that is prime, or -1 if there is none
+	 */
+	private long firstPrime(int count) {
+		bpsw64.isProbablePrimeUnsigned(candidates, count, isPrime);
+		for (int i=0; i<count; i++) {
+			if (isPrime[i]) return candidates[i];
+		}
+		return -1;
+	}
+	
+	/**
+	 * Compute all primes p with from <= p <= to.
+	 * @param from
+	 * @param to
+	 * @return primes in ascending order
+	 */
+	public long[] primesInRange(long from, long to) {
+		return primesInRange(from, to, SEGMENTED_SIEVE_LIMIT);
+	}
+	
+	/**
+	 * Compute all primes p with from <= p <= to, using the exact sieve for the part of the range up to sieveLimit.
+	 * @param from
+	 * @param to
+	 * @param sieveLimit SEGMENTED_SIEVE_LIMIT, or something smaller in tests
+	 * @return primes in ascending order
+	 */
+	long[] primesInRange(long from, long to, long sieveLimit) {
+		from = Math.max(from, 2);
+		if (from > to) return new long[0];
+		long[] primes = new long[16];
+		int count = 0;
+		if (from <= sieveLimit) {
+			// the exact sieve is faster here than sieving by small primes and testing the survivors
+			PrimitiveIterator.OfLong iterator = new PrimeIterator(from, Math.min(to, sieveLimit));
+			while (iterator.hasNext()) {
+				if (count == primes.length) primes = Arrays.copyOf(primes, count<<1);
+				primes[count++] = iterator.nextLong();
+			}
+			if (to <= sieveLimit) return Arrays.copyOf(primes, count);
+			from = sieveLimit + 1;
+		}
+		
+		ensureWindowCapacity(RANGE_WINDOW);
+		long base = from | 1; // from > sieveLimit is not 2
+		final long lastOdd = (to-1) | 1;
+		while (base <= lastOdd) {
+			final int windowSize = (int) Math.min(RANGE_WINDOW, (lastOdd - base)/2 + 1);
+			sieveWindow(base, windowSize, SIEVE_PRIMES.length);
+			int candidateCount = 0;
+			for (int i=0; i<windowSize; i++) {
+				if (!composite[i]) candidates[candidateCount++] = base + 2*i;
+			}
+			bpsw64.isProbablePrimeUnsigned(candidates, candidateCount, isPrime);
+			for (int i=0; i<candidateCount; i++) {
+				if (isPrime[i]) {
+					if (count == primes.length) primes = Arrays.copyOf(primes, count<<1);
+					primes[count++] = candidates[i];
+				}
+			}
+			if (lastOdd - base < 2L*windowSize) break; // avoid overflow near Long.MAX_VALUE
+			base += 2L*windowSize;
+		}
+		if (DEBUG) LOG.debug("Found " + count + " primes in [" + from + ", " + to + "]");
+		return Arrays.copyOf(primes, count);
+	}
+	
+	/**
+	 * Mark the odd numbers base, base+2, ..., base+2*(windowSize-1) that have a factor among the first primeCount sieve primes.
+	 * The sieve primes themselves are not marked.
+	 * @param base odd, >= 3
+	 * @param windowSize number of odd candidates
+	 * @param primeCount number of sieve primes to use
+	 */
+	private void sieveWindow(long base, int windowSize, int primeCount) {
+		Arrays.fill(composite, 0, windowSize, false);
+		int j = 0;
+		for (int k=0; j<primeCount; k++) {
+			// one 64 bit division per product, 32 bit divisions per prime
+			final int productResidue = (int) (base % PRODUCTS[k]);
+			final int end = Math.min(PRODUCT_END[k], primeCount);
+			for (; j<end; j++) {
+				final int p = SIEVE_PRIMES[j];
+				final long pSquare = (long) p * p;
+				int start;
+				if (base <= pSquare) {
+					// start at p^2, so that p itself is not marked
+					if (pSquare - base >= 2L*windowSize) continue;
+					start = (int) ((pSquare - base) >> 1);
+				} else {
+					start = firstMultipleIndex(productResidue % p, p);
+				}
+				for (int i=start; i<windowSize; i+=p) {
+					composite[i] = true;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param r base mod p
+	 * @param p odd prime
+	 * @return the smallest i >= 0 with base + 2i == 0 (mod p)
+	 */
+	private static int firstMultipleIndex(int r, int p) {
+		if (r == 0) return 0;
+		final int i = p - r; // base + i == 0 (mod p); base + i is odd if i is even
+		return (i & 1) == 0 ? i >> 1 : (i + p) >> 1;
+	}
+	
+	private void ensureWindowCapacity(int windowSize) {
+		if (composite.length < windowSize) {
+			composite = new boolean[windowSize];
+			candidates = new long[windowSize];
+			isPrime = new boolean[windowSize];
+		}
+	}
+	
+	/**
+	 * @param N
+	 * @return the smallest (probable) prime > N
+	 */
+	public BigInteger nextPrime(BigInteger N) {
+		if (N.compareTo(I_2) < 0) return I_2;
+		if (N.compareTo(BigInteger.valueOf(MAX_LONG_PRIME)) < 0) return BigInteger.valueOf(nextPrime(N.longValue()));
+		
+		BigInteger base = N.testBit(0) ? N.add(I_2) : N.add(I_1);
+		final int windowSize = windowSize(N.bitLength());
+		final int primeCount = sievePrimeCount(N.bitLength());
+		while (true) {
+			sieveWindow(base, windowSize, primeCount);
+			for (int i=0; i<windowSize; i++) {
+				if (composite[i]) continue;
+				BigInteger candidate = base.add(BigInteger.valueOf(2L*i));
+				if (isProbablePrimeWithoutSmallFactors(candidate)) return candidate;
+			}
+			base = base.add(BigInteger.valueOf(2L*windowSize));
+		}
+	}
+	
+	/**
+	 * @param N
+	 * @return the largest (probable) prime < N
+	 * @throws IllegalArgumentException if N <= 2
+	 */
+	public BigInteger prevPrime(BigInteger N) {
+		if (N.compareTo(LONG_LIMIT) <= 0) return BigInteger.valueOf(prevPrime(N.longValue()));
+		
+		BigInteger top = N.testBit(0) ? N.subtract(I_2) : N.subtract(I_1);
+		final int windowSize = windowSize(N.bitLength());
+		final int primeCount = sievePrimeCount(N.bitLength());
+		while (true) {
+			if (top.compareTo(LONG_LIMIT) <= 0) {
+				final long longTop = top.longValue();
+				return BigInteger.valueOf(bpsw64.isProbablePrime(longTop) ? longTop : prevPrime(longTop));
+			}
+			BigInteger base = top.subtract(BigInteger.valueOf(2L*(windowSize-1)));
+			sieveWindow(base, windowSize, primeCount);
+			for (int i=windowSize-1; i>=0; i--) {
+				if (composite[i]) continue;
+				BigInteger candidate = base.add(BigInteger.valueOf(2L*i));
+				if (isProbablePrimeWithoutSmallFactors(candidate)) return candidate;
+			}
+			top = base.subtract(I_2);
+		}
+	}
+	
+	/**
+	 * Compute all (probable) primes p with from <= p <= to.
+	 * @param from
+	 * @param to
+	 * @return primes in ascending order
+	 */
+	public ArrayList<BigInteger> primesInRange(BigInteger from, BigInteger to) {
+		ArrayList<BigInteger> primes = new ArrayList<BigInteger>();
+		from = from.max(I_2);
+		if (from.compareTo(to) > 0) return primes;
+		if (from.compareTo(LONG_LIMIT) <= 0) {
+			long[] longPrimes = primesInRange(from.longValue(), to.min(LONG_LIMIT).longValue());
+			for (long p : longPrimes) primes.add(BigInteger.valueOf(p));
+			if (to.compareTo(LONG_LIMIT) <= 0) return primes;
+			from = LONG_LIMIT.add(I_1);
+		}
+		
+		final int windowSize = RANGE_WINDOW;
+		ensureWindowCapacity(windowSize);
+		BigInteger base = from.testBit(0) ? from : from.add(I_1);
+		final int primeCount = sievePrimeCount(to.bitLength());
+		while (base.compareTo(to) <= 0) {
+			sieveWindow(base, windowSize, primeCount);
+			for (int i=0; i<windowSize; i++) {
+				if (composite[i]) continue;
+				BigInteger candidate = base.add(BigInteger.valueOf(2L*i));
+				if (candidate.compareTo(to) > 0) break;
+				if (isProbablePrimeWithoutSmallFactors(candidate)) primes.add(candidate);
+			}
+			base = base.add(BigInteger.valueOf(2L*windowSize));
+		}
+		return primes;
+	}
+	
+	/**
+	 * The window size for nextPrime() and prevPrime() with BigInteger arguments.
+	 * The average prime gap is ln(N) ~ 0.69*bits, so a window of 'bits' odd numbers usually contains several primes.
+	 * @param bits
+	 * @return number of odd candidates
+	 */
+	private int windowSize(int bits) {
+		final int windowSize = Math.max(LONG_WINDOW, bits);
+		ensureWindowCapacity(windowSize);
+		return windowSize;
+	}
+	
+	/**
+	 * Mark the odd numbers base, base+2, ..., base+2*(windowSize-1) that have a factor among the first primeCount sieve primes.
+	 * The residues of base modulo the sieve primes are obtained from few multiple-precision divisions by products of sieve primes.
+	 * @param base odd, > 2^32
+	 * @param windowSize number of odd candidates
+	 * @param primeCount number of sieve primes to use
+	 */
+	private void sieveWindow(BigInteger base, int windowSize, int primeCount) {
+		Arrays.fill(composite, 0, windowSize, false);
+		final int[] words = toWords(base);
+		int j = 0;
+		for (int k=0; j<primeCount; k++) {
+			// Horner scheme over the 32 bit words; since the product is < 2^31, the intermediate values are < 2^63
+			final long product = PRODUCTS[k];
+			long r = 0;
+			for (int word : words) {
+				r = ((r << 32) | (word & 0xFFFFFFFFL)) % product;
+			}
+			final int productResidue = (int) r;
+			final int end = Math.min(PRODUCT_END[k], primeCount);
+			for (; j<end; j++) {
+				final int p = SIEVE_PRIMES[j];
+				for (int i=firstMultipleIndex(productResidue % p, p); i<windowSize; i+=p) {
+					composite[i] = true;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param N positive
+	 * @return the 32 bit words of N, most significant first
+	 */
+	private static int[] toWords(BigInteger N) {
+		final byte[] bytes = N.toByteArray(); // big-endian, maybe with a leading 0 byte
+		final int[] words = new int[(bytes.length + 3) >> 2];
+		for (int i=0; i<bytes.length; i++) {
+			final int pos = bytes.length - 1 - i; // byte i from the least significant end
+			words[words.length - 1 - (i>>2)] |= (bytes[pos] & 0xFF) << ((i&3) << 3);
+		}
+		return words;
+	}
+	
+	/**
+	 * The number of sieve primes for BigInteger windows.
+	 * The cost of a Miller-Rabin test grows like bits^3, while the sieve costs one multiple-precision division per product of sieve primes,
+	 * so the optimal number of sieve primes grows fast with the size of the numbers.
+	 * @param bits
+	 * @return number of sieve primes
+	 */
+	private static int sievePrimeCount(int bits) {
+		return Math.min(SIEVE_PRIMES.length, bits*bits/16);
+	}
+	
+	/**
+	 * BPSW test of N > 2^63 that has no factor < 2^16.
+	 * @param N
+	 * @return true if N is a probable prime
+	 */
+	private boolean isProbablePrimeWithoutSmallFactors(BigInteger N) {
+		if (N.bitLength() <= BPSWTestMultiLimb.MAX_BITS) return bpswMultiLimb.isProbablePrime(N);
+		// The Lucas test is not carried out if N fails the base 2 Miller-Rabin test.
+		return millerRabinTest.testSingleBase(N, I_2) && lucasTest.isStrongProbablePrime(N);
+	}
+	
+	private static long[] primesFromIterator(long from, long to) {
+		long[] primes = new long[16];
+		int count = 0;
+		PrimitiveIterator.OfLong iterator = new PrimeIterator(from, to);
+		while (iterator.hasNext()) {
+			if (count == primes.length) primes = Arrays.copyOf(primes, count<<1);
+			primes[count++] = iterator.nextLong();
+		}
+		return Arrays.copyOf(primes, count);
+	}
+	
+	/**
+	 * Test primesInRange() with ranges that straddle the limit of the exact sieve.
+	 * @param args ignored
+	 */
+	public static void main(String[] args) {
+		ConfigUtil.initProject();
+		PrimeSearch primeSearch = new PrimeSearch();
+		// ranges starting at 2 or 3 that straddle a small sieve limit
+		final long sieveLimit = 1L<<20;
+		for (long from : new long[] {0, 2, 3}) {
+			long[] expected = primesFromIterator(Math.max(from, 2), 3*sieveLimit);
+			assertArrayEquals("from=" + from, expected, primeSearch.primesInRange(from, 3*sieveLimit, sieveLimit));
+		}
+		// ranges near the real sieve limit
+		final long[][] ranges = new long[][] {
+			{SEGMENTED_SIEVE_LIMIT - 1000000, SEGMENTED_SIEVE_LIMIT + 1000000},
+			{SEGMENTED_SIEVE_LIMIT, SEGMENTED_SIEVE_LIMIT + 1000},
+			{SEGMENTED_SIEVE_LIMIT + 1, SEGMENTED_SIEVE_LIMIT + 1000},
+			{SEGMENTED_SIEVE_LIMIT - 1000, SEGMENTED_SIEVE_LIMIT},
+		};
+		for (long[] range : ranges) {
+			long[] expected = primesFromIterator(range[0], range[1]);
+			assertArrayEquals("[" + range[0] + ", " + range[1] + "]", expected, primeSearch.primesInRange(range[0], range[1]));
+		}
+		LOG.info("PrimeSearch.primesInRange() test passed");
+	}
+}